@@ -37,6 +37,7 @@ import androidx.annotation.VisibleForTesting;
 import com.android.settings.applications.ProcStatsData;
 import com.android.settings.datausage.lib.DataUsageLib;
 import com.android.settings.fuelgauge.batterytip.AnomalyConfigJobService;
+import com.android.settings.network.CarrierConfigCache;
 import com.android.settingslib.net.DataUsageController;
 
 import org.json.JSONArray;
@@ -61,6 +62,8 @@ public class SettingsDumpService extends Service {
     @VisibleForTesting
     static final String KEY_ANOMALY_DETECTION = "anomaly_detection";
     @VisibleForTesting
+    static final String KEY_CARRIER_CONFIG_CACHE = "carrier_config_cache";
+    @VisibleForTesting
     static final Intent BROWSER_INTENT =
             new Intent("android.intent.action.VIEW", Uri.parse("http://"));
 
@@ -80,6 +83,7 @@ public class SettingsDumpService extends Service {
             dump.put(KEY_MEMORY, dumpMemory());
             dump.put(KEY_DEFAULT_BROWSER_APP, dumpDefaultBrowser());
             dump.put(KEY_ANOMALY_DETECTION, dumpAnomalyDetection());
+            dump.put(KEY_CARRIER_CONFIG_CACHE, dumpCarrierConfigCache());
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -186,4 +190,14 @@ public class SettingsDumpService extends Service {
 
         return obj;
     }
+
+    @VisibleForTesting
+    JSONObject dumpCarrierConfigCache() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        obj.put("hits", CarrierConfigCache.getCacheHitCount());
+        obj.put("misses", CarrierConfigCache.getCacheMissCount());
+        obj.put("cached", CarrierConfigCache.getCachedConfigCount());
+
+        return obj;
+    }
 }
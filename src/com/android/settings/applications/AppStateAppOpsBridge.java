@@ -52,9 +52,29 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
     private final UserManager mUserManager;
     private final List<UserHandle> mProfiles;
     private final AppOpsManager mAppOpsManager;
+    private final PackageManager mPackageManager;
     private final Context mContext;
     private final int[] mAppOpsOpCodes;
     private final String[] mPermissions;
+    // Reloads the extra info of a package once its app op mode is changed.
+    private final AppOpsManager.OnOpChangedListener mOnOpChangedListener =
+            (op, packageName) -> {
+                if (packageName != null) {
+                    forceUpdate(packageName);
+                }
+            };
+    // Reloads the extra info of the packages of a uid once its runtime permissions are changed,
+    // as the permission state is part of the extra info too.
+    private final PackageManager.OnPermissionsChangedListener mOnPermissionsChangedListener =
+            uid -> {
+                final String[] packageNames = mPackageManager.getPackagesForUid(uid);
+                if (packageNames == null) {
+                    return;
+                }
+                for (String packageName : packageNames) {
+                    forceUpdate(packageName);
+                }
+            };
 
     public AppStateAppOpsBridge(Context context, ApplicationsState appState, Callback callback,
             int appOpsOpCode, String[] permissions) {
@@ -83,6 +103,7 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
         mUserManager = UserManager.get(context);
         mProfiles = mUserManager.getUserProfiles();
         mAppOpsManager = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+        mPackageManager = context.getPackageManager();
         mAppOpsOpCodes = appOpsOpCodes;
         mPermissions = permissions;
     }
@@ -99,6 +120,38 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
 
     protected abstract void updateExtraInfo(AppEntry app, String pkg, int uid);
 
+    @Override
+    public void resume(boolean forceLoadAllApps) {
+        super.resume(forceLoadAllApps);
+        for (int opCode : mAppOpsOpCodes) {
+            mAppOpsManager.startWatchingMode(opCode, /* packageName= */ null,
+                    mOnOpChangedListener);
+        }
+        mPackageManager.addOnPermissionsChangeListener(mOnPermissionsChangedListener);
+    }
+
+    @Override
+    public void pause() {
+        mAppOpsManager.stopWatchingMode(mOnOpChangedListener);
+        mPackageManager.removeOnPermissionsChangeListener(mOnPermissionsChangedListener);
+        super.pause();
+    }
+
+    @Override
+    protected void loadExtraInfo(AppEntry app) {
+        final String pkg = app.info.packageName;
+        final int uid = app.info.uid;
+        // Same as loadAllExtraInfo(), only the packages requesting the permission in the profiles
+        // of current user have extra info.
+        if (shouldIgnorePackage(pkg)
+                || !isThisUserAProfileOfCurrentUser(UserHandle.getUserId(uid))
+                || !getPermissionInfo(pkg, uid).permissionDeclared) {
+            app.extraInfo = null;
+            return;
+        }
+        updateExtraInfo(app, pkg, uid);
+    }
+
     private boolean doesAnyPermissionMatch(String permissionToMatch, String[] permissions) {
         for (String permission : permissions) {
             if (permissionToMatch.equals(permission)) {
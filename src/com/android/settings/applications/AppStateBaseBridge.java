@@ -15,9 +15,14 @@
  */
 package com.android.settings.applications;
 
+import android.app.ActivityManager;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.UserHandle;
+import android.util.ArraySet;
+
+import androidx.annotation.VisibleForTesting;
 
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
@@ -38,6 +43,11 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
 
     private boolean mForceLoadAllApps;
 
+    // Ids of the entries whose extra info is loaded, and the user they are loaded for. Only
+    // accessed on the background thread.
+    private final ArraySet<Long> mLoadedEntryIds = new ArraySet<>();
+    private int mLoadedUserId = UserHandle.USER_NULL;
+
     public AppStateBaseBridge(ApplicationsState appState, Callback callback) {
         mAppState = appState;
         mAppSession = mAppState != null ? mAppState.newSession(this) : null;
@@ -51,6 +61,8 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
     }
 
     public void resume(boolean forceLoadAllApps) {
+        // Changes made while paused are not tracked, reloads all extra info once.
+        mHandler.sendEmptyMessage(BackgroundHandler.MSG_INVALIDATE_ALL);
         mForceLoadAllApps = forceLoadAllApps;
         if (mForceLoadAllApps) {
             mAppSession.onResume();
@@ -75,14 +87,22 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
         mHandler.obtainMessage(BackgroundHandler.MSG_FORCE_LOAD_PKG, uid, 0, pkg).sendToTarget();
     }
 
+    /**
+     * Reloads the extra info of a package for all users, e.g. when its permission or app op
+     * state is changed.
+     */
+    public void forceUpdate(String pkg) {
+        mHandler.obtainMessage(BackgroundHandler.MSG_LOAD_PKG, pkg).sendToTarget();
+    }
+
     @Override
     public void onPackageListChanged() {
-        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_ALL);
+        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_CHANGED);
     }
 
     @Override
     public void onLoadEntriesCompleted() {
-        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_ALL);
+        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_CHANGED);
     }
 
     @Override
@@ -119,6 +139,57 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
 
     protected abstract void updateExtraInfo(AppEntry app, String pkg, int uid);
 
+    /**
+     * Loads the extra info of a single entry the same way {@link #loadAllExtraInfo()} does.
+     * Used when only some packages are changed, subclasses whose full load leaves the extra info
+     * of some entries empty should override it.
+     */
+    protected void loadExtraInfo(AppEntry app) {
+        updateExtraInfo(app, app.info.packageName, app.info.uid);
+    }
+
+    @VisibleForTesting
+    int getCurrentUserId() {
+        return ActivityManager.getCurrentUser();
+    }
+
+    /**
+     * Loads the extra info of the entries which are not loaded yet. All entries are reloaded on
+     * the first load and when the current user is switched.
+     *
+     * @return {@code true} if the extra info of any entry is loaded
+     */
+    @VisibleForTesting
+    boolean loadChangedExtraInfo() {
+        final ArrayList<AppEntry> apps = mAppSession.getAllApps();
+        final int currentUserId = getCurrentUserId();
+        if (mLoadedUserId != currentUserId) {
+            loadAllExtraInfo();
+            mLoadedUserId = currentUserId;
+            mLoadedEntryIds.clear();
+            for (int i = 0; i < apps.size(); i++) {
+                mLoadedEntryIds.add(apps.get(i).id);
+            }
+            return true;
+        }
+
+        final ArraySet<Long> entryIds = new ArraySet<>(apps.size());
+        boolean changed = false;
+        for (int i = 0; i < apps.size(); i++) {
+            final AppEntry app = apps.get(i);
+            entryIds.add(app.id);
+            if (!mLoadedEntryIds.contains(app.id)) {
+                loadExtraInfo(app);
+                changed = true;
+            }
+        }
+        // Entries of the removed packages are dropped.
+        changed |= entryIds.size() != mLoadedEntryIds.size();
+        mLoadedEntryIds.clear();
+        mLoadedEntryIds.addAll(entryIds);
+        return changed;
+    }
+
     private class MainHandler extends Handler {
         private static final int MSG_INFO_UPDATED = 1;
 
@@ -137,8 +208,10 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
     }
 
     private class BackgroundHandler extends Handler {
-        private static final int MSG_LOAD_ALL = 1;
+        private static final int MSG_INVALIDATE_ALL = 1;
         private static final int MSG_FORCE_LOAD_PKG = 2;
+        private static final int MSG_LOAD_CHANGED = 3;
+        private static final int MSG_LOAD_PKG = 4;
 
         public BackgroundHandler(Looper looper) {
             super(looper);
@@ -147,9 +220,8 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
         @Override
         public void handleMessage(Message msg) {
             switch (msg.what) {
-                case MSG_LOAD_ALL:
-                    loadAllExtraInfo();
-                    mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
+                case MSG_INVALIDATE_ALL:
+                    mLoadedUserId = UserHandle.USER_NULL;
                     break;
                 case MSG_FORCE_LOAD_PKG:
                     ArrayList<AppEntry> apps = mAppSession.getAllApps();
@@ -164,6 +236,22 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
                     }
                     mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
                     break;
+                case MSG_LOAD_CHANGED:
+                    if (loadChangedExtraInfo()) {
+                        mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
+                    }
+                    break;
+                case MSG_LOAD_PKG:
+                    final ArrayList<AppEntry> allApps = mAppSession.getAllApps();
+                    final String packageName = (String) msg.obj;
+                    for (int i = 0; i < allApps.size(); i++) {
+                        final AppEntry app = allApps.get(i);
+                        if (packageName.equals(app.info.packageName)) {
+                            loadExtraInfo(app);
+                        }
+                    }
+                    mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
+                    break;
             }
         }
     }
@@ -29,6 +29,7 @@ import android.widget.CompoundButton;
 import com.android.settings.R;
 import com.android.settings.Utils;
 import com.android.settings.notification.NotificationBackend;
+import com.android.settings.notification.NotificationSentStatsStore;
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 import com.android.settingslib.applications.ApplicationsState.AppFilter;
@@ -51,6 +52,7 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
     private IUsageStatsManager mUsageStatsManager;
     protected List<Integer> mUserIds;
     private NotificationBackend mBackend;
+    private final NotificationSentStatsStore mSentStatsStore;
     private static final int DAYS_TO_CHECK = 7;
 
     public AppStateNotificationBridge(Context context, ApplicationsState appState,
@@ -60,6 +62,7 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
         mContext = context;
         mUsageStatsManager = usageStatsManager;
         mBackend = backend;
+        mSentStatsStore = NotificationSentStatsStore.getInstance(context);
         mUserIds = new ArrayList<>();
         mUserIds.add(mContext.getUserId());
         int workUserId = Utils.getManagedProfileId(userManager, mContext.getUserId());
@@ -136,38 +139,23 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
         }
     }
 
+    /**
+     * Returns how many notifications each package sent over the last {@link #DAYS_TO_CHECK} days,
+     * by {@link #getKey}. Only the events received since the previous call are read, the counts
+     * are kept by {@link NotificationSentStatsStore}.
+     */
     protected Map<String, NotificationsSentState> getAggregatedUsageEvents() {
         ArrayMap<String, NotificationsSentState> aggregatedStats = new ArrayMap<>();
 
         long now = System.currentTimeMillis();
-        long startTime = now - (DateUtils.DAY_IN_MILLIS * DAYS_TO_CHECK);
         for (int userId : mUserIds) {
-            UsageEvents events = null;
-            try {
-                events = mUsageStatsManager.queryEventsForUser(
-                        startTime, now, userId, mContext.getPackageName());
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-            if (events != null) {
-                UsageEvents.Event event = new UsageEvents.Event();
-                while (events.hasNextEvent()) {
-                    events.getNextEvent(event);
-                    NotificationsSentState stats =
-                            aggregatedStats.get(getKey(userId, event.getPackageName()));
-                    if (stats == null) {
-                        stats = new NotificationsSentState();
-                        aggregatedStats.put(getKey(userId, event.getPackageName()), stats);
-                    }
-
-                    if (event.getEventType() == UsageEvents.Event.NOTIFICATION_INTERRUPTION) {
-                        if (event.getTimeStamp() > stats.lastSent) {
-                            stats.lastSent = event.getTimeStamp();
-                        }
-                        stats.sentCount++;
-                    }
-
-                }
+            mSentStatsStore.update(mUsageStatsManager, userId, now);
+            for (Map.Entry<String, NotificationBackend.NotificationsSentState> entry
+                    : mSentStatsStore.getPackageStates(userId, now).entrySet()) {
+                NotificationsSentState stats = new NotificationsSentState();
+                stats.sentCount = entry.getValue().sentCount;
+                stats.lastSent = entry.getValue().lastSent;
+                aggregatedStats.put(getKey(userId, entry.getKey()), stats);
             }
         }
         return aggregatedStats;
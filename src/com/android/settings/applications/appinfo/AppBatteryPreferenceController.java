@@ -123,7 +123,7 @@ public class AppBatteryPreferenceController extends BasePreferenceController
             return false;
         }
 
-        if (mBatteryDiffEntry != null) {
+        if (mIsChartGraphEnabled && mBatteryDiffEntry != null) {
             Log.i(TAG, "handlePreferenceTreeClick():\n" + mBatteryDiffEntry);
             AdvancedPowerUsageDetail.startBatteryDetailPage(
                     mParent.getActivity(),
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import android.content.Context;
+import android.util.ArrayMap;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settingslib.applications.ApplicationsState;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+import com.android.settingslib.applications.ApplicationsState.AppFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Filters and sorts the app entries of an {@link ApplicationsState.Session}.
+ *
+ * The entries are snapshotted once until {@link #invalidate()} is called. For that snapshot the
+ * result of every filter is kept as a bit set and the order under every comparator as a
+ * permutation, so switching the filter or the sort order only intersects cached results instead
+ * of filtering and sorting all entries again.
+ */
+class AppListPipeline {
+
+    @VisibleForTesting
+    static final int MAX_CACHED_FILTERS = 16;
+
+    private final Context mContext;
+    private final ApplicationsState.Session mSession;
+    private final AtomicBoolean mInvalidated = new AtomicBoolean(true);
+
+    // Guarded by this.
+    private List<AppEntry> mEntries = Collections.emptyList();
+    private final Map<AppFilter, BitSet> mFilterResults = new ArrayMap<>();
+    private final Map<Comparator<AppEntry>, int[]> mSortedPositions = new ArrayMap<>();
+
+    AppListPipeline(Context context, ApplicationsState.Session session) {
+        mContext = context;
+        mSession = session;
+    }
+
+    /**
+     * Drops the cached results. The next {@link #build} takes a new snapshot of the entries.
+     * Must be called whenever the entries, or the state the filters and comparators read, change.
+     */
+    void invalidate() {
+        mInvalidated.set(true);
+    }
+
+    /**
+     * Returns the entries accepted by all of {@code filters}, sorted by {@code comparator}.
+     */
+    @WorkerThread
+    synchronized ArrayList<AppEntry> build(List<AppFilter> filters,
+            Comparator<AppEntry> comparator) {
+        if (mInvalidated.getAndSet(false)) {
+            final List<AppEntry> entries = mSession.getAllApps();
+            mEntries = entries != null ? entries : Collections.emptyList();
+            mFilterResults.clear();
+            mSortedPositions.clear();
+        }
+        final int size = mEntries.size();
+        final BitSet matched = new BitSet(size);
+        matched.set(0, size);
+        for (AppFilter filter : filters) {
+            matched.and(getFilterResult(filter));
+        }
+
+        final ArrayList<AppEntry> result = new ArrayList<>(matched.cardinality());
+        for (int position : getSortedPositions(comparator)) {
+            if (matched.get(position)) {
+                result.add(mEntries.get(position));
+            }
+        }
+        return result;
+    }
+
+    private BitSet getFilterResult(AppFilter filter) {
+        BitSet filterResult = mFilterResults.get(filter);
+        if (filterResult != null) {
+            return filterResult;
+        }
+        if (mFilterResults.size() >= MAX_CACHED_FILTERS) {
+            // Composite filters are recreated on every change, don't let them pile up.
+            mFilterResults.clear();
+        }
+        filter.init(mContext);
+        final int size = mEntries.size();
+        filterResult = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            if (filter.filterApp(mEntries.get(i))) {
+                filterResult.set(i);
+            }
+        }
+        mFilterResults.put(filter, filterResult);
+        return filterResult;
+    }
+
+    private int[] getSortedPositions(Comparator<AppEntry> comparator) {
+        int[] sortedPositions = mSortedPositions.get(comparator);
+        if (sortedPositions != null) {
+            return sortedPositions;
+        }
+        final int size = mEntries.size();
+        final Integer[] positions = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            final AppEntry entry = mEntries.get(i);
+            synchronized (entry) {
+                entry.ensureLabel(mContext);
+            }
+            positions[i] = i;
+        }
+        // Stable sort, so entries comparing equal keep the order of the session.
+        Arrays.sort(positions,
+                (position1, position2) -> comparator.compare(
+                        mEntries.get(position1), mEntries.get(position2)));
+        sortedPositions = new int[size];
+        for (int i = 0; i < size; i++) {
+            sortedPositions[i] = positions[i];
+        }
+        mSortedPositions.put(comparator, sortedPositions);
+        return sortedPositions;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import android.text.TextUtils;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Search index of the app labels and package names of a list of {@link AppEntry}.
+ *
+ * Labels are lowercased in the given locale and accent-folded once when the index is built, and
+ * every trigram of them is mapped to the entries containing it. A query is matched as a substring
+ * of the label or the package name. When a query extends the previous one, only the previous
+ * results are checked again.
+ */
+class AppSearchIndex {
+
+    @VisibleForTesting
+    static final int GRAM_SIZE = 3;
+    private static final int[] EMPTY = new int[0];
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    private final List<AppEntry> mEntries;
+    private final Locale mLocale;
+    private final String[] mLabels;
+    private final String[] mPackageNames;
+    private final Map<String, int[]> mGramIndex;
+
+    // Refined by each search, guarded by this.
+    private String mLastQuery;
+    private int[] mLastResult;
+
+    AppSearchIndex(List<AppEntry> entries, Locale locale) {
+        mEntries = entries;
+        mLocale = locale;
+        final int size = entries.size();
+        mLabels = new String[size];
+        mPackageNames = new String[size];
+        final Map<String, IntList> gramIndex = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            final AppEntry entry = entries.get(i);
+            mLabels[i] = normalize(entry.label, locale);
+            mPackageNames[i] = entry.info != null && entry.info.packageName != null
+                    ? entry.info.packageName.toLowerCase(Locale.ROOT) : "";
+            addGrams(gramIndex, mLabels[i], i);
+            addGrams(gramIndex, mPackageNames[i], i);
+        }
+        mGramIndex = new HashMap<>(gramIndex.size() * 4 / 3 + 1);
+        for (Map.Entry<String, IntList> gram : gramIndex.entrySet()) {
+            mGramIndex.put(gram.getKey(), gram.getValue().toArray());
+        }
+    }
+
+    /** Whether this index is built for {@code entries}. */
+    boolean isIndexOf(List<AppEntry> entries, Locale locale) {
+        return mEntries == entries && mLocale.equals(locale);
+    }
+
+    /** Returns the entries matching {@code query}, in the order of the indexed list. */
+    synchronized ArrayList<AppEntry> search(CharSequence query) {
+        final String normalizedQuery = normalize(query, mLocale);
+        final int[] candidates;
+        if (mLastQuery != null && normalizedQuery.contains(mLastQuery)) {
+            // Everything matching the longer query matches the previous one as well.
+            candidates = mLastResult;
+        } else {
+            candidates = getCandidates(normalizedQuery);
+        }
+
+        final int candidateCount = candidates != null ? candidates.length : mEntries.size();
+        final int[] matched = new int[candidateCount];
+        int matchedCount = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            final int index = candidates != null ? candidates[i] : i;
+            if (mLabels[index].contains(normalizedQuery)
+                    || mPackageNames[index].contains(normalizedQuery)) {
+                matched[matchedCount++] = index;
+            }
+        }
+        mLastQuery = normalizedQuery;
+        mLastResult = Arrays.copyOf(matched, matchedCount);
+
+        final ArrayList<AppEntry> result = new ArrayList<>(matchedCount);
+        for (int i = 0; i < matchedCount; i++) {
+            result.add(mEntries.get(matched[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sorted indices of entries containing all trigrams of the query, or {@code null}
+     * if the query is too short to use the index.
+     */
+    private int[] getCandidates(String normalizedQuery) {
+        if (normalizedQuery.length() < GRAM_SIZE) {
+            return null;
+        }
+        int[] candidates = null;
+        for (int i = 0; i + GRAM_SIZE <= normalizedQuery.length(); i++) {
+            final int[] postings = mGramIndex.get(normalizedQuery.substring(i, i + GRAM_SIZE));
+            if (postings == null) {
+                return EMPTY;
+            }
+            candidates = candidates == null ? postings : intersect(candidates, postings);
+            if (candidates.length == 0) {
+                return EMPTY;
+            }
+        }
+        return candidates;
+    }
+
+    @VisibleForTesting
+    static String normalize(CharSequence text, Locale locale) {
+        if (TextUtils.isEmpty(text)) {
+            return "";
+        }
+        final String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(locale);
+    }
+
+    private static void addGrams(Map<String, IntList> gramIndex, String text, int index) {
+        for (int i = 0; i + GRAM_SIZE <= text.length(); i++) {
+            final String gram = text.substring(i, i + GRAM_SIZE);
+            IntList postings = gramIndex.get(gram);
+            if (postings == null) {
+                postings = new IntList();
+                gramIndex.put(gram, postings);
+            }
+            postings.addIfNotLast(index);
+        }
+    }
+
+    private static int[] intersect(int[] sorted1, int[] sorted2) {
+        final int[] result = new int[Math.min(sorted1.length, sorted2.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < sorted1.length && j < sorted2.length) {
+            if (sorted1[i] < sorted2[j]) {
+                i++;
+            } else if (sorted1[i] > sorted2[j]) {
+                j++;
+            } else {
+                result[count++] = sorted1[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /** Growable list of ascending ints. */
+    private static class IntList {
+        private int[] mValues = new int[4];
+        private int mSize;
+
+        void addIfNotLast(int value) {
+            if (mSize > 0 && mValues[mSize - 1] == value) {
+                return;
+            }
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(mValues, mSize);
+        }
+    }
+}
@@ -76,6 +76,7 @@ import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
 import androidx.core.view.ViewCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -144,6 +145,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 
 /**
@@ -1060,6 +1063,7 @@ public class ManageApplications extends InstrumentedFragment
         private final AppStateBaseBridge mExtraInfoBridge;
         private final LoadingViewController mLoadingViewController;
         private final IconDrawableFactory mIconDrawableFactory;
+        private final AppListPipeline mPipeline;
 
         private AppFilterItem mAppFilter;
         private ArrayList<ApplicationsState.AppEntry> mEntries;
@@ -1071,7 +1075,13 @@ public class ManageApplications extends InstrumentedFragment
         private boolean mHasReceivedLoadEntries;
         private boolean mHasReceivedBridgeCallback;
         private SearchFilter mSearchFilter;
+        // Built along with the entries, or by the search filter if they were set otherwise.
+        private volatile AppSearchIndex mSearchIndex;
         private PowerAllowlistBackend mBackend;
+        // Sequence number of the latest rebuild, older results are dropped.
+        private int mRebuildSequence;
+        // Whether the entries changed since the list was last shown, not only the filter or sort.
+        private boolean mEntriesChanged = true;
 
         // This is to remember and restore the last scroll position when this
         // fragment is paused. We need this special handling because app entries are added gradually
@@ -1096,6 +1106,7 @@ public class ManageApplications extends InstrumentedFragment
             );
             mContext = manageApplications.getActivity();
             mIconDrawableFactory = IconDrawableFactory.newInstance(mContext);
+            mPipeline = new AppListPipeline(mContext, mSession);
             mAppFilter = appFilter;
             mBackend = PowerAllowlistBackend.getInstance(mContext);
             if (mManageApplications.mListType == LIST_TYPE_NOTIFICATION) {
@@ -1181,7 +1192,8 @@ public class ManageApplications extends InstrumentedFragment
                 if (mExtraInfoBridge != null) {
                     mExtraInfoBridge.resume(false /* forceLoadAllApps */);
                 }
-                rebuild();
+                // Apps may have changed while paused.
+                rebuildWithChangedEntries();
             } else {
                 rebuild(sort, false);
             }
@@ -1215,6 +1227,10 @@ public class ManageApplications extends InstrumentedFragment
             if (sort == mLastSortMode && !force) {
                 return;
             }
+            if (sort != mLastSortMode) {
+                // The items show a different summary for each sort order, so rebind them all.
+                mEntriesChanged = true;
+            }
             mManageApplications.mSortOrder = sort;
             mLastSortMode = sort;
             rebuild();
@@ -1255,7 +1271,8 @@ public class ManageApplications extends InstrumentedFragment
                 }
                 return;
             }
-            ApplicationsState.AppFilter filterObj;
+            // The filters are intersected by the pipeline, which caches the result of each one.
+            final List<AppFilter> filters = new ArrayList<>();
             Comparator<AppEntry> comparatorObj;
             boolean emulated = Environment.isExternalStorageEmulated();
             if (emulated) {
@@ -1263,19 +1280,20 @@ public class ManageApplications extends InstrumentedFragment
             } else {
                 mWhichSize = SIZE_INTERNAL;
             }
-            filterObj = mAppFilter.getFilter();
+            if (mAppFilter.getFilter() != null) {
+                filters.add(mAppFilter.getFilter());
+            }
             if (mCompositeFilter != null) {
-                filterObj = new CompoundFilter(filterObj, mCompositeFilter);
+                filters.add(mCompositeFilter);
             }
             if (!mManageApplications.mShowSystem) {
                 if (LIST_TYPES_WITH_INSTANT.contains(mManageApplications.mListType)) {
-                    filterObj = new CompoundFilter(filterObj,
-                            ApplicationsState.FILTER_DOWNLOADED_AND_LAUNCHER_AND_INSTANT);
+                    filters.add(ApplicationsState.FILTER_DOWNLOADED_AND_LAUNCHER_AND_INSTANT);
                 } else {
-                    filterObj = new CompoundFilter(filterObj,
-                            ApplicationsState.FILTER_DOWNLOADED_AND_LAUNCHER);
+                    filters.add(ApplicationsState.FILTER_DOWNLOADED_AND_LAUNCHER);
                 }
             }
+            filters.add(ApplicationsState.FILTER_NOT_HIDE);
             if (mLastSortMode == R.id.sort_order_size) {
                 switch (mWhichSize) {
                     case SIZE_INTERNAL:
@@ -1296,13 +1314,57 @@ public class ManageApplications extends InstrumentedFragment
                 comparatorObj = ApplicationsState.ALPHA_COMPARATOR;
             }
 
-            final AppFilter finalFilterObj = new CompoundFilter(filterObj,
-                    ApplicationsState.FILTER_NOT_HIDE);
+            final int filterType = mAppFilter.getFilterType();
+            final Locale locale = mContext.getResources().getConfiguration().getLocales().get(0);
+            final int sequence = ++mRebuildSequence;
             ThreadUtils.postOnBackgroundThread(() -> {
-                mSession.rebuild(finalFilterObj, comparatorObj, false);
+                ArrayList<AppEntry> entries = mPipeline.build(filters, comparatorObj);
+                if (isPowerAllowlistFilter(filterType)) {
+                    entries = removeDuplicateIgnoringUser(entries);
+                }
+                // Index the entries here, rather than on the main thread once the user searches.
+                final ArrayList<AppEntry> rebuiltEntries = entries;
+                final AppSearchIndex searchIndex = new AppSearchIndex(rebuiltEntries, locale);
+                ThreadUtils.postOnMainThread(() -> {
+                    if (mResumed && sequence == mRebuildSequence) {
+                        onEntriesRebuilt(rebuiltEntries, searchIndex);
+                    }
+                });
             });
         }
 
+        /**
+         * Rebuilds the list after the app entries or their extra info changed, rather than only
+         * the filter or the sort order.
+         */
+        private void rebuildWithChangedEntries() {
+            invalidateEntries();
+            rebuild();
+        }
+
+        /** Drops the cached filter and sort results, without rebuilding the list yet. */
+        private void invalidateEntries() {
+            mPipeline.invalidate();
+            mEntriesChanged = true;
+        }
+
+        /**
+         * Shows {@code entries}, notifying only the items that moved, were added or were removed
+         * when possible. Items are rebound as well if {@code contentsChanged}.
+         */
+        private void setEntries(ArrayList<AppEntry> entries, boolean contentsChanged) {
+            final ArrayList<AppEntry> oldEntries = mEntries;
+            mEntries = entries;
+            if (oldEntries == null || entries == null
+                    || mManageApplications.mListType == LIST_TYPE_APPS_LOCALE) {
+                // The header of the locale list shifts the positions of the entries.
+                notifyDataSetChanged();
+                return;
+            }
+            DiffUtil.calculateDiff(new AppEntryDiffCallback(oldEntries, entries, contentsChanged))
+                    .dispatchUpdatesTo(this);
+        }
+
         @VisibleForTesting
         void filterSearch(String query) {
             if (mSearchFilter == null) {
@@ -1346,8 +1408,24 @@ public class ManageApplications extends InstrumentedFragment
             return returnEntries;
         }
 
+        private static boolean isPowerAllowlistFilter(int filterType) {
+            return filterType == FILTER_APPS_POWER_ALLOWLIST
+                    || filterType == FILTER_APPS_POWER_ALLOWLIST_ALL;
+        }
+
         @Override
         public void onRebuildComplete(ArrayList<AppEntry> entries) {
+            if (isPowerAllowlistFilter(mAppFilter.getFilterType())) {
+                entries = removeDuplicateIgnoringUser(entries);
+            }
+            onEntriesRebuilt(entries, null /* searchIndex */);
+        }
+
+        /**
+         * Shows the rebuilt {@code entries}. The {@code searchIndex} of the entries is built by
+         * the first search if {@code null}.
+         */
+        private void onEntriesRebuilt(ArrayList<AppEntry> entries, AppSearchIndex searchIndex) {
             if (DEBUG) {
                 Log.d(TAG, "onRebuildComplete size=" + entries.size());
             }
@@ -1356,14 +1434,10 @@ public class ManageApplications extends InstrumentedFragment
             AppUtils.preloadTopIcons(mContext, entries,
                     mContext.getResources().getInteger(R.integer.config_num_visible_app_icons));
 
-            final int filterType = mAppFilter.getFilterType();
-            if (filterType == FILTER_APPS_POWER_ALLOWLIST
-                    || filterType == FILTER_APPS_POWER_ALLOWLIST_ALL) {
-                entries = removeDuplicateIgnoringUser(entries);
-            }
-            mEntries = entries;
             mOriginalEntries = entries;
-            notifyDataSetChanged();
+            mSearchIndex = searchIndex;
+            setEntries(entries, mEntriesChanged);
+            mEntriesChanged = false;
             if (getItemCount() == 0) {
                 mLoadingViewController.showEmpty(false /* animate */);
             } else {
@@ -1406,7 +1480,7 @@ public class ManageApplications extends InstrumentedFragment
         @Override
         public void onExtraInfoUpdated() {
             mHasReceivedBridgeCallback = true;
-            rebuild();
+            rebuildWithChangedEntries();
         }
 
         @Override
@@ -1416,7 +1490,7 @@ public class ManageApplications extends InstrumentedFragment
 
         @Override
         public void onPackageListChanged() {
-            rebuild();
+            rebuildWithChangedEntries();
         }
 
         @Override
@@ -1429,7 +1503,7 @@ public class ManageApplications extends InstrumentedFragment
         public void onLoadEntriesCompleted() {
             mHasReceivedLoadEntries = true;
             // We may have been skipping rebuilds until this came in, trigger one now.
-            rebuild();
+            rebuildWithChangedEntries();
         }
 
         @Override
@@ -1437,6 +1511,8 @@ public class ManageApplications extends InstrumentedFragment
             if (mEntries == null) {
                 return;
             }
+            // The cached size order is stale now.
+            invalidateEntries();
             final int size = mEntries.size();
             for (int i = 0; i < size; i++) {
                 final AppEntry entry = mEntries.get(i);
@@ -1449,7 +1525,7 @@ public class ManageApplications extends InstrumentedFragment
                     // user viewed, and are sorting by size...  they may
                     // have cleared data, so we immediately want to resort
                     // the list with the new size to reflect it to the user.
-                    rebuild();
+                    rebuildWithChangedEntries();
                     return;
                 } else {
                     mOnScrollListener.postNotifyItemChange(i);
@@ -1459,6 +1535,7 @@ public class ManageApplications extends InstrumentedFragment
 
         @Override
         public void onLauncherInfoChanged() {
+            invalidateEntries();
             if (!mManageApplications.mShowSystem) {
                 rebuild();
             }
@@ -1466,6 +1543,7 @@ public class ManageApplications extends InstrumentedFragment
 
         @Override
         public void onAllSizesComputed() {
+            invalidateEntries();
             if (mLastSortMode == R.id.sort_order_size) {
                 rebuild();
             }
@@ -1690,22 +1768,26 @@ public class ManageApplications extends InstrumentedFragment
 
         /**
          * An array filter that constrains the content of the array adapter with a substring.
-         * Item that does not contains the specified substring will be removed from the list.</p>
+         * Item whose label or package name does not contain the specified substring will be
+         * removed from the list. Matching is looked up in the {@link AppSearchIndex}.</p>
          */
         private class SearchFilter extends Filter {
             @WorkerThread
             @Override
             protected FilterResults performFiltering(CharSequence query) {
                 final ArrayList<ApplicationsState.AppEntry> matchedEntries;
+                final ArrayList<ApplicationsState.AppEntry> originalEntries = mOriginalEntries;
                 if (TextUtils.isEmpty(query)) {
-                    matchedEntries = mOriginalEntries;
+                    matchedEntries = originalEntries;
                 } else {
-                    matchedEntries = new ArrayList<>();
-                    for (ApplicationsState.AppEntry entry : mOriginalEntries) {
-                        if (entry.label.toLowerCase().contains(query.toString().toLowerCase())) {
-                            matchedEntries.add(entry);
-                        }
+                    final Locale locale =
+                            mContext.getResources().getConfiguration().getLocales().get(0);
+                    AppSearchIndex searchIndex = mSearchIndex;
+                    if (searchIndex == null || !searchIndex.isIndexOf(originalEntries, locale)) {
+                        searchIndex = new AppSearchIndex(originalEntries, locale);
+                        mSearchIndex = searchIndex;
                     }
+                    matchedEntries = searchIndex.search(query);
                 }
                 final FilterResults results = new FilterResults();
                 results.values = matchedEntries;
@@ -1715,8 +1797,47 @@ public class ManageApplications extends InstrumentedFragment
 
             @Override
             protected void publishResults(CharSequence constraint, FilterResults results) {
-                mEntries = (ArrayList<ApplicationsState.AppEntry>) results.values;
-                notifyDataSetChanged();
+                setEntries((ArrayList<ApplicationsState.AppEntry>) results.values,
+                        false /* contentsChanged */);
+            }
+        }
+
+        /**
+         * Calculates the difference between two lists of {@link AppEntry}. Entries are the same
+         * item if they have the same id.
+         */
+        private static class AppEntryDiffCallback extends DiffUtil.Callback {
+            private final List<AppEntry> mOldEntries;
+            private final List<AppEntry> mNewEntries;
+            private final boolean mContentsChanged;
+
+            AppEntryDiffCallback(List<AppEntry> oldEntries, List<AppEntry> newEntries,
+                    boolean contentsChanged) {
+                mOldEntries = oldEntries;
+                mNewEntries = newEntries;
+                mContentsChanged = contentsChanged;
+            }
+
+            @Override
+            public int getOldListSize() {
+                return mOldEntries.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return mNewEntries.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return mOldEntries.get(oldItemPosition).id == mNewEntries.get(newItemPosition).id;
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                // Entries are updated in place, so their contents can't be compared.
+                return !mContentsChanged
+                        && mOldEntries.get(oldItemPosition) == mNewEntries.get(newItemPosition);
             }
         }
     }
@@ -19,6 +19,9 @@ import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.content.Context;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArraySet;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
@@ -65,6 +68,15 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
 
     private GroupUtils mGroupUtils;
 
+    // Devices changed since the last update pass, and whether the pass should update all the
+    // devices instead. Only accessed on the main thread.
+    private ArraySet<CachedBluetoothDevice> mDirtyDevices = new ArraySet<>();
+    private ArraySet<CachedBluetoothDevice> mUpdatingDevices = new ArraySet<>();
+    private boolean mFullUpdatePending;
+    private boolean mUpdateScheduled;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mUpdateRunnable = this::runPendingUpdates;
+
     @VisibleForTesting
     public final GearPreference.OnGearClickListener mDeviceProfilesListener = pref -> {
         launchDeviceDetails(pref);
@@ -111,6 +123,7 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
         mLocalManager.setForegroundActivity(null);
         mLocalManager.getEventManager().unregisterCallback(this);
         mLocalManager.getProfileManager().removeServiceListener(this);
+        cancelPendingUpdates();
     }
 
     /**
@@ -147,15 +160,16 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
     @Override
     public void onBluetoothStateChanged(int bluetoothState) {
         if (BluetoothAdapter.STATE_ON == bluetoothState) {
-            forceUpdate();
+            scheduleFullUpdate();
         } else if (BluetoothAdapter.STATE_OFF == bluetoothState) {
+            cancelPendingUpdates();
             removeAllDevicesFromPreference();
         }
     }
 
     @Override
     public void onDeviceAdded(CachedBluetoothDevice cachedDevice) {
-        update(cachedDevice);
+        scheduleUpdate(cachedDevice);
     }
 
     @Override
@@ -163,12 +177,13 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
         // Used to combine the hearing aid entries just after pairing. Once both the hearing aids
         // get connected and their hiSyncId gets populated, this gets called for one of the
         // 2 hearing aids so that only one entry in the connected devices list will be seen.
+        mDirtyDevices.remove(cachedDevice);
         removePreference(cachedDevice);
     }
 
     @Override
     public void onDeviceBondStateChanged(CachedBluetoothDevice cachedDevice, int bondState) {
-        update(cachedDevice);
+        scheduleUpdate(cachedDevice);
     }
 
     @Override
@@ -178,7 +193,7 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
             Log.d(TAG, "onProfileConnectionStateChanged() device: " + cachedDevice.getName()
                     + ", state: " + state + ", bluetoothProfile: " + bluetoothProfile);
         }
-        update(cachedDevice);
+        scheduleUpdate(cachedDevice);
     }
 
     @Override
@@ -187,7 +202,7 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
             Log.d(TAG, "onAclConnectionStateChanged() device: " + cachedDevice.getName()
                     + ", state: " + state);
         }
-        update(cachedDevice);
+        scheduleUpdate(cachedDevice);
     }
 
     @Override
@@ -197,13 +212,13 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
             Log.d(TAG, " NewGroupFound device: " + cachedDevice
                     + ", groupId: " + groupId);
         }
-        update(cachedDevice);
+        scheduleUpdate(cachedDevice);
     }
 
     @Override
     public void onServiceConnected() {
         // When bluetooth service connected update the UI
-        forceUpdate();
+        scheduleFullUpdate();
     }
 
     @Override
@@ -229,6 +244,68 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
      */
     protected abstract String getPreferenceKey();
 
+    /**
+     * Mark {@code cachedDevice} as changed. All the devices changed until the next update pass
+     * are updated together, so bursts of callbacks for the same devices only update them once.
+     */
+    protected void scheduleUpdate(CachedBluetoothDevice cachedDevice) {
+        if (!mFullUpdatePending) {
+            mDirtyDevices.add(cachedDevice);
+        }
+        postPendingUpdates();
+    }
+
+    /**
+     * Run {@link #forceUpdate()} in the next update pass, replacing the pending device updates.
+     */
+    protected void scheduleFullUpdate() {
+        mFullUpdatePending = true;
+        mDirtyDevices.clear();
+        postPendingUpdates();
+    }
+
+    /**
+     * Run the pending update pass now instead of waiting for it.
+     */
+    @VisibleForTesting
+    void flushPendingUpdates() {
+        if (mUpdateScheduled) {
+            mHandler.removeCallbacks(mUpdateRunnable);
+            runPendingUpdates();
+        }
+    }
+
+    private void postPendingUpdates() {
+        if (!mUpdateScheduled) {
+            mUpdateScheduled = true;
+            mHandler.post(mUpdateRunnable);
+        }
+    }
+
+    private void cancelPendingUpdates() {
+        mHandler.removeCallbacks(mUpdateRunnable);
+        mUpdateScheduled = false;
+        mFullUpdatePending = false;
+        mDirtyDevices.clear();
+    }
+
+    private void runPendingUpdates() {
+        mUpdateScheduled = false;
+        if (mFullUpdatePending) {
+            mFullUpdatePending = false;
+            forceUpdate();
+            return;
+        }
+        // Swap the sets, updates may schedule new ones for the next pass.
+        final ArraySet<CachedBluetoothDevice> devices = mDirtyDevices;
+        mDirtyDevices = mUpdatingDevices;
+        mUpdatingDevices = devices;
+        for (int i = 0, size = devices.size(); i < size; i++) {
+            update(devices.valueAt(i));
+        }
+        devices.clear();
+    }
+
     /**
      * Update whether to show {@link CachedBluetoothDevice} in the list.
      */
@@ -58,6 +58,7 @@ import android.content.Context;
 import android.os.SystemProperties;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
 import android.os.Bundle;
 
 /**
@@ -85,6 +86,9 @@ public class GroupUtils {
     private  LocalBluetoothProfile mBCProfile = null;
     private static final String KEY_DEVICE_ADDRESS = "device_address";
     private static final String KEY_GROUP_OP = "group_op";
+    // Categories of listed groups by group id, so adding or removing a member doesn't
+    // have to look for its group in the category list.
+    private final SparseArray<GroupPreferenceCategory> mGroupCategories = new SparseArray<>();
     /*
      * Returns whether if the device is group device.
      */
@@ -165,29 +169,6 @@ public class GroupUtils {
         return groupId;
     }
 
-    private boolean isNewGroup(int id, ArrayList< GroupPreferenceCategory> groupList) {
-        boolean isNew = true;
-        for (int i = 0; i< groupList.size() - 1; i++) {
-            GroupPreferenceCategory tempGroup = groupList.get(i);
-            if (tempGroup == null) {
-                loge("isNewGroup  tempGroup null");
-                return false;
-            }
-            int val = tempGroup.getGroupId();
-            if (D) {
-                Log.d(TAG, "isNewGroup val " + val + " key " + tempGroup.getKey());
-            }
-            if (id == val) {
-                isNew = false;
-                break;
-            }
-          }
-          if (D) {
-              Log.d(TAG, "isNewGroup id  " + id + "  val " + isNew);
-          }
-          return isNew;
-    }
-
     private boolean isAllFilled(int id, ArrayList< GroupPreferenceCategory> groupList) {
         boolean filled = true;
         for (int i = 0; i< groupList.size() - 1; i++) {
@@ -219,18 +200,31 @@ public class GroupUtils {
         return group;
     }
 
+    /*
+     * Get the category currently holding the group, from the index if it is still
+     * assigned to the group, otherwise by looking it up in the list.
+     */
     private GroupPreferenceCategory getExistingGroup(ArrayList< GroupPreferenceCategory> mGroupList,
-            Preference preference) {
-        GroupPreferenceCategory group = null;
-        int groupId = getGroupId(preference);
+            int groupId) {
+        GroupPreferenceCategory group = mGroupCategories.get(groupId);
+        if (group != null && group.getGroupId() == groupId) {
+            return group;
+        }
+        mGroupCategories.remove(groupId);
         for (GroupPreferenceCategory tempGroup : mGroupList) {
+            if (tempGroup == null) {
+                loge("getExistingGroup tempGroup null");
+                continue;
+            }
             int val = tempGroup.getGroupId();
             if (groupId == val) {
-                group = tempGroup;
-                break;
+                if (groupId != INVALID_GROUPID) {
+                    mGroupCategories.put(groupId, tempGroup);
+                }
+                return tempGroup;
             }
         }
-        return group;
+        return null;
     }
 
     private GroupBluetoothSettingsPreference getHedaer(int groupId,
@@ -258,12 +252,11 @@ public class GroupUtils {
             loge("addPreference groupId is not valid "+ groupId);
             return;
         }
-        boolean isNewGroup = isNewGroup(groupId, listCategories);
+        GroupPreferenceCategory group = getExistingGroup(listCategories, groupId);
+        boolean isNewGroup = group == null;
         if (D) {
             Log.d(TAG, "addPreference  " + preference + " isNewGroup " + isNewGroup);
         }
-        String key ;
-        GroupPreferenceCategory group = null;
         if (isNewGroup) {
             GroupBluetoothSettingsPreference header = getHedaer(groupId, listener);
             group = getParentGroup(listCategories, preference);
@@ -273,15 +266,11 @@ public class GroupUtils {
                 return;
             }
             group.setGroupId(groupId);
+            mGroupCategories.put(groupId, group);
             group.addPreference(header);
             group.addPreference(preference);
             group.setVisible(true);
         } else {
-            group = getExistingGroup(listCategories, preference);
-            if (group == null) {
-                loge("getExistingGroup not found for groupId " + groupId);
-                return;
-            }
             group.addPreference(preference);
         }
         if (D) {
@@ -297,7 +286,8 @@ public class GroupUtils {
      */
     public void removePreference(ArrayList< GroupPreferenceCategory> listCategories,
             Preference preference) {
-        GroupPreferenceCategory group = getExistingGroup(listCategories, preference);
+        int groupId = getGroupId(preference);
+        GroupPreferenceCategory group = getExistingGroup(listCategories, groupId);
         if (group == null) {
             loge("removePreference group null ");
             removePreference(listCategories.get(listCategories.size()-1), preference);
@@ -305,6 +295,7 @@ public class GroupUtils {
         }
         group.removePreference(preference);
         if (group.getPreferenceCount() == 1) {
+            mGroupCategories.remove(groupId);
             group.setGroupId(INVALID_GROUPID);
             group.removeAll();
             group.setVisible(false);
@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_APPEND;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_FOR_WORK;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_HIGHLIGHTABLE_MENU_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_ICON;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEYWORDS;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_PREF_TYPE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SEARCHABLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SUMMARY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_UNAVAILABLE_SLICE_SUBTITLE;
+
+import android.annotation.XmlRes;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistent cache of the metadata extracted by
+ * {@link PreferenceXmlParserUtils#extractMetadata(Context, int, int)}.
+ *
+ * Every preference xml is parsed once per configuration with all metadata, and stored as one
+ * flat record per preference in an append-only file which is memory-mapped on first use. Callers
+ * only get the metadata they asked for through their flags. The file is discarded whenever the
+ * build, the package version or the configuration changes.
+ *
+ * The file is only read and written on a background executor. Until it has been read, callers
+ * parse the xml themselves rather than waiting for it.
+ */
+class PreferenceXmlMetadataCache {
+
+    private static final String TAG = "PrefXmlMetadataCache";
+
+    @VisibleForTesting
+    static final String CACHE_FILE_NAME = "preference_xml_metadata.bin";
+
+    private static final int MAGIC = 0x50584d43; // "PXMC"
+    private static final int FORMAT_VERSION = 1;
+
+    /** Flags which change the set of parsed preferences, and hence are part of the cache key. */
+    private static final int PARSE_FLAGS = MetadataFlag.FLAG_INCLUDE_PREF_SCREEN;
+
+    /** Flags covering every piece of metadata stored in a record. */
+    private static final int ALL_METADATA_FLAGS = MetadataFlag.FLAG_NEED_KEY
+            | MetadataFlag.FLAG_NEED_PREF_TYPE
+            | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
+            | MetadataFlag.FLAG_NEED_PREF_TITLE
+            | MetadataFlag.FLAG_NEED_PREF_SUMMARY
+            | MetadataFlag.FLAG_NEED_PREF_ICON
+            | MetadataFlag.FLAG_NEED_KEYWORDS
+            | MetadataFlag.FLAG_NEED_SEARCHABLE
+            | MetadataFlag.FLAG_NEED_PREF_APPEND
+            | MetadataFlag.FLAG_UNAVAILABLE_SLICE_SUBTITLE
+            | MetadataFlag.FLAG_FOR_WORK
+            | MetadataFlag.FLAG_NEED_HIGHLIGHTABLE_MENU_KEY;
+
+    private static final int BOOLEAN_SEARCHABLE = 1;
+    private static final int BOOLEAN_APPEND = 1 << 1;
+    private static final int BOOLEAN_FOR_WORK = 1 << 2;
+
+    /** Runs all the file operations, in order. */
+    private static final Executor sFileExecutor = Executors.newSingleThreadExecutor();
+
+    private static PreferenceXmlMetadataCache sInstance;
+    private static String sPackageIdentity;
+
+    private final File mFile;
+    private final String mIdentity;
+    private final Executor mExecutor;
+    private final Map<Long, List<Bundle>> mEntries = new HashMap<>();
+    private final AtomicBoolean mLoadScheduled = new AtomicBoolean();
+    private volatile boolean mLoaded;
+    private volatile boolean mReplaced;
+
+    static synchronized PreferenceXmlMetadataCache getInstance(Context context) {
+        final String identity = getIdentity(context);
+        if (sInstance == null || !sInstance.mIdentity.equals(identity)) {
+            if (sInstance != null) {
+                // Stop writing entries of the previous configuration to the shared file.
+                sInstance.mReplaced = true;
+            }
+            sInstance = new PreferenceXmlMetadataCache(
+                    new File(context.getCacheDir(), CACHE_FILE_NAME), identity, sFileExecutor);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    static synchronized void clearInstance() {
+        sInstance = null;
+    }
+
+    @VisibleForTesting
+    PreferenceXmlMetadataCache(File file, String identity, Executor executor) {
+        mFile = file;
+        mIdentity = identity;
+        mExecutor = executor;
+    }
+
+    /**
+     * Returns the metadata of {@code xmlResId} for {@code flags}, parsing the xml only if it is
+     * not in the cache yet.
+     */
+    List<Bundle> getMetadata(Context context, @XmlRes int xmlResId, int flags)
+            throws IOException, XmlPullParserException {
+        final int parseFlags = flags & PARSE_FLAGS;
+        final long entryKey = getEntryKey(xmlResId, parseFlags);
+        if (!mLoaded && mLoadScheduled.compareAndSet(false, true)) {
+            mExecutor.execute(this::load);
+        }
+        if (!mLoaded) {
+            // Don't wait for the file, it may take longer to read than parsing the xml.
+            return PreferenceXmlParserUtils.parseMetadata(context, xmlResId, flags);
+        }
+
+        List<Bundle> records;
+        synchronized (this) {
+            records = mEntries.get(entryKey);
+        }
+        if (records == null) {
+            records = PreferenceXmlParserUtils.parseMetadata(context, xmlResId,
+                    parseFlags | ALL_METADATA_FLAGS);
+            final List<Bundle> newRecords = records;
+            synchronized (this) {
+                if (!mEntries.containsKey(entryKey)) {
+                    mEntries.put(entryKey, newRecords);
+                    mExecutor.execute(() -> append(xmlResId, parseFlags, newRecords));
+                }
+            }
+        }
+        return project(records, flags);
+    }
+
+    private static long getEntryKey(int xmlResId, int parseFlags) {
+        return ((long) xmlResId << 32) | (parseFlags & 0xffffffffL);
+    }
+
+    /** Copies the metadata requested by {@code flags} out of the full records. */
+    private static List<Bundle> project(List<Bundle> records, int flags) {
+        final List<Bundle> metadata = new ArrayList<>(records.size());
+        for (Bundle record : records) {
+            final Bundle bundle = new Bundle();
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_TYPE)) {
+                bundle.putString(METADATA_PREF_TYPE, record.getString(METADATA_PREF_TYPE));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_KEY)) {
+                bundle.putString(METADATA_KEY, record.getString(METADATA_KEY));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_CONTROLLER)) {
+                bundle.putString(METADATA_CONTROLLER, record.getString(METADATA_CONTROLLER));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_TITLE)) {
+                bundle.putString(METADATA_TITLE, record.getString(METADATA_TITLE));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_SUMMARY)) {
+                bundle.putString(METADATA_SUMMARY, record.getString(METADATA_SUMMARY));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_ICON)) {
+                bundle.putInt(METADATA_ICON, record.getInt(METADATA_ICON));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_KEYWORDS)) {
+                bundle.putString(METADATA_KEYWORDS, record.getString(METADATA_KEYWORDS));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_SEARCHABLE)) {
+                bundle.putBoolean(METADATA_SEARCHABLE, record.getBoolean(METADATA_SEARCHABLE));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_APPEND)
+                    && hasFlag(flags, MetadataFlag.FLAG_INCLUDE_PREF_SCREEN)) {
+                bundle.putBoolean(METADATA_APPEND, record.getBoolean(METADATA_APPEND));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_UNAVAILABLE_SLICE_SUBTITLE)) {
+                bundle.putString(METADATA_UNAVAILABLE_SLICE_SUBTITLE,
+                        record.getString(METADATA_UNAVAILABLE_SLICE_SUBTITLE));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_FOR_WORK)) {
+                bundle.putBoolean(METADATA_FOR_WORK, record.getBoolean(METADATA_FOR_WORK));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_HIGHLIGHTABLE_MENU_KEY)) {
+                bundle.putString(METADATA_HIGHLIGHTABLE_MENU_KEY,
+                        record.getString(METADATA_HIGHLIGHTABLE_MENU_KEY));
+            }
+            metadata.add(bundle);
+        }
+        return metadata;
+    }
+
+    private static boolean hasFlag(int flags, int flag) {
+        return (flags & flag) != 0;
+    }
+
+    /** Reads the cache file, then lets callers use and extend the cache. */
+    private void load() {
+        final Map<Long, List<Bundle>> entries = new HashMap<>();
+        readFile(entries);
+        synchronized (this) {
+            mEntries.putAll(entries);
+        }
+        mLoaded = true;
+    }
+
+    /**
+     * Maps the cache file and decodes its entries. A file written for another identity is
+     * discarded, and a partially written trailing entry is truncated.
+     */
+    private void readFile(Map<Long, List<Bundle>> entries) {
+        if (!mFile.exists()) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+             FileChannel channel = file.getChannel()) {
+            final ByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0 /* position */, channel.size());
+            int validLength = 0;
+            try {
+                if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+                        || !mIdentity.equals(readString(buffer))) {
+                    Log.d(TAG, "Discarding stale cache");
+                    channel.truncate(0);
+                    return;
+                }
+                validLength = buffer.position();
+                while (buffer.hasRemaining()) {
+                    final int length = buffer.getInt();
+                    final ByteBuffer entry = buffer.slice();
+                    entry.limit(length);
+                    readEntry(entry, entries);
+                    buffer.position(buffer.position() + length);
+                    validLength = buffer.position();
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                Log.w(TAG, "Truncating partially written cache at " + validLength);
+                channel.truncate(validLength);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read cache", e);
+            mFile.delete();
+        }
+    }
+
+    private static void readEntry(ByteBuffer entry, Map<Long, List<Bundle>> entries) {
+        final int xmlResId = entry.getInt();
+        final int parseFlags = entry.getInt();
+        final int count = entry.getInt();
+        final List<Bundle> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Bundle record = new Bundle();
+            record.putString(METADATA_PREF_TYPE, readString(entry));
+            record.putString(METADATA_KEY, readString(entry));
+            record.putString(METADATA_CONTROLLER, readString(entry));
+            record.putString(METADATA_TITLE, readString(entry));
+            record.putString(METADATA_SUMMARY, readString(entry));
+            record.putString(METADATA_KEYWORDS, readString(entry));
+            record.putString(METADATA_UNAVAILABLE_SLICE_SUBTITLE, readString(entry));
+            record.putString(METADATA_HIGHLIGHTABLE_MENU_KEY, readString(entry));
+            record.putInt(METADATA_ICON, entry.getInt());
+            final byte booleans = entry.get();
+            record.putBoolean(METADATA_SEARCHABLE, (booleans & BOOLEAN_SEARCHABLE) != 0);
+            record.putBoolean(METADATA_APPEND, (booleans & BOOLEAN_APPEND) != 0);
+            record.putBoolean(METADATA_FOR_WORK, (booleans & BOOLEAN_FOR_WORK) != 0);
+            records.add(record);
+        }
+        entries.put(getEntryKey(xmlResId, parseFlags), records);
+    }
+
+    private void append(int xmlResId, int parseFlags, List<Bundle> records) {
+        if (mReplaced) {
+            return;
+        }
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            if (mFile.length() == 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, mIdentity);
+            }
+
+            final ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+            final DataOutputStream entry = new DataOutputStream(entryBytes);
+            entry.writeInt(xmlResId);
+            entry.writeInt(parseFlags);
+            entry.writeInt(records.size());
+            for (Bundle record : records) {
+                writeString(entry, record.getString(METADATA_PREF_TYPE));
+                writeString(entry, record.getString(METADATA_KEY));
+                writeString(entry, record.getString(METADATA_CONTROLLER));
+                writeString(entry, record.getString(METADATA_TITLE));
+                writeString(entry, record.getString(METADATA_SUMMARY));
+                writeString(entry, record.getString(METADATA_KEYWORDS));
+                writeString(entry, record.getString(METADATA_UNAVAILABLE_SLICE_SUBTITLE));
+                writeString(entry, record.getString(METADATA_HIGHLIGHTABLE_MENU_KEY));
+                entry.writeInt(record.getInt(METADATA_ICON));
+                int booleans = 0;
+                if (record.getBoolean(METADATA_SEARCHABLE)) {
+                    booleans |= BOOLEAN_SEARCHABLE;
+                }
+                if (record.getBoolean(METADATA_APPEND)) {
+                    booleans |= BOOLEAN_APPEND;
+                }
+                if (record.getBoolean(METADATA_FOR_WORK)) {
+                    booleans |= BOOLEAN_FOR_WORK;
+                }
+                entry.writeByte(booleans);
+            }
+            entry.flush();
+            out.writeInt(entryBytes.size());
+            entryBytes.writeTo(out);
+            out.flush();
+
+            try (FileOutputStream fileOut = new FileOutputStream(mFile, true /* append */)) {
+                bytes.writeTo(fileOut);
+            }
+        } catch (IOException e) {
+            // The in-memory entry is still valid, the xml is parsed again in the next process.
+            Log.w(TAG, "Failed to write cache entry for " + xmlResId, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a string identifying everything the cached metadata depends on: the build, the
+     * package version and the parts of the configuration which select resources.
+     */
+    @VisibleForTesting
+    static synchronized String getIdentity(Context context) {
+        if (sPackageIdentity == null) {
+            // The package can't change without the process being restarted.
+            long versionCode = 0;
+            long lastUpdateTime = 0;
+            try {
+                final PackageInfo packageInfo = context.getPackageManager()
+                        .getPackageInfo(context.getPackageName(), 0 /* flags */);
+                versionCode = packageInfo.getLongVersionCode();
+                lastUpdateTime = packageInfo.lastUpdateTime;
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.w(TAG, "Package not found " + context.getPackageName());
+            }
+            sPackageIdentity = Build.FINGERPRINT + "|" + versionCode + "|" + lastUpdateTime;
+        }
+        final Configuration config = context.getResources().getConfiguration();
+        return sPackageIdentity
+                + "|" + config.getLocales().toLanguageTags()
+                + "|" + config.mcc + "|" + config.mnc
+                + "|" + config.densityDpi + "|" + config.uiMode
+                + "|" + config.screenLayout + "|" + config.smallestScreenWidthDp;
+    }
+}
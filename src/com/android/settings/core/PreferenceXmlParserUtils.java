@@ -171,7 +171,8 @@ public class PreferenceXmlParserUtils {
     }
 
     /**
-     * Extracts metadata from preference xml and put them into a {@link Bundle}.
+     * Extracts metadata from preference xml and put them into a {@link Bundle}. The xml is only
+     * parsed once per configuration, see {@link PreferenceXmlMetadataCache}.
      *
      * @param xmlResId xml res id of a preference screen
      * @param flags    Should be one or more of {@link MetadataFlag}.
@@ -179,11 +180,25 @@ public class PreferenceXmlParserUtils {
     @NonNull
     public static List<Bundle> extractMetadata(Context context, @XmlRes int xmlResId, int flags)
             throws IOException, XmlPullParserException {
-        final List<Bundle> metadata = new ArrayList<>();
         if (xmlResId <= 0) {
             Log.d(TAG, xmlResId + " is invalid.");
-            return metadata;
+            return new ArrayList<>();
         }
+        return PreferenceXmlMetadataCache.getInstance(context)
+                .getMetadata(context, xmlResId, flags);
+    }
+
+    /**
+     * Parses metadata from preference xml without going through the
+     * {@link PreferenceXmlMetadataCache}.
+     *
+     * @param xmlResId xml res id of a preference screen
+     * @param flags    Should be one or more of {@link MetadataFlag}.
+     */
+    @NonNull
+    static List<Bundle> parseMetadata(Context context, @XmlRes int xmlResId, int flags)
+            throws IOException, XmlPullParserException {
+        final List<Bundle> metadata = new ArrayList<>();
         final XmlResourceParser parser = context.getResources().getXml(xmlResId);
 
         int type;
@@ -20,6 +20,8 @@ import android.app.settings.SettingsEnums;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.Log;
@@ -47,6 +49,7 @@ import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.ProviderTile;
 import com.android.settingslib.drawer.Tile;
 import com.android.settingslib.search.Indexable;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -56,7 +59,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -68,9 +70,14 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     public static final String CATEGORY = "category";
     private static final String TAG = "DashboardFragment";
     private static final long TIMEOUT_MILLIS = 50L;
+    // Longer trace section names are rejected by Trace.beginSection().
+    private static final int MAX_TRACE_SECTION_LENGTH = 127;
 
     @VisibleForTesting
     final ArrayMap<String, List<DynamicDataObserver>> mDashboardTilePrefKeys = new ArrayMap<>();
+    /** Bind latency in milliseconds of each tile during the last refresh, keyed by tile key. */
+    @VisibleForTesting
+    final ArrayMap<String, Long> mTileBindLatencies = new ArrayMap<>();
     private final Map<Class, List<AbstractPreferenceController>> mPreferenceControllers =
             new ArrayMap<>();
     private final List<DynamicDataObserver> mRegisteredObservers = new ArrayList<>();
@@ -466,6 +473,9 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         // Install dashboard tiles and collect pending observers.
         final boolean forceRoundedIcons = shouldForceRoundedIcon();
         final List<DynamicDataObserver> pendingObservers = new ArrayList<>();
+        mTileBindLatencies.clear();
+        // The tiles are bound on the main thread since binding updates their preferences, only
+        // the wait for their dynamic data happens in the background.
         for (Tile tile : tiles) {
             final String key = mDashboardFeatureProvider.getDashboardKeyForTile(tile);
             if (TextUtils.isEmpty(key)) {
@@ -475,27 +485,38 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
             if (!displayTile(tile)) {
                 continue;
             }
-            final List<DynamicDataObserver> observers;
-            if (mDashboardTilePrefKeys.containsKey(key)) {
-                // Have the key already, will rebind.
-                final Preference preference = screen.findPreference(key);
-                observers = mDashboardFeatureProvider.bindPreferenceToTileAndGetObservers(
-                        getActivity(), this, forceRoundedIcons, preference, tile, key,
-                        mPlaceholderPreferenceController.getOrder());
-            } else {
-                // Don't have this key, add it.
-                final Preference pref = createPreference(tile);
-                observers = mDashboardFeatureProvider.bindPreferenceToTileAndGetObservers(
-                        getActivity(), this, forceRoundedIcons, pref, tile, key,
-                        mPlaceholderPreferenceController.getOrder());
-                screen.addPreference(pref);
-                registerDynamicDataObservers(observers);
-                mDashboardTilePrefKeys.put(key, observers);
-            }
-            if (observers != null) {
-                pendingObservers.addAll(observers);
+            final long bindStartTime = SystemClock.elapsedRealtime();
+            Trace.beginSection(
+                    TextUtils.trimToSize(tag + "#bindTile " + key, MAX_TRACE_SECTION_LENGTH));
+            try {
+                final List<DynamicDataObserver> observers;
+                if (mDashboardTilePrefKeys.containsKey(key)) {
+                    // Have the key already, will rebind.
+                    final Preference preference = screen.findPreference(key);
+                    observers = mDashboardFeatureProvider.bindPreferenceToTileAndGetObservers(
+                            getActivity(), this, forceRoundedIcons, preference, tile, key,
+                            mPlaceholderPreferenceController.getOrder());
+                } else {
+                    // Don't have this key, add it.
+                    final Preference pref = createPreference(tile);
+                    observers = mDashboardFeatureProvider.bindPreferenceToTileAndGetObservers(
+                            getActivity(), this, forceRoundedIcons, pref, tile, key,
+                            mPlaceholderPreferenceController.getOrder());
+                    screen.addPreference(pref);
+                    registerDynamicDataObservers(observers);
+                    mDashboardTilePrefKeys.put(key, observers);
+                }
+                if (observers != null) {
+                    pendingObservers.addAll(observers);
+                }
+                remove.remove(key);
+            } finally {
+                Trace.endSection();
             }
-            remove.remove(key);
+            mTileBindLatencies.put(key, SystemClock.elapsedRealtime() - bindStartTime);
+        }
+        if (Log.isLoggable(tag, Log.DEBUG)) {
+            Log.d(tag, "Tile bind latencies (ms): " + mTileBindLatencies);
         }
 
         // Remove tiles that are gone.
@@ -509,18 +530,22 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
             unregisterDynamicDataObservers(entry.getValue());
         }
 
-        // Wait for pending observers to update UI.
+        // Wait for pending observers to update UI. The observers already started loading their
+        // data in the background when they were created, so all of them share a single deadline.
+        // The wait doesn't block the main thread, which then updates all the tiles at once.
         if (!pendingObservers.isEmpty()) {
-            final CountDownLatch mainLatch = new CountDownLatch(1);
-            new Thread(() -> {
-                pendingObservers.forEach(observer ->
-                        awaitObserverLatch(observer.getCountDownLatch()));
-                mainLatch.countDown();
-            }).start();
-            Log.d(tag, "Start waiting observers");
-            awaitObserverLatch(mainLatch);
-            Log.d(tag, "Stop waiting observers");
-            pendingObservers.forEach(DynamicDataObserver::updateUi);
+            final long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+            ThreadUtils.postOnBackgroundThread(() -> {
+                Log.d(tag, "Start waiting observers");
+                awaitObserverLatches(pendingObservers, deadline);
+                Log.d(tag, "Stop waiting observers");
+                ThreadUtils.postOnMainThread(() -> {
+                    if (getActivity() == null) {
+                        return;
+                    }
+                    pendingObservers.forEach(DynamicDataObserver::updateUi);
+                });
+            });
         }
     }
 
@@ -568,11 +593,19 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         });
     }
 
-    private void awaitObserverLatch(CountDownLatch latch) {
-        try {
-            latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            // Do nothing
+    @VisibleForTesting
+    static void awaitObserverLatches(List<DynamicDataObserver> observers, long deadline) {
+        for (DynamicDataObserver observer : observers) {
+            final long remaining = deadline - SystemClock.elapsedRealtime();
+            if (remaining <= 0) {
+                return;
+            }
+            try {
+                observer.getCountDownLatch().await(remaining, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Do nothing
+                return;
+            }
         }
     }
 }
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import static android.app.usage.NetworkStats.Bucket.UID_REMOVED;
+import static android.app.usage.NetworkStats.Bucket.UID_TETHERING;
+
+import android.os.Process;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.SparseBooleanArray;
+
+import com.android.settingslib.AppItem;
+import com.android.settingslib.net.UidDetailProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Aggregates the data usage of network stats buckets into the rows of the app list in
+ * {@link DataUsageList}.
+ *
+ * Uids are collapsed into rows, keyed by app, user or special uid, and their usage is accumulated
+ * in primitive arrays through an open-addressed table. {@link AppItem}s are only created once for
+ * the final rows.
+ */
+class UidUsageAggregator {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int mCurrentUserId;
+    private final BitSet mProfiles = new BitSet();
+    private final UserManager mUserManager;
+    // Whether a user that is not a profile still exists, by user id.
+    private final SparseBooleanArray mUserExists = new SparseBooleanArray();
+
+    // Open-addressed table from collapse key to row + 1, 0 for empty slots.
+    private int[] mTable = new int[INITIAL_CAPACITY * 2];
+
+    // Rows, in order of creation.
+    private int mRowCount;
+    private int[] mKeys = new int[INITIAL_CAPACITY];
+    private int[] mCategories = new int[INITIAL_CAPACITY];
+    private long[] mTotals = new long[INITIAL_CAPACITY];
+    private boolean[] mRestricted = new boolean[INITIAL_CAPACITY];
+    // Last uid added to the row and head of its list of uids, -1 if none.
+    private int[] mLastUids = new int[INITIAL_CAPACITY];
+    private int[] mUidHeads = new int[INITIAL_CAPACITY];
+
+    // Linked lists of the uids of each row.
+    private int mUidCount;
+    private int[] mUids = new int[INITIAL_CAPACITY];
+    private int[] mUidNexts = new int[INITIAL_CAPACITY];
+
+    private long mLargest;
+
+    UidUsageAggregator(int currentUserId, List<UserHandle> profiles, UserManager userManager) {
+        mCurrentUserId = currentUserId;
+        for (UserHandle profile : profiles) {
+            mProfiles.set(profile.getIdentifier());
+        }
+        mUserManager = userManager;
+    }
+
+    /** Accumulates {@code bytes} used by {@code uid}. */
+    void add(int uid, long bytes) {
+        // Decide how to collapse items together
+        final int collapseKey;
+        final int category;
+        final int userId = UserHandle.getUserId(uid);
+        if (UserHandle.isApp(uid) || Process.isSdkSandboxUid(uid)) {
+            if (isProfile(userId)) {
+                if (userId != mCurrentUserId) {
+                    // Add to a managed user item.
+                    accumulate(UidDetailProvider.buildKeyForUser(userId), AppItem.CATEGORY_USER,
+                            uid, bytes);
+                }
+                // Map SDK sandbox back to its corresponding app
+                if (Process.isSdkSandboxUid(uid)) {
+                    collapseKey = Process.getAppUidForSdkSandboxUid(uid);
+                } else {
+                    collapseKey = uid;
+                }
+                category = AppItem.CATEGORY_APP;
+            } else if (!userExists(userId)) {
+                // If it is a removed user add it to the removed users' key
+                collapseKey = UID_REMOVED;
+                category = AppItem.CATEGORY_APP;
+            } else {
+                // Add to other user item.
+                collapseKey = UidDetailProvider.buildKeyForUser(userId);
+                category = AppItem.CATEGORY_USER;
+            }
+        } else if (uid == UID_REMOVED || uid == UID_TETHERING
+                || uid == Process.OTA_UPDATE_UID) {
+            collapseKey = uid;
+            category = AppItem.CATEGORY_APP;
+        } else {
+            collapseKey = Process.SYSTEM_UID;
+            category = AppItem.CATEGORY_APP;
+        }
+        accumulate(collapseKey, category, uid, bytes);
+    }
+
+    /** Marks the rows of {@code restrictedUids} as restricted, adding rows if needed. */
+    void addRestricted(int[] restrictedUids) {
+        for (int uid : restrictedUids) {
+            // Only splice in restricted state for current user or managed users
+            if (!isProfile(UserHandle.getUserId(uid))) {
+                continue;
+            }
+            int row = findRow(uid);
+            if (row < 0) {
+                // Same category as a new AppItem.
+                row = addRow(uid, AppItem.CATEGORY_USER);
+                mTotals[row] = -1;
+                addUid(row, uid);
+            }
+            mRestricted[row] = true;
+        }
+    }
+
+    /** Returns the largest accumulated usage of a row. */
+    long getLargest() {
+        return mLargest;
+    }
+
+    /** Returns the rows as {@link AppItem}s, in the order of {@link AppItem#compareTo}. */
+    ArrayList<AppItem> getSortedItems() {
+        final Integer[] rows = new Integer[mRowCount];
+        for (int i = 0; i < mRowCount; i++) {
+            rows[i] = i;
+        }
+        // Stable sort, so rows comparing equal keep the order of creation.
+        Arrays.sort(rows, (row1, row2) -> {
+            final int comparison = Integer.compare(mCategories[row1], mCategories[row2]);
+            return comparison != 0 ? comparison : Long.compare(mTotals[row2], mTotals[row1]);
+        });
+
+        final ArrayList<AppItem> items = new ArrayList<>(mRowCount);
+        for (int row : rows) {
+            final AppItem item = new AppItem(mKeys[row]);
+            item.category = mCategories[row];
+            item.total = mTotals[row];
+            item.restricted = mRestricted[row];
+            for (int i = mUidHeads[row]; i >= 0; i = mUidNexts[i]) {
+                item.addUid(mUids[i]);
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    private boolean isProfile(int userId) {
+        return userId >= 0 && mProfiles.get(userId);
+    }
+
+    private boolean userExists(int userId) {
+        final int index = mUserExists.indexOfKey(userId);
+        if (index >= 0) {
+            return mUserExists.valueAt(index);
+        }
+        final boolean exists = mUserManager.getUserInfo(userId) != null;
+        mUserExists.put(userId, exists);
+        return exists;
+    }
+
+    private void accumulate(int collapseKey, int category, int uid, long bytes) {
+        int row = findRow(collapseKey);
+        if (row < 0) {
+            row = addRow(collapseKey, category);
+        }
+        addUid(row, uid);
+        mTotals[row] += bytes;
+        mLargest = Math.max(mLargest, mTotals[row]);
+    }
+
+    private int findRow(int key) {
+        final int mask = mTable.length - 1;
+        for (int slot = hash(key) & mask; mTable[slot] != 0; slot = (slot + 1) & mask) {
+            final int row = mTable[slot] - 1;
+            if (mKeys[row] == key) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private int addRow(int key, int category) {
+        if (mRowCount == mKeys.length) {
+            final int capacity = mRowCount * 2;
+            mKeys = Arrays.copyOf(mKeys, capacity);
+            mCategories = Arrays.copyOf(mCategories, capacity);
+            mTotals = Arrays.copyOf(mTotals, capacity);
+            mRestricted = Arrays.copyOf(mRestricted, capacity);
+            mLastUids = Arrays.copyOf(mLastUids, capacity);
+            mUidHeads = Arrays.copyOf(mUidHeads, capacity);
+        }
+        final int row = mRowCount++;
+        mKeys[row] = key;
+        mCategories[row] = category;
+        mUidHeads[row] = -1;
+        if (mRowCount * 2 > mTable.length) {
+            // Keep the table at most half full.
+            rehash(mTable.length * 2);
+        } else {
+            insert(row);
+        }
+        return row;
+    }
+
+    private void addUid(int row, int uid) {
+        if (mUidHeads[row] >= 0 && mLastUids[row] == uid) {
+            // Buckets of the same uid usually come in a row.
+            return;
+        }
+        if (mUidCount == mUids.length) {
+            mUids = Arrays.copyOf(mUids, mUidCount * 2);
+            mUidNexts = Arrays.copyOf(mUidNexts, mUidCount * 2);
+        }
+        mUids[mUidCount] = uid;
+        mUidNexts[mUidCount] = mUidHeads[row];
+        mUidHeads[row] = mUidCount++;
+        mLastUids[row] = uid;
+    }
+
+    private void rehash(int capacity) {
+        mTable = new int[capacity];
+        for (int row = 0; row < mRowCount; row++) {
+            insert(row);
+        }
+    }
+
+    private void insert(int row) {
+        final int mask = mTable.length - 1;
+        int slot = hash(mKeys[row]) & mask;
+        while (mTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        mTable[slot] = row + 1;
+    }
+
+    private static int hash(int key) {
+        final int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -35,16 +35,25 @@ import android.os.UserManager;
 import android.provider.MediaStore;
 import android.provider.MediaStore.Files.FileColumns;
 import android.provider.MediaStore.MediaColumns;
+import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.Log;
 import android.util.SparseArray;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.settingslib.applications.StorageStatsSource;
 import com.android.settingslib.utils.AsyncLoaderCompat;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * StorageAsyncLoader is a Loader which loads categorized app information and external stats for all
@@ -54,11 +63,12 @@ public class StorageAsyncLoader
         extends AsyncLoaderCompat<SparseArray<StorageAsyncLoader.StorageResult>> {
     private UserManager mUserManager;
     private static final String TAG = "StorageAsyncLoader";
+    @VisibleForTesting
+    static final int MAX_THREADS = 4;
 
     private String mUuid;
     private StorageStatsSource mStatsManager;
     private PackageManager mPackageManager;
-    private ArraySet<String> mSeenPackages;
 
     public StorageAsyncLoader(Context context, UserManager userManager,
             String uuid, StorageStatsSource source, PackageManager pm) {
@@ -75,7 +85,6 @@ public class StorageAsyncLoader
     }
 
     private SparseArray<StorageResult> getStorageResultsForUsers() {
-        mSeenPackages = new ArraySet<>();
         final SparseArray<StorageResult> results = new SparseArray<>();
         final List<UserInfo> infos = mUserManager.getUsers();
 
@@ -83,37 +92,67 @@ public class StorageAsyncLoader
         Collections.sort(infos,
                 (userInfo, otherUser) -> Integer.compare(userInfo.id, otherUser.id));
 
+        // The apps and the files of every user are loaded concurrently. Each task only sets its
+        // own fields of the result.
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        final List<ArrayMap<String, Long>> codeSizes = new ArrayList<>();
         for (UserInfo info : infos) {
-            final StorageResult result = getAppsAndGamesSize(info.id);
-
-            result.imagesSize = getFilesSize(info.id, MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                    null /* queryArgs */);
-            result.videosSize = getFilesSize(info.id, MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
-                    null /* queryArgs */);
-            result.audioSize = getFilesSize(info.id, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                    null /* queryArgs */);
+            final StorageResult result = new StorageResult();
+            final ArrayMap<String, Long> userCodeSizes = new ArrayMap<>();
+            results.put(info.id, result);
+            codeSizes.add(userCodeSizes);
+            tasks.add(() -> {
+                loadAppsAndGamesSize(info.id, result, userCodeSizes);
+                return null;
+            });
+            tasks.add(() -> {
+                loadFilesSize(info.id, result);
+                return null;
+            });
+        }
 
-            final Bundle documentsAndOtherQueryArgs = new Bundle();
-            documentsAndOtherQueryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION,
-                    FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_IMAGE
-                    + " AND " + FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_VIDEO
-                    + " AND " + FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_AUDIO
-                    + " AND " + FileColumns.MIME_TYPE + " IS NOT NULL");
-            result.documentsAndOtherSize = getFilesSize(info.id,
-                    MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL),
-                    documentsAndOtherQueryArgs);
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(Math.max(1, Math.min(tasks.size(), MAX_THREADS)));
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted while loading storage results", e);
+            // The load was cancelled, the partial results are discarded by the loader.
+            Thread.currentThread().interrupt();
+            return results;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to load storage results", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
 
-            final Bundle trashQueryArgs = new Bundle();
-            trashQueryArgs.putInt(MediaStore.QUERY_ARG_MATCH_TRASHED, MediaStore.MATCH_ONLY);
-            result.trashSize = getFilesSize(info.id,
-                    MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL), trashQueryArgs);
+        // Code bytes may share between different profiles. To know all the duplicate code size
+        // and we can get a reasonable system size in StorageItemPreferenceController. The code
+        // size of a package is counted for the first user having it, in user id order.
+        final ArraySet<String> seenPackages = new ArraySet<>();
+        for (int i = 0; i < infos.size(); i++) {
+            final StorageResult result = results.get(infos.get(i).id);
+            final ArrayMap<String, Long> userCodeSizes = codeSizes.get(i);
+            for (int j = 0; j < userCodeSizes.size(); j++) {
+                if (!seenPackages.add(userCodeSizes.keyAt(j))) {
+                    result.duplicateCodeSize += userCodeSizes.valueAt(j);
+                }
+            }
+        }
 
-            results.put(info.id, result);
+        if (mUuid == null) {
+            // Lets the storage page of each user show these sizes right away the next time.
+            for (int i = 0; i < results.size(); i++) {
+                new StorageCacheHelper(getContext(), results.keyAt(i))
+                        .cacheStorageResult(results.valueAt(i));
+            }
         }
         return results;
     }
 
-    private long getFilesSize(int userId, Uri uri, Bundle queryArgs) {
+    private void loadFilesSize(int userId, StorageResult result) {
         final Context perUserContext;
         try {
             perUserContext = getContext().createPackageContextAsUser(
@@ -122,10 +161,80 @@ public class StorageAsyncLoader
                 UserHandle.of(userId));
         } catch (NameNotFoundException e) {
             Log.e(TAG, "Not able to get Context for user ID " + userId);
-            return 0L;
+            return;
         }
+        final ContentResolver resolver = perUserContext.getContentResolver();
+        final Uri filesUri = MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL);
 
-        try (Cursor cursor = perUserContext.getContentResolver().query(
+        try {
+            loadMediaTypeSizes(resolver, filesUri, result);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Grouped size query not supported, querying media types one by one", e);
+            result.imagesSize = getFilesSize(resolver,
+                    MediaStore.Images.Media.EXTERNAL_CONTENT_URI, null /* queryArgs */);
+            result.videosSize = getFilesSize(resolver,
+                    MediaStore.Video.Media.EXTERNAL_CONTENT_URI, null /* queryArgs */);
+            result.audioSize = getFilesSize(resolver,
+                    MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, null /* queryArgs */);
+
+            final Bundle documentsAndOtherQueryArgs = new Bundle();
+            documentsAndOtherQueryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION,
+                    FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_IMAGE
+                    + " AND " + FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_VIDEO
+                    + " AND " + FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_AUDIO
+                    + " AND " + FileColumns.MIME_TYPE + " IS NOT NULL");
+            result.documentsAndOtherSize = getFilesSize(resolver, filesUri,
+                    documentsAndOtherQueryArgs);
+        }
+
+        final Bundle trashQueryArgs = new Bundle();
+        trashQueryArgs.putInt(MediaStore.QUERY_ARG_MATCH_TRASHED, MediaStore.MATCH_ONLY);
+        result.trashSize = getFilesSize(resolver, filesUri, trashQueryArgs);
+    }
+
+    /**
+     * Sums the size of images, videos, audio and documents and other files with a single query
+     * grouped by media type.
+     */
+    private void loadMediaTypeSizes(ContentResolver resolver, Uri filesUri, StorageResult result) {
+        final Bundle queryArgs = new Bundle();
+        queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION,
+                FileColumns.MEDIA_TYPE + " IN (" + FileColumns.MEDIA_TYPE_IMAGE
+                + "," + FileColumns.MEDIA_TYPE_VIDEO
+                + "," + FileColumns.MEDIA_TYPE_AUDIO + ")"
+                + " OR " + FileColumns.MIME_TYPE + " IS NOT NULL");
+        queryArgs.putString(ContentResolver.QUERY_ARG_SQL_GROUP_BY, FileColumns.MEDIA_TYPE);
+
+        try (Cursor cursor = resolver.query(
+                filesUri,
+                new String[] {FileColumns.MEDIA_TYPE, "sum(" + MediaColumns.SIZE + ")"},
+                queryArgs,
+                null /* cancellationSignal */)) {
+            if (cursor == null) {
+                return;
+            }
+            while (cursor.moveToNext()) {
+                final long size = cursor.getLong(1);
+                switch (cursor.getInt(0)) {
+                    case FileColumns.MEDIA_TYPE_IMAGE:
+                        result.imagesSize = size;
+                        break;
+                    case FileColumns.MEDIA_TYPE_VIDEO:
+                        result.videosSize = size;
+                        break;
+                    case FileColumns.MEDIA_TYPE_AUDIO:
+                        result.audioSize = size;
+                        break;
+                    default:
+                        result.documentsAndOtherSize += size;
+                        break;
+                }
+            }
+        }
+    }
+
+    private long getFilesSize(ContentResolver resolver, Uri uri, Bundle queryArgs) {
+        try (Cursor cursor = resolver.query(
                 uri,
                 new String[] {"sum(" + MediaColumns.SIZE + ")"},
                 queryArgs,
@@ -137,11 +246,11 @@ public class StorageAsyncLoader
         }
     }
 
-    private StorageResult getAppsAndGamesSize(int userId) {
+    private void loadAppsAndGamesSize(int userId, StorageResult result,
+            ArrayMap<String, Long> codeSizes) {
         Log.d(TAG, "Loading apps");
         final List<ApplicationInfo> applicationInfos =
                 mPackageManager.getInstalledApplicationsAsUser(0, userId);
-        final StorageResult result = new StorageResult();
         final UserHandle myUser = UserHandle.of(userId);
         for (int i = 0, size = applicationInfos.size(); i < size; i++) {
             final ApplicationInfo app = applicationInfos.get(i);
@@ -167,13 +276,7 @@ public class StorageAsyncLoader
                 blamedSize = blamedSize - cacheBytes + cacheQuota;
             }
 
-            // Code bytes may share between different profiles. To know all the duplicate code size
-            // and we can get a reasonable system size in StorageItemPreferenceController.
-            if (mSeenPackages.contains(app.packageName)) {
-                result.duplicateCodeSize += stats.getCodeBytes();
-            } else {
-                mSeenPackages.add(app.packageName);
-            }
+            codeSizes.put(app.packageName, stats.getCodeBytes());
 
             switch (app.category) {
                 case CATEGORY_GAME:
@@ -203,7 +306,6 @@ public class StorageAsyncLoader
             Log.w(TAG, e);
         }
         Log.d(TAG, "Obtaining result completed");
-        return result;
     }
 
     @Override
@@ -45,10 +45,13 @@ public class StorageCacheHelper {
     }
 
     /**
-     * Returns true if there's a cached size info.
+     * Returns true if there's a cached size info, including the total and used sizes. The sizes
+     * of the categories alone, as cached by {@link #cacheStorageResult}, are not enough to show
+     * the storage page.
      */
     public boolean hasCachedSizeInfo() {
-        return mSharedPreferences.getAll().size() > 0;
+        return mSharedPreferences.contains(TOTAL_SIZE_KEY)
+                && mSharedPreferences.contains(TOTAL_USED_SIZE_KEY);
     }
 
     /**
@@ -69,6 +72,23 @@ public class StorageCacheHelper {
                 .apply();
     }
 
+    /**
+     * Cache the size of each category loaded by {@link StorageAsyncLoader}. The system size,
+     * which depends on the results of all users, is left as is.
+     */
+    public void cacheStorageResult(StorageAsyncLoader.StorageResult result) {
+        mSharedPreferences
+                .edit()
+                .putLong(IMAGES_SIZE_KEY, result.imagesSize)
+                .putLong(VIDEOS_SIZE_KEY, result.videosSize)
+                .putLong(AUDIO_SIZE_KEY, result.audioSize)
+                .putLong(APPS_SIZE_KEY, result.allAppsExceptGamesSize)
+                .putLong(GAMES_SIZE_KEY, result.gamesSize)
+                .putLong(DOCUMENTS_AND_OTHER_SIZE_KEY, result.documentsAndOtherSize)
+                .putLong(TRASH_SIZE_KEY, result.trashSize)
+                .apply();
+    }
+
     /**
      * Cache total size and total used size
      */
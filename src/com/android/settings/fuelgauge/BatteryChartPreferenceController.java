@@ -17,7 +17,10 @@
 package com.android.settings.fuelgauge;
 
 import android.app.settings.SettingsEnums;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.res.Configuration;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
@@ -106,6 +109,19 @@ public class BatteryChartPreferenceController extends AbstractPreferenceControll
     private final MetricsFeatureProvider mMetricsFeatureProvider;
     private final Handler mHandler = new Handler(Looper.getMainLooper());
 
+    // Drops the cached label and icon of a package once it is changed.
+    @VisibleForTesting
+    final BroadcastReceiver mPackageChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final int uid = intent.getIntExtra(Intent.EXTRA_UID, /*defaultValue=*/ -1);
+            if (uid != -1) {
+                BatteryDiffEntry.removeCache(uid);
+            }
+        }
+    };
+    private boolean mIsPackageChangeReceiverRegistered = false;
+
     // Preference cache to avoid create new instance each time.
     @VisibleForTesting
     final Map<String, Preference> mPreferenceCache = new HashMap<>();
@@ -138,6 +154,13 @@ public class BatteryChartPreferenceController extends AbstractPreferenceControll
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        mContext.registerReceiver(mPackageChangeReceiver, filter);
+        mIsPackageChangeReceiverRegistered = true;
         if (savedInstanceState == null) {
             return;
         }
@@ -179,6 +202,10 @@ public class BatteryChartPreferenceController extends AbstractPreferenceControll
         if (mActivity.isChangingConfigurations()) {
             BatteryDiffEntry.clearCache();
         }
+        if (mIsPackageChangeReceiverRegistered) {
+            mContext.unregisterReceiver(mPackageChangeReceiver);
+            mIsPackageChangeReceiverRegistered = false;
+        }
         mHandler.removeCallbacksAndMessages(/*token=*/ null);
         mPreferenceCache.clear();
         if (mAppListPrefGroup != null) {
@@ -676,16 +703,21 @@ public class BatteryChartPreferenceController extends AbstractPreferenceControll
     }
 
     // Loads all items icon and label in the background.
-    private final class LoadAllItemsInfoTask
-            extends AsyncTask<Void, Void, Map<Integer, List<BatteryDiffEntry>>> {
+    private final class LoadAllItemsInfoTask extends AsyncTask<
+            Void, Map<Integer, List<BatteryDiffEntry>>, Map<Integer, List<BatteryDiffEntry>>> {
 
         private long[] mBatteryHistoryKeysCache;
         private Map<Long, Map<String, BatteryHistEntry>> mBatteryHistoryMap;
+        private final int mTrapezoidIndexCache;
 
         private LoadAllItemsInfoTask(
                 Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap) {
             this.mBatteryHistoryMap = batteryHistoryMap;
             this.mBatteryHistoryKeysCache = mBatteryHistoryKeys;
+            this.mTrapezoidIndexCache =
+                mTrapezoidIndex == BatteryChartView.SELECTED_INDEX_INVALID
+                    ? BatteryChartView.SELECTED_INDEX_ALL
+                    : mTrapezoidIndex;
         }
 
         @Override
@@ -699,15 +731,34 @@ public class BatteryChartPreferenceController extends AbstractPreferenceControll
                     mPrefContext, /*timeSlotSize=*/ CHART_LEVEL_ARRAY_SIZE - 1,
                     mBatteryHistoryKeysCache, mBatteryHistoryMap,
                     /*purgeLowPercentageAndFakeData=*/ true);
+            // Pre-loads the icon and label of the visible slot first, so the list can be shown
+            // before the other slots are loaded. Only that slot is published: its entries are
+            // not touched by this thread anymore, while the other slots are still loading.
+            final List<BatteryDiffEntry> visibleEntries =
+                indexedUsageMap.get(Integer.valueOf(mTrapezoidIndexCache));
+            if (visibleEntries != null && !visibleEntries.isEmpty()) {
+                visibleEntries.forEach(entry -> entry.loadLabelAndIcon());
+                publishProgress(Collections.singletonMap(
+                    Integer.valueOf(mTrapezoidIndexCache), visibleEntries));
+            }
             // Pre-loads each BatteryDiffEntry relative icon and label for all slots.
             for (List<BatteryDiffEntry> entries : indexedUsageMap.values()) {
-                entries.forEach(entry -> entry.loadLabelAndIcon());
+                if (entries != visibleEntries) {
+                    entries.forEach(entry -> entry.loadLabelAndIcon());
+                }
             }
             Log.d(TAG, String.format("execute LoadAllItemsInfoTask in %d/ms",
                 (System.currentTimeMillis() - startTime)));
             return indexedUsageMap;
         }
 
+        @Override
+        protected void onProgressUpdate(
+                Map<Integer, List<BatteryDiffEntry>>... indexedUsageMaps) {
+            mBatteryIndexedMap = indexedUsageMaps[0];
+            forceRefreshUi();
+        }
+
         @Override
         protected void onPostExecute(
                 Map<Integer, List<BatteryDiffEntry>> indexedUsageMap) {
@@ -22,6 +22,7 @@ import android.os.Process;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.util.Log;
+import android.util.LruCache;
 
 import androidx.annotation.VisibleForTesting;
 
@@ -29,20 +30,23 @@ import com.android.settings.R;
 import com.android.settingslib.utils.StringUtil;
 
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
 
 /** A container class to carry battery data in a specific time slot. */
 public class BatteryDiffEntry {
     private static final String TAG = "BatteryDiffEntry";
 
-    static Locale sCurrentLocale = null;
-    // Caches app label and icon to improve loading performance.
-    static final Map<String, BatteryEntry.NameAndIcon> sResourceCache = new HashMap<>();
+    // Maximum number of items kept in the caches below.
+    static final int MAX_CACHE_SIZE = 256;
+
+    // Caches app label and icon to improve loading performance, keyed by the entry key
+    // together with the locale and density the resources are loaded for.
+    static final LruCache<String, BatteryEntry.NameAndIcon> sResourceCache =
+        new LruCache<>(MAX_CACHE_SIZE);
     // Whether a specific item is valid to launch restriction page?
     @VisibleForTesting(otherwise = VisibleForTesting.PACKAGE_PRIVATE)
-    public static final Map<String, Boolean> sValidForRestriction = new HashMap<>();
+    public static final LruCache<String, Boolean> sValidForRestriction =
+        new LruCache<>(MAX_CACHE_SIZE);
 
     /** A comparator for {@link BatteryDiffEntry} based on consumed percentage. */
     public static final Comparator<BatteryDiffEntry> COMPARATOR =
@@ -172,7 +176,7 @@ public class BatteryDiffEntry {
             return;
         }
         // Checks whether we have cached data or not first before fetching.
-        final BatteryEntry.NameAndIcon nameAndIcon = getCache();
+        final BatteryEntry.NameAndIcon nameAndIcon = sResourceCache.get(getCacheKey());
         if (nameAndIcon != null) {
             mAppLabel = nameAndIcon.mName;
             mAppIcon = nameAndIcon.mIcon;
@@ -202,7 +206,7 @@ public class BatteryDiffEntry {
                     mAppIcon = nameAndIconForUser.mIcon;
                     mAppLabel = nameAndIconForUser.mName;
                     sResourceCache.put(
-                        getKey(),
+                        getCacheKey(),
                         new BatteryEntry.NameAndIcon(mAppLabel, mAppIcon, /*iconId=*/ 0));
                 }
                 break;
@@ -217,7 +221,7 @@ public class BatteryDiffEntry {
                         mAppIcon = mContext.getDrawable(nameAndIconForSystem.mIconId);
                     }
                     sResourceCache.put(
-                        getKey(),
+                        getCacheKey(),
                         new BatteryEntry.NameAndIcon(mAppLabel, mAppIcon, mAppIconId));
                 }
                 break;
@@ -231,7 +235,7 @@ public class BatteryDiffEntry {
                 mAppIcon = getBadgeIconForUser(mAppIcon);
                 if (mAppLabel != null || mAppIcon != null) {
                     sResourceCache.put(
-                        getKey(),
+                        getCacheKey(),
                         new BatteryEntry.NameAndIcon(mAppLabel, mAppIcon, /*iconId=*/ 0));
                 }
                 break;
@@ -243,6 +247,14 @@ public class BatteryDiffEntry {
         return mBatteryHistEntry.getKey();
     }
 
+    // The uid based key already identifies the package and the user of the entry.
+    @VisibleForTesting
+    String getCacheKey() {
+        return getCacheKeyPrefix(getKey())
+            + Locale.getDefault().toLanguageTag() + "|"
+            + mContext.getResources().getConfiguration().densityDpi;
+    }
+
     @VisibleForTesting
     void updateRestrictionFlagState() {
         mValidForRestriction = true;
@@ -272,17 +284,6 @@ public class BatteryDiffEntry {
         }
     }
 
-    private BatteryEntry.NameAndIcon getCache() {
-        final Locale locale = Locale.getDefault();
-        if (sCurrentLocale != locale) {
-            Log.d(TAG, String.format("clearCache() locale is changed from %s to %s",
-                sCurrentLocale, locale));
-            sCurrentLocale = locale;
-            clearCache();
-        }
-        return sResourceCache.get(getKey());
-    }
-
     private void loadNameAndIconForUid() {
         final String packageName = getPackageName();
         final PackageManager packageManager = mContext.getPackageManager();
@@ -354,8 +355,25 @@ public class BatteryDiffEntry {
 
     /** Clears app icon and label cache data. */
     public static void clearCache() {
-        sResourceCache.clear();
-        sValidForRestriction.clear();
+        sResourceCache.evictAll();
+        sValidForRestriction.evictAll();
+    }
+
+    /** Removes the cached data of a specific uid, e.g. when its package is changed. */
+    public static void removeCache(int uid) {
+        final String key = Integer.toString(uid);
+        final String keyPrefix = getCacheKeyPrefix(key);
+        for (String cacheKey : sResourceCache.snapshot().keySet()) {
+            if (cacheKey.startsWith(keyPrefix)) {
+                sResourceCache.remove(cacheKey);
+            }
+        }
+        sValidForRestriction.remove(key);
+        BatteryEntry.sUidCache.remove(key);
+    }
+
+    private static String getCacheKeyPrefix(String key) {
+        return key + "|";
     }
 
     private Drawable getBadgeIconForUser(Drawable icon) {
@@ -35,6 +35,7 @@ import android.os.UserHandle;
 import android.os.UserManager;
 import android.util.DebugUtils;
 import android.util.Log;
+import android.util.LruCache;
 
 import androidx.annotation.NonNull;
 
@@ -43,7 +44,6 @@ import com.android.settingslib.Utils;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Locale;
 
 /**
@@ -77,7 +77,8 @@ public class BatteryEntry {
     private static final String TAG = "BatteryEntry";
     private static final String PACKAGE_SYSTEM = "android";
 
-    static final HashMap<String, UidToDetail> sUidCache = new HashMap<>();
+    static final LruCache<String, UidToDetail> sUidCache =
+            new LruCache<>(BatteryDiffEntry.MAX_CACHE_SIZE);
 
     static final ArrayList<BatteryEntry> sRequestQueue = new ArrayList<BatteryEntry>();
     static Handler sHandler;
@@ -151,7 +152,7 @@ public class BatteryEntry {
     }
 
     public static void clearUidCache() {
-        sUidCache.clear();
+        sUidCache.evictAll();
     }
 
     public static final Comparator<BatteryEntry> COMPARATOR =
@@ -314,8 +315,8 @@ public class BatteryEntry {
         }
 
         final String uidString = Integer.toString(uid);
-        if (sUidCache.containsKey(uidString)) {
-            UidToDetail utd = sUidCache.get(uidString);
+        final UidToDetail utd = sUidCache.get(uidString);
+        if (utd != null) {
             mDefaultPackageName = utd.mPackageName;
             mName = utd.mName;
             mIcon = utd.mIcon;
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.android.settings.fuelgauge;
+
+import android.os.BatteryStats.HistoryItem;
+
+import com.android.internal.os.BatteryStatsHistoryIterator;
+
+import java.util.Arrays;
+
+/**
+ * The battery history records of a {@link BatteryStatsHistoryIterator}, read in a single pass
+ * and kept in primitive arrays, along with the wall time bounds of the history.
+ *
+ * Only the scalar fields of {@link HistoryItem} are kept, the tags and details of the records are
+ * not available to {@link BatteryInfo.BatteryDataParser}s.
+ */
+class BatteryHistoryBuffer {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private long[] mTime = new long[INITIAL_CAPACITY];
+    private long[] mCurrentTime = new long[INITIAL_CAPACITY];
+    private byte[] mCmd = new byte[INITIAL_CAPACITY];
+    private byte[] mBatteryLevel = new byte[INITIAL_CAPACITY];
+    private byte[] mBatteryStatus = new byte[INITIAL_CAPACITY];
+    private byte[] mBatteryHealth = new byte[INITIAL_CAPACITY];
+    private byte[] mBatteryPlugType = new byte[INITIAL_CAPACITY];
+    private short[] mBatteryTemperature = new short[INITIAL_CAPACITY];
+    private char[] mBatteryVoltage = new char[INITIAL_CAPACITY];
+    private int[] mBatteryChargeUah = new int[INITIAL_CAPACITY];
+    private int[] mStates = new int[INITIAL_CAPACITY];
+    private int[] mStates2 = new int[INITIAL_CAPACITY];
+    private int mSize;
+
+    private long mHistoryStart;
+    private long mStartWalltime;
+    private long mEndWalltime;
+    private long mLastRealtime;
+
+    /** Reads all the records of {@code iterator}, resolving the wall time bounds on the way. */
+    static BatteryHistoryBuffer read(BatteryStatsHistoryIterator iterator) {
+        final BatteryHistoryBuffer buffer = new BatteryHistoryBuffer();
+        long historyEnd = 0;
+        long lastWallTime = 0;
+        int lastInteresting = 0;
+        boolean first = true;
+        final HistoryItem rec = new HistoryItem();
+        while (iterator.next(rec)) {
+            buffer.add(rec);
+            if (first) {
+                first = false;
+                buffer.mHistoryStart = rec.time;
+            }
+            if (rec.cmd == HistoryItem.CMD_CURRENT_TIME
+                    || rec.cmd == HistoryItem.CMD_RESET) {
+                // If there is a ridiculously large jump in time, then we won't be
+                // able to create a good chart with that data, so just ignore the
+                // times we got before and pretend like our data extends back from
+                // the time we have now.
+                // Also, if we are getting a time change and we are less than 5 minutes
+                // since the start of the history real time, then also use this new
+                // time to compute the base time, since whatever time we had before is
+                // pretty much just noise.
+                if (rec.currentTime > (lastWallTime + (180 * 24 * 60 * 60 * 1000L))
+                        || rec.time < (buffer.mHistoryStart + (5 * 60 * 1000L))) {
+                    buffer.mStartWalltime = 0;
+                }
+                lastWallTime = rec.currentTime;
+                buffer.mLastRealtime = rec.time;
+                if (buffer.mStartWalltime == 0) {
+                    buffer.mStartWalltime =
+                            lastWallTime - (buffer.mLastRealtime - buffer.mHistoryStart);
+                }
+            }
+            if (rec.isDeltaData()) {
+                lastInteresting = buffer.mSize;
+                historyEnd = rec.time;
+            }
+        }
+
+        buffer.mEndWalltime = lastWallTime + historyEnd - buffer.mLastRealtime;
+        // Nothing after the last delta record is ever reported.
+        buffer.mSize = lastInteresting;
+        return buffer;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    long getHistoryStart() {
+        return mHistoryStart;
+    }
+
+    long getStartWalltime() {
+        return mStartWalltime;
+    }
+
+    long getEndWalltime() {
+        return mEndWalltime;
+    }
+
+    /** Returns the real time of the last time change, where the wall time is known. */
+    long getLastRealtime() {
+        return mLastRealtime;
+    }
+
+    /** Copies the record at {@code index} into {@code record}. */
+    void get(int index, HistoryItem record) {
+        record.clear();
+        record.time = mTime[index];
+        record.currentTime = mCurrentTime[index];
+        record.cmd = mCmd[index];
+        record.batteryLevel = mBatteryLevel[index];
+        record.batteryStatus = mBatteryStatus[index];
+        record.batteryHealth = mBatteryHealth[index];
+        record.batteryPlugType = mBatteryPlugType[index];
+        record.batteryTemperature = mBatteryTemperature[index];
+        record.batteryVoltage = mBatteryVoltage[index];
+        record.batteryChargeUah = mBatteryChargeUah[index];
+        record.states = mStates[index];
+        record.states2 = mStates2[index];
+    }
+
+    private void add(HistoryItem record) {
+        if (mSize == mTime.length) {
+            grow();
+        }
+        mTime[mSize] = record.time;
+        mCurrentTime[mSize] = record.currentTime;
+        mCmd[mSize] = record.cmd;
+        mBatteryLevel[mSize] = record.batteryLevel;
+        mBatteryStatus[mSize] = record.batteryStatus;
+        mBatteryHealth[mSize] = record.batteryHealth;
+        mBatteryPlugType[mSize] = record.batteryPlugType;
+        mBatteryTemperature[mSize] = record.batteryTemperature;
+        mBatteryVoltage[mSize] = record.batteryVoltage;
+        mBatteryChargeUah[mSize] = record.batteryChargeUah;
+        mStates[mSize] = record.states;
+        mStates2[mSize] = record.states2;
+        mSize++;
+    }
+
+    private void grow() {
+        final int capacity = mTime.length * 2;
+        mTime = Arrays.copyOf(mTime, capacity);
+        mCurrentTime = Arrays.copyOf(mCurrentTime, capacity);
+        mCmd = Arrays.copyOf(mCmd, capacity);
+        mBatteryLevel = Arrays.copyOf(mBatteryLevel, capacity);
+        mBatteryStatus = Arrays.copyOf(mBatteryStatus, capacity);
+        mBatteryHealth = Arrays.copyOf(mBatteryHealth, capacity);
+        mBatteryPlugType = Arrays.copyOf(mBatteryPlugType, capacity);
+        mBatteryTemperature = Arrays.copyOf(mBatteryTemperature, capacity);
+        mBatteryVoltage = Arrays.copyOf(mBatteryVoltage, capacity);
+        mBatteryChargeUah = Arrays.copyOf(mBatteryChargeUah, capacity);
+        mStates = Arrays.copyOf(mStates, capacity);
+        mStates2 = Arrays.copyOf(mStates2, capacity);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.android.settings.fuelgauge;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+/**
+ * Database of the battery usage snapshots recorded by {@link BatteryHistoryJobService}.
+ *
+ * Each snapshot is a set of rows sharing the same {@link BatteryHistEntry#KEY_TIMESTAMP}, one
+ * row for each battery consumer. The columns are named after the {@link BatteryHistEntry} keys,
+ * so a row can be read back with the {@link BatteryHistEntry} cursor constructor.
+ * The usage columns default to 0 for the row recorded when there is no usage data, see
+ * {@link ConvertUtils#FAKE_PACKAGE_NAME}.
+ */
+public class BatteryHistoryDatabaseHelper extends SQLiteOpenHelper {
+    private static final String TAG = "BatteryHistoryDatabaseHelper";
+
+    private static final String DATABASE_NAME = "battery_history.db";
+    private static final int DATABASE_VERSION = 1;
+
+    public interface Tables {
+        String TABLE_BATTERY_HISTORY = "battery_history";
+    }
+
+    public interface Indices {
+        String INDEX_BATTERY_HISTORY_TIMESTAMP = "battery_history_timestamp_index";
+    }
+
+    private static final String CREATE_BATTERY_HISTORY_TABLE =
+            "CREATE TABLE " + Tables.TABLE_BATTERY_HISTORY +
+                    "(" +
+                    BatteryHistEntry.KEY_UID +
+                    " INTEGER NOT NULL DEFAULT 0, " +
+                    BatteryHistEntry.KEY_USER_ID +
+                    " INTEGER NOT NULL DEFAULT 0, " +
+                    BatteryHistEntry.KEY_APP_LABEL +
+                    " TEXT, " +
+                    BatteryHistEntry.KEY_PACKAGE_NAME +
+                    " TEXT, " +
+                    BatteryHistEntry.KEY_IS_HIDDEN +
+                    " INTEGER NOT NULL DEFAULT 0, " +
+                    BatteryHistEntry.KEY_BOOT_TIMESTAMP +
+                    " INTEGER NOT NULL, " +
+                    BatteryHistEntry.KEY_TIMESTAMP +
+                    " INTEGER NOT NULL, " +
+                    BatteryHistEntry.KEY_ZONE_ID +
+                    " TEXT, " +
+                    BatteryHistEntry.KEY_TOTAL_POWER +
+                    " REAL NOT NULL DEFAULT 0, " +
+                    BatteryHistEntry.KEY_CONSUME_POWER +
+                    " REAL NOT NULL DEFAULT 0, " +
+                    BatteryHistEntry.KEY_PERCENT_OF_TOTAL +
+                    " REAL NOT NULL DEFAULT 0, " +
+                    BatteryHistEntry.KEY_FOREGROUND_USAGE_TIME +
+                    " INTEGER NOT NULL DEFAULT 0, " +
+                    BatteryHistEntry.KEY_BACKGROUND_USAGE_TIME +
+                    " INTEGER NOT NULL DEFAULT 0, " +
+                    BatteryHistEntry.KEY_DRAIN_TYPE +
+                    " INTEGER NOT NULL DEFAULT 0, " +
+                    BatteryHistEntry.KEY_CONSUMER_TYPE +
+                    " INTEGER NOT NULL DEFAULT 0, " +
+                    BatteryHistEntry.KEY_BATTERY_LEVEL +
+                    " INTEGER NOT NULL, " +
+                    BatteryHistEntry.KEY_BATTERY_STATUS +
+                    " INTEGER NOT NULL, " +
+                    BatteryHistEntry.KEY_BATTERY_HEALTH +
+                    " INTEGER NOT NULL" +
+                    ")";
+
+    // Snapshots are only ever read, pruned and compacted by time range.
+    private static final String CREATE_BATTERY_HISTORY_TIMESTAMP_INDEX =
+            "CREATE INDEX " + Indices.INDEX_BATTERY_HISTORY_TIMESTAMP + " ON "
+                    + Tables.TABLE_BATTERY_HISTORY + "(" + BatteryHistEntry.KEY_TIMESTAMP + ")";
+
+    private static BatteryHistoryDatabaseHelper sSingleton;
+
+    public static synchronized BatteryHistoryDatabaseHelper getInstance(Context context) {
+        if (sSingleton == null) {
+            sSingleton = new BatteryHistoryDatabaseHelper(context.getApplicationContext());
+        }
+        return sSingleton;
+    }
+
+    private BatteryHistoryDatabaseHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Lets the battery chart read while a snapshot is being written.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        bootstrapDB(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < DATABASE_VERSION) {
+            Log.w(TAG, "Detected schema version '" + oldVersion + "'. " +
+                    "Index needs to be rebuilt for schema version '" + newVersion + "'.");
+            // The history is only a cache of recent usage, drop it and start over.
+            reconstruct(db);
+        }
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        Log.w(TAG, "Detected schema version '" + oldVersion + "'. " +
+                "Index needs to be rebuilt for schema version '" + newVersion + "'.");
+        reconstruct(db);
+    }
+
+    public void reconstruct(SQLiteDatabase db) {
+        dropTables(db);
+        bootstrapDB(db);
+    }
+
+    private void bootstrapDB(SQLiteDatabase db) {
+        db.execSQL(CREATE_BATTERY_HISTORY_TABLE);
+        db.execSQL(CREATE_BATTERY_HISTORY_TIMESTAMP_INDEX);
+        Log.i(TAG, "Bootstrapped database");
+    }
+
+    private void dropTables(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.TABLE_BATTERY_HISTORY);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.android.settings.fuelgauge;
+
+import static com.android.settings.fuelgauge.BatteryHistoryDatabaseHelper.Tables.TABLE_BATTERY_HISTORY;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Database manager for the battery usage snapshots of {@link BatteryHistoryDatabaseHelper}.
+ *
+ * Snapshots are only appended, and removed by time range once they are older than the battery
+ * chart window. All the database write methods are synchronized, the database uses write-ahead
+ * logging so queries can run concurrently with the writes.
+ */
+public class BatteryHistoryDatabaseManager {
+    private static final String TAG = "BatteryHistoryDatabaseManager";
+
+    /** {@link Uri} notified when a new snapshot is recorded. */
+    public static final Uri BATTERY_HISTORY_URI = new Uri.Builder()
+            .scheme(ContentResolver.SCHEME_CONTENT)
+            .authority("com.android.settings.fuelgauge.batteryhistory")
+            .appendPath(TABLE_BATTERY_HISTORY)
+            .build();
+
+    /** Number of hourly time slots returned by {@link #getBatteryHistory(long)}. */
+    @VisibleForTesting
+    static final int HISTORY_SLOT_COUNT = BatteryChartPreferenceController.DESIRED_HISTORY_SIZE;
+    @VisibleForTesting
+    static final long HISTORY_SLOT_DURATION_MS = DateUtils.HOUR_IN_MILLIS;
+    /** Snapshots older than this are removed. */
+    @VisibleForTesting
+    static final long RETENTION_MS = DateUtils.DAY_IN_MILLIS * 7;
+    /** Snapshots outside of the chart window are kept at most once every interval. */
+    @VisibleForTesting
+    static final long COMPACTION_INTERVAL_MS = DateUtils.HOUR_IN_MILLIS * 3;
+
+    private static BatteryHistoryDatabaseManager sSingleton;
+
+    private final Context mContext;
+    private final BatteryHistoryDatabaseHelper mDatabaseHelper;
+
+    private BatteryHistoryDatabaseManager(Context context) {
+        mContext = context.getApplicationContext();
+        mDatabaseHelper = BatteryHistoryDatabaseHelper.getInstance(context);
+    }
+
+    public static synchronized BatteryHistoryDatabaseManager getInstance(Context context) {
+        if (sSingleton == null) {
+            sSingleton = new BatteryHistoryDatabaseManager(context);
+        }
+        return sSingleton;
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.NONE)
+    public static void setUpForTest(BatteryHistoryDatabaseManager batteryHistoryDatabaseManager) {
+        sSingleton = batteryHistoryDatabaseManager;
+    }
+
+    /**
+     * Appends a snapshot, all the rows of {@code snapshot} are written in a single transaction.
+     *
+     * @return the number of inserted rows
+     */
+    public synchronized int insertSnapshot(List<ContentValues> snapshot) {
+        if (snapshot.isEmpty()) {
+            return 0;
+        }
+        int insertedCount = 0;
+        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (ContentValues values : snapshot) {
+                if (db.insert(TABLE_BATTERY_HISTORY, null, values) != -1) {
+                    insertedCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        mContext.getContentResolver().notifyChange(BATTERY_HISTORY_URI, null /* observer */);
+        return insertedCount;
+    }
+
+    /**
+     * Returns the battery history of the day before {@code currentTimestamp} with one entry per
+     * hourly time slot, as expected by {@link BatteryChartPreferenceController}, or null if there
+     * aren't enough snapshots yet. The last slot is the latest snapshot, the other ones are
+     * interpolated from the snapshots around them.
+     */
+    public Map<Long, Map<String, BatteryHistEntry>> getBatteryHistory(long currentTimestamp) {
+        final long startTimestamp =
+                currentTimestamp - (HISTORY_SLOT_COUNT - 1) * HISTORY_SLOT_DURATION_MS;
+        final TreeMap<Long, Map<String, BatteryHistEntry>> snapshots =
+                querySnapshots(startTimestamp, currentTimestamp);
+        if (snapshots.size() < 2) {
+            return null;
+        }
+
+        final long latestTimestamp = snapshots.lastKey();
+        final long[] slotTimestamps = new long[HISTORY_SLOT_COUNT];
+        for (int index = 0; index < HISTORY_SLOT_COUNT; index++) {
+            slotTimestamps[index] = latestTimestamp
+                    - (HISTORY_SLOT_COUNT - 1 - index) * HISTORY_SLOT_DURATION_MS;
+        }
+        return interpolateHistory(snapshots, slotTimestamps);
+    }
+
+    /**
+     * Returns the snapshots recorded between {@code startTimestamp} and {@code endTimestamp}, by
+     * timestamp. The latest snapshot before {@code startTimestamp} is included too, so the start
+     * of the range can be interpolated.
+     */
+    public Map<Long, Map<String, BatteryHistEntry>> queryBatteryHistory(long startTimestamp,
+            long endTimestamp) {
+        return querySnapshots(startTimestamp, endTimestamp);
+    }
+
+    /** Removes the snapshots recorded before {@code timestampMs}. */
+    public synchronized int deleteSnapshotsBefore(long timestampMs) {
+        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        return db.delete(TABLE_BATTERY_HISTORY, BatteryHistEntry.KEY_TIMESTAMP + " < ?",
+                new String[]{String.valueOf(timestampMs)});
+    }
+
+    /**
+     * Keeps only the first snapshot of every {@code intervalMs} among the snapshots recorded
+     * before {@code timestampMs}.
+     */
+    public synchronized int compactSnapshotsBefore(long timestampMs, long intervalMs) {
+        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        final String whereClause = BatteryHistEntry.KEY_TIMESTAMP + " < ? AND "
+                + BatteryHistEntry.KEY_TIMESTAMP + " NOT IN (SELECT MIN("
+                + BatteryHistEntry.KEY_TIMESTAMP + ") FROM " + TABLE_BATTERY_HISTORY
+                + " WHERE " + BatteryHistEntry.KEY_TIMESTAMP + " < ? GROUP BY "
+                + BatteryHistEntry.KEY_TIMESTAMP + " / " + intervalMs + ")";
+        final String timestamp = String.valueOf(timestampMs);
+        return db.delete(TABLE_BATTERY_HISTORY, whereClause, new String[]{timestamp, timestamp});
+    }
+
+    /**
+     * Applies the retention and compaction policies to the snapshots, relative to
+     * {@code currentTimestamp}.
+     */
+    public synchronized void pruneSnapshots(long currentTimestamp) {
+        final int deletedCount = deleteSnapshotsBefore(currentTimestamp - RETENTION_MS);
+        // Keeps the full resolution for the chart window and the slot interpolated before it.
+        final int compactedCount = compactSnapshotsBefore(
+                currentTimestamp - HISTORY_SLOT_COUNT * HISTORY_SLOT_DURATION_MS,
+                COMPACTION_INTERVAL_MS);
+        Log.d(TAG, "pruneSnapshots() deleted " + deletedCount + ", compacted " + compactedCount);
+    }
+
+    private TreeMap<Long, Map<String, BatteryHistEntry>> querySnapshots(long startTimestamp,
+            long endTimestamp) {
+        final TreeMap<Long, Map<String, BatteryHistEntry>> snapshots = new TreeMap<>();
+        final SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
+        final String selection = BatteryHistEntry.KEY_TIMESTAMP + " >= IFNULL((SELECT MAX("
+                + BatteryHistEntry.KEY_TIMESTAMP + ") FROM " + TABLE_BATTERY_HISTORY + " WHERE "
+                + BatteryHistEntry.KEY_TIMESTAMP + " <= ?), ?) AND "
+                + BatteryHistEntry.KEY_TIMESTAMP + " <= ?";
+        final String start = String.valueOf(startTimestamp);
+        final String[] selectionArgs = new String[]{start, start, String.valueOf(endTimestamp)};
+
+        try (Cursor cursor = db.query(TABLE_BATTERY_HISTORY, null /* columns */, selection,
+                selectionArgs, null /* groupBy */, null /* having */,
+                BatteryHistEntry.KEY_TIMESTAMP)) {
+            while (cursor.moveToNext()) {
+                final BatteryHistEntry entry = new BatteryHistEntry(cursor);
+                Map<String, BatteryHistEntry> snapshot = snapshots.get(entry.mTimestamp);
+                if (snapshot == null) {
+                    snapshot = new HashMap<>();
+                    snapshots.put(entry.mTimestamp, snapshot);
+                }
+                snapshot.put(entry.getKey(), entry);
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Resamples {@code snapshots} at {@code slotTimestamps}. The slots before the first snapshot
+     * get a copy of it, so no usage is accounted to them.
+     */
+    @VisibleForTesting
+    static Map<Long, Map<String, BatteryHistEntry>> interpolateHistory(
+            TreeMap<Long, Map<String, BatteryHistEntry>> snapshots, long[] slotTimestamps) {
+        final Map<Long, Map<String, BatteryHistEntry>> history = new HashMap<>();
+        for (long slotTimestamp : slotTimestamps) {
+            final Map.Entry<Long, Map<String, BatteryHistEntry>> lower =
+                    snapshots.floorEntry(slotTimestamp);
+            if (lower != null && lower.getKey() == slotTimestamp) {
+                history.put(slotTimestamp, lower.getValue());
+                continue;
+            }
+            final Map.Entry<Long, Map<String, BatteryHistEntry>> upper =
+                    snapshots.ceilingEntry(slotTimestamp);
+            if (upper == null) {
+                continue;
+            }
+
+            final double ratio = lower == null ? 1d
+                    : (double) (slotTimestamp - lower.getKey())
+                            / (upper.getKey() - lower.getKey());
+            final Map<String, BatteryHistEntry> slot = new HashMap<>();
+            for (Map.Entry<String, BatteryHistEntry> entry : upper.getValue().entrySet()) {
+                final BatteryHistEntry lowerEntry =
+                        lower == null ? null : lower.getValue().get(entry.getKey());
+                slot.put(entry.getKey(), BatteryHistEntry.interpolate(slotTimestamp,
+                        upper.getKey(), ratio, lowerEntry, entry.getValue()));
+            }
+            history.put(slotTimestamp, slot);
+        }
+        return history;
+    }
+}
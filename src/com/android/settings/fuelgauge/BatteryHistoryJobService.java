@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.android.settings.fuelgauge;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.BatteryStatsManager;
+import android.os.BatteryUsageStats;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settings.R;
+import com.android.settings.Utils;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A JobService to periodically record snapshots of the battery usage into
+ * {@link BatteryHistoryDatabaseManager}, which backs the battery usage chart.
+ */
+public class BatteryHistoryJobService extends JobService {
+    private static final String TAG = "BatteryHistoryJobService";
+
+    @VisibleForTesting
+    static final long SNAPSHOT_FREQUENCY_MS = TimeUnit.MINUTES.toMillis(30);
+
+    /** Schedules the periodic snapshots, unless they are already scheduled. */
+    public static void scheduleSnapshots(Context context) {
+        final JobScheduler jobScheduler = context.getSystemService(JobScheduler.class);
+        // Don't schedule it if it already exists, to make sure it runs periodically even after
+        // reboot
+        if (jobScheduler == null
+                || jobScheduler.getPendingJob(R.integer.job_battery_history_snapshot) != null) {
+            return;
+        }
+
+        final ComponentName component = new ComponentName(context, BatteryHistoryJobService.class);
+        final JobInfo.Builder jobBuilder =
+                new JobInfo.Builder(R.integer.job_battery_history_snapshot, component)
+                        .setPeriodic(SNAPSHOT_FREQUENCY_MS)
+                        .setPersisted(true);
+        if (jobScheduler.schedule(jobBuilder.build()) != JobScheduler.RESULT_SUCCESS) {
+            Log.i(TAG, "Battery history snapshot job service schedule failed.");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        final Context context = getApplicationContext();
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final long timestamp = System.currentTimeMillis();
+            final BatteryHistoryDatabaseManager databaseManager =
+                    BatteryHistoryDatabaseManager.getInstance(context);
+            final int insertedCount =
+                    databaseManager.insertSnapshot(collectSnapshot(context, timestamp));
+            databaseManager.pruneSnapshots(timestamp);
+            Log.d(TAG, "onStartJob() recorded " + insertedCount + " entries in "
+                    + (System.currentTimeMillis() - timestamp) + "/ms");
+            jobFinished(params, false /* wantsReschedule */);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        return false;
+    }
+
+    /**
+     * Returns the rows of a snapshot of the current battery usage. Consumers without any usage
+     * are left out, a missing entry is read as no usage.
+     */
+    @WorkerThread
+    @VisibleForTesting
+    static List<ContentValues> collectSnapshot(Context context, long timestamp) {
+        final Intent batteryIntent =
+                context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (batteryIntent == null) {
+            return new ArrayList<>();
+        }
+        final int batteryLevel = Utils.getBatteryLevel(batteryIntent);
+        final int batteryStatus = batteryIntent.getIntExtra(
+                BatteryManager.EXTRA_STATUS, BatteryManager.BATTERY_STATUS_UNKNOWN);
+        final int batteryHealth = batteryIntent.getIntExtra(
+                BatteryManager.EXTRA_HEALTH, BatteryManager.BATTERY_HEALTH_UNKNOWN);
+        final long bootTimestamp = SystemClock.elapsedRealtime();
+
+        final BatteryUsageStats batteryUsageStats = getBatteryUsageStats(context);
+        final List<BatteryEntry> batteryEntries = batteryUsageStats == null ? null
+                : new BatteryAppListPreferenceController(context, null /* preferenceKey */,
+                        null /* lifecycle */, null /* activity */, null /* fragment */)
+                        .getBatteryEntryList(batteryUsageStats, true /* showAllApps */);
+
+        final List<ContentValues> snapshot = new ArrayList<>();
+        if (batteryEntries != null) {
+            for (BatteryEntry entry : batteryEntries) {
+                if (entry.getConsumedPower() == 0
+                        && entry.getTimeInForegroundMs() == 0
+                        && entry.getTimeInBackgroundMs() == 0) {
+                    continue;
+                }
+                snapshot.add(ConvertUtils.convert(entry, batteryUsageStats, batteryLevel,
+                        batteryStatus, batteryHealth, bootTimestamp, timestamp));
+            }
+        }
+        if (snapshot.isEmpty()) {
+            // Records the battery level even without any usage data.
+            snapshot.add(ConvertUtils.convert(null /* entry */, null /* batteryUsageStats */,
+                    batteryLevel, batteryStatus, batteryHealth, bootTimestamp, timestamp));
+        }
+        return snapshot;
+    }
+
+    private static BatteryUsageStats getBatteryUsageStats(Context context) {
+        final BatteryStatsManager batteryStatsManager =
+                context.getSystemService(BatteryStatsManager.class);
+        try {
+            return batteryStatsManager.getBatteryUsageStats();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "collectSnapshot() for getBatteryUsageStats()", e);
+            return null;
+        }
+    }
+}
@@ -32,7 +32,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
-import com.android.internal.os.BatteryStatsHistoryIterator;
 import com.android.settings.Utils;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.widget.UsageView;
@@ -58,6 +57,7 @@ public class BatteryInfo {
     public String suggestionLabel;
     private boolean mCharging;
     private BatteryUsageStats mBatteryUsageStats;
+    private BatteryHistoryBuffer mHistoryBuffer;
     private static final String LOG_TAG = "BatteryInfo";
     private long timePeriod;
 
@@ -72,11 +72,15 @@ public class BatteryInfo {
             long startTime;
             int lastTime = -1;
             byte lastLevel;
+            // Time covered by one pixel of the graph, points closer than that are merged.
+            int pointInterval = 1;
 
             @Override
             public void onParsingStarted(long startTime, long endTime) {
                 this.startTime = startTime;
                 timePeriod = endTime - startTime;
+                final int width = view.getWidth();
+                pointInterval = width > 0 ? Math.max(1, (int) (timePeriod / width)) : 1;
                 view.clearPaths();
                 // Initially configure the graph for history only.
                 view.configureGraph((int) timePeriod, 100);
@@ -86,7 +90,21 @@ public class BatteryInfo {
             public void onDataPoint(long time, HistoryItem record) {
                 lastTime = (int) time;
                 lastLevel = record.batteryLevel;
-                points.put(lastTime, lastLevel);
+                addPoint(lastTime, lastLevel);
+            }
+
+            private void addPoint(int time, int level) {
+                final int size = points.size();
+                if (size > 0
+                        && time / pointInterval == points.keyAt(size - 1) / pointInterval) {
+                    // Keeps only the latest point of each pixel.
+                    points.removeAt(size - 1);
+                } else if (size > 1 && points.valueAt(size - 1) == level
+                        && points.valueAt(size - 2) == level) {
+                    // The middle point of a flat segment doesn't change the path.
+                    points.removeAt(size - 1);
+                }
+                points.put(time, level);
             }
 
             @Override
@@ -345,66 +363,27 @@ public class BatteryInfo {
     /**
      * Iterates over battery history included in the BatteryUsageStats that this object
      * was initialized with.
+     *
+     * The history is read once into a {@link BatteryHistoryBuffer}, which resolves the wall time
+     * bounds on the way, and the buffer is reused by the next calls.
      */
     public void parseBatteryHistory(BatteryDataParser... parsers) {
-        long startWalltime = 0;
-        long endWalltime = 0;
-        long historyStart = 0;
-        long historyEnd = 0;
-        long curWalltime = startWalltime;
-        long lastWallTime = 0;
-        long lastRealtime = 0;
-        int lastInteresting = 0;
-        int pos = 0;
-        boolean first = true;
-        final BatteryStatsHistoryIterator iterator1 =
-                mBatteryUsageStats.iterateBatteryStatsHistory();
-        final HistoryItem rec = new HistoryItem();
-        while (iterator1.next(rec)) {
-            pos++;
-            if (first) {
-                first = false;
-                historyStart = rec.time;
-            }
-            if (rec.cmd == HistoryItem.CMD_CURRENT_TIME
-                    || rec.cmd == HistoryItem.CMD_RESET) {
-                // If there is a ridiculously large jump in time, then we won't be
-                // able to create a good chart with that data, so just ignore the
-                // times we got before and pretend like our data extends back from
-                // the time we have now.
-                // Also, if we are getting a time change and we are less than 5 minutes
-                // since the start of the history real time, then also use this new
-                // time to compute the base time, since whatever time we had before is
-                // pretty much just noise.
-                if (rec.currentTime > (lastWallTime + (180 * 24 * 60 * 60 * 1000L))
-                        || rec.time < (historyStart + (5 * 60 * 1000L))) {
-                    startWalltime = 0;
-                }
-                lastWallTime = rec.currentTime;
-                lastRealtime = rec.time;
-                if (startWalltime == 0) {
-                    startWalltime = lastWallTime - (lastRealtime - historyStart);
-                }
-            }
-            if (rec.isDeltaData()) {
-                lastInteresting = pos;
-                historyEnd = rec.time;
-            }
-        }
-
-        endWalltime = lastWallTime + historyEnd - lastRealtime;
-
-        int i = 0;
-        final int N = lastInteresting;
+        final BatteryHistoryBuffer buffer = getHistoryBuffer();
+        final long startWalltime = buffer.getStartWalltime();
+        final long endWalltime = buffer.getEndWalltime();
+        final long historyStart = buffer.getHistoryStart();
+        long curWalltime = 0;
+        long lastRealtime = buffer.getLastRealtime();
 
         for (int j = 0; j < parsers.length; j++) {
             parsers[j].onParsingStarted(startWalltime, endWalltime);
         }
 
         if (endWalltime > startWalltime) {
-            final BatteryStatsHistoryIterator iterator2 =
-                    mBatteryUsageStats.iterateBatteryStatsHistory();
-            while (iterator2.next(rec) && i < N) {
+            final HistoryItem rec = new HistoryItem();
+            final int N = buffer.size();
+            for (int i = 0; i < N; i++) {
+                buffer.get(i, rec);
                 if (rec.isDeltaData()) {
                     curWalltime += rec.time - lastRealtime;
                     lastRealtime = rec.time;
@@ -435,7 +414,6 @@ public class BatteryInfo {
                         }
                     }
                 }
-                i++;
             }
         }
 
@@ -443,4 +421,14 @@ public class BatteryInfo {
             parsers[j].onParsingDone();
         }
     }
+
+    private synchronized BatteryHistoryBuffer getHistoryBuffer() {
+        if (mHistoryBuffer == null) {
+            final long startTime = System.currentTimeMillis();
+            mHistoryBuffer = BatteryHistoryBuffer.read(
+                    mBatteryUsageStats.iterateBatteryStatsHistory());
+            BatteryUtils.logRuntime(LOG_TAG, "time for reading battery history", startTime);
+        }
+        return mHistoryBuffer;
+    }
 }
@@ -33,7 +33,6 @@ import java.lang.annotation.RetentionPolicy;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -45,8 +44,6 @@ public final class ConvertUtils {
     private static final boolean DEBUG = false;
     private static final String TAG = "ConvertUtils";
     private static final Map<String, BatteryHistEntry> EMPTY_BATTERY_MAP = new HashMap<>();
-    private static final BatteryHistEntry EMPTY_BATTERY_HIST_ENTRY =
-        new BatteryHistEntry(new ContentValues());
     // Maximum total time value for each slot cumulative data at most 2 hours.
     private static final float TOTAL_TIME_THRESHOLD = DateUtils.HOUR_IN_MILLIS * 2;
 
@@ -157,76 +154,85 @@ public final class ConvertUtils {
         //     Math.abs(timestamp[i+1] data - timestamp[i] data);
         // since we want to aggregate every two hours data into a single time slot.
         final int timestampStride = 2;
+        final int timestampSize = timeSlotSize * timestampStride + 1;
+        // Fetches BatteryHistEntry data of all timestamps and interns the keys of all apps
+        // into int ids once, so the diff below only walks primitive arrays.
+        final List<Map<String, BatteryHistEntry>> batteryHistMaps =
+            new ArrayList<>(timestampSize);
+        final ArraySet<String> allBatteryHistEntryKeys = new ArraySet<>();
+        for (int index = 0; index < timestampSize; index++) {
+            final Map<String, BatteryHistEntry> batteryHistMap =
+                batteryHistoryMap.getOrDefault(
+                    Long.valueOf(batteryHistoryKeys[index]), EMPTY_BATTERY_MAP);
+            batteryHistMaps.add(batteryHistMap);
+            allBatteryHistEntryKeys.addAll(batteryHistMap.keySet());
+        }
+        final UsageTable usageTable =
+            new UsageTable(batteryHistMaps, allBatteryHistEntryKeys);
+        final int appSize = usageTable.mAppSize;
+
+        // Per time slot diff usage data, indexed by [slot * appSize + app].
+        final long[] slotForegroundUsageTimes = new long[timeSlotSize * appSize];
+        final long[] slotBackgroundUsageTimes = new long[timeSlotSize * appSize];
+        final double[] slotConsumePowers = new double[timeSlotSize * appSize];
+        final BatteryHistEntry[] slotBatteryHistEntries =
+            new BatteryHistEntry[timeSlotSize * appSize];
+        final double[] slotTotalConsumePowers = new double[timeSlotSize];
+        final boolean[] slotHasEnoughData = new boolean[timeSlotSize];
+
+        // Aggregated 24 hours usage data, indexed in the order the keys are first seen.
+        final Map<String, Integer> allDayIndexes = new HashMap<>();
+        final List<BatteryHistEntry> allDayBatteryHistEntries = new ArrayList<>();
+        final long[] allDayForegroundUsageTimes = new long[appSize];
+        final long[] allDayBackgroundUsageTimes = new long[appSize];
+        final double[] allDayConsumePowers = new double[appSize];
+        double allDayTotalConsumePower = 0.0;
+
         for (int index = 0; index < timeSlotSize; index++) {
-            final Long currentTimestamp =
-                Long.valueOf(batteryHistoryKeys[index * timestampStride]);
-            final Long nextTimestamp =
-                Long.valueOf(batteryHistoryKeys[index * timestampStride + 1]);
-            final Long nextTwoTimestamp =
-                Long.valueOf(batteryHistoryKeys[index * timestampStride + 2]);
-            // Fetches BatteryHistEntry data from corresponding time slot.
-            final Map<String, BatteryHistEntry> currentBatteryHistMap =
-                batteryHistoryMap.getOrDefault(currentTimestamp, EMPTY_BATTERY_MAP);
-            final Map<String, BatteryHistEntry> nextBatteryHistMap =
-                batteryHistoryMap.getOrDefault(nextTimestamp, EMPTY_BATTERY_MAP);
-            final Map<String, BatteryHistEntry> nextTwoBatteryHistMap =
-                batteryHistoryMap.getOrDefault(nextTwoTimestamp, EMPTY_BATTERY_MAP);
+            final int current = index * timestampStride;
+            final int next = current + 1;
+            final int nextTwo = current + 2;
             // We should not get the empty list since we have at least one fake data to record
             // the battery level and status in each time slot, the empty list is used to
             // represent there is no enough data to apply interpolation arithmetic.
-            if (currentBatteryHistMap.isEmpty()
-                    || nextBatteryHistMap.isEmpty()
-                    || nextTwoBatteryHistMap.isEmpty()) {
-                resultMap.put(Integer.valueOf(index), new ArrayList<BatteryDiffEntry>());
+            if (batteryHistMaps.get(current).isEmpty()
+                    || batteryHistMaps.get(next).isEmpty()
+                    || batteryHistMaps.get(nextTwo).isEmpty()) {
                 continue;
             }
-
-            // Collects all keys in these three time slot records as all populations.
-            final Set<String> allBatteryHistEntryKeys = new ArraySet<>();
-            allBatteryHistEntryKeys.addAll(currentBatteryHistMap.keySet());
-            allBatteryHistEntryKeys.addAll(nextBatteryHistMap.keySet());
-            allBatteryHistEntryKeys.addAll(nextTwoBatteryHistMap.keySet());
-
-            double totalConsumePower = 0.0;
-            final List<BatteryDiffEntry> batteryDiffEntryList = new ArrayList<>();
-            // Adds a specific time slot BatteryDiffEntry list into result map.
-            resultMap.put(Integer.valueOf(index), batteryDiffEntryList);
+            slotHasEnoughData[index] = true;
 
             // Calculates all packages diff usage data in a specific time slot.
-            for (String key : allBatteryHistEntryKeys) {
-                final BatteryHistEntry currentEntry =
-                    currentBatteryHistMap.getOrDefault(key, EMPTY_BATTERY_HIST_ENTRY);
-                final BatteryHistEntry nextEntry =
-                    nextBatteryHistMap.getOrDefault(key, EMPTY_BATTERY_HIST_ENTRY);
-                final BatteryHistEntry nextTwoEntry =
-                    nextTwoBatteryHistMap.getOrDefault(key, EMPTY_BATTERY_HIST_ENTRY);
+            for (int app = 0; app < appSize; app++) {
+                final BatteryHistEntry selectedBatteryEntry = selectBatteryHistEntry(
+                    usageTable.getEntry(current, app),
+                    usageTable.getEntry(next, app),
+                    usageTable.getEntry(nextTwo, app));
+                if (selectedBatteryEntry == null) {
+                    continue;
+                }
                 // Cumulative values is a specific time slot for a specific app.
                 long foregroundUsageTimeInMs =
                     getDiffValue(
-                        currentEntry.mForegroundUsageTimeInMs,
-                        nextEntry.mForegroundUsageTimeInMs,
-                        nextTwoEntry.mForegroundUsageTimeInMs);
+                        usageTable.getForegroundUsageTime(current, app),
+                        usageTable.getForegroundUsageTime(next, app),
+                        usageTable.getForegroundUsageTime(nextTwo, app));
                 long backgroundUsageTimeInMs =
                     getDiffValue(
-                        currentEntry.mBackgroundUsageTimeInMs,
-                        nextEntry.mBackgroundUsageTimeInMs,
-                        nextTwoEntry.mBackgroundUsageTimeInMs);
+                        usageTable.getBackgroundUsageTime(current, app),
+                        usageTable.getBackgroundUsageTime(next, app),
+                        usageTable.getBackgroundUsageTime(nextTwo, app));
                 double consumePower =
                     getDiffValue(
-                        currentEntry.mConsumePower,
-                        nextEntry.mConsumePower,
-                        nextTwoEntry.mConsumePower);
+                        usageTable.getConsumePower(current, app),
+                        usageTable.getConsumePower(next, app),
+                        usageTable.getConsumePower(nextTwo, app));
                 // Excludes entry since we don't have enough data to calculate.
                 if (foregroundUsageTimeInMs == 0
                         && backgroundUsageTimeInMs == 0
                         && consumePower == 0) {
                     continue;
                 }
-                final BatteryHistEntry selectedBatteryEntry =
-                    selectBatteryHistEntry(currentEntry, nextEntry, nextTwoEntry);
-                if (selectedBatteryEntry == null) {
-                    continue;
-                }
                 // Forces refine the cumulative value since it may introduce deviation
                 // error since we will apply the interpolation arithmetic.
                 final float totalUsageTimeInMs =
@@ -237,7 +243,7 @@ public final class ConvertUtils {
                         Log.w(TAG, String.format("abnormal usage time %d|%d for:\n%s",
                                 Duration.ofMillis(foregroundUsageTimeInMs).getSeconds(),
                                 Duration.ofMillis(backgroundUsageTimeInMs).getSeconds(),
-                                currentEntry));
+                                selectedBatteryEntry));
                     }
                     foregroundUsageTimeInMs =
                         Math.round(foregroundUsageTimeInMs * ratio);
@@ -245,83 +251,124 @@ public final class ConvertUtils {
                         Math.round(backgroundUsageTimeInMs * ratio);
                     consumePower = consumePower * ratio;
                 }
-                totalConsumePower += consumePower;
-                batteryDiffEntryList.add(
-                    new BatteryDiffEntry(
-                        context,
-                        foregroundUsageTimeInMs,
-                        backgroundUsageTimeInMs,
-                        consumePower,
-                        selectedBatteryEntry));
+                final int slotIndex = index * appSize + app;
+                slotForegroundUsageTimes[slotIndex] = foregroundUsageTimeInMs;
+                slotBackgroundUsageTimes[slotIndex] = backgroundUsageTimeInMs;
+                slotConsumePowers[slotIndex] = consumePower;
+                slotBatteryHistEntries[slotIndex] = selectedBatteryEntry;
+                slotTotalConsumePowers[index] += consumePower;
+
+                // Sums up the 24 hours data, keeps the first seen entry for each key.
+                final String key = selectedBatteryEntry.getKey();
+                Integer allDayIndex = allDayIndexes.get(key);
+                if (allDayIndex == null) {
+                    allDayIndex = Integer.valueOf(allDayBatteryHistEntries.size());
+                    allDayIndexes.put(key, allDayIndex);
+                    allDayBatteryHistEntries.add(selectedBatteryEntry);
+                }
+                allDayForegroundUsageTimes[allDayIndex] += foregroundUsageTimeInMs;
+                allDayBackgroundUsageTimes[allDayIndex] += backgroundUsageTimeInMs;
+                allDayConsumePowers[allDayIndex] += consumePower;
+                allDayTotalConsumePower += consumePower;
             }
-            // Sets total consume power data into all BatteryDiffEntry in the same slot.
-            for (BatteryDiffEntry diffEntry : batteryDiffEntryList) {
-                diffEntry.setTotalConsumePower(totalConsumePower);
+        }
+
+        // Only creates BatteryDiffEntry for the rows which will be shown.
+        final Set<CharSequence> backgroundUsageTimeHideList =
+            purgeLowPercentageAndFakeData
+                ? FeatureFactory.getFactory(context)
+                        .getPowerUsageFeatureProvider(context)
+                        .getHideBackgroundUsageTimeSet(context)
+                : null;
+        for (int index = 0; index < timeSlotSize; index++) {
+            final List<BatteryDiffEntry> batteryDiffEntryList = new ArrayList<>();
+            resultMap.put(Integer.valueOf(index), batteryDiffEntryList);
+            if (!slotHasEnoughData[index]) {
+                continue;
+            }
+            for (int app = 0; app < appSize; app++) {
+                final int slotIndex = index * appSize + app;
+                if (slotBatteryHistEntries[slotIndex] == null) {
+                    continue;
+                }
+                addBatteryDiffEntry(
+                    context,
+                    batteryDiffEntryList,
+                    slotForegroundUsageTimes[slotIndex],
+                    slotBackgroundUsageTimes[slotIndex],
+                    slotConsumePowers[slotIndex],
+                    slotTotalConsumePowers[index],
+                    slotBatteryHistEntries[slotIndex],
+                    purgeLowPercentageAndFakeData,
+                    backgroundUsageTimeHideList);
             }
         }
-        insert24HoursData(BatteryChartView.SELECTED_INDEX_ALL, resultMap);
-        if (purgeLowPercentageAndFakeData) {
-            purgeLowPercentageAndFakeData(context, resultMap);
+        final List<BatteryDiffEntry> allDayBatteryDiffEntryList = new ArrayList<>();
+        for (Integer allDayIndex : allDayIndexes.values()) {
+            addBatteryDiffEntry(
+                context,
+                allDayBatteryDiffEntryList,
+                allDayForegroundUsageTimes[allDayIndex],
+                allDayBackgroundUsageTimes[allDayIndex],
+                allDayConsumePowers[allDayIndex],
+                allDayTotalConsumePower,
+                allDayBatteryHistEntries.get(allDayIndex),
+                purgeLowPercentageAndFakeData,
+                backgroundUsageTimeHideList);
         }
+        resultMap.put(
+            Integer.valueOf(BatteryChartView.SELECTED_INDEX_ALL), allDayBatteryDiffEntryList);
         return resultMap;
     }
 
-    private static void insert24HoursData(
-            final int desiredIndex,
-            final Map<Integer, List<BatteryDiffEntry>> indexedUsageMap) {
-        final Map<String, BatteryDiffEntry> resultMap = new HashMap<>();
-        double totalConsumePower = 0.0;
-        // Loops for all BatteryDiffEntry and aggregate them together.
-        for (List<BatteryDiffEntry> entryList : indexedUsageMap.values()) {
-            for (BatteryDiffEntry entry : entryList) {
-                final String key = entry.mBatteryHistEntry.getKey();
-                final BatteryDiffEntry oldBatteryDiffEntry = resultMap.get(key);
-                // Creates new BatteryDiffEntry if we don't have it.
-                if (oldBatteryDiffEntry == null) {
-                    resultMap.put(key, entry.clone());
-                } else {
-                    // Sums up some fields data into the existing one.
-                    oldBatteryDiffEntry.mForegroundUsageTimeInMs +=
-                        entry.mForegroundUsageTimeInMs;
-                    oldBatteryDiffEntry.mBackgroundUsageTimeInMs +=
-                        entry.mBackgroundUsageTimeInMs;
-                    oldBatteryDiffEntry.mConsumePower += entry.mConsumePower;
-                }
-                totalConsumePower += entry.mConsumePower;
+    // Adds a BatteryDiffEntry into the list, unless it is low percentage data or fake usage
+    // data (which will be zero value) and we are requested to purge them.
+    private static void addBatteryDiffEntry(
+            final Context context,
+            final List<BatteryDiffEntry> batteryDiffEntryList,
+            final long foregroundUsageTimeInMs,
+            final long backgroundUsageTimeInMs,
+            final double consumePower,
+            final double totalConsumePower,
+            final BatteryHistEntry batteryHistEntry,
+            final boolean purgeLowPercentageAndFakeData,
+            final Set<CharSequence> backgroundUsageTimeHideList) {
+        final String packageName = getPackageName(batteryHistEntry);
+        if (purgeLowPercentageAndFakeData) {
+            final double percentOfTotal = totalConsumePower == 0
+                ? 0 : (consumePower / totalConsumePower) * 100.0;
+            if (percentOfTotal < PERCENTAGE_OF_TOTAL_THRESHOLD
+                    || FAKE_PACKAGE_NAME.equals(packageName)) {
+                return;
             }
         }
-        final List<BatteryDiffEntry> resultList = new ArrayList<>(resultMap.values());
-        // Sets total 24 hours consume power data into all BatteryDiffEntry.
-        for (BatteryDiffEntry entry : resultList) {
-            entry.setTotalConsumePower(totalConsumePower);
+        final BatteryDiffEntry entry =
+            new BatteryDiffEntry(
+                context,
+                foregroundUsageTimeInMs,
+                backgroundUsageTimeInMs,
+                consumePower,
+                batteryHistEntry);
+        entry.setTotalConsumePower(totalConsumePower);
+        if (purgeLowPercentageAndFakeData
+                && packageName != null
+                && !backgroundUsageTimeHideList.isEmpty()
+                && backgroundUsageTimeHideList.contains(packageName)) {
+            entry.mBackgroundUsageTimeInMs = 0;
         }
-        indexedUsageMap.put(Integer.valueOf(desiredIndex), resultList);
+        batteryDiffEntryList.add(entry);
     }
 
-    // Removes low percentage data and fake usage data, which will be zero value.
-    private static void purgeLowPercentageAndFakeData(
-            final Context context,
-            final Map<Integer, List<BatteryDiffEntry>> indexedUsageMap) {
-        final Set<CharSequence> backgroundUsageTimeHideList =
-                FeatureFactory.getFactory(context)
-                        .getPowerUsageFeatureProvider(context)
-                        .getHideBackgroundUsageTimeSet(context);
-        for (List<BatteryDiffEntry> entries : indexedUsageMap.values()) {
-            final Iterator<BatteryDiffEntry> iterator = entries.iterator();
-            while (iterator.hasNext()) {
-                final BatteryDiffEntry entry = iterator.next();
-                if (entry.getPercentOfTotal() < PERCENTAGE_OF_TOTAL_THRESHOLD
-                        || FAKE_PACKAGE_NAME.equals(entry.getPackageName())) {
-                    iterator.remove();
-                }
-                final String packageName = entry.getPackageName();
-                if (packageName != null
-                        && !backgroundUsageTimeHideList.isEmpty()
-                        && backgroundUsageTimeHideList.contains(packageName)) {
-                  entry.mBackgroundUsageTimeInMs = 0;
-                }
-            }
+    // Same as BatteryDiffEntry.getPackageName() before the label and icon are loaded.
+    private static String getPackageName(BatteryHistEntry batteryHistEntry) {
+        final String packageName = batteryHistEntry.mPackageName;
+        if (packageName == null) {
+            return packageName;
         }
+        // Removes potential appended process name in the PackageName.
+        final String[] splittedPackageNames = packageName.split(":");
+        return splittedPackageNames != null && splittedPackageNames.length > 0
+            ? splittedPackageNames[0] : packageName;
     }
 
     private static long getDiffValue(long v1, long v2, long v3) {
@@ -336,13 +383,63 @@ public final class ConvertUtils {
             BatteryHistEntry entry1,
             BatteryHistEntry entry2,
             BatteryHistEntry entry3) {
-        if (entry1 != null && entry1 != EMPTY_BATTERY_HIST_ENTRY) {
+        if (entry1 != null) {
             return entry1;
-        } else if (entry2 != null && entry2 != EMPTY_BATTERY_HIST_ENTRY) {
+        } else if (entry2 != null) {
             return entry2;
         } else {
-            return entry3 != null && entry3 != EMPTY_BATTERY_HIST_ENTRY
-                ? entry3 : null;
+            return entry3;
+        }
+    }
+
+    /**
+     * Cumulative usage data of all apps in all timestamps, stored in primitive arrays indexed
+     * by [timestamp * appSize + app] where the app ids are interned from the entry keys.
+     */
+    private static final class UsageTable {
+        final int mAppSize;
+        final long[] mForegroundUsageTimes;
+        final long[] mBackgroundUsageTimes;
+        final double[] mConsumePowers;
+        final BatteryHistEntry[] mEntries;
+
+        UsageTable(List<Map<String, BatteryHistEntry>> batteryHistMaps, ArraySet<String> keys) {
+            mAppSize = keys.size();
+            final int size = batteryHistMaps.size() * mAppSize;
+            mForegroundUsageTimes = new long[size];
+            mBackgroundUsageTimes = new long[size];
+            mConsumePowers = new double[size];
+            mEntries = new BatteryHistEntry[size];
+            for (int timestamp = 0; timestamp < batteryHistMaps.size(); timestamp++) {
+                for (Map.Entry<String, BatteryHistEntry> mapEntry
+                        : batteryHistMaps.get(timestamp).entrySet()) {
+                    final BatteryHistEntry entry = mapEntry.getValue();
+                    if (entry == null) {
+                        continue;
+                    }
+                    final int index = timestamp * mAppSize + keys.indexOf(mapEntry.getKey());
+                    mForegroundUsageTimes[index] = entry.mForegroundUsageTimeInMs;
+                    mBackgroundUsageTimes[index] = entry.mBackgroundUsageTimeInMs;
+                    mConsumePowers[index] = entry.mConsumePower;
+                    mEntries[index] = entry;
+                }
+            }
+        }
+
+        long getForegroundUsageTime(int timestamp, int app) {
+            return mForegroundUsageTimes[timestamp * mAppSize + app];
+        }
+
+        long getBackgroundUsageTime(int timestamp, int app) {
+            return mBackgroundUsageTimes[timestamp * mAppSize + app];
+        }
+
+        double getConsumePower(int timestamp, int app) {
+            return mConsumePowers[timestamp * mAppSize + app];
+        }
+
+        BatteryHistEntry getEntry(int timestamp, int app) {
+            return mEntries[timestamp * mAppSize + app];
         }
     }
 
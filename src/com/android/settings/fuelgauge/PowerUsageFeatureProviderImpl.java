@@ -140,7 +140,7 @@ public class PowerUsageFeatureProviderImpl implements PowerUsageFeatureProvider
 
     @Override
     public boolean isChartGraphEnabled(Context context) {
-        return false;
+        return context.getResources().getBoolean(R.bool.config_battery_chart_graph_enabled);
     }
 
     @Override
@@ -160,12 +160,19 @@ public class PowerUsageFeatureProviderImpl implements PowerUsageFeatureProvider
 
     @Override
     public Map<Long, Map<String, BatteryHistEntry>> getBatteryHistory(Context context) {
-        return null;
+        if (!isChartGraphEnabled(context)) {
+            // Nothing shows the history, don't record it.
+            return null;
+        }
+        // Starts recording the history the first time it is needed.
+        BatteryHistoryJobService.scheduleSnapshots(context);
+        return BatteryHistoryDatabaseManager.getInstance(context)
+                .getBatteryHistory(System.currentTimeMillis());
     }
 
     @Override
     public Uri getBatteryHistoryUri() {
-        return null;
+        return BatteryHistoryDatabaseManager.BATTERY_HISTORY_URI;
     }
 
     @Override
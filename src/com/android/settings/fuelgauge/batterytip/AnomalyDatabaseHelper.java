@@ -33,7 +33,7 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "BatteryDatabaseHelper";
 
     private static final String DATABASE_NAME = "battery_settings.db";
-    private static final int DATABASE_VERSION = 5;
+    private static final int DATABASE_VERSION = 6;
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({State.NEW,
@@ -56,6 +56,10 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
         String TABLE_ACTION = "action";
     }
 
+    public interface Indices {
+        String INDEX_ANOMALY_STATE_TIME = "anomaly_state_time_index";
+    }
+
     public interface AnomalyColumns {
         /**
          * The package name of the anomaly app
@@ -98,6 +102,18 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
                     + AnomalyColumns.ANOMALY_STATE + "," + AnomalyColumns.TIME_STAMP_MS + ")"
                     + ")";
 
+    // Index for queries of the anomalies in a state after a specific time. The queried state is
+    // compared with equality, so it is the leading column.
+    private static final String CREATE_ANOMALY_STATE_TIME_INDEX =
+            "CREATE INDEX IF NOT EXISTS " +
+                    Indices.INDEX_ANOMALY_STATE_TIME +
+                    " ON " +
+                    Tables.TABLE_ANOMALY +
+                    "(" +
+                    AnomalyColumns.ANOMALY_STATE +
+                    "," +
+                    AnomalyColumns.TIME_STAMP_MS +
+                    ")";
 
     public interface ActionColumns {
         /**
@@ -145,6 +161,8 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     private AnomalyDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Lets the battery tip loader read while anomalies are being written.
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -154,6 +172,11 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion == 5) {
+            // Version 6 only adds the index, keep the recorded anomalies and actions.
+            db.execSQL(CREATE_ANOMALY_STATE_TIME_INDEX);
+            return;
+        }
         if (oldVersion < DATABASE_VERSION) {
             Log.w(TAG, "Detected schema version '" + oldVersion + "'. " +
                     "Index needs to be rebuilt for schema version '" + newVersion + "'.");
@@ -177,6 +200,7 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     private void bootstrapDB(SQLiteDatabase db) {
         db.execSQL(CREATE_ANOMALY_TABLE);
+        db.execSQL(CREATE_ANOMALY_STATE_TIME_INDEX);
         db.execSQL(CREATE_ACTION_TABLE);
         Log.i(TAG, "Bootstrapped database");
     }
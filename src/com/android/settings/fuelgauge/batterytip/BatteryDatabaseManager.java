@@ -33,6 +33,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.text.TextUtils;
 import android.util.ArrayMap;
+import android.util.Log;
 import android.util.SparseLongArray;
 
 import androidx.annotation.VisibleForTesting;
@@ -47,13 +48,18 @@ import java.util.Map;
 /**
  * Database manager for battery data. Now it only contains anomaly data stored in {@link AppInfo}.
  *
- * This manager may be accessed by multi-threads. All the database related methods are synchronized
- * so each operation won't be interfered by other threads.
+ * This manager may be accessed by multi-threads. All the database write methods are synchronized
+ * so each operation won't be interfered by other threads. The database uses write-ahead logging,
+ * so queries are not synchronized and can run concurrently with the writes.
  */
 public class BatteryDatabaseManager {
+    private static final String TAG = "BatteryDatabaseManager";
+
     private static BatteryDatabaseManager sSingleton;
 
     private AnomalyDatabaseHelper mDatabaseHelper;
+    // Anomalies enqueued by enqueueAnomaly() and not written into the database yet.
+    private final List<ContentValues> mPendingAnomalies = new ArrayList<>();
 
     private BatteryDatabaseManager(Context context) {
         mDatabaseHelper = AnomalyDatabaseHelper.getInstance(context);
@@ -85,20 +91,78 @@ public class BatteryDatabaseManager {
             int anomalyState,
             long timestampMs) {
         final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(UID, uid);
-        values.put(PACKAGE_NAME, packageName);
-        values.put(ANOMALY_TYPE, type);
-        values.put(ANOMALY_STATE, anomalyState);
-        values.put(TIME_STAMP_MS, timestampMs);
+        final ContentValues values =
+                createAnomalyValues(uid, packageName, type, anomalyState, timestampMs);
 
         return db.insertWithOnConflict(TABLE_ANOMALY, null, values, CONFLICT_IGNORE) != -1;
     }
 
+    /**
+     * Enqueue an anomaly log, which is written into database by the next
+     * {@link #flushPendingAnomalies()}. It doesn't touch the database, so it never waits for
+     * other database operations.
+     *
+     * @see #insertAnomaly(int, String, int, int, long)
+     */
+    public void enqueueAnomaly(int uid, String packageName, int type, int anomalyState,
+            long timestampMs) {
+        final ContentValues values =
+                createAnomalyValues(uid, packageName, type, anomalyState, timestampMs);
+        synchronized (mPendingAnomalies) {
+            mPendingAnomalies.add(values);
+        }
+    }
+
+    /**
+     * Write all the enqueued anomaly logs into database in a single transaction. The logs are
+     * kept enqueued for the next flush if the transaction fails.
+     *
+     * @return the number of inserted anomalies
+     */
+    public synchronized int flushPendingAnomalies() {
+        final List<ContentValues> pendingAnomalies;
+        synchronized (mPendingAnomalies) {
+            if (mPendingAnomalies.isEmpty()) {
+                return 0;
+            }
+            pendingAnomalies = new ArrayList<>(mPendingAnomalies);
+            mPendingAnomalies.clear();
+        }
+
+        int insertedCount = 0;
+        boolean successful = false;
+        try {
+            final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (ContentValues values : pendingAnomalies) {
+                    if (db.insertWithOnConflict(TABLE_ANOMALY, null, values, CONFLICT_IGNORE)
+                            != -1) {
+                        insertedCount++;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            successful = true;
+        } finally {
+            if (!successful) {
+                // Put them back ahead of the anomalies enqueued in the meantime.
+                synchronized (mPendingAnomalies) {
+                    mPendingAnomalies.addAll(0, pendingAnomalies);
+                }
+            }
+        }
+        Log.d(TAG, "flushPendingAnomalies() inserted " + insertedCount + "/"
+                + pendingAnomalies.size());
+        return insertedCount;
+    }
+
     /**
      * Query all the anomalies that happened after {@code timestampMsAfter} and with {@code state}.
      */
-    public synchronized List<AppInfo> queryAllAnomalies(long timestampMsAfter, int state) {
+    public List<AppInfo> queryAllAnomalies(long timestampMsAfter, int state) {
         final List<AppInfo> appInfos = new ArrayList<>();
         final SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
         final String[] projection = {PACKAGE_NAME, ANOMALY_TYPE, UID};
@@ -165,7 +229,7 @@ public class BatteryDatabaseManager {
      * @param type of action been performed
      * @return {@link SparseLongArray} where key is uid and value is timestamp
      */
-    public synchronized SparseLongArray queryActionTime(
+    public SparseLongArray queryActionTime(
             @AnomalyDatabaseHelper.ActionType int type) {
         final SparseLongArray timeStamps = new SparseLongArray();
         final SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
@@ -217,4 +281,15 @@ public class BatteryDatabaseManager {
 
         return db.delete(TABLE_ACTION, where, whereArgs) != 0;
     }
+
+    private static ContentValues createAnomalyValues(int uid, String packageName, int type,
+            int anomalyState, long timestampMs) {
+        final ContentValues values = new ContentValues();
+        values.put(UID, uid);
+        values.put(PACKAGE_NAME, packageName);
+        values.put(ANOMALY_TYPE, type);
+        values.put(ANOMALY_STATE, anomalyState);
+        values.put(TIME_STAMP_MS, timestampMs);
+        return values;
+    }
 }
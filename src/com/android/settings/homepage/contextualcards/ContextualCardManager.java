@@ -232,7 +232,8 @@ public class ContextualCardManager implements ContextualCardLoader.CardContentLo
     @Override
     public void onFinishCardLoading(List<ContextualCard> cards) {
         final long loadTime = System.currentTimeMillis() - mStartTime;
-        Log.d(TAG, "Total loading time = " + loadTime);
+        Log.d(TAG, "Total loading time = " + loadTime + ", "
+                + EligibleCardCheckerScheduler.getInstance().getStats());
 
         final List<ContextualCard> cardsToKeep = getCardsToKeep(cards);
 
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.homepage.contextualcards;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide scheduler running {@link EligibleCardChecker EligibleCardCheckers} on a bounded
+ * thread pool shared by all loads of the homepage.
+ *
+ * The eligibility of a card is cached for {@link #CACHE_TTL_MS} by slice uri, so loading the
+ * homepage again shortly after does not bind the same slices again. Checks which don't complete
+ * in time for a load keep running, and their results are cached for the next one.
+ */
+public class EligibleCardCheckerScheduler {
+
+    private static final String TAG = "EligibleCardScheduler";
+
+    @VisibleForTesting
+    static final long CACHE_TTL_MS = 10000;
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+    private static final int THREAD_COUNT =
+            Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private static EligibleCardCheckerScheduler sInstance;
+
+    private final ExecutorService mExecutor;
+    private final Map<Uri, CacheEntry> mCache = new ArrayMap<>();
+    private final Map<Uri, Future<CacheEntry>> mPendingChecks = new ArrayMap<>();
+    private final AtomicInteger mCacheHits = new AtomicInteger();
+    private final AtomicInteger mCacheMisses = new AtomicInteger();
+    private final AtomicInteger mTimeouts = new AtomicInteger();
+
+    /** Returns the process-wide instance. */
+    public static synchronized EligibleCardCheckerScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new EligibleCardCheckerScheduler();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    EligibleCardCheckerScheduler() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        // Don't keep idle threads around once the homepage is loaded.
+        executor.allowCoreThreadTimeOut(true);
+        mExecutor = executor;
+    }
+
+    /**
+     * Returns the eligible cards among {@code candidates} in their original order. Cards whose
+     * eligibility can't be determined within {@code timeoutMs} are dropped.
+     */
+    List<ContextualCard> filterEligibleCards(Context context, List<ContextualCard> candidates,
+            long timeoutMs) {
+        final long now = SystemClock.elapsedRealtime();
+        final ContextualCard[] results = new ContextualCard[candidates.size()];
+        final List<Integer> pendingIndices = new ArrayList<>();
+        final List<Future<CacheEntry>> futures = new ArrayList<>();
+
+        for (int i = 0; i < candidates.size(); i++) {
+            final ContextualCard candidate = candidates.get(i);
+            final CacheEntry entry = getCacheEntry(candidate, now);
+            if (entry != null) {
+                mCacheHits.incrementAndGet();
+                results[i] = entry.apply(candidate);
+                continue;
+            }
+            mCacheMisses.incrementAndGet();
+            pendingIndices.add(i);
+            futures.add(startCheck(context, candidate));
+        }
+
+        final long deadline = now + timeoutMs;
+        for (int i = 0; i < futures.size(); i++) {
+            final ContextualCard candidate = candidates.get(pendingIndices.get(i));
+            try {
+                final CacheEntry entry = futures.get(i).get(
+                        Math.max(0, deadline - SystemClock.elapsedRealtime()),
+                        TimeUnit.MILLISECONDS);
+                results[pendingIndices.get(i)] = entry.apply(candidate);
+            } catch (TimeoutException e) {
+                // Not cancelled, the result is cached for the next load when it completes.
+                mTimeouts.incrementAndGet();
+                Log.w(TAG, "Timeout getting eligible state for card: "
+                        + candidate.getSliceUri());
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Failed to get eligible states for all cards", e);
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Failed to get eligible state for card", e);
+            }
+        }
+
+        final List<ContextualCard> cards = new ArrayList<>();
+        for (ContextualCard card : results) {
+            if (card != null) {
+                cards.add(card);
+            }
+        }
+        return cards;
+    }
+
+    /** Returns a summary of the cache hits, misses and timeouts for logging. */
+    public String getStats() {
+        return "eligibility cache hits = " + mCacheHits.get()
+                + ", misses = " + mCacheMisses.get()
+                + ", timeouts = " + mTimeouts.get();
+    }
+
+    /** Drops all cached eligibility results. */
+    public void clearCache() {
+        synchronized (mCache) {
+            mCache.clear();
+        }
+    }
+
+    @VisibleForTesting
+    Callable<ContextualCard> createChecker(Context context, ContextualCard card) {
+        return new EligibleCardChecker(context, card);
+    }
+
+    /**
+     * Starts checking the eligibility of {@code candidate}, unless a check of the same slice
+     * started by a previous load is still running, and caches the result once it completes.
+     */
+    private Future<CacheEntry> startCheck(Context context, ContextualCard candidate) {
+        final Uri uri = candidate.getSliceUri();
+        synchronized (mCache) {
+            final Future<CacheEntry> pending = mPendingChecks.get(uri);
+            if (pending != null && !pending.isDone()) {
+                return pending;
+            }
+            final Callable<ContextualCard> checker = createChecker(context, candidate);
+            final Future<CacheEntry> future = mExecutor.submit(() -> {
+                try {
+                    final CacheEntry entry =
+                            new CacheEntry(checker.call(), SystemClock.elapsedRealtime());
+                    putCacheEntry(candidate, entry);
+                    return entry;
+                } finally {
+                    synchronized (mCache) {
+                        mPendingChecks.remove(uri);
+                    }
+                }
+            });
+            mPendingChecks.put(uri, future);
+            return future;
+        }
+    }
+
+    private CacheEntry getCacheEntry(ContextualCard candidate, long now) {
+        // Cards with a negative ranking score are never eligible, and are cheap to check.
+        if (candidate.getRankingScore() < 0) {
+            return null;
+        }
+        synchronized (mCache) {
+            final CacheEntry entry = mCache.get(candidate.getSliceUri());
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.mTimestamp > CACHE_TTL_MS) {
+                mCache.remove(candidate.getSliceUri());
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private void putCacheEntry(ContextualCard candidate, CacheEntry entry) {
+        if (candidate.getRankingScore() < 0) {
+            return;
+        }
+        synchronized (mCache) {
+            mCache.put(candidate.getSliceUri(), entry);
+        }
+    }
+
+    private static class CacheEntry {
+        private final boolean mEligible;
+        private final ContextualCard mCheckedCard;
+        private final long mTimestamp;
+
+        CacheEntry(ContextualCard checkedCard, long timestamp) {
+            mEligible = checkedCard != null;
+            mCheckedCard = checkedCard;
+            mTimestamp = timestamp;
+        }
+
+        /** Applies the cached eligibility and bound slice to a new candidate. */
+        ContextualCard apply(ContextualCard candidate) {
+            if (!mEligible) {
+                return null;
+            }
+            return candidate.mutate()
+                    .setSlice(mCheckedCard.getSlice())
+                    .setHasInlineAction(mCheckedCard.hasInlineAction())
+                    .build();
+        }
+    }
+}
@@ -33,9 +33,13 @@ import android.util.Log;
 
 import androidx.annotation.GuardedBy;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This is a singleton class for Carrier-Configuration cache.
@@ -65,6 +69,9 @@ public class CarrierConfigCache {
     @VisibleForTesting
     protected static CarrierConfigManager sCarrierConfigManager;
 
+    private static final AtomicLong sCacheHits = new AtomicLong();
+    private static final AtomicLong sCacheMisses = new AtomicLong();
+
     /**
      * Static method to create a singleton class for Carrier-Configuration cache.
      *
@@ -139,18 +146,39 @@ public class CarrierConfigCache {
     public PersistableBundle getConfigForSubId(int subId) {
         if (sCarrierConfigManager == null) return null;
 
-        synchronized (sCarrierConfigs) {
-            if (sCarrierConfigs.containsKey(subId)) {
-                return sCarrierConfigs.get(subId);
-            }
-            final PersistableBundle config = sCarrierConfigManager.getConfigForSubId(subId);
-            if (config == null) {
-                Log.e(TAG, "Could not get carrier config, subId:" + subId);
-                return null;
-            }
-            sCarrierConfigs.put(subId, config);
+        final PersistableBundle config = sCarrierConfigs.get(subId);
+        if (config != null) {
+            sCacheHits.incrementAndGet();
             return config;
         }
+        sCacheMisses.incrementAndGet();
+        return loadConfig(subId);
+    }
+
+    /**
+     * Gets a boolean value of the Carrier-Configuration for a particular subscription.
+     *
+     * @param subId the subscription ID, normally obtained from {@link SubscriptionManager}.
+     * @param key the key of the config, one of the {@code KEY_*_BOOL} of
+     *            {@link CarrierConfigManager}.
+     * @param defaultValue the value to return if the config is not available.
+     */
+    public boolean getBoolean(int subId, String key, boolean defaultValue) {
+        final PersistableBundle config = getConfigForSubId(subId);
+        return config != null ? config.getBoolean(key, defaultValue) : defaultValue;
+    }
+
+    /**
+     * Gets an int value of the Carrier-Configuration for a particular subscription.
+     *
+     * @param subId the subscription ID, normally obtained from {@link SubscriptionManager}.
+     * @param key the key of the config, one of the {@code KEY_*_INT} of
+     *            {@link CarrierConfigManager}.
+     * @param defaultValue the value to return if the config is not available.
+     */
+    public int getInt(int subId, String key, int defaultValue) {
+        final PersistableBundle config = getConfigForSubId(subId);
+        return config != null ? config.getInt(key, defaultValue) : defaultValue;
     }
 
     /**
@@ -164,18 +192,64 @@ public class CarrierConfigCache {
         return getConfigForSubId(SubscriptionManager.getDefaultSubscriptionId());
     }
 
+    /**
+     * Returns the number of configs served from the cache.
+     */
+    public static long getCacheHitCount() {
+        return sCacheHits.get();
+    }
+
+    /**
+     * Returns the number of configs loaded from {@link CarrierConfigManager} on request.
+     */
+    public static long getCacheMissCount() {
+        return sCacheMisses.get();
+    }
+
+    /**
+     * Returns the number of subscriptions with a cached config.
+     */
+    public static int getCachedConfigCount() {
+        return sCarrierConfigs.size();
+    }
+
+    private static PersistableBundle loadConfig(int subId) {
+        // Callers for other subscriptions don't wait for the binder call. An invalidation of the
+        // same subscription waits for it, so an older config can't be cached after it.
+        final PersistableBundle config = sCarrierConfigs.computeIfAbsent(subId,
+                key -> sCarrierConfigManager.getConfigForSubId(key));
+        if (config == null) {
+            Log.e(TAG, "Could not get carrier config, subId:" + subId);
+        }
+        return config;
+    }
+
+    @WorkerThread
+    @VisibleForTesting
+    static void prefetchConfigs(int[] subIds) {
+        if (sCarrierConfigManager == null || subIds == null) return;
+
+        for (int subId : subIds) {
+            loadConfig(subId);
+        }
+    }
+
     private static class CarrierConfigChangeReceiver extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
             if (!ACTION_CARRIER_CONFIG_CHANGED.equals(intent.getAction())) return;
 
             final int subId = intent.getIntExtra(EXTRA_SUBSCRIPTION_INDEX, INVALID_SUBSCRIPTION_ID);
-            synchronized (sCarrierConfigs) {
-                if (SubscriptionManager.isValidSubscriptionId(subId)) {
-                    sCarrierConfigs.remove(subId);
-                } else {
-                    sCarrierConfigs.clear();
-                }
+            if (SubscriptionManager.isValidSubscriptionId(subId)) {
+                sCarrierConfigs.remove(subId);
+                ThreadUtils.postOnBackgroundThread(() -> prefetchConfigs(new int[] {subId}));
+            } else {
+                sCarrierConfigs.clear();
+                final SubscriptionManager subscriptionManager =
+                        context.getSystemService(SubscriptionManager.class);
+                if (subscriptionManager == null) return;
+                ThreadUtils.postOnBackgroundThread(() -> prefetchConfigs(
+                        subscriptionManager.getActiveSubscriptionIdList()));
             }
         }
     }
@@ -34,10 +34,12 @@ import android.net.wifi.WifiManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.os.UserManager;
 import android.provider.Settings;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.EventLog;
 import android.util.FeatureFlagUtils;
 import android.util.Log;
@@ -75,6 +77,8 @@ import com.android.settings.wifi.LongPressWifiEntryPreference;
 import com.android.settings.wifi.WifiConfigUiBase2;
 import com.android.settings.wifi.WifiConnectListener;
 import com.android.settings.wifi.WifiDialog2;
+import com.android.settings.wifi.WifiEntryListDiffer;
+import com.android.settings.wifi.WifiEntryUpdateDelay;
 import com.android.settings.wifi.WifiPickerTrackerHelper;
 import com.android.settings.wifi.WifiUtils;
 import com.android.settings.wifi.details.WifiNetworkDetailsFragment;
@@ -94,6 +98,7 @@ import com.android.wifitrackerlib.WifiEntry.ConnectCallback;
 import com.android.wifitrackerlib.WifiPickerTracker;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -186,6 +191,7 @@ public class NetworkProviderSettings extends RestrictedSettingsFragment
     };
 
     private boolean mIsWifiEntryListStale = true;
+    private final WifiEntryUpdateDelay mWifiEntryUpdateDelay = new WifiEntryUpdateDelay();
     @VisibleForTesting
     final Runnable mUpdateWifiEntryPreferencesRunnable = () -> {
         updateWifiEntryPreferences();
@@ -888,19 +894,22 @@ public class NetworkProviderSettings extends RestrictedSettingsFragment
 
     /**
      * Updates WifiEntries from {@link WifiPickerTracker#getWifiEntries()}. Adds a delay to have
-     * progress bar displayed before starting to modify entries.
+     * progress bar displayed before starting to modify entries, longer while the entries change
+     * in bursts so that they are coalesced into one update.
      */
     private void updateWifiEntryPreferencesDelayed() {
         // Safeguard from some delayed event handling
         if (getActivity() != null && !mIsRestricted && mWifiPickerTracker != null
                 && mWifiPickerTracker.getWifiState() == WifiManager.WIFI_STATE_ENABLED) {
+            final long updateDelayMillis =
+                    mWifiEntryUpdateDelay.onChanged(SystemClock.elapsedRealtime());
             final View view = getView();
             final Handler handler = view.getHandler();
             if (handler != null && handler.hasCallbacks(mUpdateWifiEntryPreferencesRunnable)) {
                 return;
             }
             setProgressBarVisible(true);
-            view.postDelayed(mUpdateWifiEntryPreferencesRunnable, 300);
+            view.postDelayed(mUpdateWifiEntryPreferencesRunnable, updateDelayMillis);
         }
     }
 
@@ -952,28 +961,42 @@ public class NetworkProviderSettings extends RestrictedSettingsFragment
             connectedWifiPreferenceCategory.removeAll();
         }
 
-        int index = 0;
-        cacheRemoveAllPrefs(mWifiEntryPreferenceCategory);
-        List<WifiEntry> wifiEntries = mWifiPickerTracker.getWifiEntries();
-        for (WifiEntry wifiEntry : wifiEntries) {
+        // Diff the entries against the current preferences by key, so that only the inserted,
+        // moved, replaced and removed entries change the category.
+        final Map<String, LongPressWifiEntryPreference> currentPrefs = new ArrayMap<>();
+        for (int i = 0; i < mWifiEntryPreferenceCategory.getPreferenceCount(); i++) {
+            final Preference pref = mWifiEntryPreferenceCategory.getPreference(i);
+            if (pref instanceof LongPressWifiEntryPreference) {
+                currentPrefs.put(pref.getKey(), (LongPressWifiEntryPreference) pref);
+            }
+        }
+        final List<WifiEntry> wifiEntries = mWifiPickerTracker.getWifiEntries();
+        final int[] currentOrders = new int[wifiEntries.size()];
+        for (int i = 0; i < currentOrders.length; i++) {
+            final Preference pref = currentPrefs.get(wifiEntries.get(i).getKey());
+            currentOrders[i] = pref != null ? pref.getOrder() : WifiEntryListDiffer.NO_ORDER;
+        }
+        final int[] orders = WifiEntryListDiffer.assignOrders(currentOrders);
+
+        for (int i = 0; i < orders.length; i++) {
+            final WifiEntry wifiEntry = wifiEntries.get(i);
             hasAvailableWifiEntries = true;
 
             String key = wifiEntry.getKey();
-            LongPressWifiEntryPreference pref =
-                    (LongPressWifiEntryPreference) getCachedPreference(key);
+            LongPressWifiEntryPreference pref = currentPrefs.remove(key);
             if (pref != null) {
                 if (pref.getWifiEntry() == wifiEntry) {
-                    pref.setOrder(index++);
+                    pref.setOrder(orders[i]);
                     continue;
                 } else {
                     // Create a new preference if the underlying WifiEntry object has changed
-                    removePreference(key);
+                    mWifiEntryPreferenceCategory.removePreference(pref);
                 }
             }
 
             pref = createLongPressWifiEntryPreference(wifiEntry);
             pref.setKey(wifiEntry.getKey());
-            pref.setOrder(index++);
+            pref.setOrder(orders[i]);
             pref.refresh();
 
             if (wifiEntry.getHelpUriString() != null) {
@@ -983,16 +1006,29 @@ public class NetworkProviderSettings extends RestrictedSettingsFragment
             }
             mWifiEntryPreferenceCategory.addPreference(pref);
         }
-        removeCachedPrefs(mWifiEntryPreferenceCategory);
+        for (Preference pref : currentPrefs.values()) {
+            mWifiEntryPreferenceCategory.removePreference(pref);
+        }
+
+        int index = orders.length > 0 ? orders[orders.length - 1] + 1 : 0;
+        final Preference emptyPref =
+                mWifiEntryPreferenceCategory.findPreference(PREF_KEY_EMPTY_WIFI_LIST);
+        if (hasAvailableWifiEntries && emptyPref != null) {
+            mWifiEntryPreferenceCategory.removePreference(emptyPref);
+        }
 
         if (!hasAvailableWifiEntries) {
             setProgressBarVisible(true);
-            Preference pref = new Preference(getPrefContext());
-            pref.setSelectable(false);
-            pref.setSummary(R.string.wifi_empty_list_wifi_on);
-            pref.setOrder(index++);
-            pref.setKey(PREF_KEY_EMPTY_WIFI_LIST);
-            mWifiEntryPreferenceCategory.addPreference(pref);
+            if (emptyPref != null) {
+                emptyPref.setOrder(index++);
+            } else {
+                Preference pref = new Preference(getPrefContext());
+                pref.setSelectable(false);
+                pref.setSummary(R.string.wifi_empty_list_wifi_on);
+                pref.setOrder(index++);
+                pref.setKey(PREF_KEY_EMPTY_WIFI_LIST);
+                mWifiEntryPreferenceCategory.addPreference(pref);
+            }
         } else {
             // Continuing showing progress bar for an additional delay to overlap with animation
             getView().postDelayed(mHideProgressBarRunnable, 1700 /* delay millis */);
@@ -116,6 +116,7 @@ public class ProxySubscriptionManager implements LifecycleObserver {
         mAirplaneModeMonitor = airplaneModeOnSettingsChangeListener;
 
         mSubscriptionMonitor.start();
+        SubscriptionUtil.setSubscriptionSnapshotTracking(true);
     }
 
     private Lifecycle mLifecycle;
@@ -128,6 +129,9 @@ public class ProxySubscriptionManager implements LifecycleObserver {
     @Keep
     @VisibleForTesting
     protected void notifySubscriptionInfoMightChanged() {
+        // listeners should read the new subscriptions
+        SubscriptionUtil.invalidateSubscriptionSnapshot();
+
         // create a merged list for processing all listeners
         List<OnActiveSubscriptionChangedListener> listeners =
                 new ArrayList<OnActiveSubscriptionChangedListener>(mPendingNotifyListeners);
@@ -160,6 +164,7 @@ public class ProxySubscriptionManager implements LifecycleObserver {
     @OnLifecycleEvent(ON_START)
     void onStart() {
         mSubscriptionMonitor.start();
+        SubscriptionUtil.setSubscriptionSnapshotTracking(true);
 
         // callback notify those listener(s) which back to active state
         List<OnActiveSubscriptionChangedListener> listeners = mPendingNotifyListeners;
@@ -170,12 +175,14 @@ public class ProxySubscriptionManager implements LifecycleObserver {
     @OnLifecycleEvent(ON_STOP)
     void onStop() {
         mSubscriptionMonitor.stop();
+        SubscriptionUtil.setSubscriptionSnapshotTracking(false);
     }
 
     @OnLifecycleEvent(ON_DESTROY)
     void onDestroy() {
         mSubscriptionMonitor.close();
         mAirplaneModeMonitor.close();
+        SubscriptionUtil.setSubscriptionSnapshotTracking(false);
 
         if (mLifecycle != null) {
             mLifecycle.removeObserver(this);
@@ -246,6 +253,7 @@ public class ProxySubscriptionManager implements LifecycleObserver {
      */
     public void clearCache() {
         mSubscriptionMonitor.clearCache();
+        SubscriptionUtil.invalidateSubscriptionSnapshot();
     }
 
     /**
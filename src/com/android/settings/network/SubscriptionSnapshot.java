@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network;
+
+import android.content.Context;
+import android.telephony.SubscriptionInfo;
+import android.telephony.SubscriptionManager;
+import android.telephony.TelephonyManager;
+import android.telephony.UiccSlotInfo;
+
+import androidx.annotation.GuardedBy;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The subscriptions of the device at one version of the subscription state.
+ *
+ * Each part of the snapshot is queried once, the first time it is needed, and shared by all the
+ * callers of the same version. A snapshot never changes, a new one is created for the next
+ * version, see {@link SubscriptionUtil#getSubscriptionSnapshot(Context)}.
+ */
+public class SubscriptionSnapshot {
+
+    private final Context mContext;
+    private final SubscriptionManager mSubscriptionManager;
+    private final long mVersion;
+
+    @GuardedBy("this")
+    private List<SubscriptionInfo> mAvailableSubscriptions;
+    @GuardedBy("this")
+    private List<SubscriptionInfo> mActiveSubscriptions;
+    @GuardedBy("this")
+    private List<SubscriptionInfo> mSelectableSubscriptions;
+    @GuardedBy("this")
+    private boolean mUiccSlotsInfoLoaded;
+    @GuardedBy("this")
+    private UiccSlotInfo[] mUiccSlotsInfo;
+    @GuardedBy("this")
+    private Map<Integer, CharSequence> mUniqueDisplayNames;
+
+    SubscriptionSnapshot(Context context, SubscriptionManager subscriptionManager,
+            long version) {
+        mContext = context;
+        mSubscriptionManager = subscriptionManager;
+        mVersion = version;
+    }
+
+    /** Returns the version of the subscription state this snapshot was created for. */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /** Returns whether the snapshot queries {@code subscriptionManager}. */
+    boolean isFrom(SubscriptionManager subscriptionManager) {
+        return mSubscriptionManager == subscriptionManager;
+    }
+
+    /**
+     * Returns the subscriptions available to display to the user.
+     *
+     * @see SubscriptionUtil#getAvailableSubscriptions(Context)
+     */
+    public synchronized List<SubscriptionInfo> getAvailableSubscriptions() {
+        if (mAvailableSubscriptions == null) {
+            final List<SubscriptionInfo> selectable = getSelectableSubscriptions();
+            mAvailableSubscriptions = selectable != null
+                    ? selectable : Collections.emptyList();
+        }
+        return mAvailableSubscriptions;
+    }
+
+    /**
+     * Returns the active subscriptions.
+     *
+     * @see SubscriptionUtil#getActiveSubscriptions(SubscriptionManager)
+     */
+    public synchronized List<SubscriptionInfo> getActiveSubscriptions() {
+        if (mActiveSubscriptions == null) {
+            mActiveSubscriptions = Collections.unmodifiableList(
+                    SubscriptionUtil.getActiveSubscriptions(mSubscriptionManager));
+        }
+        return mActiveSubscriptions;
+    }
+
+    /**
+     * Returns the subscriptions selectable by the user, null if the available subscriptions
+     * could not be queried.
+     *
+     * @see SubscriptionUtil#getSelectableSubscriptionInfoList(Context)
+     */
+    public synchronized List<SubscriptionInfo> getSelectableSubscriptions() {
+        if (mSelectableSubscriptions == null) {
+            final List<SubscriptionInfo> selectable =
+                    SubscriptionUtil.getSelectableSubscriptionInfoList(mContext);
+            if (selectable == null) {
+                return null;
+            }
+            mSelectableSubscriptions = Collections.unmodifiableList(selectable);
+        }
+        return mSelectableSubscriptions;
+    }
+
+    /** Returns the info of the UICC slots, null if not available. */
+    public synchronized UiccSlotInfo[] getUiccSlotsInfo() {
+        if (!mUiccSlotsInfoLoaded) {
+            final TelephonyManager telMgr = mContext.getSystemService(TelephonyManager.class);
+            mUiccSlotsInfo = telMgr != null ? telMgr.getUiccSlotsInfo() : null;
+            mUiccSlotsInfoLoaded = true;
+        }
+        return mUiccSlotsInfo;
+    }
+
+    /**
+     * Returns the unique display names of the available subscriptions by subscription id.
+     *
+     * @see SubscriptionUtil#getUniqueSubscriptionDisplayNames(Context)
+     */
+    public synchronized Map<Integer, CharSequence> getUniqueDisplayNames() {
+        if (mUniqueDisplayNames == null) {
+            mUniqueDisplayNames = Collections.unmodifiableMap(
+                    SubscriptionUtil.computeUniqueSubscriptionDisplayNames(mContext,
+                            getAvailableSubscriptions()));
+        }
+        return mUniqueDisplayNames;
+    }
+}
@@ -19,8 +19,6 @@ package com.android.settings.network;
 import static android.telephony.SubscriptionManager.INVALID_SIM_SLOT_INDEX;
 import static android.telephony.UiccSlotInfo.CARD_STATE_INFO_PRESENT;
 
-import static com.android.internal.util.CollectionUtils.emptyIfNull;
-
 import android.annotation.Nullable;
 import android.content.Context;
 import android.os.ParcelUuid;
@@ -51,10 +49,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
-import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class SubscriptionUtil {
     private static final String TAG = "SubscriptionUtil";
@@ -62,6 +59,12 @@ public class SubscriptionUtil {
     private static List<SubscriptionInfo> sAvailableResultsForTesting;
     private static List<SubscriptionInfo> sActiveResultsForTesting;
 
+    // The last snapshot, reused until the subscriptions change. Only kept while
+    // ProxySubscriptionManager listens to the changes, see setSubscriptionSnapshotTracking().
+    private static volatile SubscriptionSnapshot sSnapshot;
+    private static volatile boolean sSnapshotTracking;
+    private static final AtomicLong sSnapshotVersion = new AtomicLong();
+
     @VisibleForTesting
     public static void setAvailableSubscriptionsForTesting(List<SubscriptionInfo> results) {
         sAvailableResultsForTesting = results;
@@ -105,7 +108,46 @@ public class SubscriptionUtil {
         if (sAvailableResultsForTesting != null) {
             return sAvailableResultsForTesting;
         }
-        return new ArrayList<>(emptyIfNull(getSelectableSubscriptionInfoList(context)));
+        return new ArrayList<>(getSubscriptionSnapshot(context).getAvailableSubscriptions());
+    }
+
+    /**
+     * Get the snapshot of the current subscriptions. The same snapshot is returned until the
+     * subscriptions change, as long as they are tracked by {@link ProxySubscriptionManager}.
+     *
+     * @param context {@code Context}
+     * @return the {@link SubscriptionSnapshot} of the current subscriptions
+     */
+    public static SubscriptionSnapshot getSubscriptionSnapshot(Context context) {
+        final SubscriptionManager subManager = context.getSystemService(SubscriptionManager.class);
+        final long version = sSnapshotVersion.get();
+        SubscriptionSnapshot snapshot = sSnapshot;
+        if (snapshot != null && snapshot.getVersion() == version && snapshot.isFrom(subManager)) {
+            return snapshot;
+        }
+        snapshot = new SubscriptionSnapshot(context, subManager, version);
+        if (sSnapshotTracking) {
+            // Kept even if invalidated meanwhile, the version check drops it on the next call.
+            sSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drop the subscription snapshot, the next one queries the subscriptions again.
+     */
+    static void invalidateSubscriptionSnapshot() {
+        sSnapshotVersion.incrementAndGet();
+        sSnapshot = null;
+    }
+
+    /**
+     * Set whether the subscription changes are listened to, so the subscription snapshot can be
+     * reused until {@link #invalidateSubscriptionSnapshot()} is called.
+     */
+    static void setSubscriptionSnapshotTracking(boolean tracking) {
+        sSnapshotTracking = tracking;
+        invalidateSubscriptionSnapshot();
     }
 
     /**
@@ -129,7 +171,8 @@ public class SubscriptionUtil {
         final ParcelUuid groupUuid = subInfo.getGroupUuid();
 
         if (groupUuid != null) {
-            if (isPrimarySubscriptionWithinSameUuid(getUiccSlotsInfo(context), groupUuid,
+            if (isPrimarySubscriptionWithinSameUuid(
+                    getSubscriptionSnapshot(context).getUiccSlotsInfo(), groupUuid,
                     subscriptionManager.getAccessibleSubscriptionsInfo(), subId)) {
                 return subInfo;
             }
@@ -139,11 +182,6 @@ public class SubscriptionUtil {
         return subInfo;
     }
 
-    private static UiccSlotInfo [] getUiccSlotsInfo(Context context) {
-        final TelephonyManager telMgr = context.getSystemService(TelephonyManager.class);
-        return telMgr.getUiccSlotsInfo();
-    }
-
     private static boolean isPrimarySubscriptionWithinSameUuid(UiccSlotInfo[] slotsInfo,
             ParcelUuid groupUuid, List<SubscriptionInfo> subscriptions, int subId) {
         // only interested in subscriptions with this group UUID
@@ -246,42 +284,49 @@ public class SubscriptionUtil {
      */
     @VisibleForTesting
     public static Map<Integer, CharSequence> getUniqueSubscriptionDisplayNames(Context context) {
+        if (sAvailableResultsForTesting != null) {
+            return computeUniqueSubscriptionDisplayNames(context, sAvailableResultsForTesting);
+        }
+        return getSubscriptionSnapshot(context).getUniqueDisplayNames();
+    }
+
+    static Map<Integer, CharSequence> computeUniqueSubscriptionDisplayNames(Context context,
+            List<SubscriptionInfo> subscriptions) {
         class DisplayInfo {
             public SubscriptionInfo subscriptionInfo;
             public CharSequence originalName;
             public CharSequence uniqueName;
         }
 
-        // Map of SubscriptionId to DisplayName
-        final Supplier<Stream<DisplayInfo>> originalInfos =
-                () -> getAvailableSubscriptions(context)
-                .stream()
-                .filter(i -> {
-                    // Filter out null values.
-                    return (i != null && i.getDisplayName() != null);
-                })
-                .map(i -> {
-                    DisplayInfo info = new DisplayInfo();
-                    info.subscriptionInfo = i;
-                    String displayName = i.getDisplayName().toString();
-                    info.originalName = TextUtils.equals(displayName, PROFILE_GENERIC_DISPLAY_NAME)
-                            ? context.getResources().getString(R.string.sim_card)
-                            : displayName.trim();
-                    return info;
-                });
-
-        // TODO(goldmanj) consider using a map of DisplayName to SubscriptionInfos.
+        // List of SubscriptionId and DisplayName
+        final List<DisplayInfo> infos = new ArrayList<>();
+        for (SubscriptionInfo i : subscriptions) {
+            // Filter out null values.
+            if (i == null || i.getDisplayName() == null) {
+                continue;
+            }
+            DisplayInfo info = new DisplayInfo();
+            info.subscriptionInfo = i;
+            String displayName = i.getDisplayName().toString();
+            info.originalName = TextUtils.equals(displayName, PROFILE_GENERIC_DISPLAY_NAME)
+                    ? context.getResources().getString(R.string.sim_card)
+                    : displayName.trim();
+            infos.add(info);
+        }
+
         // A Unique set of display names
         Set<CharSequence> uniqueNames = new HashSet<>();
         // Return the set of duplicate names
-        final Set<CharSequence> duplicateOriginalNames = originalInfos.get()
-                .filter(info -> !uniqueNames.add(info.originalName))
-                .map(info -> info.originalName)
-                .collect(Collectors.toSet());
+        final Set<CharSequence> duplicateOriginalNames = new HashSet<>();
+        for (DisplayInfo info : infos) {
+            if (!uniqueNames.add(info.originalName)) {
+                duplicateOriginalNames.add(info.originalName);
+            }
+        }
 
         // If a display name is duplicate, append the final 4 digits of the phone number.
         // Creates a mapping of Subscription id to original display name + phone number display name
-        final Supplier<Stream<DisplayInfo>> uniqueInfos = () -> originalInfos.get().map(info -> {
+        for (DisplayInfo info : infos) {
             if (duplicateOriginalNames.contains(info.originalName)) {
                 // This may return null, if the user cannot view the phone number itself.
                 final String phoneNumber = DeviceInfoUtils.getBidiFormattedPhoneNumber(context,
@@ -301,27 +346,28 @@ public class SubscriptionUtil {
             } else {
                 info.uniqueName = info.originalName;
             }
-            return info;
-        });
+        }
 
         // Check uniqueness a second time.
         // We might not have had permission to view the phone numbers.
         // There might also be multiple phone numbers whose last 4 digits the same.
         uniqueNames.clear();
-        final Set<CharSequence> duplicatePhoneNames = uniqueInfos.get()
-                .filter(info -> !uniqueNames.add(info.uniqueName))
-                .map(info -> info.uniqueName)
-                .collect(Collectors.toSet());
+        final Set<CharSequence> duplicatePhoneNames = new HashSet<>();
+        for (DisplayInfo info : infos) {
+            if (!uniqueNames.add(info.uniqueName)) {
+                duplicatePhoneNames.add(info.uniqueName);
+            }
+        }
 
-        return uniqueInfos.get().map(info -> {
+        final Map<Integer, CharSequence> uniqueDisplayNames = new HashMap<>();
+        for (DisplayInfo info : infos) {
             if (duplicatePhoneNames.contains(info.uniqueName)) {
                 info.uniqueName = info.originalName + " "
                         + info.subscriptionInfo.getSubscriptionId();
             }
-            return info;
-        }).collect(Collectors.toMap(
-                info -> info.subscriptionInfo.getSubscriptionId(),
-                info -> info.uniqueName));
+            uniqueDisplayNames.put(info.subscriptionInfo.getSubscriptionId(), info.uniqueName);
+        }
+        return uniqueDisplayNames;
     }
 
     /**
@@ -82,6 +82,12 @@ public class NotificationBackend {
     static IUsageStatsManager sUsageStatsManager = IUsageStatsManager.Stub.asInterface(
             ServiceManager.getService(Context.USAGE_STATS_SERVICE));
     private static final int DAYS_TO_CHECK = 7;
+    /**
+     * Age after which the counts of {@link NotificationSentStatsStore} are not used anymore, as
+     * reading the events received since then would take about as long as reading them all.
+     */
+    @VisibleForTesting
+    static final long MAX_CHECKPOINT_AGE = DateUtils.DAY_IN_MILLIS;
     static INotificationManager sINM = INotificationManager.Stub.asInterface(
             ServiceManager.getService(Context.NOTIFICATION_SERVICE));
 
@@ -462,6 +468,24 @@ public class NotificationBackend {
 
     protected void recordAggregatedUsageEvents(Context context, AppRow appRow) {
         long now = System.currentTimeMillis();
+        final NotificationSentStatsStore store = NotificationSentStatsStore.getInstance(context);
+        final long checkpoint = store.getCheckpoint(appRow.userId);
+        if (checkpoint > 0 && checkpoint <= now && now - checkpoint <= MAX_CHECKPOINT_AGE) {
+            // Use the counts kept by the store, and only read the events of this package which
+            // came after them.
+            UsageEvents events = null;
+            try {
+                events = sUsageStatsManager.queryEventsForPackageForUser(
+                        checkpoint, now, appRow.userId, appRow.pkg, context.getPackageName());
+            } catch (RemoteException e) {
+                e.printStackTrace();
+            }
+            recordAggregatedUsageEvents(
+                    store.getChannelStates(appRow.userId, appRow.pkg, now), events, appRow);
+            return;
+        }
+
+        // The store is missing or too far behind, read the events of this package.
         long startTime = now - (DateUtils.DAY_IN_MILLIS * DAYS_TO_CHECK);
         UsageEvents events = null;
         try {
@@ -474,8 +498,26 @@ public class NotificationBackend {
     }
 
     protected void recordAggregatedUsageEvents(UsageEvents events, AppRow appRow) {
+        recordAggregatedUsageEvents(new HashMap<>(), events, appRow);
+    }
+
+    /**
+     * Records {@code sentByChannel}, the counts of notifications sent by channel, along with the
+     * notification {@code events} received after them.
+     */
+    private void recordAggregatedUsageEvents(Map<String, NotificationsSentState> sentByChannel,
+            UsageEvents events, AppRow appRow) {
         appRow.sentByChannel = new HashMap<>();
         appRow.sentByApp = new NotificationsSentState();
+        for (Map.Entry<String, NotificationsSentState> entry : sentByChannel.entrySet()) {
+            final NotificationsSentState stats = new NotificationsSentState();
+            stats.sentCount = entry.getValue().sentCount;
+            stats.lastSent = entry.getValue().lastSent;
+            appRow.sentByChannel.put(entry.getKey(), stats);
+            appRow.sentByApp.sentCount += stats.sentCount;
+            appRow.sentByApp.lastSent = Math.max(appRow.sentByApp.lastSent, stats.lastSent);
+            calculateAvgSentCounts(stats);
+        }
         if (events != null) {
             UsageEvents.Event event = new UsageEvents.Event();
             while (events.hasNextEvent()) {
@@ -491,6 +533,8 @@ public class NotificationBackend {
                         }
                         if (event.getTimeStamp() > stats.lastSent) {
                             stats.lastSent = event.getTimeStamp();
+                        }
+                        if (event.getTimeStamp() > appRow.sentByApp.lastSent) {
                             appRow.sentByApp.lastSent = event.getTimeStamp();
                         }
                         stats.sentCount++;
@@ -500,8 +544,8 @@ public class NotificationBackend {
                 }
 
             }
-            calculateAvgSentCounts(appRow.sentByApp);
         }
+        calculateAvgSentCounts(appRow.sentByApp);
     }
 
     public static CharSequence getSentSummary(Context context, NotificationsSentState state,
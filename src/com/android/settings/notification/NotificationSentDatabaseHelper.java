@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.notification;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+/**
+ * Database of the notification counters maintained by {@link NotificationSentStatsStore}.
+ *
+ * The counters are kept per user, package, channel and day, along with one checkpoint per user
+ * recording up to when the usage events have been counted.
+ */
+public class NotificationSentDatabaseHelper extends SQLiteOpenHelper {
+    private static final String TAG = "NotificationSentDatabaseHelper";
+
+    private static final String DATABASE_NAME = "notification_sent.db";
+    private static final int DATABASE_VERSION = 1;
+
+    public interface Tables {
+        String TABLE_NOTIFICATION_SENT = "notification_sent";
+        String TABLE_CHECKPOINTS = "checkpoints";
+    }
+
+    public interface NotificationSentColumns {
+        String USER_ID = "user_id";
+        String PACKAGE_NAME = "package_name";
+        /** Channel of the notifications, empty when the events don't have one. */
+        String CHANNEL_ID = "channel_id";
+        /** Day of the notifications, in days since the epoch. */
+        String DAY = "day";
+        String SENT_COUNT = "sent_count";
+        String LAST_SENT = "last_sent";
+    }
+
+    public interface CheckpointColumns {
+        String USER_ID = "user_id";
+        /** Events before this time, in milliseconds since the epoch, have been counted. */
+        String HIGH_WATER_MARK = "high_water_mark";
+    }
+
+    private static final String CREATE_NOTIFICATION_SENT_TABLE =
+            "CREATE TABLE " + Tables.TABLE_NOTIFICATION_SENT +
+                    "(" +
+                    NotificationSentColumns.USER_ID +
+                    " INTEGER NOT NULL, " +
+                    NotificationSentColumns.PACKAGE_NAME +
+                    " TEXT NOT NULL, " +
+                    NotificationSentColumns.CHANNEL_ID +
+                    " TEXT NOT NULL DEFAULT '', " +
+                    NotificationSentColumns.DAY +
+                    " INTEGER NOT NULL, " +
+                    NotificationSentColumns.SENT_COUNT +
+                    " INTEGER NOT NULL DEFAULT 0, " +
+                    NotificationSentColumns.LAST_SENT +
+                    " INTEGER NOT NULL DEFAULT 0, " +
+                    "PRIMARY KEY (" +
+                    NotificationSentColumns.USER_ID + ", " +
+                    NotificationSentColumns.PACKAGE_NAME + ", " +
+                    NotificationSentColumns.CHANNEL_ID + ", " +
+                    NotificationSentColumns.DAY +
+                    "))";
+
+    private static final String CREATE_CHECKPOINTS_TABLE =
+            "CREATE TABLE " + Tables.TABLE_CHECKPOINTS +
+                    "(" +
+                    CheckpointColumns.USER_ID +
+                    " INTEGER PRIMARY KEY, " +
+                    CheckpointColumns.HIGH_WATER_MARK +
+                    " INTEGER NOT NULL" +
+                    ")";
+
+    private static NotificationSentDatabaseHelper sSingleton;
+
+    public static synchronized NotificationSentDatabaseHelper getInstance(Context context) {
+        if (sSingleton == null) {
+            sSingleton = new NotificationSentDatabaseHelper(context.getApplicationContext());
+        }
+        return sSingleton;
+    }
+
+    private NotificationSentDatabaseHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        bootstrapDB(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < DATABASE_VERSION) {
+            Log.w(TAG, "Detected schema version '" + oldVersion + "'. " +
+                    "Index needs to be rebuilt for schema version '" + newVersion + "'.");
+            // The counters can be rebuilt from the usage events, drop them and start over.
+            reconstruct(db);
+        }
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        Log.w(TAG, "Detected schema version '" + oldVersion + "'. " +
+                "Index needs to be rebuilt for schema version '" + newVersion + "'.");
+        reconstruct(db);
+    }
+
+    public void reconstruct(SQLiteDatabase db) {
+        dropTables(db);
+        bootstrapDB(db);
+    }
+
+    private void bootstrapDB(SQLiteDatabase db) {
+        db.execSQL(CREATE_NOTIFICATION_SENT_TABLE);
+        db.execSQL(CREATE_CHECKPOINTS_TABLE);
+        Log.i(TAG, "Bootstrapped database");
+    }
+
+    private void dropTables(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.TABLE_NOTIFICATION_SENT);
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.TABLE_CHECKPOINTS);
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.notification;
+
+import static com.android.settings.notification.NotificationSentDatabaseHelper.Tables.TABLE_CHECKPOINTS;
+import static com.android.settings.notification.NotificationSentDatabaseHelper.Tables.TABLE_NOTIFICATION_SENT;
+
+import android.app.usage.IUsageStatsManager;
+import android.app.usage.UsageEvents;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.RemoteException;
+import android.text.format.DateUtils;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settings.notification.NotificationBackend.NotificationsSentState;
+import com.android.settings.notification.NotificationSentDatabaseHelper.CheckpointColumns;
+import com.android.settings.notification.NotificationSentDatabaseHelper.NotificationSentColumns;
+
+import java.util.Map;
+
+/**
+ * Keeps count of the notifications sent by each app over the last {@link #DAYS_TO_CHECK} days.
+ *
+ * The counters are updated incrementally from the {@link UsageEvents} of each user: every
+ * {@link #update} only reads the events since the previous one, adds them to daily buckets and
+ * drops the buckets which fell out of the window. The notification settings can then read the
+ * counts without replaying a week of events each time they are opened.
+ */
+public class NotificationSentStatsStore {
+    private static final String TAG = "NotificationSentStatsStore";
+
+    @VisibleForTesting
+    static final int DAYS_TO_CHECK = 7;
+
+    private static NotificationSentStatsStore sSingleton;
+
+    private final Context mContext;
+    private final NotificationSentDatabaseHelper mDatabaseHelper;
+
+    private NotificationSentStatsStore(Context context) {
+        mContext = context.getApplicationContext();
+        mDatabaseHelper = NotificationSentDatabaseHelper.getInstance(context);
+    }
+
+    public static synchronized NotificationSentStatsStore getInstance(Context context) {
+        if (sSingleton == null) {
+            sSingleton = new NotificationSentStatsStore(context);
+        }
+        return sSingleton;
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.NONE)
+    public static void setUpForTest(NotificationSentStatsStore notificationSentStatsStore) {
+        sSingleton = notificationSentStatsStore;
+    }
+
+    /**
+     * Counts the notification events of {@code userId} received since the last update, and
+     * rolls the window forward to {@code now}. The counters are left untouched when the events
+     * can't be read, so they are counted by the next update instead.
+     */
+    @WorkerThread
+    public synchronized void update(IUsageStatsManager usageStatsManager, int userId, long now) {
+        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        final long windowStart = getWindowStart(now);
+        long highWaterMark = getHighWaterMark(db, userId);
+        if (highWaterMark > now) {
+            // The clock went back, the counters can't be trusted anymore.
+            Log.w(TAG, "Checkpoint of user " + userId + " is in the future, recounting");
+            db.delete(TABLE_NOTIFICATION_SENT, NotificationSentColumns.USER_ID + " = ?",
+                    new String[]{String.valueOf(userId)});
+            highWaterMark = 0;
+        }
+        final long startTime = Math.max(highWaterMark, windowStart);
+
+        UsageEvents events = null;
+        try {
+            events = usageStatsManager.queryEventsForUser(
+                    startTime, now, userId, mContext.getPackageName());
+        } catch (RemoteException e) {
+            Log.w(TAG, "Error reading the usage events of user " + userId, e);
+        }
+        if (events == null) {
+            return;
+        }
+        final Map<String, ArrayMap<String, LongSparseArray<NotificationsSentState>>> buckets =
+                aggregateEvents(events, toDay(startTime), toDay(now));
+
+        db.beginTransaction();
+        try {
+            writeBuckets(db, userId, buckets);
+            db.delete(TABLE_NOTIFICATION_SENT, NotificationSentColumns.DAY + " < ?",
+                    new String[]{String.valueOf(toDay(windowStart))});
+            final ContentValues checkpoint = new ContentValues();
+            checkpoint.put(CheckpointColumns.USER_ID, userId);
+            checkpoint.put(CheckpointColumns.HIGH_WATER_MARK, now);
+            db.insertWithOnConflict(TABLE_CHECKPOINTS, null /* nullColumnHack */, checkpoint,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the time up to which the events of {@code userId} have been counted, or 0 if they
+     * never were. Events after it are counted by the next {@link #update}.
+     */
+    public long getCheckpoint(int userId) {
+        return getHighWaterMark(mDatabaseHelper.getReadableDatabase(), userId);
+    }
+
+    /**
+     * Returns the number of notifications sent and the time of the latest one, by package, for
+     * the packages of {@code userId} which sent notifications within the window ending at
+     * {@code now}.
+     */
+    public Map<String, NotificationsSentState> getPackageStates(int userId, long now) {
+        final String selection = NotificationSentColumns.USER_ID + " = ? AND "
+                + NotificationSentColumns.DAY + " >= ?";
+        final String[] selectionArgs = new String[]{
+                String.valueOf(userId), String.valueOf(toDay(getWindowStart(now)))};
+        return querySentStates(NotificationSentColumns.PACKAGE_NAME, selection, selectionArgs);
+    }
+
+    /**
+     * Returns the number of notifications sent and the time of the latest one, by channel, for
+     * the channels of {@code pkg} which sent notifications within the window ending at
+     * {@code now}. Notifications without a channel are left out.
+     */
+    public Map<String, NotificationsSentState> getChannelStates(int userId, String pkg,
+            long now) {
+        final String selection = NotificationSentColumns.USER_ID + " = ? AND "
+                + NotificationSentColumns.PACKAGE_NAME + " = ? AND "
+                + NotificationSentColumns.CHANNEL_ID + " != '' AND "
+                + NotificationSentColumns.DAY + " >= ?";
+        final String[] selectionArgs = new String[]{
+                String.valueOf(userId), pkg, String.valueOf(toDay(getWindowStart(now)))};
+        return querySentStates(NotificationSentColumns.CHANNEL_ID, selection, selectionArgs);
+    }
+
+    private Map<String, NotificationsSentState> querySentStates(String groupByColumn,
+            String selection, String[] selectionArgs) {
+        final Map<String, NotificationsSentState> states = new ArrayMap<>();
+        final SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
+        final String[] columns = new String[]{
+                groupByColumn,
+                "SUM(" + NotificationSentColumns.SENT_COUNT + ")",
+                "MAX(" + NotificationSentColumns.LAST_SENT + ")"};
+        try (Cursor cursor = db.query(TABLE_NOTIFICATION_SENT, columns, selection, selectionArgs,
+                groupByColumn, null /* having */, null /* orderBy */)) {
+            while (cursor.moveToNext()) {
+                final NotificationsSentState state = new NotificationsSentState();
+                state.sentCount = cursor.getInt(1);
+                state.lastSent = cursor.getLong(2);
+                states.put(cursor.getString(0), state);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Counts the notification events by package, channel and day. The days are clamped to the
+     * queried range, as the event times can be a bit off after the clock was changed.
+     */
+    private static Map<String, ArrayMap<String, LongSparseArray<NotificationsSentState>>>
+            aggregateEvents(UsageEvents events, long startDay, long endDay) {
+        final Map<String, ArrayMap<String, LongSparseArray<NotificationsSentState>>> buckets =
+                new ArrayMap<>();
+        final UsageEvents.Event event = new UsageEvents.Event();
+        while (events.hasNextEvent()) {
+            events.getNextEvent(event);
+            if (event.getEventType() != UsageEvents.Event.NOTIFICATION_INTERRUPTION) {
+                continue;
+            }
+            ArrayMap<String, LongSparseArray<NotificationsSentState>> channels =
+                    buckets.get(event.getPackageName());
+            if (channels == null) {
+                channels = new ArrayMap<>();
+                buckets.put(event.getPackageName(), channels);
+            }
+            final String channelId =
+                    event.mNotificationChannelId == null ? "" : event.mNotificationChannelId;
+            LongSparseArray<NotificationsSentState> days = channels.get(channelId);
+            if (days == null) {
+                days = new LongSparseArray<>();
+                channels.put(channelId, days);
+            }
+            final long day = Math.min(Math.max(toDay(event.getTimeStamp()), startDay), endDay);
+            NotificationsSentState state = days.get(day);
+            if (state == null) {
+                state = new NotificationsSentState();
+                days.put(day, state);
+            }
+            state.sentCount++;
+            state.lastSent = Math.max(state.lastSent, event.getTimeStamp());
+        }
+        return buckets;
+    }
+
+    private static void writeBuckets(SQLiteDatabase db, int userId,
+            Map<String, ArrayMap<String, LongSparseArray<NotificationsSentState>>> buckets) {
+        final SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_NOTIFICATION_SENT
+                + " SET " + NotificationSentColumns.SENT_COUNT + " = "
+                + NotificationSentColumns.SENT_COUNT + " + ?, "
+                + NotificationSentColumns.LAST_SENT + " = MAX("
+                + NotificationSentColumns.LAST_SENT + ", ?) WHERE "
+                + NotificationSentColumns.USER_ID + " = ? AND "
+                + NotificationSentColumns.PACKAGE_NAME + " = ? AND "
+                + NotificationSentColumns.CHANNEL_ID + " = ? AND "
+                + NotificationSentColumns.DAY + " = ?");
+        for (Map.Entry<String, ArrayMap<String, LongSparseArray<NotificationsSentState>>>
+                channels : buckets.entrySet()) {
+            for (Map.Entry<String, LongSparseArray<NotificationsSentState>> days
+                    : channels.getValue().entrySet()) {
+                for (int i = 0; i < days.getValue().size(); i++) {
+                    final long day = days.getValue().keyAt(i);
+                    final NotificationsSentState state = days.getValue().valueAt(i);
+                    update.clearBindings();
+                    update.bindLong(1, state.sentCount);
+                    update.bindLong(2, state.lastSent);
+                    update.bindLong(3, userId);
+                    update.bindString(4, channels.getKey());
+                    update.bindString(5, days.getKey());
+                    update.bindLong(6, day);
+                    if (update.executeUpdateDelete() > 0) {
+                        continue;
+                    }
+                    final ContentValues values = new ContentValues();
+                    values.put(NotificationSentColumns.USER_ID, userId);
+                    values.put(NotificationSentColumns.PACKAGE_NAME, channels.getKey());
+                    values.put(NotificationSentColumns.CHANNEL_ID, days.getKey());
+                    values.put(NotificationSentColumns.DAY, day);
+                    values.put(NotificationSentColumns.SENT_COUNT, state.sentCount);
+                    values.put(NotificationSentColumns.LAST_SENT, state.lastSent);
+                    db.insert(TABLE_NOTIFICATION_SENT, null /* nullColumnHack */, values);
+                }
+            }
+        }
+        update.close();
+    }
+
+    private static long getHighWaterMark(SQLiteDatabase db, int userId) {
+        try (Cursor cursor = db.query(TABLE_CHECKPOINTS,
+                new String[]{CheckpointColumns.HIGH_WATER_MARK},
+                CheckpointColumns.USER_ID + " = ?", new String[]{String.valueOf(userId)},
+                null /* groupBy */, null /* having */, null /* orderBy */)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    private static long getWindowStart(long now) {
+        return now - DateUtils.DAY_IN_MILLIS * DAYS_TO_CHECK;
+    }
+
+    /**
+     * Returns the daily bucket of {@code timestamp}. The bucket containing the start of the
+     * window is kept, so the counts cover at least {@link #DAYS_TO_CHECK} full days.
+     */
+    private static long toDay(long timestamp) {
+        return timestamp / DateUtils.DAY_IN_MILLIS;
+    }
+}
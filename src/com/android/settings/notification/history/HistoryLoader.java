@@ -21,20 +21,36 @@ import android.app.NotificationHistory.HistoricalNotification;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.graphics.drawable.Drawable;
 import android.os.UserHandle;
+import android.util.ArrayMap;
 import android.util.Slog;
+import android.util.SparseArray;
+import android.view.Choreographer;
+
+import androidx.annotation.VisibleForTesting;
 
 import com.android.settings.notification.NotificationBackend;
+import com.android.settingslib.applications.AppIconCacheManager;
 import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Loads the notification history grouped by package, most recent package first.
+ *
+ * The packages are delivered in pages of {@link #PAGE_SIZE}, one per frame, so the most recent ones
+ * are drawn before the rest are bound. Their labels and icons aren't loaded with the history, they
+ * are resolved on demand with {@link #loadAppInfo}.
+ */
 public class HistoryLoader {
     private static final String TAG = "HistoryLoader";
+
+    @VisibleForTesting
+    static final int PAGE_SIZE = 10;
+
     private final Context mContext;
     private final NotificationBackend mBackend;
     private final PackageManager mPm;
@@ -48,52 +64,105 @@ public class HistoryLoader {
     public void load(OnHistoryLoaderListener listener) {
         ThreadUtils.postOnBackgroundThread(() -> {
             try {
-                Map<String, NotificationHistoryPackage> historicalNotifications = new HashMap<>();
                 NotificationHistory history =
                         mBackend.getNotificationHistory(mContext.getPackageName(),
                                 mContext.getAttributionTag());
-                while (history.hasNextNotification()) {
-                    HistoricalNotification hn = history.getNextNotification();
-
-                    String key = hn.getPackage() + "|" + hn.getUid();
-                    NotificationHistoryPackage hnsForPackage = historicalNotifications.getOrDefault(
-                            key,
-                            new NotificationHistoryPackage(hn.getPackage(), hn.getUid()));
-                    hnsForPackage.notifications.add(hn);
-                    historicalNotifications.put(key, hnsForPackage);
-                }
-                List<NotificationHistoryPackage> packages =
-                        new ArrayList<>(historicalNotifications.values());
+                List<NotificationHistoryPackage> packages = groupByPackage(history);
                 Collections.sort(packages,
                         (o1, o2) -> -1 * Long.compare(o1.getMostRecent(), o2.getMostRecent()));
-                for (NotificationHistoryPackage nhp : packages) {
-                    ApplicationInfo info;
-                    try {
-                        info = mPm.getApplicationInfoAsUser(
-                                nhp.pkgName,
-                                PackageManager.MATCH_UNINSTALLED_PACKAGES
-                                        | PackageManager.MATCH_DISABLED_COMPONENTS
-                                        | PackageManager.MATCH_DIRECT_BOOT_UNAWARE
-                                        | PackageManager.MATCH_DIRECT_BOOT_AWARE,
-                                UserHandle.getUserId(nhp.uid));
-                        if (info != null) {
-                            nhp.label = String.valueOf(mPm.getApplicationLabel(info));
-                            nhp.icon = mPm.getUserBadgedIcon(mPm.getApplicationIcon(info),
-                                    UserHandle.of(UserHandle.getUserId(nhp.uid)));
-                        }
-                    } catch (PackageManager.NameNotFoundException e) {
-                        // app is gone, just show package name and generic icon
-                        nhp.icon = mPm.getDefaultActivityIcon();
-                    }
-                }
-                ThreadUtils.postOnMainThread(() -> listener.onHistoryLoaded(packages));
+                ThreadUtils.postOnMainThread(() -> deliverPage(packages, 0, listener));
             } catch (Exception e) {
                 Slog.e(TAG, "Error loading history", e);
             }
         });
     }
 
+    /**
+     * Delivers the page of {@code packages} starting at {@code offset}, then the next one once this
+     * page is drawn.
+     */
+    private static void deliverPage(List<NotificationHistoryPackage> packages, int offset,
+            OnHistoryLoaderListener listener) {
+        listener.onHistoryLoaded(new ArrayList<>(packages.subList(
+                offset, Math.min(offset + PAGE_SIZE, packages.size()))), offset);
+        final int nextOffset = offset + PAGE_SIZE;
+        if (nextOffset >= packages.size()) {
+            return;
+        }
+        // Frame callbacks run before the traversal of their frame, so the next page is posted from
+        // it to be bound after the frame drawing this page.
+        Choreographer.getInstance().postFrameCallback(frameTimeNanos ->
+                ThreadUtils.postOnMainThread(() -> deliverPage(packages, nextOffset, listener)));
+    }
+
+    /**
+     * Resolves the label and icon of {@code nhp} in the background, then runs {@code callback} on
+     * the main thread. The icons are shared with the other app lists through
+     * {@link AppIconCacheManager}.
+     */
+    public void loadAppInfo(NotificationHistoryPackage nhp, Runnable callback) {
+        ThreadUtils.postOnBackgroundThread(() -> {
+            int userId = UserHandle.getUserId(nhp.uid);
+            Drawable icon = AppIconCacheManager.getInstance().get(nhp.pkgName, nhp.uid);
+            try {
+                ApplicationInfo info = mPm.getApplicationInfoAsUser(
+                        nhp.pkgName,
+                        PackageManager.MATCH_UNINSTALLED_PACKAGES
+                                | PackageManager.MATCH_DISABLED_COMPONENTS
+                                | PackageManager.MATCH_DIRECT_BOOT_UNAWARE
+                                | PackageManager.MATCH_DIRECT_BOOT_AWARE,
+                        userId);
+                if (info != null) {
+                    nhp.label = String.valueOf(mPm.getApplicationLabel(info));
+                    if (icon == null) {
+                        icon = mPm.getUserBadgedIcon(mPm.getApplicationIcon(info),
+                                UserHandle.of(userId));
+                        AppIconCacheManager.getInstance().put(nhp.pkgName, nhp.uid, icon);
+                    }
+                }
+            } catch (PackageManager.NameNotFoundException e) {
+                // app is gone, just show package name and generic icon
+                if (icon == null) {
+                    icon = mPm.getDefaultActivityIcon();
+                }
+            }
+            nhp.icon = icon;
+            ThreadUtils.postOnMainThread(callback);
+        });
+    }
+
+    /** Groups the notifications of {@code history} by uid and package, in a single pass. */
+    @VisibleForTesting
+    static List<NotificationHistoryPackage> groupByPackage(NotificationHistory history) {
+        List<NotificationHistoryPackage> packages = new ArrayList<>();
+        // Apps sharing a uid are told apart by package.
+        SparseArray<ArrayMap<String, NotificationHistoryPackage>> packagesByUid =
+                new SparseArray<>();
+        while (history.hasNextNotification()) {
+            HistoricalNotification hn = history.getNextNotification();
+
+            ArrayMap<String, NotificationHistoryPackage> packagesForUid =
+                    packagesByUid.get(hn.getUid());
+            if (packagesForUid == null) {
+                packagesForUid = new ArrayMap<>(1);
+                packagesByUid.put(hn.getUid(), packagesForUid);
+            }
+            NotificationHistoryPackage hnsForPackage = packagesForUid.get(hn.getPackage());
+            if (hnsForPackage == null) {
+                hnsForPackage = new NotificationHistoryPackage(hn.getPackage(), hn.getUid());
+                packagesForUid.put(hn.getPackage(), hnsForPackage);
+                packages.add(hnsForPackage);
+            }
+            hnsForPackage.notifications.add(hn);
+        }
+        return packages;
+    }
+
     interface OnHistoryLoaderListener {
-        void onHistoryLoaded(List<NotificationHistoryPackage> notificationsByPackage);
+        /**
+         * Called on the main thread with each page of packages, starting at {@code offset} in
+         * the whole list. The first page is always delivered, even if there's no history.
+         */
+        void onHistoryLoaded(List<NotificationHistoryPackage> notificationsByPackage, int offset);
     }
 }
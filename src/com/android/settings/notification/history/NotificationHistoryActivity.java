@@ -31,6 +31,7 @@ import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Outline;
+import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.RemoteException;
 import android.os.ServiceManager;
@@ -39,6 +40,7 @@ import android.os.UserManager;
 import android.provider.Settings;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
+import android.util.ArrayMap;
 import android.util.Log;
 import android.util.Slog;
 import android.util.TypedValue;
@@ -47,6 +49,7 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewOutlineProvider;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 import android.widget.TextView;
 
@@ -59,6 +62,7 @@ import com.android.internal.logging.UiEventLoggerImpl;
 import com.android.internal.widget.NotificationExpandButton;
 import com.android.settings.R;
 import com.android.settings.notification.NotificationBackend;
+import com.android.settingslib.applications.AppIconCacheManager;
 import com.android.settingslib.collapsingtoolbar.CollapsingToolbarBaseActivity;
 import com.android.settingslib.utils.ThreadUtils;
 import com.android.settingslib.widget.MainSwitchBar;
@@ -83,6 +87,9 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
     private MainSwitchBar mSwitchBar;
 
     private HistoryLoader mHistoryLoader;
+    // Package views whose label and icon haven't been loaded yet.
+    private final ArrayMap<View, NotificationHistoryPackage> mPendingAppInfo = new ArrayMap<>();
+    private final Rect mTmpRect = new Rect();
     private INotificationManager mNm;
     private UserManager mUm;
     private PackageManager mPm;
@@ -149,14 +156,17 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
         }
     }
 
-    private HistoryLoader.OnHistoryLoaderListener mOnHistoryLoaderListener = notifications -> {
-        findViewById(R.id.today_list).setVisibility(
-                notifications.isEmpty() ? View.GONE : View.VISIBLE);
-        mCountdownLatch.countDown();
-        View recyclerView = mTodayView.findViewById(R.id.apps);
-        recyclerView.setClipToOutline(true);
-        mTodayView.setOutlineProvider(mOutlineProvider);
-        mSnoozeView.setOutlineProvider(mOutlineProvider);
+    private HistoryLoader.OnHistoryLoaderListener mOnHistoryLoaderListener = (notifications,
+            offset) -> {
+        if (offset == 0) {
+            findViewById(R.id.today_list).setVisibility(
+                    notifications.isEmpty() ? View.GONE : View.VISIBLE);
+            mCountdownLatch.countDown();
+            View recyclerView = mTodayView.findViewById(R.id.apps);
+            recyclerView.setClipToOutline(true);
+            mTodayView.setOutlineProvider(mOutlineProvider);
+            mSnoozeView.setOutlineProvider(mOutlineProvider);
+        }
         // for each package, new header and recycler view
         for (int i = 0, notificationsSize = notifications.size(); i < notificationsSize; i++) {
             NotificationHistoryPackage nhp = notifications.get(i);
@@ -176,7 +186,7 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
             header.setStateDescription(container.getVisibility() == View.VISIBLE
                     ? getString(R.string.condition_expand_hide)
                     : getString(R.string.condition_expand_show));
-            int finalI = i;
+            int finalI = offset + i;
             header.setOnClickListener(v -> {
                 container.setVisibility(container.getVisibility() == View.VISIBLE
                         ? View.GONE : View.VISIBLE);
@@ -191,12 +201,8 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
                         nhp.uid, nhp.pkgName, finalI);
             });
 
-            TextView label = viewForPackage.findViewById(R.id.label);
-            label.setText(nhp.label != null ? nhp.label : nhp.pkgName);
-            label.setContentDescription(mUm.getBadgedLabelForUser(label.getText(),
-                    UserHandle.getUserHandleForUid(nhp.uid)));
-            ImageView icon = viewForPackage.findViewById(R.id.icon);
-            icon.setImageDrawable(nhp.icon);
+            bindAppInfo(viewForPackage, nhp);
+            mPendingAppInfo.put(viewForPackage, nhp);
 
             TextView count = viewForPackage.findViewById(R.id.count);
             count.setText(getResources().getQuantityString(R.plurals.notification_history_count,
@@ -220,6 +226,27 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
         }
     };
 
+    /** Loads the labels and icons of the packages scrolled into view. */
+    private void loadVisibleAppInfo() {
+        for (int i = mPendingAppInfo.size() - 1; i >= 0; i--) {
+            View viewForPackage = mPendingAppInfo.keyAt(i);
+            if (!viewForPackage.getGlobalVisibleRect(mTmpRect)) {
+                continue;
+            }
+            NotificationHistoryPackage nhp = mPendingAppInfo.removeAt(i);
+            mHistoryLoader.loadAppInfo(nhp, () -> bindAppInfo(viewForPackage, nhp));
+        }
+    }
+
+    private void bindAppInfo(View viewForPackage, NotificationHistoryPackage nhp) {
+        TextView label = viewForPackage.findViewById(R.id.label);
+        label.setText(nhp.label != null ? nhp.label : nhp.pkgName);
+        label.setContentDescription(mUm.getBadgedLabelForUser(label.getText(),
+                UserHandle.getUserHandleForUid(nhp.uid)));
+        ImageView icon = viewForPackage.findViewById(R.id.icon);
+        icon.setImageDrawable(nhp.icon);
+    }
+
     private void configureNotificationList(View recyclerView) {
         recyclerView.setClipToOutline(true);
         recyclerView.setOutlineProvider(mOutlineProvider);
@@ -239,6 +266,9 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
         mHistoryOn = findViewById(R.id.history_on);
         mHistoryEmpty = findViewById(R.id.history_on_empty);
         mSwitchBar = findViewById(R.id.main_switch_bar);
+        ViewTreeObserver observer = mTodayView.getViewTreeObserver();
+        observer.addOnScrollChangedListener(this::loadVisibleAppInfo);
+        observer.addOnGlobalLayoutListener(this::loadVisibleAppInfo);
 
         ActionBar actionBar = getActionBar();
         if (actionBar != null) {
@@ -258,6 +288,7 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
         mCountdownLatch = new CountDownLatch(2);
 
         mTodayView.removeAllViews();
+        mPendingAppInfo.clear();
         mHistoryLoader = new HistoryLoader(this, new NotificationBackend(), mPm);
         mHistoryLoader.load(mOnHistoryLoaderListener);
 
@@ -308,6 +339,7 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
         if (mCountdownFuture != null) {
             mCountdownFuture.cancel(true);
         }
+        AppIconCacheManager.getInstance().release();
         super.onDestroy();
     }
 
@@ -342,6 +374,7 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
             mHistoryOn.setVisibility(View.GONE);
             mHistoryOff.setVisibility(View.VISIBLE);
             mTodayView.removeAllViews();
+            mPendingAppInfo.clear();
         }
         mHistoryEmpty.setVisibility(View.GONE);
     }
@@ -374,6 +407,7 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
                     mHistoryEmpty.setVisibility(View.GONE);
                 }
                 mTodayView.removeAllViews();
+                mPendingAppInfo.clear();
             };
 
     private final NotificationListenerService mListener = new NotificationListenerService() {
@@ -49,24 +49,30 @@ import android.text.SpannableString;
 import android.text.SpannableStringBuilder;
 import android.text.TextUtils;
 import android.text.style.StyleSpan;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.DateTimeView;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import androidx.annotation.VisibleForTesting;
 import androidx.preference.Preference;
+import androidx.preference.PreferenceScreen;
 import androidx.preference.PreferenceViewHolder;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.android.settings.R;
 import com.android.settings.SettingsPreferenceFragment;
 import com.android.settings.Utils;
+import com.android.settingslib.utils.ThreadUtils;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
 
 public class NotificationStation extends SettingsPreferenceFragment {
@@ -76,7 +82,8 @@ public class NotificationStation extends SettingsPreferenceFragment {
     private static final boolean DUMP_EXTRAS = true;
     private static final boolean DUMP_PARCEL = true;
 
-    private static class HistoricalNotificationInfo {
+    @VisibleForTesting
+    static class HistoricalNotificationInfo {
         public String key;
         public NotificationChannel channel;
         // Historical notifications don't have Ranking information. for most fields that's ok
@@ -111,23 +118,48 @@ public class NotificationStation extends SettingsPreferenceFragment {
             this.notificationExtra = updatedInfo.notificationExtra;
             this.rankingExtra = updatedInfo.rankingExtra;
         }
+
+        public void updateRankingFrom(HistoricalNotificationInfo updatedInfo) {
+            this.alerted = updatedInfo.alerted;
+            this.visuallyInterruptive = updatedInfo.visuallyInterruptive;
+            this.channel = updatedInfo.channel;
+            this.rankingExtra = updatedInfo.rankingExtra;
+        }
     }
 
     private PackageManager mPm;
     private INotificationManager mNoMan;
     private RankingMap mRanking;
-    private LinkedList<HistoricalNotificationInfo> mNotificationInfos;
-
-    private final NotificationListenerService mListener = new NotificationListenerService() {
+    // Most recent first, at most mMaxNotifications: the oldest ones are dropped as new ones come.
+    @VisibleForTesting
+    ArrayDeque<HistoricalNotificationInfo> mNotificationInfos;
+    private int mMaxNotifications;
+    private final ArrayMap<HistoricalNotificationInfo, HistoricalNotificationPreference>
+            mPreferences = new ArrayMap<>();
+    private int mNextOrder;
+    // Incremented for each ranking merge, so the merges of outdated rankings are dropped.
+    private int mRankingGeneration;
+    private boolean mRankingMergePending;
+
+    // Changes to the preferences, applied together on the next frame.
+    private final ArrayList<HistoricalNotificationInfo> mPendingAdds = new ArrayList<>();
+    private final ArraySet<HistoricalNotificationInfo> mPendingUpdates = new ArraySet<>();
+    private final ArrayList<HistoricalNotificationInfo> mPendingRemovals = new ArrayList<>();
+    private boolean mFrameCallbackPosted;
+    private final Choreographer.FrameCallback mApplyPendingChanges =
+            frameTimeNanos -> applyPendingChanges();
+
+    @VisibleForTesting
+    final NotificationListenerService mListener = new NotificationListenerService() {
         @Override
         public void onNotificationPosted(StatusBarNotification sbn, RankingMap ranking) {
             logd("onNotificationPosted: %s, with update for %d", sbn.getNotification(),
                     ranking == null ? 0 : ranking.getOrderedKeys().length);
             mRanking = ranking;
-            if (sbn.getNotification().isGroupSummary()) {
-                return;
+            if (!sbn.getNotification().isGroupSummary()) {
+                addOrUpdateNotification(sbn);
             }
-            addOrUpdateNotification(sbn);
+            restartPendingRankingMerge();
         }
 
         @Override
@@ -135,10 +167,10 @@ public class NotificationStation extends SettingsPreferenceFragment {
             logd("onNotificationRankingUpdate with update for %d",
                     ranking == null ? 0 : ranking.getOrderedKeys().length);
             mRanking = ranking;
-            if (sbn.getNotification().isGroupSummary()) {
-                return;
+            if (!sbn.getNotification().isGroupSummary()) {
+                markNotificationAsDismissed(sbn);
             }
-            markNotificationAsDismissed(sbn);
+            restartPendingRankingMerge();
         }
 
         @Override
@@ -171,7 +203,9 @@ public class NotificationStation extends SettingsPreferenceFragment {
         mPm = mContext.getPackageManager();
         mNoMan = INotificationManager.Stub.asInterface(
                 ServiceManager.getService(Context.NOTIFICATION_SERVICE));
-        mNotificationInfos = new LinkedList<>();
+        mNotificationInfos = new ArrayDeque<>();
+        mMaxNotifications = mContext.getResources().getInteger(
+                R.integer.config_notification_log_max_entries);
     }
 
     @Override
@@ -182,6 +216,10 @@ public class NotificationStation extends SettingsPreferenceFragment {
 
     @Override
     public void onPause() {
+        if (mFrameCallbackPosted) {
+            Choreographer.getInstance().removeFrameCallback(mApplyPendingChanges);
+            mFrameCallbackPosted = false;
+        }
         try {
             mListener.unregisterAsSystemService();
         } catch (RemoteException e) {
@@ -227,9 +265,19 @@ public class NotificationStation extends SettingsPreferenceFragment {
             setPreferenceScreen(getPreferenceManager().createPreferenceScreen(getContext()));
         }
         getPreferenceScreen().removeAll();
-        for (int i = 0; i < N; i++) {
-            getPreferenceScreen().addPreference(new HistoricalNotificationPreference(
-                    getPrefContext(), mNotificationInfos.get(i), i));
+        mPreferences.clear();
+        mPendingAdds.clear();
+        mPendingUpdates.clear();
+        mPendingRemovals.clear();
+        mRankingGeneration++;
+        mRankingMergePending = false;
+        mNextOrder = -1;
+        int order = 0;
+        for (HistoricalNotificationInfo info : mNotificationInfos) {
+            final HistoricalNotificationPreference preference =
+                    new HistoricalNotificationPreference(getPrefContext(), info, order++);
+            mPreferences.put(info, preference);
+            getPreferenceScreen().addPreference(preference);
         }
     }
 
@@ -237,14 +285,11 @@ public class NotificationStation extends SettingsPreferenceFragment {
      * Finds and dims the given notification in the preferences list.
      */
     private void markNotificationAsDismissed(StatusBarNotification sbn) {
-        final int N = mNotificationInfos.size();
-        for (int i = 0; i < N; i++) {
-            final HistoricalNotificationInfo info = mNotificationInfos.get(i);
+        for (HistoricalNotificationInfo info : mNotificationInfos) {
             if (TextUtils.equals(info.key, sbn.getKey())) {
                 info.active = false;
-                ((HistoricalNotificationPreference) getPreferenceScreen().findPreference(
-                        sbn.getKey())).updatePreference(info);
-               break;
+                scheduleUpdate(info);
+                break;
             }
         }
     }
@@ -255,43 +300,120 @@ public class NotificationStation extends SettingsPreferenceFragment {
      */
     private void addOrUpdateNotification(StatusBarNotification sbn) {
         HistoricalNotificationInfo newInfo = createFromSbn(sbn, true);
-        boolean needsAdd = true;
-        final int N = mNotificationInfos.size();
-        for (int i = 0; i < N; i++) {
-            final HistoricalNotificationInfo info = mNotificationInfos.get(i);
+        for (HistoricalNotificationInfo info : mNotificationInfos) {
             if (TextUtils.equals(info.key, sbn.getKey()) && info.active
                     && !newInfo.alerted && !newInfo.visuallyInterruptive) {
                 info.updateFrom(newInfo);
-
-                ((HistoricalNotificationPreference) getPreferenceScreen().findPreference(
-                        sbn.getKey())).updatePreference(info);
-                needsAdd = false;
-                break;
+                scheduleUpdate(info);
+                return;
             }
         }
-        if (needsAdd) {
-            mNotificationInfos.addFirst(newInfo);
-            getPreferenceScreen().addPreference(new HistoricalNotificationPreference(
-                    getPrefContext(), mNotificationInfos.peekFirst(),
-                    -1 * mNotificationInfos.size()));
+        mNotificationInfos.addFirst(newInfo);
+        mPendingAdds.add(newInfo);
+        while (mNotificationInfos.size() > mMaxNotifications) {
+            final HistoricalNotificationInfo evicted = mNotificationInfos.removeLast();
+            mPendingUpdates.remove(evicted);
+            if (!mPendingAdds.remove(evicted)) {
+                mPendingRemovals.add(evicted);
+            }
         }
+        scheduleApplyPendingChanges();
     }
 
     /**
-     * Updates all notifications in the list based on new information in the ranking.
+     * Updates all notifications in the list based on new information in the ranking. The
+     * ranking is merged in the background, the notifications are updated once it's done.
      */
     private void updateNotificationsFromRanking() {
-        Ranking rank = new Ranking();
-        for (int i = 0; i < getPreferenceScreen().getPreferenceCount(); i++) {
-            final HistoricalNotificationPreference p =
-                    (HistoricalNotificationPreference) getPreferenceScreen().getPreference(i);
-            final HistoricalNotificationInfo info = mNotificationInfos.get(i);
-            mRanking.getRanking(p.getKey(), rank);
+        final RankingMap ranking = mRanking;
+        final int generation = ++mRankingGeneration;
+        mRankingMergePending = ranking != null;
+        if (ranking == null) {
+            return;
+        }
+        // Only the key and the active state are read in the background.
+        final List<HistoricalNotificationInfo> infos = new ArrayList<>(mNotificationInfos);
+        final List<HistoricalNotificationInfo> rankedInfos = new ArrayList<>(infos.size());
+        for (HistoricalNotificationInfo info : infos) {
+            final HistoricalNotificationInfo rankedInfo = new HistoricalNotificationInfo();
+            rankedInfo.key = info.key;
+            rankedInfo.active = info.active;
+            rankedInfos.add(rankedInfo);
+        }
+        ThreadUtils.postOnBackgroundThread(() -> {
+            for (HistoricalNotificationInfo rankedInfo : rankedInfos) {
+                updateFromRanking(rankedInfo, ranking);
+            }
+            ThreadUtils.postOnMainThread(() -> {
+                if (generation != mRankingGeneration) {
+                    return;
+                }
+                mRankingMergePending = false;
+                for (int i = 0; i < infos.size(); i++) {
+                    final HistoricalNotificationInfo info = infos.get(i);
+                    // Evicted notifications don't need to be updated anymore.
+                    if (mPreferences.containsKey(info) || mPendingAdds.contains(info)) {
+                        info.updateRankingFrom(rankedInfos.get(i));
+                        scheduleUpdate(info);
+                    }
+                }
+            });
+        });
+    }
 
-            updateFromRanking(info);
-            ((HistoricalNotificationPreference) getPreferenceScreen().findPreference(
-                    info.key)).updatePreference(info);
+    /**
+     * Merges the current ranking again if the merge of a previous one is still in progress, as it
+     * would otherwise overwrite the notifications changed since with outdated information.
+     */
+    private void restartPendingRankingMerge() {
+        if (mRankingMergePending) {
+            updateNotificationsFromRanking();
+        }
+    }
+
+    private void scheduleUpdate(HistoricalNotificationInfo info) {
+        mPendingUpdates.add(info);
+        scheduleApplyPendingChanges();
+    }
+
+    private void scheduleApplyPendingChanges() {
+        if (!mFrameCallbackPosted) {
+            mFrameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(mApplyPendingChanges);
+        }
+    }
+
+    /**
+     * Applies the changes to the notifications since the last frame to their preferences, so a
+     * burst of notifications only updates the list once.
+     */
+    private void applyPendingChanges() {
+        mFrameCallbackPosted = false;
+        final PreferenceScreen screen = getPreferenceScreen();
+        if (screen != null) {
+            for (HistoricalNotificationInfo info : mPendingRemovals) {
+                final HistoricalNotificationPreference preference = mPreferences.remove(info);
+                if (preference != null) {
+                    screen.removePreference(preference);
+                }
+            }
+            for (HistoricalNotificationInfo info : mPendingAdds) {
+                // Newest at the top, above the ones already in the list.
+                final HistoricalNotificationPreference preference =
+                        new HistoricalNotificationPreference(getPrefContext(), info, mNextOrder--);
+                mPreferences.put(info, preference);
+                screen.addPreference(preference);
+            }
+            for (HistoricalNotificationInfo info : mPendingUpdates) {
+                final HistoricalNotificationPreference preference = mPreferences.get(info);
+                if (preference != null) {
+                    preference.updatePreference(info);
+                }
+            }
         }
+        mPendingRemovals.clear();
+        mPendingAdds.clear();
+        mPendingUpdates.clear();
     }
 
     private static void logd(String msg, Object... args) {
@@ -395,7 +517,8 @@ public class NotificationStation extends SettingsPreferenceFragment {
             // notifications are given to us in the same order as the shade; sorted by inferred
             // priority. Resort chronologically for our display.
             list.sort(mNotificationSorter);
-            mNotificationInfos = new LinkedList<>(list);
+            mNotificationInfos = new ArrayDeque<>(
+                    list.subList(0, Math.min(list.size(), mMaxNotifications)));
 
         } catch (RemoteException e) {
             Log.e(TAG, "Cannot load Notifications: ", e);
@@ -424,38 +547,44 @@ public class NotificationStation extends SettingsPreferenceFragment {
         info.active = active;
         info.notificationExtra = generateExtraText(sbn, info);
 
-        updateFromRanking(info);
+        updateFromRanking(info, mRanking);
 
         return info;
     }
 
-    private void updateFromRanking(HistoricalNotificationInfo info) {
+    /**
+     * Updates {@code info} with {@code ranking}. Only reads and writes {@code info}, so it can be
+     * called from a background thread.
+     */
+    private void updateFromRanking(HistoricalNotificationInfo info, RankingMap ranking) {
         Ranking rank = new Ranking();
-        if (mRanking == null) {
+        if (ranking == null) {
             return;
         }
-        mRanking.getRanking(info.key, rank);
+        ranking.getRanking(info.key, rank);
         info.alerted = rank.getLastAudiblyAlertedMillis() > 0;
         info.visuallyInterruptive = rank.isTextChanged();
         info.channel = rank.getChannel();
-        info.rankingExtra = generateRankingExtraText(info);
+        info.rankingExtra = generateRankingExtraText(info, ranking);
     }
 
     /**
      * Generates a string of debug information for this notification based on the RankingMap
      */
-    private CharSequence generateRankingExtraText(HistoricalNotificationInfo info) {
+    private CharSequence generateRankingExtraText(HistoricalNotificationInfo info,
+            RankingMap ranking) {
         final SpannableStringBuilder sb = new SpannableStringBuilder();
-        final String delim = getString(R.string.notification_log_details_delimiter);
+        final String delim = mContext.getString(R.string.notification_log_details_delimiter);
 
         Ranking rank = new Ranking();
-        if (mRanking != null && mRanking.getRanking(info.key, rank)) {
+        if (ranking != null && ranking.getRanking(info.key, rank)) {
             if (info.active && info.alerted) {
                 sb.append("\n")
-                        .append(bold(getString(R.string.notification_log_details_alerted)));
+                        .append(bold(mContext.getString(
+                                R.string.notification_log_details_alerted)));
             }
             sb.append("\n")
-                    .append(bold(getString(R.string.notification_log_channel)))
+                    .append(bold(mContext.getString(R.string.notification_log_channel)))
                     .append(delim)
                     .append(info.channel.toString());
             sb.append("\n")
@@ -472,31 +601,31 @@ public class NotificationStation extends SettingsPreferenceFragment {
                     .append(rank.isBubble() ? "true" : "false");
             if (info.active) {
                 sb.append("\n")
-                        .append(bold(getString(
+                        .append(bold(mContext.getString(
                                 R.string.notification_log_details_importance)))
                         .append(delim)
                         .append(Ranking.importanceToString(rank.getImportance()));
                 if (rank.getImportanceExplanation() != null) {
                     sb.append("\n")
-                            .append(bold(getString(
+                            .append(bold(mContext.getString(
                                     R.string.notification_log_details_explanation)))
                             .append(delim)
                             .append(rank.getImportanceExplanation());
                 }
                 sb.append("\n")
-                        .append(bold(getString(
+                        .append(bold(mContext.getString(
                                 R.string.notification_log_details_badge)))
                         .append(delim)
                         .append(Boolean.toString(rank.canShowBadge()));
             }
         } else {
-            if (mRanking == null) {
+            if (ranking == null) {
                 sb.append("\n")
-                        .append(bold(getString(
+                        .append(bold(mContext.getString(
                                 R.string.notification_log_details_ranking_null)));
             } else {
                 sb.append("\n")
-                        .append(bold(getString(
+                        .append(bold(mContext.getString(
                                 R.string.notification_log_details_ranking_none)));
             }
         }
@@ -50,6 +50,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.provider.SearchIndexableResource;
 import android.provider.SearchIndexablesContract;
 import android.provider.SearchIndexablesProvider;
@@ -58,6 +59,7 @@ import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.Log;
+import android.util.Pair;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
@@ -78,9 +80,11 @@ import com.android.settingslib.search.SearchIndexableData;
 import com.android.settingslib.search.SearchIndexableRaw;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
 
@@ -93,13 +97,37 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
     public static final String SYSPROP_CRASH_ON_ERROR =
             "debug.com.android.settings.search.crash_on_error";
 
+    /**
+     * Query parameter of the dynamic raw data uri, to only get the data which changed since the
+     * token returned by a previous query.
+     */
+    public static final String QUERY_PARAMETER_SINCE_TOKEN = "since_token";
+
+    /** Cursor extra holding the token to pass in the next incremental dynamic raw data query. */
+    public static final String EXTRA_TOKEN = "token";
+
+    /** Cursor extra holding the class names whose dynamic raw data changed. */
+    public static final String EXTRA_CHANGED_CLASSES = "changed_classes";
+
+    /** Token to get the dynamic raw data of all providers. */
+    public static final long FULL_DYNAMIC_RAW_DATA_TOKEN = -1L;
+
     private static final String TAG = "SettingsSearchProvider";
 
+    /** Pseudo class name grouping the raw data of all injected tiles. */
+    private static final String INJECTION_CLASS_NAME = "injection";
+
     private static final Collection<String> INVALID_KEYS;
 
     // Search enabled states for injection (key: category key, value: search enabled)
     private Map<String, Boolean> mSearchEnabledByCategoryKeyMap;
 
+    // Last dynamic raw data and generation at which it changed, by class name
+    private final Map<String, Pair<Object[][], Long>> mDynamicRawGenerations = new ArrayMap<>();
+    private long mDynamicRawGeneration;
+    // Random value in the upper bits of the tokens, as the generations restart in each process
+    private final long mDynamicRawEpoch = (new Random().nextInt(Integer.MAX_VALUE) + 1L) << 32;
+
     static {
         INVALID_KEYS = new ArraySet<>();
         INVALID_KEYS.add(null);
@@ -115,18 +143,20 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
     @Override
     public Cursor queryXmlResources(String[] projection) {
         final MatrixCursor cursor = new MatrixCursor(INDEXABLES_XML_RES_COLUMNS);
-        final List<SearchIndexableResource> resources =
-                getSearchIndexableResourcesFromProvider(getContext());
-        for (SearchIndexableResource val : resources) {
-            final Object[] ref = new Object[INDEXABLES_XML_RES_COLUMNS.length];
-            ref[COLUMN_INDEX_XML_RES_RANK] = val.rank;
-            ref[COLUMN_INDEX_XML_RES_RESID] = val.xmlResId;
-            ref[COLUMN_INDEX_XML_RES_CLASS_NAME] = val.className;
-            ref[COLUMN_INDEX_XML_RES_ICON_RESID] = val.iconResId;
-            ref[COLUMN_INDEX_XML_RES_INTENT_ACTION] = val.intentAction;
-            ref[COLUMN_INDEX_XML_RES_INTENT_TARGET_PACKAGE] = val.intentTargetPackage;
-            ref[COLUMN_INDEX_XML_RES_INTENT_TARGET_CLASS] = null; // intent target class
-            cursor.addRow(ref);
+        final Context context = getContext();
+        // Rows are added provider by provider, no intermediate list of all resources is built.
+        for (SearchIndexableData bundle : getProviderValues(context)) {
+            for (SearchIndexableResource val : getSearchIndexableResources(context, bundle)) {
+                final Object[] ref = new Object[INDEXABLES_XML_RES_COLUMNS.length];
+                ref[COLUMN_INDEX_XML_RES_RANK] = val.rank;
+                ref[COLUMN_INDEX_XML_RES_RESID] = val.xmlResId;
+                ref[COLUMN_INDEX_XML_RES_CLASS_NAME] = val.className;
+                ref[COLUMN_INDEX_XML_RES_ICON_RESID] = val.iconResId;
+                ref[COLUMN_INDEX_XML_RES_INTENT_ACTION] = val.intentAction;
+                ref[COLUMN_INDEX_XML_RES_INTENT_TARGET_PACKAGE] = val.intentTargetPackage;
+                ref[COLUMN_INDEX_XML_RES_INTENT_TARGET_CLASS] = null; // intent target class
+                cursor.addRow(ref);
+            }
         }
 
         return cursor;
@@ -138,9 +168,9 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
     @Override
     public Cursor queryRawData(String[] projection) {
         final MatrixCursor cursor = new MatrixCursor(INDEXABLES_RAW_COLUMNS);
-        final List<SearchIndexableRaw> raws = getSearchIndexableRawFromProvider(getContext());
-        for (SearchIndexableRaw val : raws) {
-            cursor.addRow(createIndexableRawColumnObjects(val));
+        final Context context = getContext();
+        for (SearchIndexableData bundle : getProviderValues(context)) {
+            addIndexableRawRows(cursor, getSearchIndexableRaw(context, bundle));
         }
 
         return cursor;
@@ -164,6 +194,26 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         return cursor;
     }
 
+    /**
+     * The dynamic raw data uri may carry a {@link #QUERY_PARAMETER_SINCE_TOKEN} returned in the
+     * extras of a previous cursor, in which case only the rows of providers whose dynamic data
+     * changed since then are returned. See {@link #queryDynamicRawData(String[], long)}.
+     */
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+            String sortOrder) {
+        final String sinceToken = uri.getQueryParameter(QUERY_PARAMETER_SINCE_TOKEN);
+        if (sinceToken != null && TextUtils.equals(uri.getLastPathSegment(),
+                SearchIndexablesContract.DYNAMIC_INDEXABLES_RAW)) {
+            try {
+                return queryDynamicRawData(projection, Long.parseLong(sinceToken));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Invalid token " + sinceToken + ", returning all dynamic raw data");
+            }
+        }
+        return super.query(uri, projection, selection, selectionArgs, sortOrder);
+    }
+
     /**
      * Gets a Cursor of dynamic Raw data similar to queryRawData. We use those data in search query
      * time
@@ -171,13 +221,33 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
     @Nullable
     @Override
     public Cursor queryDynamicRawData(String[] projection) {
-        final Context context = getContext();
-        final List<SearchIndexableRaw> rawList = new ArrayList<>();
-        final Collection<SearchIndexableData> bundles = FeatureFactory.getFactory(context)
-                .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
+        return queryDynamicRawData(projection, FULL_DYNAMIC_RAW_DATA_TOKEN);
+    }
 
-        for (SearchIndexableData bundle : bundles) {
-            rawList.addAll(getDynamicSearchIndexableRawData(context, bundle));
+    /**
+     * Gets a Cursor of the dynamic Raw data of the providers whose data changed after
+     * {@code sinceToken}. Use {@link #FULL_DYNAMIC_RAW_DATA_TOKEN} to get the data of all
+     * providers, which is also returned when the token was not issued by this process.
+     *
+     * The extras of the cursor contain the token to use for the next query in
+     * {@link #EXTRA_TOKEN}, and the class names of the changed providers in
+     * {@link #EXTRA_CHANGED_CLASSES}, whose previously returned rows should be replaced.
+     */
+    @VisibleForTesting
+    Cursor queryDynamicRawData(String[] projection, long sinceToken) {
+        final Context context = getContext();
+        final MatrixCursor cursor = new MatrixCursor(INDEXABLES_RAW_COLUMNS);
+        final ArrayList<String> changedClasses = new ArrayList<>();
+        final long sinceGeneration = getDynamicRawGeneration(sinceToken);
+
+        for (SearchIndexableData bundle : getProviderValues(context)) {
+            final String className = bundle.getTargetClass().getName();
+            final List<SearchIndexableRaw> providerRaws =
+                    getDynamicSearchIndexableRawData(context, bundle);
+            if (updateDynamicRawGeneration(className, providerRaws) > sinceGeneration) {
+                changedClasses.add(className);
+                addIndexableRawRows(cursor, providerRaws);
+            }
 
             // Refresh the search enabled state for indexing injection raw data
             final Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
@@ -185,16 +255,56 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
                 refreshSearchEnabledState(context, (BaseSearchIndexProvider) provider);
             }
         }
-        rawList.addAll(getInjectionIndexableRawData(context));
-
-        final MatrixCursor cursor = new MatrixCursor(INDEXABLES_RAW_COLUMNS);
-        for (SearchIndexableRaw raw : rawList) {
-            cursor.addRow(createIndexableRawColumnObjects(raw));
+        final List<SearchIndexableRaw> injectionRaws = getInjectionIndexableRawData(context);
+        if (updateDynamicRawGeneration(INJECTION_CLASS_NAME, injectionRaws) > sinceGeneration) {
+            changedClasses.add(INJECTION_CLASS_NAME);
+            addIndexableRawRows(cursor, injectionRaws);
         }
 
+        final Bundle extras = new Bundle();
+        synchronized (mDynamicRawGenerations) {
+            extras.putLong(EXTRA_TOKEN, mDynamicRawEpoch | mDynamicRawGeneration);
+        }
+        extras.putStringArrayList(EXTRA_CHANGED_CLASSES, changedClasses);
+        cursor.setExtras(extras);
         return cursor;
     }
 
+    /**
+     * Returns the generation {@code token} was issued at, or {@link #FULL_DYNAMIC_RAW_DATA_TOKEN}
+     * if it was issued by another process or is unknown, e.g. after the provider restarted.
+     */
+    private long getDynamicRawGeneration(long token) {
+        if ((token & 0xffffffff00000000L) != mDynamicRawEpoch) {
+            return FULL_DYNAMIC_RAW_DATA_TOKEN;
+        }
+        final long generation = token & 0xffffffffL;
+        synchronized (mDynamicRawGenerations) {
+            return generation <= mDynamicRawGeneration ? generation : FULL_DYNAMIC_RAW_DATA_TOKEN;
+        }
+    }
+
+    /**
+     * Records the dynamic raw data of {@code className}, and returns the generation at which it
+     * last changed.
+     */
+    private long updateDynamicRawGeneration(String className, List<SearchIndexableRaw> raws) {
+        // Keep the rows themselves rather than a hash of them, so that no change can be missed.
+        final Object[][] rows = new Object[raws.size()][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = createIndexableRawColumnObjects(raws.get(i));
+        }
+        synchronized (mDynamicRawGenerations) {
+            final Pair<Object[][], Long> previous = mDynamicRawGenerations.get(className);
+            if (previous != null && Arrays.deepEquals(previous.first, rows)) {
+                return previous.second;
+            }
+            mDynamicRawGeneration++;
+            mDynamicRawGenerations.put(className, Pair.create(rows, mDynamicRawGeneration));
+            return mDynamicRawGeneration;
+        }
+    }
+
     @Override
     public Cursor querySiteMapPairs() {
         final MatrixCursor cursor = new MatrixCursor(SITE_MAP_COLUMNS);
@@ -271,12 +381,9 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
     }
 
     private List<String> getNonIndexableKeysFromProvider(Context context) {
-        final Collection<SearchIndexableData> bundles = FeatureFactory.getFactory(context)
-                .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
-
         final List<String> nonIndexableKeys = new ArrayList<>();
 
-        for (SearchIndexableData bundle : bundles) {
+        for (SearchIndexableData bundle : getProviderValues(context)) {
             final long startTime = System.currentTimeMillis();
             Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
             List<String> providerNonIndexableKeys;
@@ -321,55 +428,47 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         return nonIndexableKeys;
     }
 
-    private List<SearchIndexableResource> getSearchIndexableResourcesFromProvider(Context context) {
-        final Collection<SearchIndexableData> bundles = FeatureFactory.getFactory(context)
+    private static Collection<SearchIndexableData> getProviderValues(Context context) {
+        return FeatureFactory.getFactory(context)
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
-        List<SearchIndexableResource> resourceList = new ArrayList<>();
-
-        for (SearchIndexableData bundle : bundles) {
-            Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
-            final List<SearchIndexableResource> resList =
-                    provider.getXmlResourcesToIndex(context, true);
+    }
 
-            if (resList == null) {
-                continue;
-            }
+    private List<SearchIndexableResource> getSearchIndexableResources(Context context,
+            SearchIndexableData bundle) {
+        Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+        final List<SearchIndexableResource> resList =
+                provider.getXmlResourcesToIndex(context, true);
 
-            for (SearchIndexableResource item : resList) {
-                item.className = TextUtils.isEmpty(item.className)
-                        ? bundle.getTargetClass().getName()
-                        : item.className;
-            }
+        if (resList == null) {
+            return new ArrayList<>();
+        }
 
-            resourceList.addAll(resList);
+        for (SearchIndexableResource item : resList) {
+            item.className = TextUtils.isEmpty(item.className)
+                    ? bundle.getTargetClass().getName()
+                    : item.className;
         }
 
-        return resourceList;
+        return resList;
     }
 
-    private List<SearchIndexableRaw> getSearchIndexableRawFromProvider(Context context) {
-        final Collection<SearchIndexableData> bundles = FeatureFactory.getFactory(context)
-                .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
-        final List<SearchIndexableRaw> rawList = new ArrayList<>();
-
-        for (SearchIndexableData bundle : bundles) {
-            Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
-            final List<SearchIndexableRaw> providerRaws = provider.getRawDataToIndex(context,
-                    true /* enabled */);
+    private List<SearchIndexableRaw> getSearchIndexableRaw(Context context,
+            SearchIndexableData bundle) {
+        Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+        final List<SearchIndexableRaw> providerRaws = provider.getRawDataToIndex(context,
+                true /* enabled */);
 
-            if (providerRaws == null) {
-                continue;
-            }
+        if (providerRaws == null) {
+            return new ArrayList<>();
+        }
 
-            for (SearchIndexableRaw raw : providerRaws) {
-                // The classname and intent information comes from the PreIndexData
-                // This will be more clear when provider conversion is done at PreIndex time.
-                raw.className = bundle.getTargetClass().getName();
-            }
-            rawList.addAll(providerRaws);
+        for (SearchIndexableRaw raw : providerRaws) {
+            // The classname and intent information comes from the PreIndexData
+            // This will be more clear when provider conversion is done at PreIndex time.
+            raw.className = bundle.getTargetClass().getName();
         }
 
-        return rawList;
+        return providerRaws;
     }
 
     private List<SearchIndexableRaw> getDynamicSearchIndexableRawData(Context context,
@@ -457,6 +556,12 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         return true;
     }
 
+    private static void addIndexableRawRows(MatrixCursor cursor, List<SearchIndexableRaw> raws) {
+        for (SearchIndexableRaw raw : raws) {
+            cursor.addRow(createIndexableRawColumnObjects(raw));
+        }
+    }
+
     private static Object[] createIndexableRawColumnObjects(SearchIndexableRaw raw) {
         final Object[] ref = new Object[INDEXABLES_RAW_COLUMNS.length];
         ref[COLUMN_INDEX_RAW_TITLE] = raw.title;
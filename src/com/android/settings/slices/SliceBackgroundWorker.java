@@ -20,22 +20,24 @@ import android.annotation.MainThread;
 import android.annotation.Nullable;
 import android.content.Context;
 import android.net.Uri;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
-import android.os.Message;
 import android.os.Process;
 import android.os.SystemClock;
-import android.util.ArrayMap;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
+
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The Slice background worker is used to make Settings Slices be able to work with data that is
@@ -48,7 +50,9 @@ import java.util.Map;
  * {@link SliceBackgroundWorker} caches the results, uses the cache to compare if there is any data
  * changed, and then notifies the Slice {@link Uri} to update.
  *
- * It also stores all instances of all workers to ensure each worker is a Singleton.
+ * It also stores all instances of all workers to ensure each worker is a Singleton. Workers are
+ * created by the {@link Factory} registered for their class, or by their
+ * {@code (Context, Uri)} constructor if none is registered.
  */
 public abstract class SliceBackgroundWorker<E> implements Closeable {
 
@@ -56,7 +60,20 @@ public abstract class SliceBackgroundWorker<E> implements Closeable {
 
     private static final long SLICE_UPDATE_THROTTLE_INTERVAL = 300L;
 
-    private static final Map<Uri, SliceBackgroundWorker> LIVE_WORKERS = new ArrayMap<>();
+    private static final Map<Uri, SliceBackgroundWorker> LIVE_WORKERS = new ConcurrentHashMap<>();
+
+    private static final Map<Class<? extends SliceBackgroundWorker>, Factory> FACTORIES =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Creates the {@link SliceBackgroundWorker} of a slice.
+     */
+    public interface Factory {
+        /**
+         * @return a new worker for the slice of {@code uri}
+         */
+        SliceBackgroundWorker create(Context context, Uri uri);
+    }
 
     private final Context mContext;
     private final Uri mUri;
@@ -91,26 +108,46 @@ public abstract class SliceBackgroundWorker<E> implements Closeable {
      * CustomSliceable}
      */
     static SliceBackgroundWorker getInstance(Context context, Sliceable sliceable, Uri uri) {
-        SliceBackgroundWorker worker = getInstance(uri);
-        if (worker == null) {
-            final Class<? extends SliceBackgroundWorker> workerClass =
-                    sliceable.getBackgroundWorkerClass();
-            worker = createInstance(context.getApplicationContext(), uri, workerClass);
-            LIVE_WORKERS.put(uri, worker);
+        final SliceBackgroundWorker worker = getInstance(uri);
+        if (worker != null) {
+            return worker;
         }
-        return worker;
+        final Context appContext = context.getApplicationContext();
+        final Factory factory = getFactory(sliceable.getBackgroundWorkerClass());
+        return LIVE_WORKERS.computeIfAbsent(uri, key -> factory.create(appContext, key));
+    }
+
+    /**
+     * Registers the {@link Factory} creating the workers of {@code workerClass}, replacing the
+     * lookup of its {@code (Context, Uri)} constructor.
+     */
+    public static void registerFactory(Class<? extends SliceBackgroundWorker> workerClass,
+            Factory factory) {
+        FACTORIES.put(workerClass, factory);
     }
 
-    private static SliceBackgroundWorker createInstance(Context context, Uri uri,
-            Class<? extends SliceBackgroundWorker> clazz) {
-        Log.d(TAG, "create instance: " + clazz);
+    private static Factory getFactory(Class<? extends SliceBackgroundWorker> workerClass) {
+        return FACTORIES.computeIfAbsent(workerClass, SliceBackgroundWorker::createFactory);
+    }
+
+    private static Factory createFactory(Class<? extends SliceBackgroundWorker> clazz) {
+        Log.d(TAG, "create factory: " + clazz);
+        final Constructor<? extends SliceBackgroundWorker> constructor;
         try {
-            return clazz.getConstructor(Context.class, Uri.class).newInstance(context, uri);
-        } catch (NoSuchMethodException | IllegalAccessException | InstantiationException |
-                InvocationTargetException e) {
+            constructor = clazz.getConstructor(Context.class, Uri.class);
+        } catch (NoSuchMethodException e) {
             throw new IllegalStateException(
                     "Invalid slice background worker: " + clazz, e);
         }
+        return (context, uri) -> {
+            try {
+                return constructor.newInstance(context, uri);
+            } catch (IllegalAccessException | InstantiationException
+                    | InvocationTargetException e) {
+                throw new IllegalStateException(
+                        "Invalid slice background worker: " + clazz, e);
+            }
+        };
     }
 
     static void shutdown() {
@@ -124,6 +161,13 @@ public abstract class SliceBackgroundWorker<E> implements Closeable {
         LIVE_WORKERS.clear();
     }
 
+    /**
+     * Prints the rate of slice change notifications of each slice.
+     */
+    static void dump(PrintWriter writer) {
+        NotifySliceChangeScheduler.getInstance().dump(writer);
+    }
+
     /**
      * Called when the Slice is pinned. This is the place to register callbacks or initialize scan
      * tasks.
@@ -173,7 +217,7 @@ public abstract class SliceBackgroundWorker<E> implements Closeable {
      * Notify that data was updated and attempt to sync changes to the Slice.
      */
     protected final void notifySliceChange() {
-        NotifySliceChangeHandler.getInstance().updateSlice(this);
+        NotifySliceChangeScheduler.getInstance().updateSlice(this);
     }
 
     void pin() {
@@ -182,67 +226,151 @@ public abstract class SliceBackgroundWorker<E> implements Closeable {
 
     void unpin() {
         onSliceUnpinned();
-        NotifySliceChangeHandler.getInstance().cancelSliceUpdate(this);
+        NotifySliceChangeScheduler.getInstance().cancelSliceUpdate(this);
     }
 
-    private static class NotifySliceChangeHandler extends Handler {
+    /**
+     * Throttles the slice change notifications of each slice with a token bucket. A slice can be
+     * notified {@link #MAX_BURST} times in a row, then once per
+     * {@link #SLICE_UPDATE_THROTTLE_INTERVAL}. Updates requested while a notification is pending
+     * are merged into it.
+     */
+    private static class NotifySliceChangeScheduler {
 
-        private static final int MSG_UPDATE_SLICE = 1000;
+        private static final int MAX_BURST = 2;
 
-        private static NotifySliceChangeHandler sHandler;
+        private static NotifySliceChangeScheduler sInstance;
 
-        private final Map<Uri, Long> mLastUpdateTimeLookup = Collections.synchronizedMap(
-                new ArrayMap<>());
+        private final ScheduledThreadPoolExecutor mExecutor;
+        private final Map<Uri, SliceNotifyState> mStates = new ConcurrentHashMap<>();
 
-        private static NotifySliceChangeHandler getInstance() {
-            if (sHandler == null) {
-                final HandlerThread workerThread = new HandlerThread("NotifySliceChangeHandler",
-                        Process.THREAD_PRIORITY_BACKGROUND);
-                workerThread.start();
-                sHandler = new NotifySliceChangeHandler(workerThread.getLooper());
+        private static synchronized NotifySliceChangeScheduler getInstance() {
+            if (sInstance == null) {
+                sInstance = new NotifySliceChangeScheduler();
             }
-            return sHandler;
+            return sInstance;
         }
 
-        private NotifySliceChangeHandler(Looper looper) {
-            super(looper);
+        private NotifySliceChangeScheduler() {
+            mExecutor = new ScheduledThreadPoolExecutor(1 /* corePoolSize */,
+                    runnable -> new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }, "NotifySliceChange"));
+            mExecutor.setRemoveOnCancelPolicy(true);
         }
 
-        @Override
-        public void handleMessage(Message msg) {
-            if (msg.what != MSG_UPDATE_SLICE) {
-                return;
+        private void updateSlice(SliceBackgroundWorker worker) {
+            final SliceNotifyState state = mStates.computeIfAbsent(worker.getUri(),
+                    uri -> new SliceNotifyState());
+            synchronized (state) {
+                if (state.mPendingTask != null) {
+                    state.mMergedCount++;
+                    return;
+                }
+                final long delay = state.getDelay(SystemClock.uptimeMillis());
+                if (delay > 0) {
+                    state.mDelayedCount++;
+                }
+                final Runnable task = new Runnable() {
+                    @Override
+                    public void run() {
+                        notifySliceChange(worker, state, this);
+                    }
+                };
+                state.mPendingTask = task;
+                state.mPendingFuture = mExecutor.schedule(task, delay, TimeUnit.MILLISECONDS);
             }
+        }
 
-            final SliceBackgroundWorker worker = (SliceBackgroundWorker) msg.obj;
-            final Uri uri = worker.getUri();
-            final Context context = worker.getContext();
-            mLastUpdateTimeLookup.put(uri, SystemClock.uptimeMillis());
-            context.getContentResolver().notifyChange(uri, null);
+        private void notifySliceChange(SliceBackgroundWorker worker, SliceNotifyState state,
+                Runnable task) {
+            synchronized (state) {
+                if (state.mPendingTask != task) {
+                    // Cancelled.
+                    return;
+                }
+                state.mPendingTask = null;
+                state.mPendingFuture = null;
+                state.onNotified(SystemClock.uptimeMillis());
+            }
+            worker.getContext().getContentResolver().notifyChange(worker.getUri(), null);
         }
 
-        private void updateSlice(SliceBackgroundWorker worker) {
-            if (hasMessages(MSG_UPDATE_SLICE, worker)) {
+        private void cancelSliceUpdate(SliceBackgroundWorker worker) {
+            final SliceNotifyState state = mStates.get(worker.getUri());
+            if (state == null) {
                 return;
             }
+            synchronized (state) {
+                if (state.mPendingFuture != null) {
+                    state.mPendingFuture.cancel(false /* mayInterruptIfRunning */);
+                }
+                state.mPendingTask = null;
+                state.mPendingFuture = null;
+                // The next pin postpones its first update again.
+                state.mTheoreticalArrivalTime = 0L;
+            }
+        }
+
+        private void dump(PrintWriter writer) {
+            final long now = SystemClock.uptimeMillis();
+            writer.println("Slice change notifications:");
+            for (Map.Entry<Uri, SliceNotifyState> entry : mStates.entrySet()) {
+                final SliceNotifyState state = entry.getValue();
+                synchronized (state) {
+                    final long elapsed = Math.max(now - state.mFirstNotifyTime, 1L);
+                    final float perMinute = state.mNotifyCount == 0 ? 0f
+                            : state.mNotifyCount * (float) TimeUnit.MINUTES.toMillis(1) / elapsed;
+                    writer.println("  " + entry.getKey()
+                            + ": notified=" + state.mNotifyCount
+                            + ", perMinute=" + perMinute
+                            + ", delayed=" + state.mDelayedCount
+                            + ", merged=" + state.mMergedCount);
+                }
+            }
+        }
+    }
 
-            final Message message = obtainMessage(MSG_UPDATE_SLICE, worker);
-            final long lastUpdateTime = mLastUpdateTimeLookup.getOrDefault(worker.getUri(), 0L);
-            if (lastUpdateTime == 0L) {
+    /**
+     * The throttling state and the notification counts of a slice. The bucket is tracked by the
+     * time at which it would be full again, so no refill has to be scheduled.
+     */
+    @VisibleForTesting
+    static class SliceNotifyState {
+        Runnable mPendingTask;
+        ScheduledFuture<?> mPendingFuture;
+        // 0 if the slice was not notified since it was pinned.
+        long mTheoreticalArrivalTime;
+        long mFirstNotifyTime;
+        int mNotifyCount;
+        int mDelayedCount;
+        int mMergedCount;
+
+        /**
+         * @return the time to wait before notifying the slice at {@code now}
+         */
+        long getDelay(long now) {
+            if (mTheoreticalArrivalTime == 0L) {
                 // Postpone the first update triggering by onSlicePinned() to avoid being too close
                 // to the first Slice bind.
-                sendMessageDelayed(message, SLICE_UPDATE_THROTTLE_INTERVAL);
-            } else if (SystemClock.uptimeMillis() - lastUpdateTime
-                    > SLICE_UPDATE_THROTTLE_INTERVAL) {
-                sendMessage(message);
-            } else {
-                sendMessageAtTime(message, lastUpdateTime + SLICE_UPDATE_THROTTLE_INTERVAL);
+                return SLICE_UPDATE_THROTTLE_INTERVAL;
             }
+            final long allowedTime = mTheoreticalArrivalTime
+                    - (NotifySliceChangeScheduler.MAX_BURST - 1) * SLICE_UPDATE_THROTTLE_INTERVAL;
+            return Math.max(allowedTime - now, 0L);
         }
 
-        private void cancelSliceUpdate(SliceBackgroundWorker worker) {
-            removeMessages(MSG_UPDATE_SLICE, worker);
-            mLastUpdateTimeLookup.remove(worker.getUri());
+        /**
+         * Takes a token for a notification at {@code now}.
+         */
+        void onNotified(long now) {
+            mTheoreticalArrivalTime = Math.max(mTheoreticalArrivalTime, now)
+                    + SLICE_UPDATE_THROTTLE_INTERVAL;
+            if (mNotifyCount == 0) {
+                mFirstNotifyTime = now;
+            }
+            mNotifyCount++;
         }
-    };
+    }
 }
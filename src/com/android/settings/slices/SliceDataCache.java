@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.slices;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of the {@link SliceData} of {@link SettingsSliceProvider}, by slice
+ * {@link Uri}.
+ *
+ * It also remembers the {@link Uri}s which have no indexed {@link SliceData} for a while, so they
+ * are not looked up again on every bind. The whole cache is dropped when the locale changes, as
+ * the indexed titles and summaries are localized.
+ */
+class SliceDataCache {
+
+    @VisibleForTesting
+    static final int MAX_ENTRIES = 128;
+    @VisibleForTesting
+    static final int MAX_MISSING_ENTRIES = 32;
+    @VisibleForTesting
+    static final long MISSING_ENTRY_TIMEOUT_MS = 60_000L;
+
+    private final LruCache<Uri, SliceData> mEntries = new LruCache<>(MAX_ENTRIES);
+    // Uptime at which the lookup of each missing Uri failed.
+    private final LruCache<Uri, Long> mMissingEntries = new LruCache<>(MAX_MISSING_ENTRIES);
+    private Locale mLocale = Locale.getDefault();
+
+    /**
+     * @return the cached {@link SliceData} of {@code uri}, or null if not cached.
+     */
+    synchronized SliceData get(Uri uri) {
+        checkLocale();
+        return mEntries.get(uri);
+    }
+
+    synchronized void put(Uri uri, SliceData sliceData) {
+        checkLocale();
+        mMissingEntries.remove(uri);
+        mEntries.put(uri, sliceData);
+    }
+
+    /**
+     * Caches all of {@code sliceData} unless the cache would overflow, so warming the cache
+     * doesn't evict the slices in use.
+     */
+    synchronized void putAll(Map<Uri, SliceData> sliceData) {
+        checkLocale();
+        for (Map.Entry<Uri, SliceData> entry : sliceData.entrySet()) {
+            if (mEntries.size() >= MAX_ENTRIES) {
+                return;
+            }
+            if (mEntries.get(entry.getKey()) == null) {
+                mEntries.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    synchronized void remove(Uri uri) {
+        mEntries.remove(uri);
+        mMissingEntries.remove(uri);
+    }
+
+    /**
+     * Remembers that {@code uri} has no indexed {@link SliceData}.
+     */
+    synchronized void putMissing(Uri uri) {
+        checkLocale();
+        mEntries.remove(uri);
+        mMissingEntries.put(uri, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * @return whether the lookup of {@code uri} failed recently.
+     */
+    synchronized boolean isMissing(Uri uri) {
+        checkLocale();
+        final Long missingTime = mMissingEntries.get(uri);
+        if (missingTime == null) {
+            return false;
+        }
+        if (SystemClock.uptimeMillis() - missingTime > MISSING_ENTRY_TIMEOUT_MS) {
+            mMissingEntries.remove(uri);
+            return false;
+        }
+        return true;
+    }
+
+    private void checkLocale() {
+        final Locale locale = Locale.getDefault();
+        if (!locale.equals(mLocale)) {
+            mLocale = locale;
+            mEntries.evictAll();
+            mMissingEntries.evictAll();
+        }
+    }
+}
@@ -35,10 +35,12 @@ import android.content.res.Resources;
 import android.content.res.XmlResourceParser;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.SearchIndexableResource;
 import android.provider.SettingsSlicesContract;
 import android.text.TextUtils;
 import android.util.AttributeSet;
+import android.util.Base64;
 import android.util.Log;
 import android.util.Xml;
 import android.view.accessibility.AccessibilityManager;
@@ -61,12 +63,17 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Converts all Slice sources into {@link SliceData}.
@@ -80,6 +87,15 @@ class SliceDataConverter {
 
     private static final String NODE_NAME_PREFERENCE_SCREEN = "PreferenceScreen";
 
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * Version of the Slice properties reported by the preference controllers. Bump it whenever a
+     * controller changes what it reports, e.g. whether it is sliceable or its slice type, so that
+     * all providers are indexed again, since {@link #getProviderDigest} does not cover them.
+     */
+    static final int CONTROLLERS_VERSION = 1;
+
     private final MetricsFeatureProvider mMetricsFeatureProvider;
     private Context mContext;
 
@@ -101,39 +117,176 @@ class SliceDataConverter {
     public List<SliceData> getSliceData() {
         List<SliceData> sliceData = new ArrayList<>();
 
-        final Collection<SearchIndexableData> bundles = FeatureFactory.getFactory(mContext)
+        final List<SearchIndexableData> bundles = new ArrayList<>(getSearchIndexableData());
+        for (List<SliceData> providerSliceData : getSliceData(bundles, true /* parallel */)) {
+            sliceData.addAll(providerSliceData);
+        }
+
+        final List<SliceData> a11ySliceData = getAccessibilitySliceData();
+        sliceData.addAll(a11ySliceData);
+        return sliceData;
+    }
+
+    /**
+     * @return all {@link SearchIndexableData} whose XML resources are sources of Slices.
+     */
+    Collection<SearchIndexableData> getSearchIndexableData() {
+        return FeatureFactory.getFactory(mContext)
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
+    }
 
+    /**
+     * @return a list of {@link SliceData} extracted from the XML resources of a single
+     * {@link SearchIndexableData}.
+     */
+    List<SliceData> getSliceData(SearchIndexableData bundle) {
+        return getSliceDataFromParsedXml(bundle.getTargetClass().getName(),
+                parseXmlResources(getXmlResIds(bundle)));
+    }
+
+    /**
+     * Extracts the {@link SliceData} of each of {@code bundles}.
+     *
+     * The providers are asked for their XML resources on the calling thread. In parallel mode only
+     * the resources are then parsed on the shared {@link ForkJoinPool}, while the preference
+     * controllers are always created and queried on the calling thread, as they are not meant to
+     * be used concurrently. Either way the result is deterministic: the list at index i holds the
+     * data of the bundle at index i.
+     */
+    List<List<SliceData>> getSliceData(List<SearchIndexableData> bundles, boolean parallel) {
+        final long startTime = SystemClock.elapsedRealtime();
+        final List<List<Integer>> xmlResIds = new ArrayList<>(bundles.size());
         for (SearchIndexableData bundle : bundles) {
-            final String fragmentName = bundle.getTargetClass().getName();
+            xmlResIds.add(getXmlResIds(bundle));
+        }
 
-            final SearchIndexProvider provider = bundle.getSearchIndexProvider();
+        final List<List<ParsedXml>> parsed =
+                new ArrayList<>(Collections.nCopies(bundles.size(), null));
+        final long[] parseTimes = new long[bundles.size()];
+        if (!parallel || bundles.size() <= 1) {
+            for (int i = 0; i < bundles.size(); i++) {
+                parseProviderXml(xmlResIds, parsed, parseTimes, i);
+            }
+        } else {
+            ForkJoinPool.commonPool().invoke(
+                    new ParseProvidersTask(xmlResIds, parsed, parseTimes, 0, bundles.size()));
+        }
+        final long parsedTime = SystemClock.elapsedRealtime();
+
+        final boolean debug = Log.isLoggable(TAG, Log.DEBUG);
+        final List<List<SliceData>> results = new ArrayList<>(bundles.size());
+        for (int i = 0; i < bundles.size(); i++) {
+            final String fragmentName = bundles.get(i).getTargetClass().getName();
+            final long controllersStartTime = SystemClock.elapsedRealtime();
+            results.add(getSliceDataFromParsedXml(fragmentName, parsed.get(i)));
+            if (debug) {
+                Log.d(TAG, "Extracting " + fragmentName + " took parsing: " + parseTimes[i]
+                        + " ms, controllers: "
+                        + (SystemClock.elapsedRealtime() - controllersStartTime) + " ms");
+            }
+        }
+        Log.d(TAG, "Extracting " + bundles.size() + " providers took "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms, parsing: "
+                + (parsedTime - startTime) + " ms, parallel: " + parallel);
+        return results;
+    }
 
-            // CodeInspection test guards against the null check. Keep check in case of bad actors.
-            if (provider == null) {
-                Log.e(TAG, fragmentName + " dose not implement Search Index Provider");
-                continue;
+    /**
+     * Computes a digest of the inputs the {@link SliceData} of {@code bundle} is indexed from: the
+     * XML resources to index and the attributes of each preference in them, including the
+     * controller class names and the resolved strings, which also cover locale changes.
+     *
+     * What the controllers report is not part of it, as it would require creating all of them.
+     * Changes to that are handled by {@link #CONTROLLERS_VERSION} instead.
+     *
+     * @return the base64 encoded digest, or {@code null} if it could not be computed, in which case
+     * the provider should always be indexed again.
+     */
+    String getProviderDigest(SearchIndexableData bundle) {
+        final SearchIndexProvider provider = bundle.getSearchIndexProvider();
+        if (provider == null) {
+            return null;
+        }
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            Log.w(TAG, "Digest algorithm unavailable", e);
+            return null;
+        }
+        updateDigest(digest, bundle.getTargetClass().getName());
+
+        try {
+            final List<SearchIndexableResource> resList =
+                    provider.getXmlResourcesToIndex(mContext, true /* enabled */);
+            if (resList != null) {
+                for (SearchIndexableResource resource : resList) {
+                    updateDigest(digest, String.valueOf(resource.xmlResId));
+                    if (resource.xmlResId != 0) {
+                        updateDigestFromXml(digest, resource.xmlResId);
+                    }
+                }
             }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to compute digest for " + bundle.getTargetClass().getName(), e);
+            return null;
+        }
+        return Base64.encodeToString(digest.digest(), Base64.NO_WRAP);
+    }
 
-            final List<SliceData> providerSliceData = getSliceDataFromProvider(provider,
-                    fragmentName);
-            sliceData.addAll(providerSliceData);
+    private void updateDigestFromXml(MessageDigest digest, int xmlResId)
+            throws XmlPullParserException, IOException {
+        final Resources res = mContext.getResources();
+        try (XmlResourceParser parser = res.getXml(xmlResId)) {
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type != XmlPullParser.START_TAG) {
+                    continue;
+                }
+                updateDigest(digest, parser.getName());
+                for (int i = 0; i < parser.getAttributeCount(); i++) {
+                    updateDigest(digest, parser.getAttributeName(i));
+                    updateDigest(digest, parser.getAttributeValue(i));
+                    final int resId = parser.getAttributeResourceValue(i, 0 /* defaultValue */);
+                    if (resId != 0 && "string".equals(res.getResourceTypeName(resId))) {
+                        // The referenced text can change without the reference changing.
+                        updateDigest(digest, res.getString(resId));
+                    }
+                }
+            }
         }
+    }
 
-        final List<SliceData> a11ySliceData = getAccessibilitySliceData();
-        sliceData.addAll(a11ySliceData);
-        return sliceData;
+    private static void updateDigest(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        // Separator, so that adjacent values cannot be confused with each other.
+        digest.update((byte) 0);
     }
 
-    private List<SliceData> getSliceDataFromProvider(SearchIndexProvider provider,
-            String fragmentName) {
-        final List<SliceData> sliceData = new ArrayList<>();
+    /**
+     * Returns the XML resources {@code bundle} indexes. This runs code of the provider, so it is
+     * called on the thread extracting the Slices rather than on the parsing workers.
+     */
+    private List<Integer> getXmlResIds(SearchIndexableData bundle) {
+        final List<Integer> xmlResIds = new ArrayList<>();
+        final String fragmentName = bundle.getTargetClass().getName();
+
+        final SearchIndexProvider provider = bundle.getSearchIndexProvider();
+
+        // CodeInspection test guards against the null check. Keep check in case of bad actors.
+        if (provider == null) {
+            Log.e(TAG, fragmentName + " dose not implement Search Index Provider");
+            return xmlResIds;
+        }
 
         final List<SearchIndexableResource> resList =
                 provider.getXmlResourcesToIndex(mContext, true /* enabled */);
 
         if (resList == null) {
-            return sliceData;
+            return xmlResIds;
         }
 
         // TODO (b/67996923) get a list of permanent NIKs and skip the invalid keys.
@@ -145,18 +298,36 @@ class SliceDataConverter {
                 continue;
             }
 
-            List<SliceData> xmlSliceData = getSliceDataFromXML(xmlResId, fragmentName);
-            sliceData.addAll(xmlSliceData);
+            xmlResIds.add(xmlResId);
         }
 
-        return sliceData;
+        return xmlResIds;
     }
 
-    private List<SliceData> getSliceDataFromXML(int xmlResId, String fragmentName) {
-        XmlResourceParser parser = null;
+    /**
+     * Parses {@code xmlResIds}. This only reads resources, so it can run on any thread.
+     */
+    private List<ParsedXml> parseXmlResources(List<Integer> xmlResIds) {
+        final List<ParsedXml> parsedXml = new ArrayList<>(xmlResIds.size());
+        for (int xmlResId : xmlResIds) {
+            parsedXml.add(parseXml(xmlResId));
+        }
+        return parsedXml;
+    }
 
-        final List<SliceData> xmlSliceData = new ArrayList<>();
-        String controllerClassName = "";
+    /**
+     * Parses the XML resources of the provider at {@code index}, and records how long it took.
+     */
+    private void parseProviderXml(List<List<Integer>> xmlResIds, List<List<ParsedXml>> results,
+            long[] parseTimes, int index) {
+        final long startTime = SystemClock.elapsedRealtime();
+        results.set(index, parseXmlResources(xmlResIds.get(index)));
+        parseTimes[index] = SystemClock.elapsedRealtime() - startTime;
+    }
+
+    private ParsedXml parseXml(int xmlResId) {
+        final ParsedXml parsedXml = new ParsedXml();
+        XmlResourceParser parser = null;
 
         try {
             parser = mContext.getResources().getXml(xmlResId);
@@ -175,12 +346,12 @@ class SliceDataConverter {
             }
 
             final AttributeSet attrs = Xml.asAttributeSet(parser);
-            final String screenTitle = PreferenceXmlParserUtils.getDataTitle(mContext, attrs);
+            parsedXml.mScreenTitle = PreferenceXmlParserUtils.getDataTitle(mContext, attrs);
 
             // TODO (b/67996923) Investigate if we need headers for Slices, since they never
             // correspond to an actual setting.
 
-            final List<Bundle> metadata = PreferenceXmlParserUtils.extractMetadata(mContext,
+            parsedXml.mMetadata = PreferenceXmlParserUtils.extractMetadata(mContext,
                     xmlResId,
                     MetadataFlag.FLAG_NEED_KEY
                             | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
@@ -189,8 +360,34 @@ class SliceDataConverter {
                             | MetadataFlag.FLAG_NEED_PREF_ICON
                             | MetadataFlag.FLAG_NEED_PREF_SUMMARY
                             | MetadataFlag.FLAG_UNAVAILABLE_SLICE_SUBTITLE);
+        } catch (Exception e) {
+            // Reported along with the controller errors, on the thread building the SliceData.
+            parsedXml.mError = e;
+        } finally {
+            if (parser != null) parser.close();
+        }
+        return parsedXml;
+    }
 
-            for (Bundle bundle : metadata) {
+    private List<SliceData> getSliceDataFromParsedXml(String fragmentName,
+            List<ParsedXml> parsedXml) {
+        final List<SliceData> sliceData = new ArrayList<>();
+        for (ParsedXml xml : parsedXml) {
+            sliceData.addAll(getSliceDataFromXML(xml, fragmentName));
+        }
+        return sliceData;
+    }
+
+    private List<SliceData> getSliceDataFromXML(ParsedXml parsedXml, String fragmentName) {
+        final List<SliceData> xmlSliceData = new ArrayList<>();
+        String controllerClassName = "";
+
+        try {
+            if (parsedXml.mError != null) {
+                throw parsedXml.mError;
+            }
+
+            for (Bundle bundle : parsedXml.mMetadata) {
                 // TODO (b/67996923) Non-controller Slices should become intent-only slices.
                 // Note that without a controller, dynamic summaries are impossible.
                 controllerClassName = bundle.getString(METADATA_CONTROLLER);
@@ -221,7 +418,7 @@ class SliceDataConverter {
                         .setTitle(title)
                         .setSummary(summary)
                         .setIcon(iconResId)
-                        .setScreenTitle(screenTitle)
+                        .setScreenTitle(parsedXml.mScreenTitle)
                         .setPreferenceControllerClassName(controllerClassName)
                         .setFragmentName(fragmentName)
                         .setSliceType(sliceType)
@@ -253,13 +450,11 @@ class SliceDataConverter {
                     SettingsEnums.PAGE_UNKNOWN,
                     fragmentName + "_" + controllerClassName,
                     1);
-        } finally {
-            if (parser != null) parser.close();
         }
         return xmlSliceData;
     }
 
-    private List<SliceData> getAccessibilitySliceData() {
+    List<SliceData> getAccessibilitySliceData() {
         final List<SliceData> sliceData = new ArrayList<>();
 
         final String accessibilityControllerClassName =
@@ -321,4 +516,49 @@ class SliceDataConverter {
                 mContext);
         return accessibilityManager.getInstalledAccessibilityServiceList();
     }
-}
\ No newline at end of file
+
+    /** The preference metadata of one XML resource, or the error which occurred parsing it. */
+    private static class ParsedXml {
+        String mScreenTitle;
+        List<Bundle> mMetadata;
+        Exception mError;
+    }
+
+    /**
+     * Parses the XML resources of a range of providers, splitting the range in halves until it is
+     * small enough to be parsed on a single worker.
+     */
+    private class ParseProvidersTask extends RecursiveAction {
+
+        private static final int SEQUENTIAL_THRESHOLD = 4;
+
+        private final List<List<Integer>> mXmlResIds;
+        private final List<List<ParsedXml>> mResults;
+        private final long[] mParseTimes;
+        private final int mStart;
+        private final int mEnd;
+
+        ParseProvidersTask(List<List<Integer>> xmlResIds, List<List<ParsedXml>> results,
+                long[] parseTimes, int start, int end) {
+            mXmlResIds = xmlResIds;
+            mResults = results;
+            mParseTimes = parseTimes;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (mEnd - mStart <= SEQUENTIAL_THRESHOLD) {
+                for (int i = mStart; i < mEnd; i++) {
+                    // Each task only writes its own range, and joining the task publishes them.
+                    parseProviderXml(mXmlResIds, mResults, mParseTimes, i);
+                }
+                return;
+            }
+            final int middle = (mStart + mEnd) >>> 1;
+            invokeAll(new ParseProvidersTask(mXmlResIds, mResults, mParseTimes, mStart, middle),
+                    new ParseProvidersTask(mXmlResIds, mResults, mParseTimes, middle, mEnd));
+        }
+    }
+}
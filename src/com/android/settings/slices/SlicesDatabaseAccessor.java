@@ -24,6 +24,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Binder;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.Pair;
 
 import androidx.slice.Slice;
@@ -32,7 +33,9 @@ import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Class used to map a {@link Uri} from {@link SettingsSliceProvider} to a Slice.
@@ -53,6 +56,9 @@ public class SlicesDatabaseAccessor {
             IndexColumns.HIGHLIGHT_MENU_RESOURCE,
     };
 
+    // Stay well below the SQLite limit of bound arguments per query.
+    private static final int MAX_KEYS_PER_QUERY = 500;
+
     private final Context mContext;
     private final SlicesDatabaseHelper mHelper;
 
@@ -88,6 +94,61 @@ public class SlicesDatabaseAccessor {
         }
     }
 
+    /**
+     * Query the slices database and return the {@link SliceData} objects corresponding to the
+     * rows matching any of the {@param keys}, by key. Keys without a matching row are left out.
+     * Used when loading many Slices at once.
+     */
+    public Map<String, SliceData> getSliceDataFromKeys(Collection<String> keys) {
+        verifyIndexing();
+        final Map<String, SliceData> sliceData = new ArrayMap<>(keys.size());
+        final SQLiteDatabase database = mHelper.getReadableDatabase();
+        final List<String> keyList = new ArrayList<>(keys);
+        for (int start = 0; start < keyList.size(); start += MAX_KEYS_PER_QUERY) {
+            final List<String> selection = keyList.subList(start,
+                    Math.min(start + MAX_KEYS_PER_QUERY, keyList.size()));
+            try (Cursor cursor = database.query(TABLE_SLICES_INDEX, SELECT_COLUMNS_ALL,
+                    buildKeysMatchWhereClause(selection.size()),
+                    selection.toArray(new String[0]), null /* groupBy */, null /* having */,
+                    null /* orderBy */)) {
+                while (cursor.moveToNext()) {
+                    final SliceData data = buildSliceData(cursor, null /* uri */,
+                            false /* isIntentOnly */);
+                    sliceData.put(data.getKey(), data);
+                }
+            }
+        }
+        return sliceData;
+    }
+
+    /**
+     * Query the slices database and return the {@link SliceData} objects corresponding to the
+     * rows matching the keys of any of the {@param uris}, by {@link Uri}, with one query.
+     * Invalid {@link Uri}s and {@link Uri}s without a matching row are left out.
+     */
+    public Map<Uri, SliceData> getSliceDataFromUris(Collection<Uri> uris) {
+        final Map<Uri, Pair<Boolean, String>> pathData = new ArrayMap<>(uris.size());
+        final List<String> keys = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            final Pair<Boolean, String> data = SliceBuilderUtils.getPathData(uri);
+            if (data != null) {
+                pathData.put(uri, data);
+                keys.add(data.second /* key */);
+            }
+        }
+
+        final Map<String, SliceData> sliceDataByKey = getSliceDataFromKeys(keys);
+        final Map<Uri, SliceData> sliceData = new ArrayMap<>(pathData.size());
+        for (Map.Entry<Uri, Pair<Boolean, String>> entry : pathData.entrySet()) {
+            final SliceData data = sliceDataByKey.get(entry.getValue().second);
+            if (data != null) {
+                sliceData.put(entry.getKey(), copyForUri(data, entry.getKey(),
+                        entry.getValue().first /* isIntentOnly */));
+            }
+        }
+        return sliceData;
+    }
+
     /**
      * @return a list of Slice {@link Uri}s based on their visibility {@param isPublicSlice } and
      * {@param authority}.
@@ -148,6 +209,32 @@ public class SlicesDatabaseAccessor {
                 .toString();
     }
 
+    private String buildKeysMatchWhereClause(int count) {
+        final StringBuilder builder = new StringBuilder(IndexColumns.KEY)
+                .append(" IN (");
+        for (int i = 0; i < count; i++) {
+            builder.append(i == 0 ? "?" : ",?");
+        }
+        return builder.append(")").toString();
+    }
+
+    private static SliceData copyForUri(SliceData data, Uri uri, boolean isIntentOnly) {
+        return new SliceData.Builder()
+                .setKey(data.getKey())
+                .setTitle(data.getTitle())
+                .setSummary(data.getSummary())
+                .setScreenTitle(data.getScreenTitle())
+                .setKeywords(data.getKeywords())
+                .setIcon(data.getIconResource())
+                .setFragmentName(data.getFragmentClassName())
+                .setPreferenceControllerClassName(data.getPreferenceController())
+                .setUri(uri)
+                .setSliceType(isIntentOnly ? SliceData.SliceType.INTENT : data.getSliceType())
+                .setUnavailableSliceSubtitle(data.getUnavailableSliceSubtitle())
+                .setHighlightMenuRes(data.getHighlightMenuRes())
+                .build();
+    }
+
     private static SliceData buildSliceData(Cursor cursor, Uri uri, boolean isIntentOnly) {
         final String key = cursor.getString(cursor.getColumnIndex(IndexColumns.KEY));
         final String title = cursor.getString(cursor.getColumnIndex(IndexColumns.TITLE));
@@ -16,7 +16,9 @@
 
 package com.android.settings.slices;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Build;
@@ -24,7 +26,9 @@ import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
 
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Defines the schema for the Slices database.
@@ -36,10 +40,11 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "slices_index.db";
     private static final String SHARED_PREFS_TAG = "slices_shared_prefs";
 
-    private static final int DATABASE_VERSION = 9;
+    private static final int DATABASE_VERSION = 10;
 
     public interface Tables {
         String TABLE_SLICES_INDEX = "slices_index";
+        String TABLE_SLICES_DIGESTS = "slices_digests";
     }
 
     public interface IndexColumns {
@@ -110,6 +115,34 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
         String HIGHLIGHT_MENU_RESOURCE = "highlight_menu";
     }
 
+    public interface DigestColumns {
+        /**
+         * Primary key of the table. Class name of the fragment owning the
+         * {@link com.android.settingslib.search.Indexable.SearchIndexProvider}.
+         */
+        String FRAGMENT = "fragment";
+
+        /**
+         * Digest of the XML resources the slices of the fragment were extracted from.
+         */
+        String DIGEST = "digest";
+    }
+
+    /**
+     * Row of TABLE_SLICES_DIGESTS holding the controllers version the slices were extracted with,
+     * rather than the digest of a fragment.
+     */
+    private static final String CONTROLLERS_VERSION_ROW = "#controllers_version";
+
+    private static final String CREATE_SLICES_DIGESTS_TABLE =
+            "CREATE TABLE " + Tables.TABLE_SLICES_DIGESTS
+                    + "("
+                    + DigestColumns.FRAGMENT
+                    + " TEXT PRIMARY KEY, "
+                    + DigestColumns.DIGEST
+                    + " TEXT"
+                    + ");";
+
     private static final String CREATE_SLICES_TABLE =
             "CREATE VIRTUAL TABLE " + Tables.TABLE_SLICES_INDEX + " USING fts4"
                     + "("
@@ -202,13 +235,76 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
         return isBuildIndexed() && isLocaleIndexed();
     }
 
+    /**
+     * Returns the digests of all providers currently stored in TABLE_SLICES_INDEX, keyed by
+     * fragment class name.
+     */
+    Map<String, String> getProviderDigests(SQLiteDatabase db) {
+        final Map<String, String> digests = new HashMap<>();
+        try (Cursor cursor = db.query(Tables.TABLE_SLICES_DIGESTS,
+                new String[]{DigestColumns.FRAGMENT, DigestColumns.DIGEST},
+                DigestColumns.FRAGMENT + " != ?", new String[]{CONTROLLERS_VERSION_ROW},
+                null /* groupBy */, null /* having */, null /* orderBy */)) {
+            while (cursor.moveToNext()) {
+                digests.put(cursor.getString(0), cursor.getString(1));
+            }
+        }
+        return digests;
+    }
+
+    /**
+     * Returns the controllers version stored by {@link #setControllersVersion}, or 0 if there is
+     * none.
+     */
+    int getControllersVersion(SQLiteDatabase db) {
+        try (Cursor cursor = db.query(Tables.TABLE_SLICES_DIGESTS,
+                new String[]{DigestColumns.DIGEST},
+                DigestColumns.FRAGMENT + " = ?", new String[]{CONTROLLERS_VERSION_ROW},
+                null /* groupBy */, null /* having */, null /* orderBy */)) {
+            if (cursor.moveToFirst()) {
+                try {
+                    return Integer.parseInt(cursor.getString(0));
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "Invalid controllers version " + cursor.getString(0));
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the version of the controllers the slices currently in TABLE_SLICES_INDEX were
+     * extracted with.
+     */
+    void setControllersVersion(SQLiteDatabase db, int version) {
+        setProviderDigest(db, CONTROLLERS_VERSION_ROW, String.valueOf(version));
+    }
+
+    /**
+     * Stores the digest of the provider hosted by {@code fragmentName}. A {@code null} digest
+     * removes the stored one, so the provider is always indexed again.
+     */
+    void setProviderDigest(SQLiteDatabase db, String fragmentName, String digest) {
+        if (digest == null) {
+            db.delete(Tables.TABLE_SLICES_DIGESTS, DigestColumns.FRAGMENT + " = ?",
+                    new String[]{fragmentName});
+            return;
+        }
+        final ContentValues values = new ContentValues();
+        values.put(DigestColumns.FRAGMENT, fragmentName);
+        values.put(DigestColumns.DIGEST, digest);
+        db.replaceOrThrow(Tables.TABLE_SLICES_DIGESTS, null /* nullColumnHack */, values);
+    }
+
     private void createDatabases(SQLiteDatabase db) {
         db.execSQL(CREATE_SLICES_TABLE);
+        db.execSQL(CREATE_SLICES_DIGESTS_TABLE);
         Log.d(TAG, "Created databases");
     }
 
     private void dropTables(SQLiteDatabase db) {
         db.execSQL("DROP TABLE IF EXISTS " + Tables.TABLE_SLICES_INDEX);
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.TABLE_SLICES_DIGESTS);
     }
 
     private void setBuildIndexed() {
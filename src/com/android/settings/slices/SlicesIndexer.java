@@ -16,20 +16,24 @@
 
 package com.android.settings.slices;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
 
+import com.android.settings.accessibility.AccessibilitySlicePreferenceController;
 import com.android.settings.core.BasePreferenceController;
 import com.android.settings.dashboard.DashboardFragment;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
 import com.android.settings.slices.SlicesDatabaseHelper.Tables;
+import com.android.settingslib.search.SearchIndexableData;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Manages the conversion of {@link DashboardFragment} and {@link BasePreferenceController} to
@@ -39,6 +43,9 @@ class SlicesIndexer implements Runnable {
 
     private static final String TAG = "SlicesIndexer";
 
+    private static final String A11Y_CONTROLLER_CLASS_NAME =
+            AccessibilitySlicePreferenceController.class.getName();
+
     private Context mContext;
 
     private SlicesDatabaseHelper mHelper;
@@ -58,7 +65,11 @@ class SlicesIndexer implements Runnable {
 
     /**
      * Synchronously takes data obtained from {@link SliceDataConverter} and indexes it into a
-     * SQLite database
+     * SQLite database.
+     *
+     * Only the providers whose digest differs from the one stored at the last indexing are
+     * extracted again, since most of them do not change between builds or locales. All of them
+     * are extracted again when {@link SliceDataConverter#CONTROLLERS_VERSION} changed.
      */
     protected void indexSliceData() {
         if (mHelper.isSliceDataIndexed()) {
@@ -71,15 +82,54 @@ class SlicesIndexer implements Runnable {
         long startTime = System.currentTimeMillis();
         database.beginTransaction();
         try {
-            mHelper.reconstruct(database);
-            List<SliceData> indexData = getSliceData();
-            insertSliceData(database, indexData);
+            final SliceDataConverter converter = getSliceDataConverter();
+            final Map<String, String> indexedDigests = mHelper.getProviderDigests(database);
+            // The digests don't cover the controllers, extract everything if they changed.
+            final boolean controllersChanged = mHelper.getControllersVersion(database)
+                    != SliceDataConverter.CONTROLLERS_VERSION;
+            final SQLiteStatement insertStatement = compileInsertStatement(database);
+            final List<SearchIndexableData> changedBundles = new ArrayList<>();
+            final List<String> changedDigests = new ArrayList<>();
+            for (SearchIndexableData bundle : converter.getSearchIndexableData()) {
+                final String fragmentName = bundle.getTargetClass().getName();
+                final String digest = converter.getProviderDigest(bundle);
+                final String indexedDigest = indexedDigests.remove(fragmentName);
+                if (!controllersChanged && digest != null && digest.equals(indexedDigest)) {
+                    continue;
+                }
+                changedBundles.add(bundle);
+                changedDigests.add(digest);
+            }
+
+            // Extract the changed providers in parallel, then write them in order.
+            final List<List<SliceData>> changedSliceData =
+                    converter.getSliceData(changedBundles, true /* parallel */);
+            for (int i = 0; i < changedBundles.size(); i++) {
+                final String fragmentName = changedBundles.get(i).getTargetClass().getName();
+                deleteProviderSliceData(database, fragmentName);
+                insertSliceData(insertStatement, changedSliceData.get(i));
+                mHelper.setProviderDigest(database, fragmentName, changedDigests.get(i));
+            }
+
+            // Remove the providers which no longer exist.
+            for (String fragmentName : indexedDigests.keySet()) {
+                deleteProviderSliceData(database, fragmentName);
+                mHelper.setProviderDigest(database, fragmentName, null /* digest */);
+            }
+            mHelper.setControllersVersion(database, SliceDataConverter.CONTROLLERS_VERSION);
+
+            // Accessibility slices depend on the installed services, always index them again.
+            database.delete(Tables.TABLE_SLICES_INDEX, IndexColumns.CONTROLLER + " = ?",
+                    new String[]{A11Y_CONTROLLER_CLASS_NAME});
+            insertSliceData(insertStatement, converter.getAccessibilitySliceData());
+            insertStatement.close();
 
             mHelper.setIndexedState();
 
             // TODO (b/71503044) Log indexing time.
-            Log.d(TAG,
-                    "Indexing slices database took: " + (System.currentTimeMillis() - startTime));
+            Log.d(TAG, "Indexing slices database took: "
+                    + (System.currentTimeMillis() - startTime) + ", updated providers: "
+                    + changedBundles.size() + ", removed providers: " + indexedDigests.size());
             database.setTransactionSuccessful();
         } finally {
             database.endTransaction();
@@ -87,39 +137,64 @@ class SlicesIndexer implements Runnable {
     }
 
     @VisibleForTesting
-    List<SliceData> getSliceData() {
+    SliceDataConverter getSliceDataConverter() {
         return FeatureFactory.getFactory(mContext)
                 .getSlicesFeatureProvider()
-                .getSliceDataConverter(mContext)
-                .getSliceData();
+                .getSliceDataConverter(mContext);
     }
 
-    @VisibleForTesting
-    void insertSliceData(SQLiteDatabase database, List<SliceData> indexData) {
-        ContentValues values;
+    private void deleteProviderSliceData(SQLiteDatabase database, String fragmentName) {
+        database.delete(Tables.TABLE_SLICES_INDEX,
+                IndexColumns.FRAGMENT + " = ? AND " + IndexColumns.CONTROLLER + " != ?",
+                new String[]{fragmentName, A11Y_CONTROLLER_CLASS_NAME});
+    }
+
+    private SQLiteStatement compileInsertStatement(SQLiteDatabase database) {
+        return database.compileStatement("INSERT INTO " + Tables.TABLE_SLICES_INDEX + " ("
+                + IndexColumns.KEY + ", "
+                + IndexColumns.SLICE_URI + ", "
+                + IndexColumns.TITLE + ", "
+                + IndexColumns.SUMMARY + ", "
+                + IndexColumns.SCREENTITLE + ", "
+                + IndexColumns.KEYWORDS + ", "
+                + IndexColumns.ICON_RESOURCE + ", "
+                + IndexColumns.FRAGMENT + ", "
+                + IndexColumns.CONTROLLER + ", "
+                + IndexColumns.SLICE_TYPE + ", "
+                + IndexColumns.UNAVAILABLE_SLICE_SUBTITLE + ", "
+                + IndexColumns.PUBLIC_SLICE + ", "
+                + IndexColumns.HIGHLIGHT_MENU_RESOURCE
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    }
 
+    @VisibleForTesting
+    void insertSliceData(SQLiteStatement statement, List<SliceData> indexData) {
         for (SliceData dataRow : indexData) {
-            values = new ContentValues();
-            values.put(IndexColumns.KEY, dataRow.getKey());
-            values.put(IndexColumns.SLICE_URI, dataRow.getUri().toString());
-            values.put(IndexColumns.TITLE, dataRow.getTitle());
-            values.put(IndexColumns.SUMMARY, dataRow.getSummary());
+            statement.clearBindings();
+            bindStringOrNull(statement, 1, dataRow.getKey());
+            bindStringOrNull(statement, 2, dataRow.getUri().toString());
+            bindStringOrNull(statement, 3, dataRow.getTitle());
+            bindStringOrNull(statement, 4, dataRow.getSummary());
             final CharSequence screenTitle = dataRow.getScreenTitle();
-            if (screenTitle != null) {
-                values.put(IndexColumns.SCREENTITLE, screenTitle.toString());
-            }
-            values.put(IndexColumns.KEYWORDS, dataRow.getKeywords());
-            values.put(IndexColumns.ICON_RESOURCE, dataRow.getIconResource());
-            values.put(IndexColumns.FRAGMENT, dataRow.getFragmentClassName());
-            values.put(IndexColumns.CONTROLLER, dataRow.getPreferenceController());
-            values.put(IndexColumns.SLICE_TYPE, dataRow.getSliceType());
-            values.put(IndexColumns.UNAVAILABLE_SLICE_SUBTITLE,
-                    dataRow.getUnavailableSliceSubtitle());
-            values.put(IndexColumns.PUBLIC_SLICE, dataRow.isPublicSlice());
-            values.put(IndexColumns.HIGHLIGHT_MENU_RESOURCE, dataRow.getHighlightMenuRes());
-
-            database.replaceOrThrow(Tables.TABLE_SLICES_INDEX, null /* nullColumnHack */,
-                    values);
+            bindStringOrNull(statement, 5, screenTitle != null ? screenTitle.toString() : null);
+            bindStringOrNull(statement, 6, dataRow.getKeywords());
+            statement.bindLong(7, dataRow.getIconResource());
+            bindStringOrNull(statement, 8, dataRow.getFragmentClassName());
+            bindStringOrNull(statement, 9, dataRow.getPreferenceController());
+            statement.bindLong(10, dataRow.getSliceType());
+            bindStringOrNull(statement, 11, dataRow.getUnavailableSliceSubtitle());
+            statement.bindLong(12, dataRow.isPublicSlice() ? 1 : 0);
+            statement.bindLong(13, dataRow.getHighlightMenuRes());
+
+            statement.executeInsert();
+        }
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
         }
     }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.wifi;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Computes the preference orders of a new list of Wi-Fi entries from the orders of their current
+ * preferences.
+ *
+ * The longest run of current preferences that are still in increasing order keep their orders.
+ * Moved and inserted entries get orders in the gaps around them, so a single new or moved entry
+ * doesn't reorder every preference of the list.
+ */
+public class WifiEntryListDiffer {
+
+    /** Order of an entry without a current preference. */
+    public static final int NO_ORDER = Integer.MIN_VALUE;
+
+    @VisibleForTesting
+    static final int ORDER_GAP = 1 << 10;
+    // Leaves room after the entries for the preferences following them.
+    private static final int MAX_ORDER = Integer.MAX_VALUE / 2;
+
+    private WifiEntryListDiffer() {
+    }
+
+    /**
+     * Returns strictly increasing orders for a list of entries.
+     *
+     * @param currentOrders the order of the current preference of each entry, in the new order
+     *                      of the entries, or {@link #NO_ORDER} if the entry has no preference.
+     */
+    public static int[] assignOrders(int[] currentOrders) {
+        final int size = currentOrders.length;
+        final boolean[] kept = findIncreasingOrders(currentOrders);
+        final int[] orders = new int[size];
+        int lower = NO_ORDER;
+        int runStart = 0;
+        for (int i = 0; i <= size; i++) {
+            if (i < size && !kept[i]) {
+                continue;
+            }
+            final int upper = i < size ? currentOrders[i] : NO_ORDER;
+            if (!fillRun(orders, runStart, i, lower, upper)) {
+                // No room left between the kept orders, start over with evenly spaced ones.
+                for (int j = 0; j < size; j++) {
+                    orders[j] = ORDER_GAP * (j + 1);
+                }
+                return orders;
+            }
+            if (i < size) {
+                orders[i] = upper;
+                lower = upper;
+            }
+            runStart = i + 1;
+        }
+        return orders;
+    }
+
+    /** Assigns orders between {@code lower} and {@code upper} to the run [start, end). */
+    private static boolean fillRun(int[] orders, int start, int end, int lower, int upper) {
+        final int count = end - start;
+        if (count == 0) {
+            return true;
+        }
+        final long first;
+        final long step;
+        if (upper == NO_ORDER) {
+            first = (lower == NO_ORDER ? 0L : lower) + ORDER_GAP;
+            step = ORDER_GAP;
+        } else {
+            // Orders are kept non-negative.
+            final long low = lower == NO_ORDER ? -1L : lower;
+            step = Math.min(ORDER_GAP, ((long) upper - low) / (count + 1));
+            if (step == 0) {
+                return false;
+            }
+            first = upper - step * count;
+        }
+        final long last = first + step * (count - 1);
+        if (first < 0 || last > MAX_ORDER) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            orders[start + i] = (int) (first + step * i);
+        }
+        return true;
+    }
+
+    /** Marks a longest strictly increasing subsequence of the current orders. */
+    private static boolean[] findIncreasingOrders(int[] currentOrders) {
+        final int size = currentOrders.length;
+        // tails[k] is the index ending the smallest tail of an increasing run of length k + 1.
+        final int[] tails = new int[size];
+        final int[] previous = new int[size];
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            final int order = currentOrders[i];
+            if (order == NO_ORDER) {
+                continue;
+            }
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (currentOrders[tails[middle]] < order) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        final boolean[] kept = new boolean[size];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            kept[i] = true;
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.wifi;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Picks the delay before showing a change of the Wi-Fi entries, from how often they change.
+ *
+ * Changes arriving in bursts are coalesced into a single update, while a change after a quiet
+ * period is shown quickly.
+ */
+public class WifiEntryUpdateDelay {
+
+    @VisibleForTesting
+    static final long MIN_DELAY_MS = 100;
+    @VisibleForTesting
+    static final long MAX_DELAY_MS = 1000;
+
+    private long mLastChangeMillis = -1;
+    private long mAverageIntervalMillis = -1;
+
+    /** Records a change at {@code nowMillis} and returns the delay before updating the list. */
+    public long onChanged(long nowMillis) {
+        if (mLastChangeMillis >= 0) {
+            final long interval = nowMillis - mLastChangeMillis;
+            mAverageIntervalMillis = mAverageIntervalMillis < 0
+                    ? interval : (mAverageIntervalMillis * 3 + interval) / 4;
+        }
+        mLastChangeMillis = nowMillis;
+        if (mAverageIntervalMillis < 0 || mAverageIntervalMillis >= MAX_DELAY_MS) {
+            return MIN_DELAY_MS;
+        }
+        // Wait for about two more changes of the burst.
+        return Math.max(MIN_DELAY_MS, Math.min(MAX_DELAY_MS, mAverageIntervalMillis * 2));
+    }
+}
@@ -40,6 +40,7 @@ import android.os.SimpleClock;
 import android.os.SystemClock;
 import android.provider.Settings;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.FeatureFlagUtils;
 import android.util.Log;
 import android.view.ContextMenu;
@@ -83,6 +84,7 @@ import com.android.wifitrackerlib.WifiPickerTracker;
 import java.time.Clock;
 import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -166,6 +168,7 @@ public class WifiSettings extends RestrictedSettingsFragment
     }
 
     private boolean mIsWifiEntryListStale = true;
+    private final WifiEntryUpdateDelay mWifiEntryUpdateDelay = new WifiEntryUpdateDelay();
     private final Runnable mUpdateWifiEntryPreferencesRunnable = () -> {
         updateWifiEntryPreferences();
     };
@@ -742,19 +745,22 @@ public class WifiSettings extends RestrictedSettingsFragment
 
     /**
      * Updates WifiEntries from {@link WifiPickerTracker#getWifiEntries()}. Adds a delay to have
-     * progress bar displayed before starting to modify entries.
+     * progress bar displayed before starting to modify entries, longer while the entries change
+     * in bursts so that they are coalesced into one update.
      */
     private void updateWifiEntryPreferencesDelayed() {
         // Safeguard from some delayed event handling
         if (getActivity() != null && !mIsRestricted
                 && mWifiPickerTracker.getWifiState() == WifiManager.WIFI_STATE_ENABLED) {
+            final long updateDelayMillis =
+                    mWifiEntryUpdateDelay.onChanged(SystemClock.elapsedRealtime());
             final View view = getView();
             final Handler handler = view.getHandler();
             if (handler != null && handler.hasCallbacks(mUpdateWifiEntryPreferencesRunnable)) {
                 return;
             }
             setProgressBarVisible(true);
-            view.postDelayed(mUpdateWifiEntryPreferencesRunnable, 300);
+            view.postDelayed(mUpdateWifiEntryPreferencesRunnable, updateDelayMillis);
         }
     }
 
@@ -801,28 +807,42 @@ public class WifiSettings extends RestrictedSettingsFragment
             mConnectedWifiEntryPreferenceCategory.removeAll();
         }
 
-        int index = 0;
-        cacheRemoveAllPrefs(mWifiEntryPreferenceCategory);
-        List<WifiEntry> wifiEntries = mWifiPickerTracker.getWifiEntries();
-        for (WifiEntry wifiEntry : wifiEntries) {
+        // Diff the entries against the current preferences by key, so that only the inserted,
+        // moved, replaced and removed entries change the category.
+        final Map<String, LongPressWifiEntryPreference> currentPrefs = new ArrayMap<>();
+        for (int i = 0; i < mWifiEntryPreferenceCategory.getPreferenceCount(); i++) {
+            final Preference pref = mWifiEntryPreferenceCategory.getPreference(i);
+            if (pref instanceof LongPressWifiEntryPreference) {
+                currentPrefs.put(pref.getKey(), (LongPressWifiEntryPreference) pref);
+            }
+        }
+        final List<WifiEntry> wifiEntries = mWifiPickerTracker.getWifiEntries();
+        final int[] currentOrders = new int[wifiEntries.size()];
+        for (int i = 0; i < currentOrders.length; i++) {
+            final Preference pref = currentPrefs.get(wifiEntries.get(i).getKey());
+            currentOrders[i] = pref != null ? pref.getOrder() : WifiEntryListDiffer.NO_ORDER;
+        }
+        final int[] orders = WifiEntryListDiffer.assignOrders(currentOrders);
+
+        for (int i = 0; i < orders.length; i++) {
+            final WifiEntry wifiEntry = wifiEntries.get(i);
             hasAvailableWifiEntries = true;
 
             String key = wifiEntry.getKey();
-            LongPressWifiEntryPreference pref =
-                    (LongPressWifiEntryPreference) getCachedPreference(key);
+            LongPressWifiEntryPreference pref = currentPrefs.remove(key);
             if (pref != null) {
                 if (pref.getWifiEntry() == wifiEntry) {
-                    pref.setOrder(index++);
+                    pref.setOrder(orders[i]);
                     continue;
                 } else {
                     // Create a new preference if the underlying WifiEntry object has changed
-                    removePreference(key);
+                    mWifiEntryPreferenceCategory.removePreference(pref);
                 }
             }
 
             pref = createLongPressWifiEntryPreference(wifiEntry);
             pref.setKey(wifiEntry.getKey());
-            pref.setOrder(index++);
+            pref.setOrder(orders[i]);
             pref.refresh();
 
             if (wifiEntry.getHelpUriString() != null) {
@@ -832,16 +852,29 @@ public class WifiSettings extends RestrictedSettingsFragment
             }
             mWifiEntryPreferenceCategory.addPreference(pref);
         }
-        removeCachedPrefs(mWifiEntryPreferenceCategory);
+        for (Preference pref : currentPrefs.values()) {
+            mWifiEntryPreferenceCategory.removePreference(pref);
+        }
+
+        int index = orders.length > 0 ? orders[orders.length - 1] + 1 : 0;
+        final Preference emptyPref =
+                mWifiEntryPreferenceCategory.findPreference(PREF_KEY_EMPTY_WIFI_LIST);
+        if (hasAvailableWifiEntries && emptyPref != null) {
+            mWifiEntryPreferenceCategory.removePreference(emptyPref);
+        }
 
         if (!hasAvailableWifiEntries) {
             setProgressBarVisible(true);
-            Preference pref = new Preference(getPrefContext());
-            pref.setSelectable(false);
-            pref.setSummary(R.string.wifi_empty_list_wifi_on);
-            pref.setOrder(index++);
-            pref.setKey(PREF_KEY_EMPTY_WIFI_LIST);
-            mWifiEntryPreferenceCategory.addPreference(pref);
+            if (emptyPref != null) {
+                emptyPref.setOrder(index++);
+            } else {
+                Preference pref = new Preference(getPrefContext());
+                pref.setSelectable(false);
+                pref.setSummary(R.string.wifi_empty_list_wifi_on);
+                pref.setOrder(index++);
+                pref.setKey(PREF_KEY_EMPTY_WIFI_LIST);
+                mWifiEntryPreferenceCategory.addPreference(pref);
+            }
         } else {
             // Continuing showing progress bar for an additional delay to overlap with animation
             final View view = getView();
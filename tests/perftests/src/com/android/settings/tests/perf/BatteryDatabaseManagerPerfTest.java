@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.tests.perf;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper;
+import com.android.settings.fuelgauge.batterytip.BatteryDatabaseManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the insert and query throughput of {@link BatteryDatabaseManager}.
+ *
+ * All rows are written with timestamps far in the past, so they are deleted in tearDown without
+ * touching the real anomaly data of the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BatteryDatabaseManagerPerfTest {
+    private static final String TAG = "BatteryDatabaseManagerPerfTest";
+    private static final int WARM_UP_TIME = 3;
+    private static final int TEST_TIME = 10;
+    private static final int BURST_SIZE = 200;
+    private static final String PACKAGE_NAME = "com.android.settings.tests.perf.fake";
+
+    private BatteryDatabaseManager mBatteryDatabaseManager;
+    private Bundle mBundle;
+    private long mTimestampMs = 1L;
+
+    @Before
+    public void setUp() {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mBatteryDatabaseManager = BatteryDatabaseManager.getInstance(context);
+        mBundle = new Bundle();
+    }
+
+    @After
+    public void tearDown() {
+        mBatteryDatabaseManager.deleteAllAnomaliesBeforeTimeStamp(mTimestampMs + 1);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, mBundle);
+    }
+
+    @Test
+    public void insertAnomaly_burst() {
+        measure("insertAnomaly", () -> {
+            for (int i = 0; i < BURST_SIZE; i++) {
+                mBatteryDatabaseManager.insertAnomaly(i, PACKAGE_NAME, /*type=*/ 0,
+                        AnomalyDatabaseHelper.State.NEW, mTimestampMs++);
+            }
+        });
+    }
+
+    @Test
+    public void enqueueAnomaly_burstAndFlush() {
+        measure("enqueueAnomaly", () -> {
+            for (int i = 0; i < BURST_SIZE; i++) {
+                mBatteryDatabaseManager.enqueueAnomaly(i, PACKAGE_NAME, /*type=*/ 0,
+                        AnomalyDatabaseHelper.State.NEW, mTimestampMs++);
+            }
+            mBatteryDatabaseManager.flushPendingAnomalies();
+        });
+    }
+
+    @Test
+    public void queryAllAnomalies() {
+        for (int i = 0; i < BURST_SIZE; i++) {
+            mBatteryDatabaseManager.enqueueAnomaly(i, PACKAGE_NAME, /*type=*/ 0,
+                    AnomalyDatabaseHelper.State.NEW, mTimestampMs++);
+        }
+        mBatteryDatabaseManager.flushPendingAnomalies();
+
+        measure("queryAllAnomalies", () -> {
+            for (int i = 0; i < BURST_SIZE; i++) {
+                mBatteryDatabaseManager.queryAllAnomalies(/*timestampMsAfter=*/ 0,
+                        AnomalyDatabaseHelper.State.NEW);
+            }
+        });
+    }
+
+    // Runs the operation TEST_TIME times after warming up, and reports the operations per
+    // second of each run.
+    private void measure(String name, Runnable operation) {
+        for (int i = 0; i < WARM_UP_TIME; i++) {
+            operation.run();
+        }
+        final long[] results = new long[TEST_TIME];
+        for (int i = 0; i < TEST_TIME; i++) {
+            final long startTime = SystemClock.elapsedRealtimeNanos();
+            operation.run();
+            final long durationNs = Math.max(1, SystemClock.elapsedRealtimeNanos() - startTime);
+            results[i] = BURST_SIZE * 1_000_000_000L / durationNs;
+        }
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (long result : results) {
+            sum += result;
+            min = Math.min(min, result);
+            max = Math.max(max, result);
+        }
+        mBundle.putString(String.format("%s_%s_ops_per_second_%s", TAG, name, "min"),
+                String.valueOf(min));
+        mBundle.putString(String.format("%s_%s_ops_per_second_%s", TAG, name, "max"),
+                String.valueOf(max));
+        mBundle.putString(String.format("%s_%s_ops_per_second_%s", TAG, name, "avg"),
+                String.valueOf(sum / TEST_TIME));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.Looper;
+
+import com.android.settingslib.applications.ApplicationsState;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppStateBaseBridgeTest {
+
+    @Mock
+    private ApplicationsState mAppState;
+    @Mock
+    private ApplicationsState.Session mSession;
+
+    private Context mContext;
+    private ArrayList<AppEntry> mApps;
+    private TestBridge mBridge;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        mApps = new ArrayList<>();
+        when(mAppState.newSession(any())).thenReturn(mSession);
+        when(mAppState.getBackgroundLooper()).thenReturn(Looper.getMainLooper());
+        when(mSession.getAllApps()).thenReturn(mApps);
+        mBridge = new TestBridge(mAppState);
+    }
+
+    @Test
+    public void loadChangedExtraInfo_firstLoad_shouldLoadAll() {
+        mApps.add(createAppEntry("pkg1", 1));
+
+        assertThat(mBridge.loadChangedExtraInfo()).isTrue();
+
+        assertThat(mBridge.mLoadAllCount).isEqualTo(1);
+        assertThat(mBridge.mLoadedPackages).isEmpty();
+    }
+
+    @Test
+    public void loadChangedExtraInfo_packageAdded_shouldOnlyLoadNewPackage() {
+        mApps.add(createAppEntry("pkg1", 1));
+        mBridge.loadChangedExtraInfo();
+
+        mApps.add(createAppEntry("pkg2", 2));
+
+        assertThat(mBridge.loadChangedExtraInfo()).isTrue();
+        assertThat(mBridge.mLoadAllCount).isEqualTo(1);
+        assertThat(mBridge.mLoadedPackages).containsExactly("pkg2");
+    }
+
+    @Test
+    public void loadChangedExtraInfo_nothingChanged_shouldNotLoad() {
+        mApps.add(createAppEntry("pkg1", 1));
+        mBridge.loadChangedExtraInfo();
+
+        assertThat(mBridge.loadChangedExtraInfo()).isFalse();
+        assertThat(mBridge.mLoadAllCount).isEqualTo(1);
+        assertThat(mBridge.mLoadedPackages).isEmpty();
+    }
+
+    @Test
+    public void loadChangedExtraInfo_userSwitched_shouldLoadAll() {
+        mApps.add(createAppEntry("pkg1", 1));
+        mBridge.loadChangedExtraInfo();
+
+        mBridge.mCurrentUserId = 10;
+
+        assertThat(mBridge.loadChangedExtraInfo()).isTrue();
+        assertThat(mBridge.mLoadAllCount).isEqualTo(2);
+        assertThat(mBridge.mLoadedPackages).isEmpty();
+    }
+
+    private AppEntry createAppEntry(String packageName, long id) {
+        final ApplicationInfo info = new ApplicationInfo();
+        info.packageName = packageName;
+        info.uid = 10000 + (int) id;
+        return new AppEntry(mContext, info, id);
+    }
+
+    private static class TestBridge extends AppStateBaseBridge {
+        private int mLoadAllCount;
+        private int mCurrentUserId;
+        private final List<String> mLoadedPackages = new ArrayList<>();
+
+        TestBridge(ApplicationsState appState) {
+            super(appState, /* callback= */ null);
+        }
+
+        @Override
+        int getCurrentUserId() {
+            return mCurrentUserId;
+        }
+
+        @Override
+        protected void loadAllExtraInfo() {
+            mLoadAllCount++;
+        }
+
+        @Override
+        protected void updateExtraInfo(AppEntry app, String pkg, int uid) {
+            mLoadedPackages.add(pkg);
+        }
+    }
+}
@@ -59,9 +59,11 @@ import android.widget.Switch;
 import com.android.settings.R;
 import com.android.settings.applications.AppStateNotificationBridge.NotificationsSentState;
 import com.android.settings.notification.NotificationBackend;
+import com.android.settings.testutils.DatabaseTestUtils;
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -108,6 +110,11 @@ public class AppStateNotificationBridgeTest {
                 mock(AppStateBaseBridge.Callback.class), mUsageStats, mUserManager, mBackend);
     }
 
+    @After
+    public void tearDown() {
+        DatabaseTestUtils.clearDb(mContext);
+    }
+
     private AppEntry getMockAppEntry(String pkg) {
         AppEntry entry = mock(AppEntry.class);
         entry.info = mock(ApplicationInfo.class);
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+
+import com.android.settingslib.applications.ApplicationsState;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+import com.android.settingslib.applications.ApplicationsState.AppFilter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppListPipelineTest {
+
+    private static final Comparator<AppEntry> LABEL_COMPARATOR =
+            Comparator.comparing(entry -> entry.label);
+    private static final Comparator<AppEntry> REVERSE_LABEL_COMPARATOR =
+            LABEL_COMPARATOR.reversed();
+
+    @Mock
+    private ApplicationsState.Session mSession;
+
+    private Context mContext;
+    private AppListPipeline mPipeline;
+    private CountingFilter mNoFigFilter;
+    private CountingFilter mLongLabelFilter;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        when(mSession.getAllApps()).thenReturn(
+                createEntries("Mango", "Fig", "Banana", "Apricot", "Cantaloupe"));
+        mNoFigFilter = new CountingFilter(entry -> !entry.label.equals("Fig"));
+        mLongLabelFilter = new CountingFilter(entry -> entry.label.length() > 5);
+        mPipeline = new AppListPipeline(mContext, mSession);
+    }
+
+    @Test
+    public void build_shouldIntersectFiltersAndSort() {
+        final List<AppEntry> entries = mPipeline.build(
+                Arrays.asList(mNoFigFilter, mLongLabelFilter), LABEL_COMPARATOR);
+
+        assertThat(getLabels(entries)).containsExactly(
+                "Apricot", "Banana", "Cantaloupe").inOrder();
+    }
+
+    @Test
+    public void build_switchSortAndFilter_shouldReuseFilterResults() {
+        mPipeline.build(Arrays.asList(mNoFigFilter, mLongLabelFilter), LABEL_COMPARATOR);
+        final List<AppEntry> entries = mPipeline.build(
+                Collections.singletonList(mNoFigFilter), REVERSE_LABEL_COMPARATOR);
+
+        assertThat(getLabels(entries)).containsExactly(
+                "Mango", "Cantaloupe", "Banana", "Apricot").inOrder();
+        assertThat(mNoFigFilter.mInitCount).isEqualTo(1);
+        assertThat(mNoFigFilter.mFilterCount).isEqualTo(5);
+        verify(mSession).getAllApps();
+    }
+
+    @Test
+    public void build_afterInvalidate_shouldReloadEntries() {
+        mPipeline.build(Collections.singletonList(mNoFigFilter), LABEL_COMPARATOR);
+        when(mSession.getAllApps()).thenReturn(createEntries("Fig", "Date"));
+
+        mPipeline.invalidate();
+        final List<AppEntry> entries = mPipeline.build(
+                Collections.singletonList(mNoFigFilter), LABEL_COMPARATOR);
+
+        assertThat(getLabels(entries)).containsExactly("Date");
+        assertThat(mNoFigFilter.mInitCount).isEqualTo(2);
+        verify(mSession, times(2)).getAllApps();
+    }
+
+    @Test
+    public void build_noApps_shouldReturnEmptyList() {
+        when(mSession.getAllApps()).thenReturn(null);
+
+        assertThat(mPipeline.build(Collections.singletonList(mNoFigFilter), LABEL_COMPARATOR))
+                .isEmpty();
+    }
+
+    private static ArrayList<AppEntry> createEntries(String... labels) {
+        final ArrayList<AppEntry> entries = new ArrayList<>();
+        for (int i = 0; i < labels.length; i++) {
+            final AppEntry entry = mock(AppEntry.class);
+            entry.label = labels[i];
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static List<String> getLabels(List<AppEntry> entries) {
+        final List<String> labels = new ArrayList<>();
+        for (AppEntry entry : entries) {
+            labels.add(entry.label);
+        }
+        return labels;
+    }
+
+    private interface EntryPredicate {
+        boolean test(AppEntry entry);
+    }
+
+    private static class CountingFilter implements AppFilter {
+        private final EntryPredicate mPredicate;
+        private int mInitCount;
+        private int mFilterCount;
+
+        CountingFilter(EntryPredicate predicate) {
+            mPredicate = predicate;
+        }
+
+        @Override
+        public void init() {
+            mInitCount++;
+        }
+
+        @Override
+        public boolean filterApp(AppEntry entry) {
+            mFilterCount++;
+            return mPredicate.test(entry);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import android.content.pm.ApplicationInfo;
+
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppSearchIndexTest {
+
+    @Test
+    public void search_substringOfLabel_shouldKeepOrder() {
+        final AppSearchIndex index = new AppSearchIndex(
+                createEntries("Apricot", "Banana", "Cantaloupe", "Fig", "Mango"), Locale.US);
+
+        assertThat(getLabels(index.search("an"))).containsExactly(
+                "Banana", "Cantaloupe", "Mango").inOrder();
+        assertThat(getLabels(index.search("ANA"))).containsExactly("Banana");
+    }
+
+    @Test
+    public void search_accentedLabel_shouldMatchFoldedQuery() {
+        final AppSearchIndex index = new AppSearchIndex(
+                createEntries("Café", "Résumé Builder", "Maps"), Locale.US);
+
+        assertThat(getLabels(index.search("cafe"))).containsExactly("Café");
+        assertThat(getLabels(index.search("resume b"))).containsExactly("Résumé Builder");
+    }
+
+    @Test
+    public void search_packageName_shouldMatch() {
+        final List<AppEntry> entries = createEntries("Maps", "Photos");
+        entries.get(1).info = new ApplicationInfo();
+        entries.get(1).info.packageName = "com.example.gallery";
+        final AppSearchIndex index = new AppSearchIndex(entries, Locale.US);
+
+        assertThat(getLabels(index.search("gallery"))).containsExactly("Photos");
+    }
+
+    @Test
+    public void search_refinedAndShortenedQuery_shouldReturnSameAsNewSearch() {
+        final AppSearchIndex index = new AppSearchIndex(
+                createEntries("Calendar", "Calculator", "Camera", "Clock"), Locale.US);
+
+        assertThat(getLabels(index.search("ca"))).containsExactly(
+                "Calendar", "Calculator", "Camera").inOrder();
+        assertThat(getLabels(index.search("calc"))).containsExactly("Calculator");
+        assertThat(getLabels(index.search("cal"))).containsExactly(
+                "Calendar", "Calculator").inOrder();
+        assertThat(getLabels(index.search("xyz"))).isEmpty();
+    }
+
+    private static List<AppEntry> createEntries(String... labels) {
+        final List<AppEntry> entries = new ArrayList<>();
+        for (String label : labels) {
+            final AppEntry entry = mock(AppEntry.class);
+            entry.label = label;
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static List<String> getLabels(List<AppEntry> entries) {
+        final List<String> labels = new ArrayList<>();
+        for (AppEntry entry : entries) {
+            labels.add(entry.label);
+        }
+        return labels;
+    }
+}
@@ -25,6 +25,7 @@ import static org.mockito.Mockito.when;
 
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothProfile;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.drawable.Drawable;
@@ -88,6 +89,7 @@ public class BluetoothDeviceUpdaterTest {
     private BluetoothDevicePreference mPreference;
     private ShadowBluetoothAdapter mShadowBluetoothAdapter;
     private List<CachedBluetoothDevice> mCachedDevices = new ArrayList<>();
+    private int mFilterMatchedCount;
 
     @Before
     public void setUp() {
@@ -113,6 +115,7 @@ public class BluetoothDeviceUpdaterTest {
                     mLocalManager) {
                 @Override
                 public boolean isFilterMatched(CachedBluetoothDevice cachedBluetoothDevice) {
+                    mFilterMatchedCount++;
                     return true;
                 }
 
@@ -162,6 +165,42 @@ public class BluetoothDeviceUpdaterTest {
         assertThat(mBluetoothDeviceUpdater.mPreferenceMap.containsKey(mBluetoothDevice)).isFalse();
     }
 
+    @Test
+    public void onDeviceAdded_beforeFlush_shouldNotAddPreference() {
+        mBluetoothDeviceUpdater.onDeviceAdded(mCachedBluetoothDevice);
+
+        verify(mDevicePreferenceCallback, never()).onDeviceAdded(any(Preference.class));
+
+        mBluetoothDeviceUpdater.flushPendingUpdates();
+
+        verify(mDevicePreferenceCallback).onDeviceAdded(any(Preference.class));
+    }
+
+    @Test
+    public void multipleCallbacksForDevice_shouldUpdateDeviceOnce() {
+        mBluetoothDeviceUpdater.onDeviceAdded(mCachedBluetoothDevice);
+        mBluetoothDeviceUpdater.onAclConnectionStateChanged(mCachedBluetoothDevice,
+                BluetoothAdapter.STATE_CONNECTED);
+        mBluetoothDeviceUpdater.onProfileConnectionStateChanged(mCachedBluetoothDevice,
+                BluetoothAdapter.STATE_CONNECTED, BluetoothProfile.A2DP);
+
+        mBluetoothDeviceUpdater.flushPendingUpdates();
+
+        assertThat(mFilterMatchedCount).isEqualTo(1);
+        verify(mDevicePreferenceCallback).onDeviceAdded(any(Preference.class));
+    }
+
+    @Test
+    public void onBluetoothStateChanged_stateOffWithPendingUpdate_shouldDropUpdate() {
+        mBluetoothDeviceUpdater.onDeviceAdded(mCachedBluetoothDevice);
+
+        mBluetoothDeviceUpdater.onBluetoothStateChanged(BluetoothAdapter.STATE_OFF);
+        mBluetoothDeviceUpdater.flushPendingUpdates();
+
+        assertThat(mFilterMatchedCount).isEqualTo(0);
+        verify(mDevicePreferenceCallback, never()).onDeviceAdded(any(Preference.class));
+    }
+
     @Test
     public void testRemovePreference_deviceNotExist_doNothing() {
         mBluetoothDeviceUpdater.removePreference(mCachedBluetoothDevice);
@@ -250,6 +289,7 @@ public class BluetoothDeviceUpdaterTest {
     public void onBluetoothStateChanged_bluetoothStateIsOn_forceUpdate() {
         mShadowBluetoothAdapter.setEnabled(true);
         mBluetoothDeviceUpdater.onBluetoothStateChanged(BluetoothAdapter.STATE_ON);
+        mBluetoothDeviceUpdater.flushPendingUpdates();
 
         verify(mDevicePreferenceCallback).onDeviceAdded(any(Preference.class));
     }
@@ -133,6 +133,7 @@ public class SavedBluetoothDeviceUpdaterTest {
 
         mBluetoothDeviceUpdater.onProfileConnectionStateChanged(mCachedBluetoothDevice,
                 BluetoothProfile.STATE_CONNECTED, BluetoothProfile.A2DP);
+        mBluetoothDeviceUpdater.flushPendingUpdates();
 
         verify(mBluetoothDeviceUpdater).removePreference(mCachedBluetoothDevice);
     }
@@ -143,6 +144,7 @@ public class SavedBluetoothDeviceUpdaterTest {
 
         mBluetoothDeviceUpdater.onProfileConnectionStateChanged(mCachedBluetoothDevice,
                 BluetoothProfile.STATE_DISCONNECTED, BluetoothProfile.A2DP);
+        mBluetoothDeviceUpdater.flushPendingUpdates();
 
         verify(mBluetoothDeviceUpdater).addPreference(mCachedBluetoothDevice,
                 BluetoothDevicePreference.SortType.TYPE_NO_SORT);
@@ -156,6 +158,7 @@ public class SavedBluetoothDeviceUpdaterTest {
 
         mBluetoothDeviceUpdater.onProfileConnectionStateChanged(mCachedBluetoothDevice,
                 BluetoothProfile.STATE_DISCONNECTED, BluetoothProfile.LE_AUDIO);
+        mBluetoothDeviceUpdater.flushPendingUpdates();
 
         verify(mBluetoothDeviceUpdater).addPreference(mCachedBluetoothDevice,
                 BluetoothDevicePreference.SortType.TYPE_NO_SORT);
@@ -169,6 +172,7 @@ public class SavedBluetoothDeviceUpdaterTest {
 
         mBluetoothDeviceUpdater.onProfileConnectionStateChanged(mCachedBluetoothDevice,
                 BluetoothProfile.STATE_DISCONNECTED, BluetoothProfile.LE_AUDIO);
+        mBluetoothDeviceUpdater.flushPendingUpdates();
 
         verify(mBluetoothDeviceUpdater).removePreference(mCachedBluetoothDevice);
     }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.android.settings.R;
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(qualifiers = "mcc999")
+public class PreferenceXmlMetadataCacheTest {
+
+    private static final int FLAGS = MetadataFlag.FLAG_NEED_KEY
+            | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
+            | MetadataFlag.FLAG_NEED_PREF_TITLE;
+
+    private Context mContext;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mContext = getApplicationContext();
+        mFile = new File(mContext.getCacheDir(), PreferenceXmlMetadataCache.CACHE_FILE_NAME);
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        PreferenceXmlMetadataCache.clearInstance();
+        mFile.delete();
+    }
+
+    @Test
+    public void getMetadata_shouldMatchParsedMetadata() throws Exception {
+        final PreferenceXmlMetadataCache cache =
+                new PreferenceXmlMetadataCache(mFile, "id", Runnable::run);
+
+        final List<Bundle> cached = cache.getMetadata(mContext, R.xml.location_settings, FLAGS);
+        final List<Bundle> parsed =
+                PreferenceXmlParserUtils.parseMetadata(mContext, R.xml.location_settings, FLAGS);
+
+        assertSameMetadata(cached, parsed);
+    }
+
+    @Test
+    public void getMetadata_shouldOnlyContainRequestedMetadata() throws Exception {
+        final PreferenceXmlMetadataCache cache =
+                new PreferenceXmlMetadataCache(mFile, "id", Runnable::run);
+        cache.getMetadata(mContext, R.xml.location_settings, FLAGS);
+
+        final List<Bundle> metadata = cache.getMetadata(mContext, R.xml.location_settings,
+                MetadataFlag.FLAG_NEED_KEY);
+
+        assertThat(metadata).isNotEmpty();
+        for (Bundle bundle : metadata) {
+            assertThat(bundle.keySet()).containsExactly(METADATA_KEY);
+        }
+    }
+
+    @Test
+    public void getMetadata_newInstanceSameIdentity_shouldReadFromFile() throws Exception {
+        final List<Bundle> written = new PreferenceXmlMetadataCache(mFile, "id", Runnable::run)
+                .getMetadata(mContext, R.xml.location_settings, FLAGS);
+        final long length = mFile.length();
+
+        final List<Bundle> read = new PreferenceXmlMetadataCache(mFile, "id", Runnable::run)
+                .getMetadata(mContext, R.xml.location_settings, FLAGS);
+
+        assertThat(length).isGreaterThan(0L);
+        assertThat(mFile.length()).isEqualTo(length);
+        assertSameMetadata(read, written);
+    }
+
+    @Test
+    public void getMetadata_newInstanceOtherIdentity_shouldDiscardFile() throws Exception {
+        new PreferenceXmlMetadataCache(mFile, "id", Runnable::run)
+                .getMetadata(mContext, R.xml.location_settings, FLAGS);
+        final long length = mFile.length();
+
+        new PreferenceXmlMetadataCache(mFile, "other id", Runnable::run)
+                .getMetadata(mContext, R.xml.location_settings, FLAGS);
+
+        // The stale content is dropped and the entry written again for the new identity.
+        assertThat(mFile.length()).isEqualTo(length + "other id".length() - "id".length());
+    }
+
+    @Test
+    public void getMetadata_fileNotLoadedYet_shouldParseWithoutCaching() throws Exception {
+        final List<Runnable> pending = new ArrayList<>();
+        final PreferenceXmlMetadataCache cache =
+                new PreferenceXmlMetadataCache(mFile, "id", pending::add);
+
+        final List<Bundle> metadata = cache.getMetadata(mContext, R.xml.location_settings, FLAGS);
+
+        assertSameMetadata(metadata,
+                PreferenceXmlParserUtils.parseMetadata(mContext, R.xml.location_settings, FLAGS));
+        assertThat(pending).hasSize(1);
+        assertThat(mFile.exists()).isFalse();
+    }
+
+    @Test
+    public void getIdentity_orientationChanged_shouldNotChange() {
+        final String identity = PreferenceXmlMetadataCache.getIdentity(mContext);
+
+        RuntimeEnvironment.setQualifiers("+land");
+
+        assertThat(PreferenceXmlMetadataCache.getIdentity(mContext)).isEqualTo(identity);
+    }
+
+    @Test
+    public void getMetadata_partiallyWrittenFile_shouldRecover() throws Exception {
+        final List<Bundle> written = new PreferenceXmlMetadataCache(mFile, "id", Runnable::run)
+                .getMetadata(mContext, R.xml.location_settings, FLAGS);
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        final List<Bundle> read = new PreferenceXmlMetadataCache(mFile, "id", Runnable::run)
+                .getMetadata(mContext, R.xml.location_settings, FLAGS);
+
+        assertSameMetadata(read, written);
+    }
+
+    private static void assertSameMetadata(List<Bundle> actual, List<Bundle> expected) {
+        assertThat(actual).hasSize(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).getString(METADATA_KEY))
+                    .isEqualTo(expected.get(i).getString(METADATA_KEY));
+            assertThat(actual.get(i).getString(METADATA_CONTROLLER))
+                    .isEqualTo(expected.get(i).getString(METADATA_CONTROLLER));
+            assertThat(actual.get(i).getString(METADATA_TITLE))
+                    .isEqualTo(expected.get(i).getString(METADATA_TITLE));
+        }
+    }
+}
@@ -174,6 +174,32 @@ public class DashboardFragmentTest {
         verify(mTestFragment.mScreen, times(2)).addPreference(nullable(Preference.class));
     }
 
+    @Test
+    public void displayTilesAsPreference_shouldRecordBindLatencyPerTile() {
+        when(mFakeFeatureFactory.dashboardFeatureProvider
+                .getDashboardKeyForTile(any(ActivityTile.class)))
+                .thenReturn("test_key");
+        when(mFakeFeatureFactory.dashboardFeatureProvider
+                .getDashboardKeyForTile(any(ProviderTile.class)))
+                .thenReturn("test_key2");
+        mTestFragment.onCreatePreferences(new Bundle(), "rootKey");
+
+        assertThat(mTestFragment.mTileBindLatencies.keySet())
+                .containsExactly("test_key", "test_key2");
+    }
+
+    @Test
+    public void awaitObserverLatches_deadlinePassed_shouldNotWait() {
+        final List<DynamicDataObserver> observers = new ArrayList<>();
+        observers.add(new TestDynamicDataObserver());
+        observers.add(new TestDynamicDataObserver());
+
+        final long startTime = System.currentTimeMillis();
+        DashboardFragment.awaitObserverLatches(observers, 0L /* deadline */);
+
+        assertThat(System.currentTimeMillis() - startTime).isLessThan(50L);
+    }
+
     @Test
     public void displayTilesAsPreference_shouldNotAddTilesWithoutIntent() {
         mTestFragment.onCreatePreferences(new Bundle(), "rootKey");
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import static android.app.usage.NetworkStats.Bucket.UID_REMOVED;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.pm.UserInfo;
+import android.os.Process;
+import android.os.UserHandle;
+import android.os.UserManager;
+
+import com.android.settingslib.AppItem;
+import com.android.settingslib.net.UidDetailProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class UidUsageAggregatorTest {
+
+    private static final int CURRENT_USER_ID = 0;
+    private static final int WORK_USER_ID = 10;
+    private static final int OTHER_USER_ID = 11;
+    private static final int REMOVED_USER_ID = 12;
+    private static final int APP_ID = 10123;
+    private static final int OTHER_APP_ID = 10456;
+
+    @Mock
+    private UserManager mUserManager;
+
+    private UidUsageAggregator mAggregator;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mUserManager.getUserInfo(OTHER_USER_ID)).thenReturn(new UserInfo());
+        final List<UserHandle> profiles = Arrays.asList(
+                UserHandle.of(CURRENT_USER_ID), UserHandle.of(WORK_USER_ID));
+        mAggregator = new UidUsageAggregator(CURRENT_USER_ID, profiles, mUserManager);
+    }
+
+    @Test
+    public void add_sameApp_shouldAccumulateIntoOneItem() {
+        mAggregator.add(APP_ID, 100);
+        mAggregator.add(APP_ID, 50);
+        mAggregator.add(OTHER_APP_ID, 120);
+
+        final List<AppItem> items = mAggregator.getSortedItems();
+
+        assertThat(items).hasSize(2);
+        assertThat(items.get(0).key).isEqualTo(APP_ID);
+        assertThat(items.get(0).total).isEqualTo(150);
+        assertThat(items.get(0).category).isEqualTo(AppItem.CATEGORY_APP);
+        assertThat(items.get(1).key).isEqualTo(OTHER_APP_ID);
+        assertThat(mAggregator.getLargest()).isEqualTo(150);
+    }
+
+    @Test
+    public void add_systemUids_shouldCollapseIntoSystem() {
+        mAggregator.add(Process.ROOT_UID, 10);
+        mAggregator.add(Process.PHONE_UID, 20);
+
+        final List<AppItem> items = mAggregator.getSortedItems();
+
+        assertThat(items).hasSize(1);
+        assertThat(items.get(0).key).isEqualTo(Process.SYSTEM_UID);
+        assertThat(items.get(0).total).isEqualTo(30);
+        assertThat(items.get(0).uids.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void add_workProfileApp_shouldAlsoAccumulateIntoUserItem() {
+        final int workUid = UserHandle.getUid(WORK_USER_ID, APP_ID);
+        mAggregator.add(workUid, 100);
+        mAggregator.add(APP_ID, 300);
+
+        final List<AppItem> items = mAggregator.getSortedItems();
+
+        assertThat(items).hasSize(3);
+        assertThat(items.get(0).key).isEqualTo(UidDetailProvider.buildKeyForUser(WORK_USER_ID));
+        assertThat(items.get(0).category).isEqualTo(AppItem.CATEGORY_USER);
+        assertThat(items.get(0).total).isEqualTo(100);
+        assertThat(items.get(1).key).isEqualTo(APP_ID);
+        assertThat(items.get(2).key).isEqualTo(workUid);
+    }
+
+    @Test
+    public void add_otherAndRemovedUsers_shouldLookUpEachUserOnce() {
+        mAggregator.add(UserHandle.getUid(OTHER_USER_ID, APP_ID), 10);
+        mAggregator.add(UserHandle.getUid(OTHER_USER_ID, OTHER_APP_ID), 10);
+        mAggregator.add(UserHandle.getUid(REMOVED_USER_ID, APP_ID), 5);
+        mAggregator.add(UserHandle.getUid(REMOVED_USER_ID, OTHER_APP_ID), 5);
+
+        final List<AppItem> items = mAggregator.getSortedItems();
+
+        assertThat(items).hasSize(2);
+        assertThat(items.get(0).key).isEqualTo(UidDetailProvider.buildKeyForUser(OTHER_USER_ID));
+        assertThat(items.get(0).total).isEqualTo(20);
+        assertThat(items.get(1).key).isEqualTo(UID_REMOVED);
+        assertThat(items.get(1).total).isEqualTo(10);
+        verify(mUserManager, times(1)).getUserInfo(OTHER_USER_ID);
+        verify(mUserManager, times(1)).getUserInfo(REMOVED_USER_ID);
+    }
+
+    @Test
+    public void addRestricted_shouldMarkExistingAndAddMissingItems() {
+        mAggregator.add(APP_ID, 100);
+
+        mAggregator.addRestricted(new int[] {APP_ID, OTHER_APP_ID,
+                UserHandle.getUid(OTHER_USER_ID, APP_ID)});
+        final List<AppItem> items = mAggregator.getSortedItems();
+
+        assertThat(items).hasSize(2);
+        assertThat(items.get(0).key).isEqualTo(OTHER_APP_ID);
+        assertThat(items.get(0).total).isEqualTo(-1);
+        assertThat(items.get(0).restricted).isTrue();
+        assertThat(items.get(1).key).isEqualTo(APP_ID);
+        assertThat(items.get(1).restricted).isTrue();
+    }
+
+    @Test
+    public void add_manyApps_shouldKeepAllItems() {
+        for (int i = 0; i < 1000; i++) {
+            mAggregator.add(APP_ID + i, i);
+            mAggregator.add(APP_ID + i, 1);
+        }
+
+        final List<AppItem> items = mAggregator.getSortedItems();
+
+        assertThat(items).hasSize(1000);
+        assertThat(items.get(0).key).isEqualTo(APP_ID + 999);
+        assertThat(items.get(0).total).isEqualTo(1000);
+        assertThat(items.get(999).total).isEqualTo(1);
+    }
+}
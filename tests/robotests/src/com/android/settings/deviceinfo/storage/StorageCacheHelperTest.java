@@ -59,10 +59,18 @@ public class StorageCacheHelperTest {
     @Test
     public void hasCachedSizeInfo_hasCacheData_shouldReturnTrue() {
         mHelper.cacheSizeInfo(getFakeStorageCache());
+        mHelper.cacheTotalSizeAndTotalUsedSize(FAKE_TOTAL_SIZE, FAKE_TOTAL_USED_SIZE);
 
         assertThat(mHelper.hasCachedSizeInfo()).isTrue();
     }
 
+    @Test
+    public void hasCachedSizeInfo_onlyStorageResult_shouldReturnFalse() {
+        mHelper.cacheStorageResult(new StorageAsyncLoader.StorageResult());
+
+        assertThat(mHelper.hasCachedSizeInfo()).isFalse();
+    }
+
     @Test
     public void cacheSizeInfo_shouldSaveToSharedPreference() {
         mHelper.cacheSizeInfo(getFakeStorageCache());
@@ -73,6 +81,21 @@ public class StorageCacheHelperTest {
         assertThat(storageCache.totalSize).isEqualTo(0);
     }
 
+    @Test
+    public void cacheStorageResult_shouldKeepSystemSize() {
+        mHelper.cacheSizeInfo(getFakeStorageCache());
+        final StorageAsyncLoader.StorageResult result = new StorageAsyncLoader.StorageResult();
+        result.imagesSize = FAKE_IMAGES_SIZE * 2;
+        result.trashSize = FAKE_TRASH_SIZE * 2;
+
+        mHelper.cacheStorageResult(result);
+
+        StorageCacheHelper.StorageCache storageCache = mHelper.retrieveCachedSize();
+        assertThat(storageCache.imagesSize).isEqualTo(FAKE_IMAGES_SIZE * 2);
+        assertThat(storageCache.trashSize).isEqualTo(FAKE_TRASH_SIZE * 2);
+        assertThat(storageCache.systemSize).isEqualTo(FAKE_SYSTEM_SIZE);
+    }
+
     @Test
     public void cacheTotalSizeAndUsedSize_shouldSaveToSharedPreference() {
         mHelper.cacheTotalSizeAndTotalUsedSize(FAKE_TOTAL_SIZE, FAKE_TOTAL_USED_SIZE);
@@ -131,20 +131,20 @@ public final class BatteryChartPreferenceControllerTest {
     public void testOnDestroy_activityIsChanging_clearBatteryEntryCache() {
         doReturn(true).when(mSettingsActivity).isChangingConfigurations();
         // Ensures the testing environment is correct.
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryDiffEntry.sResourceCache.size()).isEqualTo(1);
 
         mBatteryChartPreferenceController.onDestroy();
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(BatteryDiffEntry.sResourceCache.size()).isEqualTo(0);
     }
 
     @Test
     public void testOnDestroy_activityIsNotChanging_notClearBatteryEntryCache() {
         doReturn(false).when(mSettingsActivity).isChangingConfigurations();
         // Ensures the testing environment is correct.
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryDiffEntry.sResourceCache.size()).isEqualTo(1);
 
         mBatteryChartPreferenceController.onDestroy();
-        assertThat(BatteryDiffEntry.sResourceCache).isNotEmpty();
+        assertThat(BatteryDiffEntry.sResourceCache.size()).isEqualTo(1);
     }
 
     @Test
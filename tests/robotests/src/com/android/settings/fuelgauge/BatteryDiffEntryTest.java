@@ -136,10 +136,10 @@ public final class BatteryDiffEntryTest {
 
         assertThat(entry.getAppLabel()).isEqualTo(expectedName);
         assertThat(entry.getAppIconId()).isEqualTo(R.drawable.ic_settings_aod);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryDiffEntry.sResourceCache.size()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-            BatteryDiffEntry.sResourceCache.get(entry.getKey());
+            BatteryDiffEntry.sResourceCache.get(entry.getCacheKey());
         assertThat(nameAndIcon.mName).isEqualTo(expectedName);
         assertThat(nameAndIcon.mIconId).isEqualTo(R.drawable.ic_settings_aod);
         // Verifies the restrictable flag in the cache.
@@ -162,10 +162,10 @@ public final class BatteryDiffEntryTest {
         assertThat(entry.getAppLabel()).isEqualTo(expectedName);
         assertThat(entry.getAppIcon()).isNull();
         assertThat(entry.getAppIconId()).isEqualTo(0);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryDiffEntry.sResourceCache.size()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-            BatteryDiffEntry.sResourceCache.get(entry.getKey());
+            BatteryDiffEntry.sResourceCache.get(entry.getCacheKey());
         assertThat(nameAndIcon.mName).isEqualTo(expectedName);
         assertThat(nameAndIcon.mIconId).isEqualTo(0);
         // Verifies the restrictable flag in the cache.
@@ -191,10 +191,10 @@ public final class BatteryDiffEntryTest {
 
         assertThat(entry.getAppLabel()).isEqualTo(expectedAppLabel);
         assertThat(entry.getAppIconId()).isEqualTo(0);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryDiffEntry.sResourceCache.size()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-            BatteryDiffEntry.sResourceCache.get(entry.getKey());
+            BatteryDiffEntry.sResourceCache.get(entry.getCacheKey());
         assertThat(nameAndIcon.mName).isEqualTo(expectedAppLabel);
         // Verifies the restrictable flag in the cache.
         assertThat(entry.mValidForRestriction).isFalse();
@@ -211,10 +211,10 @@ public final class BatteryDiffEntryTest {
         final BatteryDiffEntry entry = createBatteryDiffEntry(10, batteryHistEntry);
 
         assertThat(entry.getAppLabel()).isEqualTo(expectedAppLabel);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryDiffEntry.sResourceCache.size()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-            BatteryDiffEntry.sResourceCache.get(entry.getKey());
+            BatteryDiffEntry.sResourceCache.get(entry.getCacheKey());
         assertThat(nameAndIcon.mName).isEqualTo(expectedAppLabel);
     }
 
@@ -230,7 +230,7 @@ public final class BatteryDiffEntryTest {
 
         entry.mIsLoaded = true;
         assertThat(entry.getAppLabel()).isEqualTo(expectedAppLabel);
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(BatteryDiffEntry.sResourceCache.size()).isEqualTo(0);
     }
 
     @Test
@@ -245,7 +245,7 @@ public final class BatteryDiffEntryTest {
         entry.mIsLoaded = true;
         entry.mAppIcon = mockDrawable;
         assertThat(entry.getAppIcon()).isEqualTo(mockDrawable);
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(BatteryDiffEntry.sResourceCache.size()).isEqualTo(0);
     }
 
     @Test
@@ -270,10 +270,10 @@ public final class BatteryDiffEntryTest {
 
         entry.mAppIcon = null;
         assertThat(entry.getAppIcon()).isEqualTo(mockDrawable);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryDiffEntry.sResourceCache.size()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-            BatteryDiffEntry.sResourceCache.get(entry.getKey());
+            BatteryDiffEntry.sResourceCache.get(entry.getCacheKey());
         assertThat(nameAndIcon.mIcon).isEqualTo(mockDrawable);
     }
 
@@ -287,8 +287,27 @@ public final class BatteryDiffEntryTest {
 
         BatteryDiffEntry.clearCache();
 
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
-        assertThat(BatteryDiffEntry.sValidForRestriction).isEmpty();
+        assertThat(BatteryDiffEntry.sResourceCache.size()).isEqualTo(0);
+        assertThat(BatteryDiffEntry.sValidForRestriction.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRemoveCache_removeDataForSpecificUid() {
+        BatteryDiffEntry.sResourceCache.put(
+            "1001|en-US|420", new BatteryEntry.NameAndIcon("app1", null, /*iconId=*/ 0));
+        BatteryDiffEntry.sResourceCache.put(
+            "1001|zh-TW|420", new BatteryEntry.NameAndIcon("app1", null, /*iconId=*/ 0));
+        BatteryDiffEntry.sResourceCache.put(
+            "10011|en-US|420", new BatteryEntry.NameAndIcon("app2", null, /*iconId=*/ 0));
+        BatteryDiffEntry.sValidForRestriction.put("1001", Boolean.valueOf(true));
+        BatteryDiffEntry.sValidForRestriction.put("10011", Boolean.valueOf(true));
+
+        BatteryDiffEntry.removeCache(1001);
+
+        assertThat(BatteryDiffEntry.sResourceCache.snapshot().keySet())
+            .containsExactly("10011|en-US|420");
+        assertThat(BatteryDiffEntry.sValidForRestriction.snapshot().keySet())
+            .containsExactly("10011");
     }
 
     @Test
@@ -308,7 +327,7 @@ public final class BatteryDiffEntryTest {
         assertThat(entry2.getAppIcon()).isEqualTo(mockDrawable2);
         // Verifies the cache is updated into the new drawable.
         final BatteryEntry.NameAndIcon nameAndIcon =
-            BatteryDiffEntry.sResourceCache.get(entry2.getKey());
+            BatteryDiffEntry.sResourceCache.get(entry2.getCacheKey());
         assertThat(nameAndIcon.mIcon).isEqualTo(mockDrawable2);
     }
 
@@ -214,12 +214,12 @@ public class BatteryEntryTest {
         BatteryEntry.stopRequestQueue();
 
         Locale.setDefault(new Locale("en_US"));
-        BatteryEntry.sUidCache.put(Integer.toString(APP_UID), null);
-        assertThat(BatteryEntry.sUidCache).isNotEmpty();
+        BatteryEntry.sUidCache.put(Integer.toString(APP_UID), new BatteryEntry.UidToDetail());
+        assertThat(BatteryEntry.sUidCache.size()).isEqualTo(1);
 
         Locale.setDefault(new Locale("zh_TW"));
         createBatteryEntryForApp(null, null, HIGH_DRAIN_PACKAGE);
-        assertThat(BatteryEntry.sUidCache).isEmpty(); // check if cache is clear
+        assertThat(BatteryEntry.sUidCache.size()).isEqualTo(0); // check if cache is clear
     }
 
     @Test
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.text.format.DateUtils;
+
+import com.android.settings.testutils.DatabaseTestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class BatteryHistoryDatabaseManagerTest {
+
+    private static final long UID = 10001L;
+    private static final long UID_OTHER = 10002L;
+    private static final long HOUR = DateUtils.HOUR_IN_MILLIS;
+    private static final long CURRENT_TIMESTAMP = DateUtils.DAY_IN_MILLIS * 30;
+
+    private Context mContext;
+    private BatteryHistoryDatabaseManager mDatabaseManager;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mDatabaseManager = BatteryHistoryDatabaseManager.getInstance(mContext);
+    }
+
+    @After
+    public void cleanUp() {
+        DatabaseTestUtils.clearDb(mContext);
+    }
+
+    @Test
+    public void queryBatteryHistory_includeLatestSnapshotBeforeRange() {
+        insertSnapshot(CURRENT_TIMESTAMP - 3 * HOUR, 10, 90);
+        insertSnapshot(CURRENT_TIMESTAMP - 2 * HOUR, 20, 80);
+        insertSnapshot(CURRENT_TIMESTAMP - HOUR, 30, 70);
+        insertSnapshot(CURRENT_TIMESTAMP, 40, 60);
+
+        final Map<Long, Map<String, BatteryHistEntry>> history =
+                mDatabaseManager.queryBatteryHistory(CURRENT_TIMESTAMP - HOUR - 1,
+                        CURRENT_TIMESTAMP - 1);
+
+        assertThat(history.keySet()).containsExactly(
+                CURRENT_TIMESTAMP - 2 * HOUR, CURRENT_TIMESTAMP - HOUR);
+        final BatteryHistEntry entry =
+                history.get(CURRENT_TIMESTAMP - HOUR).get(Long.toString(UID));
+        assertThat(entry.mConsumePower).isEqualTo(30d);
+        assertThat(entry.mBatteryLevel).isEqualTo(70);
+    }
+
+    @Test
+    public void getBatteryHistory_notEnoughSnapshots_returnNull() {
+        insertSnapshot(CURRENT_TIMESTAMP, 40, 60);
+
+        assertThat(mDatabaseManager.getBatteryHistory(CURRENT_TIMESTAMP)).isNull();
+    }
+
+    @Test
+    public void getBatteryHistory_returnHourlySlots() {
+        insertSnapshot(CURRENT_TIMESTAMP - 2 * HOUR, 20, 80);
+        insertSnapshot(CURRENT_TIMESTAMP, 40, 60);
+
+        final Map<Long, Map<String, BatteryHistEntry>> history =
+                mDatabaseManager.getBatteryHistory(CURRENT_TIMESTAMP);
+
+        assertThat(history).hasSize(BatteryHistoryDatabaseManager.HISTORY_SLOT_COUNT);
+        // Interpolated between the two snapshots.
+        final BatteryHistEntry middle =
+                history.get(CURRENT_TIMESTAMP - HOUR).get(Long.toString(UID));
+        assertThat(middle.mConsumePower).isEqualTo(30d);
+        assertThat(middle.mBatteryLevel).isEqualTo(70);
+        assertThat(middle.mTimestamp).isEqualTo(CURRENT_TIMESTAMP - HOUR);
+        // Copied from the first snapshot before any data.
+        final BatteryHistEntry first = history.get(CURRENT_TIMESTAMP
+                - (BatteryHistoryDatabaseManager.HISTORY_SLOT_COUNT - 1) * HOUR)
+                .get(Long.toString(UID));
+        assertThat(first.mConsumePower).isEqualTo(20d);
+        assertThat(first.mBatteryLevel).isEqualTo(80);
+    }
+
+    @Test
+    public void pruneSnapshots_deleteExpiredAndCompactOldSnapshots() {
+        final long expiredTimestamp =
+                CURRENT_TIMESTAMP - BatteryHistoryDatabaseManager.RETENTION_MS - HOUR;
+        // Aligned to the compaction interval, so both following snapshots share its bucket.
+        final long oldTimestamp = CURRENT_TIMESTAMP - 2 * DateUtils.DAY_IN_MILLIS;
+        insertSnapshot(expiredTimestamp, 10, 90);
+        insertSnapshot(oldTimestamp, 20, 80);
+        insertSnapshot(oldTimestamp + HOUR, 30, 70);
+        insertSnapshot(CURRENT_TIMESTAMP - HOUR, 40, 60);
+        insertSnapshot(CURRENT_TIMESTAMP - HOUR / 2, 50, 50);
+
+        mDatabaseManager.pruneSnapshots(CURRENT_TIMESTAMP);
+
+        assertThat(mDatabaseManager.queryBatteryHistory(0L, CURRENT_TIMESTAMP).keySet())
+                .containsExactly(oldTimestamp, CURRENT_TIMESTAMP - HOUR,
+                        CURRENT_TIMESTAMP - HOUR / 2);
+    }
+
+    private void insertSnapshot(long timestamp, double consumePower, int batteryLevel) {
+        mDatabaseManager.insertSnapshot(Arrays.asList(
+                createValues(UID, timestamp, consumePower, batteryLevel),
+                createValues(UID_OTHER, timestamp, consumePower / 2, batteryLevel)));
+    }
+
+    private static ContentValues createValues(long uid, long timestamp, double consumePower,
+            int batteryLevel) {
+        final ContentValues values = new ContentValues();
+        values.put(BatteryHistEntry.KEY_UID, uid);
+        values.put(BatteryHistEntry.KEY_USER_ID, 0L);
+        values.put(BatteryHistEntry.KEY_PACKAGE_NAME, "com.android.app" + uid);
+        values.put(BatteryHistEntry.KEY_IS_HIDDEN, false);
+        values.put(BatteryHistEntry.KEY_BOOT_TIMESTAMP, timestamp);
+        values.put(BatteryHistEntry.KEY_TIMESTAMP, timestamp);
+        values.put(BatteryHistEntry.KEY_TOTAL_POWER, 100d);
+        values.put(BatteryHistEntry.KEY_CONSUME_POWER, consumePower);
+        values.put(BatteryHistEntry.KEY_CONSUMER_TYPE, ConvertUtils.CONSUMER_TYPE_UID_BATTERY);
+        values.put(BatteryHistEntry.KEY_BATTERY_LEVEL, batteryLevel);
+        values.put(BatteryHistEntry.KEY_BATTERY_STATUS, 0);
+        values.put(BatteryHistEntry.KEY_BATTERY_HEALTH, 0);
+        return values;
+    }
+}
@@ -384,4 +384,41 @@ public class BatteryInfoTest {
         info = getBatteryInfo(true /* charging */, true /* enhanced */, true /* estimate */);
         assertHistoryAndLinearProjection(info);
     }
+
+    @Test
+    public void testParseBatteryHistory_parsedTwice_readHistoryOnce() {
+        final BatteryInfo info =
+                getBatteryInfo(false /* charging */, false /* enhanced */, false /* estimate */);
+        mockBatteryStatsHistory();
+        final BatteryInfo.BatteryDataParser parser = mock(BatteryInfo.BatteryDataParser.class);
+
+        info.parseBatteryHistory(parser);
+        info.parseBatteryHistory(parser);
+
+        verify(mBatteryUsageStats, times(1)).iterateBatteryStatsHistory();
+        verify(parser, times(2)).onParsingStarted(0L, 2000L);
+        verify(parser, times(6)).onDataPoint(anyLong(), any(BatteryStats.HistoryItem.class));
+    }
+
+    @Test
+    public void testBindHistory_narrowView_mergePointsOfSamePixel() {
+        final BatteryInfo info =
+                getBatteryInfo(false /* charging */, false /* enhanced */, false /* estimate */);
+        mockBatteryStatsHistory();
+        final UsageView view = mock(UsageView.class);
+        when(view.getContext()).thenReturn(mContext);
+        // One pixel for every 1000ms of the 2000ms history.
+        when(view.getWidth()).thenReturn(2);
+
+        info.bindHistory(view);
+
+        final ArgumentCaptor<SparseIntArray> points =
+                ArgumentCaptor.forClass(SparseIntArray.class);
+        verify(view).addPath(points.capture());
+        assertThat(points.getValue().size()).isEqualTo(2);
+        assertThat(points.getValue().keyAt(0)).isEqualTo(1500);
+        assertThat(points.getValue().valueAt(0)).isEqualTo(98);
+        assertThat(points.getValue().keyAt(1)).isEqualTo(2000);
+        assertThat(points.getValue().valueAt(1)).isEqualTo(97);
+    }
 }
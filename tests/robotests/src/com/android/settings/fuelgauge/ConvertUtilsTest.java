@@ -352,6 +352,40 @@ public final class ConvertUtilsTest {
         assertThat(resultEntry.mBackgroundUsageTimeInMs).isEqualTo(0);
     }
 
+    @Test
+    public void getIndexedUsageMap_notEnoughDataInSlot_excludesSlotFromAllDayData() {
+        final int timeSlotSize = 2;
+        final long[] batteryHistoryKeys = new long[] {101L, 102L, 103L, 104L, 105L};
+        final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap =
+            new HashMap<>();
+        // Only index = 2, 3 and 4 have data, so the first slot can't be calculated.
+        final double[] consumePowers = new double[] {10.0, 20.0, 40.0};
+        for (int index = 0; index < consumePowers.length; index++) {
+            final Map<String, BatteryHistEntry> entryMap = new HashMap<>();
+            final BatteryHistEntry entry = createBatteryHistEntry(
+                "package1:process", "label1", consumePowers[index], 1L,
+                10L * index, 20L * index);
+            entryMap.put(entry.getKey(), entry);
+            batteryHistoryMap.put(Long.valueOf(batteryHistoryKeys[index + 2]), entryMap);
+        }
+
+        final Map<Integer, List<BatteryDiffEntry>> resultMap =
+            ConvertUtils.getIndexedUsageMap(
+                mContext, timeSlotSize, batteryHistoryKeys, batteryHistoryMap,
+                /*purgeLowPercentageAndFakeData=*/ true);
+
+        assertThat(resultMap).hasSize(3);
+        assertThat(resultMap.get(Integer.valueOf(0))).isEmpty();
+        List<BatteryDiffEntry> entryList = resultMap.get(Integer.valueOf(1));
+        assertThat(entryList).hasSize(1);
+        assertBatteryDiffEntry(entryList.get(0), 100, 20L, 40L);
+        assertThat(entryList.get(0).mConsumePower).isEqualTo(30.0);
+        entryList = resultMap.get(Integer.valueOf(-1));
+        assertThat(entryList).hasSize(1);
+        assertBatteryDiffEntry(entryList.get(0), 100, 20L, 40L);
+        assertThat(entryList.get(0).getPackageName()).isEqualTo("package1");
+    }
+
     @Test
     public void getLocale_nullContext_returnDefaultLocale() {
         assertThat(ConvertUtils.getLocale(/*context=*/ null))
@@ -24,6 +24,8 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.Process;
 
+import com.android.settings.R;
+
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -126,6 +128,22 @@ public class PowerUsageFeatureProviderImplTest {
         assertThat(mPowerFeatureProvider.isSmartBatterySupported()).isFalse();
     }
 
+    @Test
+    public void testIsChartGraphEnabled_chartGraphConfigEnabled_returnTrue() {
+        when(mContext.getResources().getBoolean(R.bool.config_battery_chart_graph_enabled))
+                .thenReturn(true);
+
+        assertThat(mPowerFeatureProvider.isChartGraphEnabled(mContext)).isTrue();
+    }
+
+    @Test
+    public void testIsChartGraphEnabled_chartGraphConfigDisabled_returnFalse() {
+        when(mContext.getResources().getBoolean(R.bool.config_battery_chart_graph_enabled))
+                .thenReturn(false);
+
+        assertThat(mPowerFeatureProvider.isChartGraphEnabled(mContext)).isFalse();
+    }
+
     @Test
     public void testIsAdaptiveChargingSupported_returnFalse() {
         assertThat(mPowerFeatureProvider.isAdaptiveChargingSupported()).isFalse();
@@ -153,7 +153,7 @@ public class AnomalyDetectionJobServiceTest {
                 mFeatureFactory.powerUsageFeatureProvider,
                 mFeatureFactory.metricsFeatureProvider, mBundle);
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
+        verify(mBatteryDatabaseManager, never()).enqueueAnomaly(anyInt(), anyString(), anyInt(),
                 anyInt(), anyLong());
     }
 
@@ -174,7 +174,7 @@ public class AnomalyDetectionJobServiceTest {
                 mFeatureFactory.powerUsageFeatureProvider,
                 mFeatureFactory.metricsFeatureProvider, mBundle);
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
+        verify(mBatteryDatabaseManager, never()).enqueueAnomaly(anyInt(), anyString(), anyInt(),
                 anyInt(), anyLong());
         verify(mFeatureFactory.metricsFeatureProvider).action(SettingsEnums.PAGE_UNKNOWN,
                 MetricsProto.MetricsEvent.ACTION_ANOMALY_IGNORED,
@@ -194,7 +194,7 @@ public class AnomalyDetectionJobServiceTest {
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
                 mBundle);
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
+        verify(mBatteryDatabaseManager, never()).enqueueAnomaly(anyInt(), anyString(), anyInt(),
                 anyInt(), anyLong());
     }
 
@@ -209,7 +209,7 @@ public class AnomalyDetectionJobServiceTest {
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
                 mBundle);
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
+        verify(mBatteryDatabaseManager, never()).enqueueAnomaly(anyInt(), anyString(), anyInt(),
                 anyInt(), anyLong());
     }
 
@@ -229,7 +229,7 @@ public class AnomalyDetectionJobServiceTest {
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
                 mBundle);
 
-        verify(mBatteryDatabaseManager).insertAnomaly(anyInt(), anyString(), eq(6),
+        verify(mBatteryDatabaseManager).enqueueAnomaly(anyInt(), anyString(), eq(6),
                 eq(AnomalyDatabaseHelper.State.AUTO_HANDLED), anyLong());
         verify(mFeatureFactory.metricsFeatureProvider).action(SettingsEnums.PAGE_UNKNOWN,
                 MetricsProto.MetricsEvent.ACTION_ANOMALY_TRIGGERED,
@@ -254,7 +254,7 @@ public class AnomalyDetectionJobServiceTest {
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
                 mBundle);
 
-        verify(mBatteryDatabaseManager).insertAnomaly(anyInt(), anyString(), eq(6),
+        verify(mBatteryDatabaseManager).enqueueAnomaly(anyInt(), anyString(), eq(6),
                 eq(AnomalyDatabaseHelper.State.NEW), anyLong());
         verify(mFeatureFactory.metricsFeatureProvider).action(SettingsEnums.PAGE_UNKNOWN,
                 MetricsProto.MetricsEvent.ACTION_ANOMALY_TRIGGERED,
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batterytip;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import com.android.settings.testutils.DatabaseTestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class BatteryDatabaseManagerTest {
+
+    private static final int UID = 10001;
+    private static final int UID_OTHER = 10002;
+    private static final String PACKAGE_NAME = "com.android.app";
+    private static final String PACKAGE_NAME_OTHER = "com.android.app.other";
+    private static final int ANOMALY_TYPE = 1;
+    private static final long TIMESTAMP_MS = 1000L;
+
+    private Context mContext;
+    private BatteryDatabaseManager mBatteryDatabaseManager;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mBatteryDatabaseManager = BatteryDatabaseManager.getInstance(mContext);
+    }
+
+    @After
+    public void cleanUp() {
+        DatabaseTestUtils.clearDb(mContext);
+    }
+
+    @Test
+    public void enqueueAnomaly_notFlushed_notInDatabase() {
+        mBatteryDatabaseManager.enqueueAnomaly(UID, PACKAGE_NAME, ANOMALY_TYPE,
+                AnomalyDatabaseHelper.State.NEW, TIMESTAMP_MS);
+
+        assertThat(mBatteryDatabaseManager.queryAllAnomalies(0,
+                AnomalyDatabaseHelper.State.NEW)).isEmpty();
+    }
+
+    @Test
+    public void flushPendingAnomalies_writeAllEnqueuedAnomalies() {
+        mBatteryDatabaseManager.enqueueAnomaly(UID, PACKAGE_NAME, ANOMALY_TYPE,
+                AnomalyDatabaseHelper.State.NEW, TIMESTAMP_MS);
+        mBatteryDatabaseManager.enqueueAnomaly(UID_OTHER, PACKAGE_NAME_OTHER, ANOMALY_TYPE,
+                AnomalyDatabaseHelper.State.NEW, TIMESTAMP_MS);
+        // Duplicated anomaly is ignored.
+        mBatteryDatabaseManager.enqueueAnomaly(UID, PACKAGE_NAME, ANOMALY_TYPE,
+                AnomalyDatabaseHelper.State.NEW, TIMESTAMP_MS);
+
+        assertThat(mBatteryDatabaseManager.flushPendingAnomalies()).isEqualTo(2);
+        final List<AppInfo> appInfos = mBatteryDatabaseManager.queryAllAnomalies(0,
+                AnomalyDatabaseHelper.State.NEW);
+        assertThat(appInfos).hasSize(2);
+        // The queue is drained.
+        assertThat(mBatteryDatabaseManager.flushPendingAnomalies()).isEqualTo(0);
+    }
+}
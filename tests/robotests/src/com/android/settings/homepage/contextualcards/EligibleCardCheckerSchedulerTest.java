@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.homepage.contextualcards;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@RunWith(RobolectricTestRunner.class)
+public class EligibleCardCheckerSchedulerTest {
+
+    private static final long TIMEOUT_MS = 400;
+
+    private Context mContext;
+    private EligibleCardCheckerScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mScheduler = spy(new EligibleCardCheckerScheduler());
+        // Cards named "ineligible" are not eligible, "slow" ones time out, the rest are eligible.
+        doAnswer(invocation -> {
+            final ContextualCard card = invocation.getArgument(1);
+            return (Callable<ContextualCard>) () -> {
+                if ("slow".equals(card.getName())) {
+                    Thread.sleep(TIMEOUT_MS * 5);
+                }
+                return "ineligible".equals(card.getName()) ? null : card;
+            };
+        }).when(mScheduler).createChecker(any(Context.class), any(ContextualCard.class));
+    }
+
+    @Test
+    public void filterEligibleCards_shouldKeepOrderAndDropIneligible() {
+        final List<ContextualCard> candidates = new ArrayList<>();
+        candidates.add(buildCard("card1"));
+        candidates.add(buildCard("ineligible"));
+        candidates.add(buildCard("card3"));
+
+        final List<ContextualCard> cards =
+                mScheduler.filterEligibleCards(mContext, candidates, TIMEOUT_MS);
+
+        assertThat(cards).hasSize(2);
+        assertThat(cards.get(0).getName()).isEqualTo("card1");
+        assertThat(cards.get(1).getName()).isEqualTo("card3");
+    }
+
+    @Test
+    public void filterEligibleCards_loadedTwice_shouldCheckOnce() {
+        final List<ContextualCard> candidates = new ArrayList<>();
+        candidates.add(buildCard("card1"));
+        candidates.add(buildCard("ineligible"));
+
+        mScheduler.filterEligibleCards(mContext, candidates, TIMEOUT_MS);
+        final List<ContextualCard> cards =
+                mScheduler.filterEligibleCards(mContext, candidates, TIMEOUT_MS);
+
+        assertThat(cards).hasSize(1);
+        assertThat(cards.get(0).getName()).isEqualTo("card1");
+        verify(mScheduler, times(2)).createChecker(any(Context.class), any(ContextualCard.class));
+        assertThat(mScheduler.getStats()).contains("hits = 2");
+    }
+
+    @Test
+    public void filterEligibleCards_cacheCleared_shouldCheckAgain() {
+        final List<ContextualCard> candidates = new ArrayList<>();
+        candidates.add(buildCard("card1"));
+
+        mScheduler.filterEligibleCards(mContext, candidates, TIMEOUT_MS);
+        mScheduler.clearCache();
+        mScheduler.filterEligibleCards(mContext, candidates, TIMEOUT_MS);
+
+        verify(mScheduler, times(2)).createChecker(any(Context.class), any(ContextualCard.class));
+    }
+
+    @Test
+    public void filterEligibleCards_timeout_shouldDropCardAndCountTimeout() {
+        final List<ContextualCard> candidates = new ArrayList<>();
+        candidates.add(buildCard("slow"));
+        candidates.add(buildCard("card2"));
+
+        final List<ContextualCard> cards =
+                mScheduler.filterEligibleCards(mContext, candidates, TIMEOUT_MS);
+
+        assertThat(cards).hasSize(1);
+        assertThat(cards.get(0).getName()).isEqualTo("card2");
+        assertThat(mScheduler.getStats()).contains("timeouts = 1");
+    }
+
+    @Test
+    public void filterEligibleCards_timeoutThenLoadAgain_shouldReuseRunningCheck() {
+        final List<ContextualCard> candidates = new ArrayList<>();
+        candidates.add(buildCard("slow"));
+
+        mScheduler.filterEligibleCards(mContext, candidates, TIMEOUT_MS);
+        final List<ContextualCard> cards =
+                mScheduler.filterEligibleCards(mContext, candidates, TIMEOUT_MS * 10);
+
+        assertThat(cards).hasSize(1);
+        assertThat(cards.get(0).getName()).isEqualTo("slow");
+        verify(mScheduler, times(1)).createChecker(any(Context.class), any(ContextualCard.class));
+    }
+
+    private static ContextualCard buildCard(String name) {
+        return new ContextualCard.Builder()
+                .setName(name)
+                .setCardType(ContextualCard.CardType.SLICE)
+                .setSliceUri(Uri.parse("content://com.android.settings.test.slices/" + name))
+                .build();
+    }
+}
@@ -21,12 +21,18 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.app.INotificationManager;
 import android.app.role.RoleManager;
+import android.app.usage.IUsageStatsManager;
 import android.app.usage.UsageEvents;
 import android.bluetooth.BluetoothAdapter;
 import android.companion.AssociationInfo;
@@ -38,14 +44,17 @@ import android.content.pm.PackageManager;
 import android.net.MacAddress;
 import android.os.Build;
 import android.os.Parcel;
+import android.text.format.DateUtils;
 
 import com.android.settings.notification.NotificationBackend.AppRow;
+import com.android.settings.testutils.DatabaseTestUtils;
 import com.android.settingslib.bluetooth.CachedBluetoothDevice;
 import com.android.settingslib.bluetooth.CachedBluetoothDeviceManager;
 import com.android.settingslib.bluetooth.LocalBluetoothManager;
 
 import com.google.common.collect.ImmutableList;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -70,6 +79,9 @@ public class NotificationBackendTest {
     ComponentName mCn = new ComponentName("a", "b");
     @Mock
     INotificationManager mInm;
+    @Mock
+    IUsageStatsManager mUsageStats;
+    IUsageStatsManager mOriginalUsageStats;
     NotificationBackend mNotificationBackend;
 
     @Before
@@ -78,6 +90,13 @@ public class NotificationBackendTest {
         when(mBm.getCachedDeviceManager()).thenReturn(mCbm);
         mNotificationBackend = new NotificationBackend();
         mNotificationBackend.setNm(mInm);
+        mOriginalUsageStats = NotificationBackend.sUsageStatsManager;
+    }
+
+    @After
+    public void tearDown() {
+        NotificationBackend.sUsageStatsManager = mOriginalUsageStats;
+        DatabaseTestUtils.clearDb(RuntimeEnvironment.application);
     }
 
     @Test
@@ -191,6 +210,71 @@ public class NotificationBackendTest {
         assertThat(appRow.sentByApp.avgSentWeekly).isEqualTo(3);
     }
 
+    @Test
+    public void testRecordAggregatedUsageEvents_onlyQueriesPackageEvents() throws Exception {
+        List<UsageEvents.Event> events = new ArrayList<>();
+        UsageEvents.Event good = new UsageEvents.Event();
+        good.mEventType = UsageEvents.Event.NOTIFICATION_INTERRUPTION;
+        good.mPackage = "pkg";
+        good.mNotificationChannelId = "channel1";
+        good.mTimeStamp = System.currentTimeMillis() - 2;
+        events.add(good);
+        NotificationBackend.sUsageStatsManager = mUsageStats;
+        when(mUsageStats.queryEventsForPackageForUser(
+                anyLong(), anyLong(), eq(0), eq("pkg"), anyString()))
+                .thenReturn(getUsageEvents(events));
+
+        AppRow appRow = new AppRow();
+        appRow.pkg = "pkg";
+        mNotificationBackend.recordAggregatedUsageEvents(RuntimeEnvironment.application, appRow);
+
+        assertThat(appRow.sentByChannel.keySet()).containsExactly("channel1");
+        assertThat(appRow.sentByApp.sentCount).isEqualTo(1);
+        verify(mUsageStats, never()).queryEventsForUser(
+                anyLong(), anyLong(), anyInt(), anyString());
+    }
+
+    @Test
+    public void testRecordAggregatedUsageEvents_recentCheckpoint_onlyQueriesEventsSinceIt()
+            throws Exception {
+        final long checkpoint = System.currentTimeMillis() - DateUtils.HOUR_IN_MILLIS;
+        List<UsageEvents.Event> counted = new ArrayList<>();
+        counted.add(createNotificationEvent("channel1", checkpoint - 2));
+        counted.add(createNotificationEvent("channel2", checkpoint - 1));
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), eq(0), anyString()))
+                .thenReturn(getUsageEvents(counted));
+        NotificationSentStatsStore.getInstance(RuntimeEnvironment.application)
+                .update(mUsageStats, 0, checkpoint);
+        List<UsageEvents.Event> newEvents = new ArrayList<>();
+        newEvents.add(createNotificationEvent("channel1", checkpoint + 1));
+        NotificationBackend.sUsageStatsManager = mUsageStats;
+        when(mUsageStats.queryEventsForPackageForUser(
+                eq(checkpoint), anyLong(), eq(0), eq("pkg"), anyString()))
+                .thenReturn(getUsageEvents(newEvents));
+
+        AppRow appRow = new AppRow();
+        appRow.pkg = "pkg";
+        mNotificationBackend.recordAggregatedUsageEvents(RuntimeEnvironment.application, appRow);
+
+        assertThat(appRow.sentByChannel.get("channel1").sentCount).isEqualTo(2);
+        assertThat(appRow.sentByChannel.get("channel1").lastSent).isEqualTo(checkpoint + 1);
+        assertThat(appRow.sentByChannel.get("channel2").sentCount).isEqualTo(1);
+        assertThat(appRow.sentByApp.sentCount).isEqualTo(3);
+        assertThat(appRow.sentByApp.lastSent).isEqualTo(checkpoint + 1);
+        verify(mUsageStats, never()).queryEventsForPackageForUser(
+                longThat(startTime -> startTime < checkpoint), anyLong(), anyInt(), anyString(),
+                anyString());
+    }
+
+    private static UsageEvents.Event createNotificationEvent(String channelId, long timestamp) {
+        UsageEvents.Event event = new UsageEvents.Event();
+        event.mEventType = UsageEvents.Event.NOTIFICATION_INTERRUPTION;
+        event.mPackage = "pkg";
+        event.mNotificationChannelId = channelId;
+        event.mTimeStamp = timestamp;
+        return event;
+    }
+
     private UsageEvents getUsageEvents(List<UsageEvents.Event> events) {
         UsageEvents usageEvents = new UsageEvents(events, new String[] {"pkg"});
         Parcel parcel = Parcel.obtain();
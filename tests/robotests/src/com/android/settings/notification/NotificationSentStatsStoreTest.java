@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.notification;
+
+import static android.text.format.DateUtils.DAY_IN_MILLIS;
+import static android.text.format.DateUtils.HOUR_IN_MILLIS;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.usage.IUsageStatsManager;
+import android.app.usage.UsageEvents;
+import android.content.Context;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+import com.android.settings.notification.NotificationBackend.NotificationsSentState;
+import com.android.settings.testutils.DatabaseTestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class NotificationSentStatsStoreTest {
+
+    private static final String PKG = "pkg";
+    private static final int USER_ID = 0;
+    private static final long NOW = DAY_IN_MILLIS * 30 + HOUR_IN_MILLIS * 12;
+
+    @Mock
+    private IUsageStatsManager mUsageStats;
+    private Context mContext;
+    private NotificationSentStatsStore mStore;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        mStore = NotificationSentStatsStore.getInstance(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseTestUtils.clearDb(mContext);
+    }
+
+    @Test
+    public void update_secondUpdate_onlyReadEventsSinceCheckpoint() throws Exception {
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
+                .thenReturn(getUsageEvents(createEvent("channel1", NOW - HOUR_IN_MILLIS)))
+                .thenReturn(getUsageEvents(createEvent("channel1", NOW + 1),
+                        createEvent("channel2", NOW + 2)));
+
+        mStore.update(mUsageStats, USER_ID, NOW);
+        mStore.update(mUsageStats, USER_ID, NOW + HOUR_IN_MILLIS);
+
+        verify(mUsageStats).queryEventsForUser(eq(NOW - DAY_IN_MILLIS * 7), eq(NOW),
+                eq(USER_ID), anyString());
+        verify(mUsageStats).queryEventsForUser(eq(NOW), eq(NOW + HOUR_IN_MILLIS),
+                eq(USER_ID), anyString());
+        final NotificationsSentState state =
+                mStore.getPackageStates(USER_ID, NOW + HOUR_IN_MILLIS).get(PKG);
+        assertThat(state.sentCount).isEqualTo(3);
+        assertThat(state.lastSent).isEqualTo(NOW + 2);
+        final Map<String, NotificationsSentState> channels =
+                mStore.getChannelStates(USER_ID, PKG, NOW + HOUR_IN_MILLIS);
+        assertThat(channels.get("channel1").sentCount).isEqualTo(2);
+        assertThat(channels.get("channel2").sentCount).isEqualTo(1);
+    }
+
+    @Test
+    public void update_windowRolledPastEvents_dropOldDays() throws Exception {
+        final long later = NOW + DAY_IN_MILLIS * 8;
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
+                .thenReturn(getUsageEvents(createEvent("channel1", NOW - HOUR_IN_MILLIS)))
+                .thenReturn(getUsageEvents(createEvent("channel1", later - HOUR_IN_MILLIS)));
+
+        mStore.update(mUsageStats, USER_ID, NOW);
+        mStore.update(mUsageStats, USER_ID, later);
+
+        final NotificationsSentState state = mStore.getPackageStates(USER_ID, later).get(PKG);
+        assertThat(state.sentCount).isEqualTo(1);
+        assertThat(state.lastSent).isEqualTo(later - HOUR_IN_MILLIS);
+    }
+
+    @Test
+    public void update_queryFailed_readEventsAgainOnNextUpdate() throws Exception {
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
+                .thenThrow(new RemoteException())
+                .thenReturn(getUsageEvents(createEvent("channel1", NOW - HOUR_IN_MILLIS)));
+
+        mStore.update(mUsageStats, USER_ID, NOW);
+        mStore.update(mUsageStats, USER_ID, NOW + HOUR_IN_MILLIS);
+
+        verify(mUsageStats).queryEventsForUser(eq(NOW - DAY_IN_MILLIS * 7),
+                eq(NOW + HOUR_IN_MILLIS), eq(USER_ID), anyString());
+        assertThat(mStore.getPackageStates(USER_ID, NOW + HOUR_IN_MILLIS).get(PKG).sentCount)
+                .isEqualTo(1);
+    }
+
+    private static UsageEvents.Event createEvent(String channelId, long timestamp) {
+        final UsageEvents.Event event = new UsageEvents.Event();
+        event.mEventType = UsageEvents.Event.NOTIFICATION_INTERRUPTION;
+        event.mPackage = PKG;
+        event.mNotificationChannelId = channelId;
+        event.mTimeStamp = timestamp;
+        return event;
+    }
+
+    private static UsageEvents getUsageEvents(UsageEvents.Event... events) {
+        final List<UsageEvents.Event> eventList = new ArrayList<>(Arrays.asList(events));
+        final UsageEvents usageEvents = new UsageEvents(eventList, new String[] {PKG});
+        final Parcel parcel = Parcel.obtain();
+        parcel.setDataPosition(0);
+        usageEvents.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        return UsageEvents.CREATOR.createFromParcel(parcel);
+    }
+}
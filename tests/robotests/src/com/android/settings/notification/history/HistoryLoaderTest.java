@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.notification.history;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.app.NotificationHistory;
+import android.app.NotificationHistory.HistoricalNotification;
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import com.android.settings.notification.NotificationBackend;
+import com.android.settings.testutils.shadow.ShadowThreadUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = ShadowThreadUtils.class)
+public class HistoryLoaderTest {
+
+    @Mock
+    private NotificationBackend mBackend;
+    @Mock
+    private PackageManager mPm;
+    private Context mContext;
+    private HistoryLoader mLoader;
+    private final List<List<NotificationHistoryPackage>> mPages = new ArrayList<>();
+    private final List<Integer> mOffsets = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        mLoader = new HistoryLoader(mContext, mBackend, mPm);
+    }
+
+    @Test
+    public void groupByPackage_shouldGroupByUidAndPackageInFirstSeenOrder() {
+        final NotificationHistory history = createHistory(
+                createNotification("pkgA", 1, 100),
+                createNotification("pkgB", 1, 200),
+                createNotification("pkgA", 1, 300),
+                createNotification("pkgA", 2, 400));
+
+        final List<NotificationHistoryPackage> packages = HistoryLoader.groupByPackage(history);
+
+        assertThat(packages).hasSize(3);
+        assertPackage(packages.get(0), "pkgA", 1);
+        assertThat(packages.get(0).notifications).hasSize(2);
+        assertThat(packages.get(0).getMostRecent()).isEqualTo(300);
+        assertPackage(packages.get(1), "pkgB", 1);
+        assertPackage(packages.get(2), "pkgA", 2);
+    }
+
+    @Test
+    public void groupByPackage_noNotification_shouldBeEmpty() {
+        assertThat(HistoryLoader.groupByPackage(createHistory())).isEmpty();
+    }
+
+    @Test
+    public void load_morePackagesThanPageSize_shouldDeliverPagesMostRecentFirst() {
+        final int count = HistoryLoader.PAGE_SIZE * 2 + 1;
+        final HistoricalNotification[] notifications = new HistoricalNotification[count];
+        for (int i = 0; i < count; i++) {
+            notifications[i] = createNotification("pkg" + i, i, i);
+        }
+        when(mBackend.getNotificationHistory(any(), any()))
+                .thenReturn(createHistory(notifications));
+
+        mLoader.load(this::onHistoryLoaded);
+
+        // The next pages wait for the first one to be drawn.
+        assertThat(mOffsets).containsExactly(0);
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(mOffsets).containsExactly(
+                0, HistoryLoader.PAGE_SIZE, HistoryLoader.PAGE_SIZE * 2).inOrder();
+        assertThat(mPages.get(0)).hasSize(HistoryLoader.PAGE_SIZE);
+        assertThat(mPages.get(1)).hasSize(HistoryLoader.PAGE_SIZE);
+        assertThat(mPages.get(2)).hasSize(1);
+        assertPackage(mPages.get(0).get(0), "pkg" + (count - 1), count - 1);
+        assertPackage(mPages.get(1).get(0), "pkg" + (count - 1 - HistoryLoader.PAGE_SIZE),
+                count - 1 - HistoryLoader.PAGE_SIZE);
+        assertPackage(mPages.get(2).get(0), "pkg0", 0);
+    }
+
+    @Test
+    public void load_exactlyPageSizePackages_shouldDeliverOnePage() {
+        final HistoricalNotification[] notifications =
+                new HistoricalNotification[HistoryLoader.PAGE_SIZE];
+        for (int i = 0; i < HistoryLoader.PAGE_SIZE; i++) {
+            notifications[i] = createNotification("pkg" + i, i, i);
+        }
+        when(mBackend.getNotificationHistory(any(), any()))
+                .thenReturn(createHistory(notifications));
+
+        mLoader.load(this::onHistoryLoaded);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(mOffsets).containsExactly(0);
+        assertThat(mPages.get(0)).hasSize(HistoryLoader.PAGE_SIZE);
+    }
+
+    @Test
+    public void load_noHistory_shouldDeliverEmptyFirstPage() {
+        when(mBackend.getNotificationHistory(any(), any())).thenReturn(createHistory());
+
+        mLoader.load(this::onHistoryLoaded);
+
+        assertThat(mOffsets).containsExactly(0);
+        assertThat(mPages.get(0)).isEmpty();
+    }
+
+    private void onHistoryLoaded(List<NotificationHistoryPackage> packages, int offset) {
+        mPages.add(packages);
+        mOffsets.add(offset);
+    }
+
+    private static void assertPackage(NotificationHistoryPackage nhp, String pkg, int uid) {
+        assertThat(nhp.pkgName).isEqualTo(pkg);
+        assertThat(nhp.uid).isEqualTo(uid);
+    }
+
+    private static HistoricalNotification createNotification(String pkg, int uid,
+            long postedTimeMs) {
+        return new HistoricalNotification.Builder()
+                .setPackage(pkg)
+                .setUid(uid)
+                .setPostedTimeMs(postedTimeMs)
+                .build();
+    }
+
+    private static NotificationHistory createHistory(HistoricalNotification... notifications) {
+        final NotificationHistory history = mock(NotificationHistory.class);
+        if (notifications.length == 0) {
+            when(history.hasNextNotification()).thenReturn(false);
+            return history;
+        }
+        final Boolean[] hasNext = new Boolean[notifications.length];
+        for (int i = 0; i < notifications.length; i++) {
+            hasNext[i] = i < notifications.length - 1;
+        }
+        when(history.hasNextNotification()).thenReturn(true, hasNext);
+        final HistoricalNotification[] next =
+                new HistoricalNotification[notifications.length - 1];
+        System.arraycopy(notifications, 1, next, 0, next.length);
+        when(history.getNextNotification()).thenReturn(notifications[0], next);
+        return history;
+    }
+}
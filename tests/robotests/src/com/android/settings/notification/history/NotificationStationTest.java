@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.notification.history;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import android.app.Activity;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.os.Process;
+import android.service.notification.NotificationListenerService.Ranking;
+import android.service.notification.NotificationListenerService.RankingMap;
+import android.service.notification.StatusBarNotification;
+
+import androidx.preference.PreferenceManager;
+import androidx.preference.PreferenceScreen;
+
+import com.android.settings.R;
+import com.android.settings.notification.history.NotificationStation.HistoricalNotificationInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+
+@RunWith(RobolectricTestRunner.class)
+public class NotificationStationTest {
+
+    private static final String CHANNEL_ID = "channel";
+
+    private Activity mActivity;
+    private NotificationStation mStation;
+    private PreferenceScreen mScreen;
+    private NotificationChannel mChannel;
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.setupActivity(Activity.class);
+        mChannel = new NotificationChannel(CHANNEL_ID, "name",
+                NotificationManager.IMPORTANCE_DEFAULT);
+        final PreferenceManager preferenceManager = new PreferenceManager(mActivity);
+        mScreen = preferenceManager.createPreferenceScreen(mActivity);
+        mStation = spy(new NotificationStation());
+        doReturn(mActivity).when(mStation).getContext();
+        doReturn(preferenceManager).when(mStation).getPreferenceManager();
+        doReturn(mScreen).when(mStation).getPreferenceScreen();
+        mStation.onAttach(mActivity);
+    }
+
+    @Test
+    public void onNotificationPosted_severalNotifications_shouldAddThemOnNextFrame() {
+        final StatusBarNotification sbn1 = createSbn(1, 100);
+        final StatusBarNotification sbn2 = createSbn(2, 200);
+        final StatusBarNotification sbn3 = createSbn(3, 300);
+
+        mStation.mListener.onNotificationPosted(sbn1, null /* ranking */);
+        mStation.mListener.onNotificationPosted(sbn2, null /* ranking */);
+        mStation.mListener.onNotificationPosted(sbn3, null /* ranking */);
+
+        assertThat(mScreen.getPreferenceCount()).isEqualTo(0);
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(mScreen.getPreferenceCount()).isEqualTo(3);
+        // Newest first.
+        assertThat(mScreen.findPreference(sbn3.getKey()).getOrder())
+                .isLessThan(mScreen.findPreference(sbn2.getKey()).getOrder());
+        assertThat(mScreen.findPreference(sbn2.getKey()).getOrder())
+                .isLessThan(mScreen.findPreference(sbn1.getKey()).getOrder());
+    }
+
+    @Test
+    public void onNotificationPosted_overMaxEntries_shouldDropOldest() {
+        final int maxEntries = mActivity.getResources().getInteger(
+                R.integer.config_notification_log_max_entries);
+        final StatusBarNotification oldest = createSbn(0, 0);
+        mStation.mListener.onNotificationPosted(oldest, null /* ranking */);
+        for (int i = 1; i < maxEntries; i++) {
+            mStation.mListener.onNotificationPosted(createSbn(i, i), null /* ranking */);
+        }
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertThat(mScreen.getPreferenceCount()).isEqualTo(maxEntries);
+
+        final StatusBarNotification newest = createSbn(maxEntries, maxEntries);
+        mStation.mListener.onNotificationPosted(newest, null /* ranking */);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(mStation.mNotificationInfos).hasSize(maxEntries);
+        assertThat(mScreen.getPreferenceCount()).isEqualTo(maxEntries);
+        assertThat((Object) mScreen.findPreference(oldest.getKey())).isNull();
+        assertThat((Object) mScreen.findPreference(newest.getKey())).isNotNull();
+    }
+
+    @Test
+    public void onNotificationRemoved_duringRankingMerge_shouldDropOutdatedMerge() {
+        final StatusBarNotification sbn = createSbn(1, 100);
+        mStation.mListener.onNotificationPosted(sbn, null /* ranking */);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        final RankingMap newRanking = createRankingMap(sbn.getKey());
+        final RankingMap oldRanking = createRankingMap(sbn.getKey());
+        // The notification is dismissed while the old ranking is being merged.
+        doAnswer(invocation -> {
+            populateRanking(invocation.getArgument(1));
+            mStation.mListener.onNotificationRemoved(sbn, newRanking);
+            return true;
+        }).doAnswer(invocation -> {
+            populateRanking(invocation.getArgument(1));
+            return true;
+        }).when(oldRanking).getRanking(anyString(), any(Ranking.class));
+
+        mStation.mListener.onNotificationRankingUpdate(oldRanking);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        final HistoricalNotificationInfo info = mStation.mNotificationInfos.getFirst();
+        assertThat(info.active).isFalse();
+        assertThat(info.alerted).isTrue();
+        assertThat(info.rankingExtra.toString()).doesNotContain(
+                mActivity.getString(R.string.notification_log_details_alerted));
+    }
+
+    private StatusBarNotification createSbn(int id, long postTime) {
+        final Notification notification = new Notification.Builder(mActivity, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.sym_def_app_icon)
+                .setContentTitle("title " + id)
+                .build();
+        return new StatusBarNotification(mActivity.getPackageName(), mActivity.getPackageName(),
+                id, null /* tag */, Process.myUid(), 0 /* initialPid */, notification,
+                Process.myUserHandle(), null /* overrideGroupKey */, postTime);
+    }
+
+    private RankingMap createRankingMap(String key) {
+        final RankingMap rankingMap = mock(RankingMap.class);
+        when(rankingMap.getOrderedKeys()).thenReturn(new String[]{key});
+        doAnswer(invocation -> {
+            populateRanking(invocation.getArgument(1));
+            return true;
+        }).when(rankingMap).getRanking(anyString(), any(Ranking.class));
+        return rankingMap;
+    }
+
+    private void populateRanking(Ranking ranking) {
+        ReflectionHelpers.setField(ranking, "mLastAudiblyAlertedMs", 1L);
+        ReflectionHelpers.setField(ranking, "mChannel", mChannel);
+    }
+}
@@ -149,6 +149,99 @@ public class SettingsSearchIndexablesProviderTest {
         assertThat(keys).containsAtLeast("pref_key_1", "pref_key_3", "pref_key_5");
     }
 
+    @Test
+    public void queryDynamicRawData_sinceLatestToken_noChange_shouldBeEmpty() {
+        final Cursor fullCursor = mProvider.queryDynamicRawData(
+                SearchIndexablesContract.INDEXABLES_RAW_COLUMNS,
+                SettingsSearchIndexablesProvider.FULL_DYNAMIC_RAW_DATA_TOKEN);
+        final long token = fullCursor.getExtras().getLong(
+                SettingsSearchIndexablesProvider.EXTRA_TOKEN);
+
+        final Cursor cursor = mProvider.queryDynamicRawData(
+                SearchIndexablesContract.INDEXABLES_RAW_COLUMNS, token);
+
+        assertThat(fullCursor.getCount()).isGreaterThan(0);
+        assertThat(cursor.getCount()).isEqualTo(0);
+        assertThat(cursor.getExtras().getStringArrayList(
+                SettingsSearchIndexablesProvider.EXTRA_CHANGED_CLASSES)).isEmpty();
+        assertThat(cursor.getExtras().getLong(SettingsSearchIndexablesProvider.EXTRA_TOKEN))
+                .isEqualTo(token);
+    }
+
+    @Test
+    public void queryDynamicRawData_sinceLatestToken_injectionChanged_shouldOnlyHaveInjection() {
+        final Cursor fullCursor = mProvider.queryDynamicRawData(
+                SearchIndexablesContract.INDEXABLES_RAW_COLUMNS,
+                SettingsSearchIndexablesProvider.FULL_DYNAMIC_RAW_DATA_TOKEN);
+        final long token = fullCursor.getExtras().getLong(
+                SettingsSearchIndexablesProvider.EXTRA_TOKEN);
+        final ActivityInfo activityInfo = new ActivityInfo();
+        activityInfo.packageName = "pkg";
+        activityInfo.name = "class";
+        activityInfo.metaData = new Bundle();
+        activityInfo.metaData.putString(META_DATA_PREFERENCE_TITLE, "new title");
+        final DashboardCategory category = new DashboardCategory("key");
+        category.addTile(new ActivityTile(activityInfo, category.key));
+        when(mFakeFeatureFactory.dashboardFeatureProvider.getAllCategories())
+                .thenReturn(Arrays.asList(category));
+
+        final Cursor cursor = mProvider.queryDynamicRawData(
+                SearchIndexablesContract.INDEXABLES_RAW_COLUMNS, token);
+
+        assertThat(cursor.getCount()).isEqualTo(1);
+        cursor.moveToFirst();
+        assertThat(cursor.getString(1)).isEqualTo("new title");
+        assertThat(cursor.getExtras().getLong(SettingsSearchIndexablesProvider.EXTRA_TOKEN))
+                .isGreaterThan(token);
+    }
+
+    @Test
+    public void queryDynamicRawData_tokenOfAnotherProcess_shouldHaveAllData() {
+        final Cursor fullCursor = mProvider.queryDynamicRawData(
+                SearchIndexablesContract.INDEXABLES_RAW_COLUMNS,
+                SettingsSearchIndexablesProvider.FULL_DYNAMIC_RAW_DATA_TOKEN);
+        final long token = fullCursor.getExtras().getLong(
+                SettingsSearchIndexablesProvider.EXTRA_TOKEN);
+
+        // Same generation, but issued by a process with another epoch in the upper bits.
+        final Cursor cursor = mProvider.queryDynamicRawData(
+                SearchIndexablesContract.INDEXABLES_RAW_COLUMNS, token ^ (1L << 32));
+
+        assertThat(cursor.getCount()).isEqualTo(fullCursor.getCount());
+    }
+
+    @Test
+    public void query_dynamicRawDataWithToken_shouldReturnChangedData() {
+        final long token = mProvider.queryDynamicRawData(
+                SearchIndexablesContract.INDEXABLES_RAW_COLUMNS,
+                SettingsSearchIndexablesProvider.FULL_DYNAMIC_RAW_DATA_TOKEN)
+                .getExtras().getLong(SettingsSearchIndexablesProvider.EXTRA_TOKEN);
+        final Uri uri = Uri.parse(BASE_AUTHORITY
+                + SearchIndexablesContract.DYNAMIC_INDEXABLES_RAW_PATH).buildUpon()
+                .appendQueryParameter(SettingsSearchIndexablesProvider.QUERY_PARAMETER_SINCE_TOKEN,
+                        String.valueOf(token))
+                .build();
+
+        final Cursor cursor = mProvider.query(uri,
+                SearchIndexablesContract.INDEXABLES_RAW_COLUMNS, null, null, null);
+
+        assertThat(cursor.getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void query_dynamicRawDataWithUnknownToken_shouldReturnAllData() {
+        final Uri uri = Uri.parse(BASE_AUTHORITY
+                + SearchIndexablesContract.DYNAMIC_INDEXABLES_RAW_PATH).buildUpon()
+                .appendQueryParameter(SettingsSearchIndexablesProvider.QUERY_PARAMETER_SINCE_TOKEN,
+                        String.valueOf(Long.MAX_VALUE))
+                .build();
+
+        final Cursor cursor = mProvider.query(uri,
+                SearchIndexablesContract.INDEXABLES_RAW_COLUMNS, null, null, null);
+
+        assertThat(cursor.getCount()).isGreaterThan(0);
+    }
+
     @Test
     public void refreshSearchEnabledState_classNotFoundInCategoryMap_hasInjectionRawData() {
         mProvider.refreshSearchEnabledState(mContext,
@@ -88,7 +88,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -150,7 +149,7 @@ public class SettingsSliceProviderTest {
 
         mProvider = spy(new SettingsSliceProvider());
         ShadowStrictMode.reset();
-        mProvider.mSliceWeakDataCache = new HashMap<>();
+        mProvider.mSliceDataCache = new SliceDataCache();
         mProvider.mSlicesDatabaseAccessor = new SlicesDatabaseAccessor(mContext);
         when(mProvider.getContext()).thenReturn(mContext);
 
@@ -187,7 +186,7 @@ public class SettingsSliceProviderTest {
         SliceTestUtils.insertSliceToDb(mContext, KEY);
 
         mProvider.loadSlice(INTENT_SLICE_URI);
-        SliceData data = mProvider.mSliceWeakDataCache.get(INTENT_SLICE_URI);
+        SliceData data = mProvider.mSliceDataCache.get(INTENT_SLICE_URI);
 
         assertThat(data.getKey()).isEqualTo(KEY);
         assertThat(data.getTitle()).isEqualTo(SliceTestUtils.FAKE_TITLE);
@@ -220,15 +219,52 @@ public class SettingsSliceProviderTest {
 
     @Test
     @Ignore
-    public void testLoadSlice_cachedEntryRemovedOnBuild() {
+    public void testLoadSlice_cachedEntryKeptOnBuild() {
         SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
         SliceTestUtils.insertSliceToDb(mContext, data.getKey());
 
-        SliceData cachedData = mProvider.mSliceWeakDataCache.get(data.getUri());
+        SliceData cachedData = mProvider.mSliceDataCache.get(data.getUri());
 
-        assertThat(cachedData).isNull();
+        assertThat(cachedData).isEqualTo(data);
+    }
+
+    @Test
+    public void loadSlice_notIndexed_cachedAsMissing() {
+        mProvider.mSlicesDatabaseAccessor = mock(SlicesDatabaseAccessor.class);
+        when(mProvider.mSlicesDatabaseAccessor.getSliceDataFromUri(INTENT_SLICE_URI))
+                .thenThrow(new IllegalStateException());
+
+        mProvider.loadSlice(INTENT_SLICE_URI);
+
+        assertThat(mProvider.mSliceDataCache.get(INTENT_SLICE_URI)).isNull();
+        assertThat(mProvider.mSliceDataCache.isMissing(INTENT_SLICE_URI)).isTrue();
+    }
+
+    @Test
+    public void onBindSlice_missingSlice_shouldNotReload() {
+        mProvider.mSliceDataCache.putMissing(INTENT_SLICE_URI);
+
+        final Slice slice = mProvider.onBindSlice(INTENT_SLICE_URI);
+
+        assertThat(slice.getUri()).isEqualTo(INTENT_SLICE_URI);
+        verify(mProvider, never()).loadSliceInBackground(any(Uri.class));
+    }
+
+    @Test
+    public void warmSliceDataCache_cachesPublicSlices() {
+        final SliceData data = getMockData();
+        final List<Uri> uris = Collections.singletonList(data.getUri());
+        mProvider.mSlicesDatabaseAccessor = mock(SlicesDatabaseAccessor.class);
+        when(mProvider.mSlicesDatabaseAccessor.getSliceUris(null /* authority */,
+                true /* isPublicSlice */)).thenReturn(uris);
+        when(mProvider.mSlicesDatabaseAccessor.getSliceDataFromUris(uris))
+                .thenReturn(Collections.singletonMap(data.getUri(), data));
+
+        mProvider.warmSliceDataCache();
+
+        assertThat(mProvider.mSliceDataCache.get(data.getUri())).isEqualTo(data);
     }
 
     @Test
@@ -237,7 +273,7 @@ public class SettingsSliceProviderTest {
         ShadowThreadUtils.setIsMainThread(true);
         final StrictMode.ThreadPolicy oldThreadPolicy = StrictMode.getThreadPolicy();
         SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
 
         final StrictMode.ThreadPolicy newThreadPolicy = StrictMode.getThreadPolicy();
@@ -251,7 +287,7 @@ public class SettingsSliceProviderTest {
         ShadowThreadUtils.setIsMainThread(false);
 
         SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
 
         assertThat(ShadowStrictMode.isThreadPolicyOverridden()).isTrue();
@@ -280,7 +316,7 @@ public class SettingsSliceProviderTest {
     public void onBindSlice_nightModeChanged_shouldReloadTheme() {
         mContext.getResources().getConfiguration().uiMode = UI_MODE_NIGHT_NO;
         final SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
 
         mContext.getResources().getConfiguration().uiMode = UI_MODE_NIGHT_YES;
@@ -294,7 +330,7 @@ public class SettingsSliceProviderTest {
     public void onBindSlice_nightModeNotChanged_shouldNotReloadTheme() {
         mContext.getResources().getConfiguration().uiMode = UI_MODE_NIGHT_NO;
         SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
 
         mContext.getResources().getConfiguration().uiMode = UI_MODE_NIGHT_NO;
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.slices;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class SliceBackgroundWorkerTest {
+
+    private static final Uri URI_1 = Uri.parse("content://com.android.settings.slices/test1");
+    private static final Uri URI_2 = Uri.parse("content://com.android.settings.slices/test2");
+    private static final long INTERVAL = 300L;
+
+    private Context mContext;
+    private Sliceable mSliceable;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mSliceable = mock(Sliceable.class);
+        doReturn(TestWorker.class).when(mSliceable).getBackgroundWorkerClass();
+    }
+
+    @After
+    public void tearDown() {
+        SliceBackgroundWorker.shutdown();
+    }
+
+    @Test
+    public void getInstance_sameUri_returnSameWorker() {
+        final SliceBackgroundWorker worker =
+                SliceBackgroundWorker.getInstance(mContext, mSliceable, URI_1);
+
+        assertThat(SliceBackgroundWorker.getInstance(mContext, mSliceable, URI_1))
+                .isSameInstanceAs(worker);
+        assertThat((SliceBackgroundWorker) SliceBackgroundWorker.getInstance(URI_1))
+                .isSameInstanceAs(worker);
+        assertThat(worker.getUri()).isEqualTo(URI_1);
+    }
+
+    @Test
+    public void getInstance_registeredFactory_createWorkerWithFactory() {
+        SliceBackgroundWorker.registerFactory(TestWorker.class,
+                (context, uri) -> new TestWorker(context, uri, true /* fromFactory */));
+
+        final TestWorker worker =
+                (TestWorker) SliceBackgroundWorker.getInstance(mContext, mSliceable, URI_2);
+
+        assertThat(worker.mFromFactory).isTrue();
+        SliceBackgroundWorker.registerFactory(TestWorker.class, TestWorker::new);
+    }
+
+    @Test
+    public void shutdown_closeAndRemoveWorkers() {
+        final TestWorker worker =
+                (TestWorker) SliceBackgroundWorker.getInstance(mContext, mSliceable, URI_1);
+
+        SliceBackgroundWorker.shutdown();
+
+        assertThat(worker.mClosed).isTrue();
+        assertThat((SliceBackgroundWorker) SliceBackgroundWorker.getInstance(URI_1)).isNull();
+    }
+
+    @Test
+    public void sliceNotifyState_firstUpdate_postponed() {
+        final SliceBackgroundWorker.SliceNotifyState state =
+                new SliceBackgroundWorker.SliceNotifyState();
+
+        assertThat(state.getDelay(1000L)).isEqualTo(INTERVAL);
+    }
+
+    @Test
+    public void sliceNotifyState_burst_throttledAfterBurst() {
+        final SliceBackgroundWorker.SliceNotifyState state =
+                new SliceBackgroundWorker.SliceNotifyState();
+        state.onNotified(1000L);
+
+        assertThat(state.getDelay(1010L)).isEqualTo(0L);
+        state.onNotified(1010L);
+
+        assertThat(state.getDelay(1020L)).isEqualTo(1000L + INTERVAL - 1020L);
+        assertThat(state.mNotifyCount).isEqualTo(2);
+    }
+
+    @Test
+    public void sliceNotifyState_idle_bucketRefilled() {
+        final SliceBackgroundWorker.SliceNotifyState state =
+                new SliceBackgroundWorker.SliceNotifyState();
+        state.onNotified(1000L);
+        state.onNotified(1010L);
+
+        assertThat(state.getDelay(1000L + 3 * INTERVAL)).isEqualTo(0L);
+    }
+
+    public static class TestWorker extends SliceBackgroundWorker<Void> {
+
+        private final boolean mFromFactory;
+        private boolean mClosed;
+
+        public TestWorker(Context context, Uri uri) {
+            this(context, uri, false /* fromFactory */);
+        }
+
+        TestWorker(Context context, Uri uri, boolean fromFactory) {
+            super(context, uri);
+            mFromFactory = fromFactory;
+        }
+
+        @Override
+        protected void onSlicePinned() {
+        }
+
+        @Override
+        protected void onSliceUnpinned() {
+        }
+
+        @Override
+        public void close() {
+            mClosed = true;
+        }
+    }
+}
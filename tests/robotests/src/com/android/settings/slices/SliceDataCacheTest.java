@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.slices;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Locale;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class SliceDataCacheTest {
+
+    private static final Uri URI = Uri.parse("content://com.android.settings.slices/test");
+
+    private Locale mDefaultLocale;
+    private SliceDataCache mCache;
+
+    @Before
+    public void setUp() {
+        mDefaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+        mCache = new SliceDataCache();
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(mDefaultLocale);
+    }
+
+    @Test
+    public void put_overCapacity_evictLeastRecentlyUsed() {
+        for (int i = 0; i <= SliceDataCache.MAX_ENTRIES; i++) {
+            mCache.put(getUri(i), mock(SliceData.class));
+            // Keep the first entry in use.
+            mCache.get(getUri(0));
+        }
+
+        assertThat(mCache.get(getUri(0))).isNotNull();
+        assertThat(mCache.get(getUri(1))).isNull();
+    }
+
+    @Test
+    public void putAll_full_keepExistingEntries() {
+        for (int i = 0; i < SliceDataCache.MAX_ENTRIES; i++) {
+            mCache.put(getUri(i), mock(SliceData.class));
+        }
+        final Map<Uri, SliceData> warmData = new ArrayMap<>();
+        warmData.put(URI, mock(SliceData.class));
+
+        mCache.putAll(warmData);
+
+        assertThat(mCache.get(URI)).isNull();
+        assertThat(mCache.get(getUri(0))).isNotNull();
+    }
+
+    @Test
+    public void isMissing_afterTimeout_returnFalse() {
+        mCache.putMissing(URI);
+
+        assertThat(mCache.isMissing(URI)).isTrue();
+
+        SystemClock.sleep(SliceDataCache.MISSING_ENTRY_TIMEOUT_MS + 1);
+
+        assertThat(mCache.isMissing(URI)).isFalse();
+    }
+
+    @Test
+    public void put_missingEntry_clearMissing() {
+        mCache.putMissing(URI);
+        final SliceData data = mock(SliceData.class);
+
+        mCache.put(URI, data);
+
+        assertThat(mCache.isMissing(URI)).isFalse();
+        assertThat(mCache.get(URI)).isEqualTo(data);
+    }
+
+    @Test
+    public void get_localeChanged_evictAll() {
+        mCache.put(URI, mock(SliceData.class));
+        mCache.putMissing(getUri(0));
+
+        Locale.setDefault(Locale.FRANCE);
+
+        assertThat(mCache.get(URI)).isNull();
+        assertThat(mCache.isMissing(getUri(0))).isFalse();
+    }
+
+    private static Uri getUri(int index) {
+        return Uri.parse("content://com.android.settings.slices/test" + index);
+    }
+}
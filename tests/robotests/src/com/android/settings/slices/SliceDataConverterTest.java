@@ -46,6 +46,7 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowBuild;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -114,6 +115,60 @@ public class SliceDataConverterTest {
         }
     }
 
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getSliceData_parallel_shouldKeepProviderOrder() {
+        final List<SearchIndexableData> bundles = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            bundles.add(new SearchIndexableData(FakeIndexProvider.class,
+                    FakeIndexProvider.SEARCH_INDEX_DATA_PROVIDER));
+        }
+
+        final List<List<SliceData>> sequential =
+                mSliceDataConverter.getSliceData(bundles, false /* parallel */);
+        final List<List<SliceData>> parallel =
+                mSliceDataConverter.getSliceData(bundles, true /* parallel */);
+
+        assertThat(parallel).hasSize(bundles.size());
+        for (int i = 0; i < bundles.size(); i++) {
+            assertThat(parallel.get(i)).hasSize(sequential.get(i).size());
+            assertFakeSlice(parallel.get(i).get(0));
+        }
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getProviderDigest_sameProvider_shouldBeStable() {
+        final SearchIndexableData bundle = new SearchIndexableData(FakeIndexProvider.class,
+                FakeIndexProvider.SEARCH_INDEX_DATA_PROVIDER);
+
+        final String digest = mSliceDataConverter.getProviderDigest(bundle);
+
+        assertThat(digest).isNotEmpty();
+        assertThat(mSliceDataConverter.getProviderDigest(bundle)).isEqualTo(digest);
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getProviderDigest_buildChanged_shouldNotChange() {
+        final SearchIndexableData bundle = new SearchIndexableData(FakeIndexProvider.class,
+                FakeIndexProvider.SEARCH_INDEX_DATA_PROVIDER);
+        final String digest = mSliceDataConverter.getProviderDigest(bundle);
+
+        ShadowBuild.setFingerprint("new_fingerprint");
+
+        assertThat(new SliceDataConverter(mContext).getProviderDigest(bundle))
+                .isEqualTo(digest);
+    }
+
+    @Test
+    public void getProviderDigest_noProvider_shouldBeNull() {
+        final SearchIndexableData bundle = new SearchIndexableData(FakeIndexProvider.class,
+                null /* provider */);
+
+        assertThat(mSliceDataConverter.getProviderDigest(bundle)).isNull();
+    }
+
     private void assertFakeSlice(SliceData fakeSlice) {
         assertThat(fakeSlice.getKey()).isEqualTo(FAKE_KEY);
         assertThat(fakeSlice.getTitle()).isEqualTo(FAKE_TITLE);
@@ -56,8 +56,11 @@ import org.robolectric.shadow.api.Shadow;
 import org.robolectric.shadows.ShadowAccessibilityManager;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(shadows = {ShadowUserManager.class, ShadowUtils.class,
@@ -176,6 +179,42 @@ public class SlicesDatabaseAccessorTest {
         mAccessor.getSliceDataFromUri(uri);
     }
 
+    @Test
+    @Ignore
+    public void getSliceDataFromKeys_validKeys_validSlicesReturned() {
+        final String key1 = "key1";
+        final String key2 = "key2";
+        SliceTestUtils.insertSliceToDb(mContext, key1);
+        SliceTestUtils.insertSliceToDb(mContext, key2);
+
+        final Map<String, SliceData> data =
+                mAccessor.getSliceDataFromKeys(Arrays.asList(key1, key2, "missing_key"));
+
+        assertThat(data.keySet()).containsExactly(key1, key2);
+        assertThat(data.get(key1).getTitle()).isEqualTo(SliceTestUtils.FAKE_TITLE);
+    }
+
+    @Test
+    @Ignore
+    public void getSliceDataFromUris_validUris_slicesReturnedByUri() {
+        final String key = "key";
+        SliceTestUtils.insertSliceToDb(mContext, key);
+        final Uri uri = new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(SettingsSliceProvider.SLICE_AUTHORITY)
+                .appendPath("intent")
+                .appendPath(key)
+                .build();
+
+        final Map<Uri, SliceData> data =
+                mAccessor.getSliceDataFromUris(Collections.singletonList(uri));
+
+        assertThat(data.keySet()).containsExactly(uri);
+        assertThat(data.get(uri).getKey()).isEqualTo(key);
+        assertThat(data.get(uri).getUri()).isEqualTo(uri);
+        assertThat(data.get(uri).getSliceType()).isEqualTo(SliceData.SliceType.INTENT);
+    }
+
     @Test
     @Ignore
     public void getDescendantUris_platformSlice_doesNotReturnOEMSlice() {
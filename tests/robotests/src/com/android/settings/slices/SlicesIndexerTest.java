@@ -18,8 +18,14 @@ package com.android.settings.slices;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import android.content.ContentValues;
 import android.content.Context;
@@ -29,6 +35,8 @@ import android.net.Uri;
 
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
 import com.android.settings.testutils.DatabaseTestUtils;
+import com.android.settings.testutils.FakeIndexProvider;
+import com.android.settingslib.search.SearchIndexableData;
 
 import org.junit.After;
 import org.junit.Before;
@@ -39,6 +47,7 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @RunWith(RobolectricTestRunner.class)
@@ -60,12 +69,29 @@ public class SlicesIndexerTest {
     private Context mContext;
 
     private SlicesIndexer mManager;
-
+    private SliceDataConverter mConverter;
+    private SearchIndexableData mBundle;
 
     @Before
     public void setUp() {
         mContext = RuntimeEnvironment.application;
         mManager = spy(new SlicesIndexer(mContext));
+        mConverter = mock(SliceDataConverter.class);
+        mBundle = new SearchIndexableData(FakeIndexProvider.class,
+                FakeIndexProvider.SEARCH_INDEX_DATA_PROVIDER);
+        when(mConverter.getSearchIndexableData()).thenReturn(Collections.singletonList(mBundle));
+        when(mConverter.getProviderDigest(mBundle)).thenReturn("digest");
+        when(mConverter.getSliceData(mBundle)).thenReturn(new ArrayList<>());
+        when(mConverter.getAccessibilitySliceData()).thenReturn(new ArrayList<>());
+        when(mConverter.getSliceData(anyList(), anyBoolean())).thenAnswer(invocation -> {
+            final List<SearchIndexableData> bundles = invocation.getArgument(0);
+            final List<List<SliceData>> results = new ArrayList<>();
+            for (SearchIndexableData bundle : bundles) {
+                results.add(mConverter.getSliceData(bundle));
+            }
+            return results;
+        });
+        doReturn(mConverter).when(mManager).getSliceDataConverter();
     }
 
     @After
@@ -100,7 +126,6 @@ public class SlicesIndexerTest {
     public void testInsertSliceData_indexedStateSet() {
         final SlicesDatabaseHelper helper = SlicesDatabaseHelper.getInstance(mContext);
         helper.setIndexedState();
-        doReturn(new ArrayList<SliceData>()).when(mManager).getSliceData();
 
         mManager.run();
 
@@ -111,7 +136,7 @@ public class SlicesIndexerTest {
     @Ignore
     public void testInsertSliceData_nonPublicSlice_mockDataInserted() {
         final List<SliceData> sliceData = getMockIndexableData(false);
-        doReturn(sliceData).when(mManager).getSliceData();
+        when(mConverter.getSliceData(mBundle)).thenReturn(sliceData);
 
         mManager.run();
 
@@ -160,7 +185,7 @@ public class SlicesIndexerTest {
     @Ignore
     public void insertSliceData_publicSlice_mockDataInserted() {
         final List<SliceData> sliceData = getMockIndexableData(true);
-        doReturn(sliceData).when(mManager).getSliceData();
+        when(mConverter.getSliceData(mBundle)).thenReturn(sliceData);
 
         mManager.run();
 
@@ -205,6 +230,62 @@ public class SlicesIndexerTest {
         }
     }
 
+    @Test
+    public void indexSliceData_digestUnchanged_shouldNotExtractProviderAgain() {
+        mManager.indexSliceData();
+        clearIndexedState();
+
+        mManager.indexSliceData();
+
+        verify(mConverter, times(1)).getSliceData(mBundle);
+    }
+
+    @Test
+    public void indexSliceData_digestChanged_shouldExtractProviderAgain() {
+        mManager.indexSliceData();
+        clearIndexedState();
+        when(mConverter.getProviderDigest(mBundle)).thenReturn("new digest");
+
+        mManager.indexSliceData();
+
+        verify(mConverter, times(2)).getSliceData(mBundle);
+    }
+
+    @Test
+    public void indexSliceData_controllersVersionChanged_shouldExtractProviderAgain() {
+        mManager.indexSliceData();
+        clearIndexedState();
+        final SlicesDatabaseHelper helper = SlicesDatabaseHelper.getInstance(mContext);
+        helper.setControllersVersion(helper.getWritableDatabase(),
+                SliceDataConverter.CONTROLLERS_VERSION - 1);
+
+        mManager.indexSliceData();
+
+        verify(mConverter, times(2)).getSliceData(mBundle);
+        assertThat(helper.getControllersVersion(helper.getWritableDatabase()))
+                .isEqualTo(SliceDataConverter.CONTROLLERS_VERSION);
+        assertThat(helper.getProviderDigests(helper.getWritableDatabase()))
+                .containsExactly(FakeIndexProvider.class.getName(), "digest");
+    }
+
+    @Test
+    public void indexSliceData_noDigest_shouldAlwaysExtractProvider() {
+        when(mConverter.getProviderDigest(mBundle)).thenReturn(null);
+        mManager.indexSliceData();
+        clearIndexedState();
+
+        mManager.indexSliceData();
+
+        verify(mConverter, times(2)).getSliceData(mBundle);
+    }
+
+    private void clearIndexedState() {
+        mContext.getSharedPreferences("slices_shared_prefs", Context.MODE_PRIVATE)
+                .edit()
+                .clear()
+                .commit();
+    }
+
     private void insertSpecialCase(String key, String title) {
         final ContentValues values = new ContentValues();
         values.put(IndexColumns.KEY, key);
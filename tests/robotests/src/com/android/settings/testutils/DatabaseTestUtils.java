@@ -18,8 +18,12 @@ package com.android.settings.testutils;
 
 import android.content.Context;
 
+import com.android.settings.fuelgauge.BatteryHistoryDatabaseHelper;
+import com.android.settings.fuelgauge.BatteryHistoryDatabaseManager;
 import com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper;
 import com.android.settings.fuelgauge.batterytip.BatteryDatabaseManager;
+import com.android.settings.notification.NotificationSentDatabaseHelper;
+import com.android.settings.notification.NotificationSentStatsStore;
 import com.android.settings.slices.SlicesDatabaseHelper;
 
 import org.robolectric.util.ReflectionHelpers;
@@ -30,6 +34,8 @@ public class DatabaseTestUtils {
         clearSlicesDb(context);
         clearAnomalyDb(context);
         clearAnomalyDbManager();
+        clearBatteryHistoryDb(context);
+        clearNotificationSentDb(context);
     }
 
     private static void clearSlicesDb(Context context) {
@@ -49,4 +55,20 @@ public class DatabaseTestUtils {
     private static void clearAnomalyDbManager() {
         ReflectionHelpers.setStaticField(BatteryDatabaseManager.class, "sSingleton", null);
     }
+
+    private static void clearBatteryHistoryDb(Context context) {
+        BatteryHistoryDatabaseHelper helper = BatteryHistoryDatabaseHelper.getInstance(context);
+        helper.close();
+
+        ReflectionHelpers.setStaticField(BatteryHistoryDatabaseHelper.class, "sSingleton", null);
+        ReflectionHelpers.setStaticField(BatteryHistoryDatabaseManager.class, "sSingleton", null);
+    }
+
+    private static void clearNotificationSentDb(Context context) {
+        NotificationSentDatabaseHelper helper = NotificationSentDatabaseHelper.getInstance(context);
+        helper.close();
+
+        ReflectionHelpers.setStaticField(NotificationSentDatabaseHelper.class, "sSingleton", null);
+        ReflectionHelpers.setStaticField(NotificationSentStatsStore.class, "sSingleton", null);
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.wifi;
+
+import static com.android.settings.wifi.WifiEntryListDiffer.NO_ORDER;
+import static com.android.settings.wifi.WifiEntryListDiffer.ORDER_GAP;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class WifiEntryListDifferTest {
+
+    @Test
+    public void assignOrders_newList_shouldBeEvenlySpaced() {
+        final int[] orders = WifiEntryListDiffer.assignOrders(
+                new int[] {NO_ORDER, NO_ORDER, NO_ORDER});
+
+        assertThat(orders).asList().containsExactly(ORDER_GAP, ORDER_GAP * 2, ORDER_GAP * 3)
+                .inOrder();
+    }
+
+    @Test
+    public void assignOrders_unchangedList_shouldKeepOrders() {
+        final int[] currentOrders = {ORDER_GAP, ORDER_GAP * 2, ORDER_GAP * 3};
+
+        assertThat(WifiEntryListDiffer.assignOrders(currentOrders)).isEqualTo(currentOrders);
+    }
+
+    @Test
+    public void assignOrders_insertedEntries_shouldOnlyOrderInsertedEntries() {
+        final int[] orders = WifiEntryListDiffer.assignOrders(
+                new int[] {NO_ORDER, ORDER_GAP, NO_ORDER, ORDER_GAP * 2, NO_ORDER});
+
+        assertThat(orders[1]).isEqualTo(ORDER_GAP);
+        assertThat(orders[3]).isEqualTo(ORDER_GAP * 2);
+        assertStrictlyIncreasing(orders);
+        assertThat(orders[0]).isAtLeast(0);
+    }
+
+    @Test
+    public void assignOrders_movedEntry_shouldOnlyOrderMovedEntry() {
+        // The last entry moved to the top.
+        final int[] orders = WifiEntryListDiffer.assignOrders(
+                new int[] {ORDER_GAP * 4, ORDER_GAP, ORDER_GAP * 2, ORDER_GAP * 3});
+
+        assertThat(orders[1]).isEqualTo(ORDER_GAP);
+        assertThat(orders[2]).isEqualTo(ORDER_GAP * 2);
+        assertThat(orders[3]).isEqualTo(ORDER_GAP * 3);
+        assertStrictlyIncreasing(orders);
+    }
+
+    @Test
+    public void assignOrders_noRoomBetweenOrders_shouldRenumber() {
+        final int[] orders = WifiEntryListDiffer.assignOrders(new int[] {0, NO_ORDER, 1});
+
+        assertThat(orders).asList().containsExactly(ORDER_GAP, ORDER_GAP * 2, ORDER_GAP * 3)
+                .inOrder();
+    }
+
+    private static void assertStrictlyIncreasing(int[] orders) {
+        for (int i = 1; i < orders.length; i++) {
+            assertThat(orders[i]).isGreaterThan(orders[i - 1]);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.wifi;
+
+import static com.android.settings.wifi.WifiEntryUpdateDelay.MAX_DELAY_MS;
+import static com.android.settings.wifi.WifiEntryUpdateDelay.MIN_DELAY_MS;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class WifiEntryUpdateDelayTest {
+
+    private final WifiEntryUpdateDelay mUpdateDelay = new WifiEntryUpdateDelay();
+
+    @Test
+    public void onChanged_firstChange_shouldUseMinDelay() {
+        assertThat(mUpdateDelay.onChanged(1000L)).isEqualTo(MIN_DELAY_MS);
+    }
+
+    @Test
+    public void onChanged_burstOfChanges_shouldWaitForBurst() {
+        long now = 1000L;
+        long delay = 0;
+        for (int i = 0; i < 5; i++) {
+            delay = mUpdateDelay.onChanged(now);
+            now += 200L;
+        }
+
+        assertThat(delay).isEqualTo(400L);
+    }
+
+    @Test
+    public void onChanged_sparseChanges_shouldUseMinDelay() {
+        mUpdateDelay.onChanged(1000L);
+
+        assertThat(mUpdateDelay.onChanged(11000L)).isEqualTo(MIN_DELAY_MS);
+    }
+
+    @Test
+    public void onChanged_delay_shouldNotExceedMaxDelay() {
+        mUpdateDelay.onChanged(1000L);
+
+        assertThat(mUpdateDelay.onChanged(1000L + MAX_DELAY_MS - 1)).isEqualTo(MAX_DELAY_MS);
+    }
+}
@@ -44,6 +44,12 @@ public class CarrierConfigCacheTest {
 
     static final int ONCE_SUB_ID = 11;
     static final int TWICE_SUB_ID = 12;
+    static final int TYPED_SUB_ID = 13;
+    static final int NULL_CONFIG_SUB_ID = 14;
+    static final int PREFETCH_SUB_ID = 15;
+    static final int COUNT_SUB_ID = 16;
+    static final String KEY_BOOL = "test_bool";
+    static final String KEY_INT = "test_int";
 
     @Rule
     public final MockitoRule mMockitoRule = MockitoJUnit.rule();
@@ -98,4 +104,46 @@ public class CarrierConfigCacheTest {
 
         verify(mCarrierConfigManager, times(1)).getConfigForSubId(TWICE_SUB_ID);
     }
+
+    @Test
+    public void getConfigForSubId_getTwice_countOneMissAndOneHit() {
+        when(mCarrierConfigManager.getConfigForSubId(COUNT_SUB_ID)).thenReturn(mCarrierConfig);
+        final long hits = CarrierConfigCache.getCacheHitCount();
+        final long misses = CarrierConfigCache.getCacheMissCount();
+
+        mCarrierConfigCache.getConfigForSubId(COUNT_SUB_ID);
+        mCarrierConfigCache.getConfigForSubId(COUNT_SUB_ID);
+
+        assertThat(CarrierConfigCache.getCacheMissCount() - misses).isEqualTo(1);
+        assertThat(CarrierConfigCache.getCacheHitCount() - hits).isEqualTo(1);
+    }
+
+    @Test
+    public void getBooleanAndGetInt_configAvailable_returnConfigValues() {
+        mCarrierConfig.putBoolean(KEY_BOOL, true);
+        mCarrierConfig.putInt(KEY_INT, 5);
+        when(mCarrierConfigManager.getConfigForSubId(TYPED_SUB_ID)).thenReturn(mCarrierConfig);
+
+        assertThat(mCarrierConfigCache.getBoolean(TYPED_SUB_ID, KEY_BOOL, false)).isTrue();
+        assertThat(mCarrierConfigCache.getInt(TYPED_SUB_ID, KEY_INT, 0)).isEqualTo(5);
+    }
+
+    @Test
+    public void getBooleanAndGetInt_configNotAvailable_returnDefaultValues() {
+        when(mCarrierConfigManager.getConfigForSubId(NULL_CONFIG_SUB_ID)).thenReturn(null);
+
+        assertThat(mCarrierConfigCache.getBoolean(NULL_CONFIG_SUB_ID, KEY_BOOL, true)).isTrue();
+        assertThat(mCarrierConfigCache.getInt(NULL_CONFIG_SUB_ID, KEY_INT, 7)).isEqualTo(7);
+    }
+
+    @Test
+    public void prefetchConfigs_thenGetConfigForSubId_onlyGetOnceFromManager() {
+        when(mCarrierConfigManager.getConfigForSubId(PREFETCH_SUB_ID)).thenReturn(mCarrierConfig);
+
+        CarrierConfigCache.prefetchConfigs(new int[] {PREFETCH_SUB_ID});
+        PersistableBundle config = mCarrierConfigCache.getConfigForSubId(PREFETCH_SUB_ID);
+
+        assertThat(config).isEqualTo(mCarrierConfig);
+        verify(mCarrierConfigManager, times(1)).getConfigForSubId(PREFETCH_SUB_ID);
+    }
 }
@@ -22,6 +22,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
@@ -33,6 +35,7 @@ import android.text.TextUtils;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -69,6 +72,11 @@ public class SubscriptionUtilTest {
         when(mTelMgr.getUiccSlotsInfo()).thenReturn(null);
     }
 
+    @After
+    public void tearDown() {
+        SubscriptionUtil.setSubscriptionSnapshotTracking(false);
+    }
+
     @Ignore
     @Test
     public void getAvailableSubscriptions_nullInfoFromSubscriptionManager_nonNullResult() {
@@ -443,4 +451,44 @@ public class SubscriptionUtilTest {
     public void isInactiveInsertedPSim_nullSubInfo_doesNotCrash() {
         assertThat(SubscriptionUtil.isInactiveInsertedPSim(null)).isFalse();
     }
+
+    @Test
+    public void getAvailableSubscriptions_snapshotTracked_onlyQueryOnce() {
+        final SubscriptionInfo info = mock(SubscriptionInfo.class);
+        when(mSubMgr.getAvailableSubscriptionInfoList()).thenReturn(Arrays.asList(info));
+        SubscriptionUtil.setSubscriptionSnapshotTracking(true);
+
+        SubscriptionUtil.getAvailableSubscriptions(mContext);
+        final List<SubscriptionInfo> subs = SubscriptionUtil.getAvailableSubscriptions(mContext);
+
+        assertThat(subs).hasSize(1);
+        verify(mSubMgr, times(1)).getAvailableSubscriptionInfoList();
+    }
+
+    @Test
+    public void getAvailableSubscriptions_snapshotInvalidated_queryAgain() {
+        final SubscriptionInfo info1 = mock(SubscriptionInfo.class);
+        final SubscriptionInfo info2 = mock(SubscriptionInfo.class);
+        when(mSubMgr.getAvailableSubscriptionInfoList()).thenReturn(Arrays.asList(info1));
+        SubscriptionUtil.setSubscriptionSnapshotTracking(true);
+        SubscriptionUtil.getAvailableSubscriptions(mContext);
+
+        when(mSubMgr.getAvailableSubscriptionInfoList()).thenReturn(Arrays.asList(info1, info2));
+        SubscriptionUtil.invalidateSubscriptionSnapshot();
+        final List<SubscriptionInfo> subs = SubscriptionUtil.getAvailableSubscriptions(mContext);
+
+        assertThat(subs).hasSize(2);
+        verify(mSubMgr, times(2)).getAvailableSubscriptionInfoList();
+    }
+
+    @Test
+    public void getAvailableSubscriptions_snapshotNotTracked_queryEveryTime() {
+        final SubscriptionInfo info = mock(SubscriptionInfo.class);
+        when(mSubMgr.getAvailableSubscriptionInfoList()).thenReturn(Arrays.asList(info));
+
+        SubscriptionUtil.getAvailableSubscriptions(mContext);
+        SubscriptionUtil.getAvailableSubscriptions(mContext);
+
+        verify(mSubMgr, times(2)).getAvailableSubscriptionInfoList();
+    }
 }